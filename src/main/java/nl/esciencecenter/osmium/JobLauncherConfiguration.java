@@ -20,11 +20,16 @@
 package nl.esciencecenter.osmium;
 
 import javax.validation.Valid;
+import javax.validation.constraints.AssertTrue;
 import javax.validation.constraints.NotNull;
 
+import nl.esciencecenter.osmium.callback.CallbackConfiguration;
+import nl.esciencecenter.osmium.job.WatchConfiguration;
 import nl.esciencecenter.osmium.job.XenonConfiguration;
 import nl.esciencecenter.osmium.mac.MacCredential;
+import nl.esciencecenter.osmium.mac.MacVerificationConfiguration;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.google.common.base.Objects;
 import com.google.common.collect.ImmutableList;
@@ -69,6 +74,22 @@ public class JobLauncherConfiguration extends Configuration {
     @JsonProperty
     private Boolean useInsecureSSL = false;
 
+    /**
+     * Delivery of status callbacks of jobs
+     */
+    @Valid
+    @NotNull
+    @JsonProperty
+    private CallbackConfiguration callback = new CallbackConfiguration();
+
+    /**
+     * Verification of MAC Access Authentication of incoming requests, using the macs credentials
+     */
+    @Valid
+    @NotNull
+    @JsonProperty
+    private MacVerificationConfiguration macVerification = new MacVerificationConfiguration();
+
     /**
      * Constructor
      *
@@ -129,9 +150,43 @@ public class JobLauncherConfiguration extends Configuration {
         return useInsecureSSL;
     }
 
+    /**
+     * @return Status callback configuration
+     */
+    public CallbackConfiguration getCallback() {
+        return callback;
+    }
+
+    public void setCallback(CallbackConfiguration callback) {
+        this.callback = callback;
+    }
+
+    /**
+     * @return Incoming request verification configuration
+     */
+    public MacVerificationConfiguration getMacVerification() {
+        return macVerification;
+    }
+
+    public void setMacVerification(MacVerificationConfiguration macVerification) {
+        this.macVerification = macVerification;
+    }
+
+    /**
+     * Waiting requests and event streams each block a http thread, see {@link nl.esciencecenter.osmium.job.JobWatcher}.
+     *
+     * @return true when they can use at most half of the http threads, so other requests are still served
+     */
+    @JsonIgnore
+    @AssertTrue(message = "xenon.watch.maxWaiters plus xenon.watch.maxStreams must be at most half of http.maxThreads")
+    public boolean isWatchWithinHttpThreads() {
+        WatchConfiguration watch = xenonConfiguration.getWatch();
+        return watch.getMaxWaiters() + watch.getMaxStreams() <= getHttpConfiguration().getMaxThreads() / 2;
+    }
+
     @Override
     public int hashCode() {
-        return Objects.hashCode(macs, xenonConfiguration, httpClient);
+        return Objects.hashCode(macs, xenonConfiguration, httpClient, callback, macVerification);
     }
 
     @Override
@@ -144,12 +199,14 @@ public class JobLauncherConfiguration extends Configuration {
         }
         JobLauncherConfiguration other = (JobLauncherConfiguration) obj;
         return Objects.equal(this.macs, other.macs) && Objects.equal(this.xenonConfiguration, other.xenonConfiguration)
-                && Objects.equal(this.httpClient, other.httpClient);
+                && Objects.equal(this.httpClient, other.httpClient)
+                && Objects.equal(this.callback, other.callback)
+                && Objects.equal(this.macVerification, other.macVerification);
     }
 
     @Override
     public String toString() {
         return Objects.toStringHelper(this).addValue(this.macs).addValue(this.xenonConfiguration).addValue(this.httpClient)
-                .toString();
+                .addValue(this.callback).addValue(this.macVerification).toString();
     }
 }
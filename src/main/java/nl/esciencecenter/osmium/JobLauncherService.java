@@ -42,12 +42,17 @@ import org.apache.http.impl.client.AbstractHttpClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import nl.esciencecenter.osmium.callback.CallbackDispatcher;
 import nl.esciencecenter.osmium.health.JobLauncherHealthCheck;
 import nl.esciencecenter.osmium.job.XenonManager;
 import nl.esciencecenter.osmium.mac.MacCredential;
 import nl.esciencecenter.osmium.mac.MacScheme;
 import nl.esciencecenter.osmium.mac.MacSchemeFactory;
+import nl.esciencecenter.osmium.mac.MacVerificationFilter;
+import nl.esciencecenter.osmium.resources.JobChangesResource;
+import nl.esciencecenter.osmium.resources.JobEventsResource;
 import nl.esciencecenter.osmium.resources.JobResource;
+import nl.esciencecenter.osmium.resources.JobStatusesResource;
 import nl.esciencecenter.osmium.resources.JobsResource;
 import nl.esciencecenter.xenon.XenonException;
 
@@ -85,8 +90,6 @@ public class JobLauncherService extends Service<JobLauncherConfiguration> {
 
     @Override
     public void run(JobLauncherConfiguration configuration, Environment environment) throws URISyntaxException, KeyManagementException, UnrecoverableKeyException, NoSuchAlgorithmException, KeyStoreException, XenonException {
-        XenonManager xenon = new XenonManager(configuration.getXenonConfiguration());
-        environment.manage(xenon);
         HttpClient httpClient = new HttpClientBuilder().using(configuration.getHttpClientConfiguration()).build();
 
         httpClient = macifyHttpClient((AbstractHttpClient) httpClient, configuration.getMacs());
@@ -95,11 +98,40 @@ public class JobLauncherService extends Service<JobLauncherConfiguration> {
             useInsecureSSL(httpClient);
         }
 
+        CallbackDispatcher callbackDispatcher = null;
+        if (configuration.getCallback().isAsync()) {
+            callbackDispatcher = new CallbackDispatcher(configuration.getCallback(), httpClient);
+            // managed before xenon manager, so callbacks of jobs canceled during shutdown are still delivered
+            environment.manage(callbackDispatcher);
+        }
+
+        XenonManager xenon = new XenonManager(configuration.getXenonConfiguration(), httpClient, callbackDispatcher);
+        environment.manage(xenon);
+
+        if (configuration.getMacVerification().isEnabled()) {
+            addMacVerification(environment, configuration);
+        }
+
         environment.addResource(new JobsResource(xenon, httpClient));
         environment.addResource(new JobResource(xenon));
+        environment.addResource(new JobEventsResource(xenon));
+        environment.addResource(new JobChangesResource(xenon));
+        environment.addResource(new JobStatusesResource(xenon));
         environment.addHealthCheck(new JobLauncherHealthCheck("joblauncher"));
     }
 
+    /**
+     * Rejects incoming requests which change jobs unless they are signed with one of the configured MAC credentials.
+     *
+     * @param environment Environment to add request filter to
+     * @param configuration Configuration with MAC credentials and verification settings
+     */
+    @SuppressWarnings("unchecked")
+    public static void addMacVerification(Environment environment, JobLauncherConfiguration configuration) {
+        MacVerificationFilter filter = new MacVerificationFilter(configuration.getMacVerification(), configuration.getMacs());
+        environment.getJerseyResourceConfig().getContainerRequestFilters().add(filter);
+    }
+
     /**
      * Enable insecure SSL in http client like self signed certificates.
      *
@@ -0,0 +1,42 @@
+/*
+ * #%L
+ * Osmium
+ * %%
+ * Copyright (C) 2013 Nederlands eScience Center
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package nl.esciencecenter.osmium.api;
+
+/**
+ * Listener for changes of a {@link SandboxedJob}.
+ *
+ * @author verhoes
+ *
+ */
+public interface JobListener {
+    /**
+     * Called after the status, pseudo state or scheduler job of a job has changed.
+     *
+     * @param job The changed job
+     */
+    void jobChanged(SandboxedJob job);
+
+    /**
+     * Called after a job has been removed from the list of jobs.
+     *
+     * @param job The deleted job
+     */
+    void jobDeleted(SandboxedJob job);
+}
@@ -19,7 +19,11 @@
  */
 package nl.esciencecenter.osmium.api;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
 import java.util.Map;
+import java.util.Set;
 
 import javax.validation.constraints.NotNull;
 
@@ -27,11 +31,27 @@ import nl.esciencecenter.xenon.jobs.JobStatus;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableSet;
 
 public class JobStatusResponse {
+    /**
+     * Names of all fields of a serialized status, in order of serialization.
+     */
+    public static final Set<String> FIELDS = ImmutableSet.of("state", "exitCode", "running", "done",
+            "schedulerSpecficInformation", "exception");
+    /**
+     * Factory shared by all serializations, it is thread safe and recycles its buffers.
+     */
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    /**
+     * Typical size of a serialized status
+     */
+    private static final int INITIAL_JSON_SIZE = 256;
+
     @NotNull
     private final String state;
     private final Integer exitCode;
@@ -42,6 +62,10 @@ public class JobStatusResponse {
     @NotNull
     private final boolean done;
     private final Map<String, String> schedulerSpecficInformation;
+    /**
+     * JSON encoding of status, encoded on first use as the status is immutable.
+     */
+    private volatile byte[] json = null;
 
     public JobStatusResponse(JobStatus jobStatus) {
         if (jobStatus == null) {
@@ -61,6 +85,28 @@ public class JobStatusResponse {
         }
     }
 
+    /**
+     * Status of a job which is in a state the scheduler does not know about, like STAGING.
+     *
+     * The job is reported as not running and not done.
+     *
+     * @param jobStatus Last known scheduler status of job, can be null
+     * @param pseudoState Osmium specific state of job
+     */
+    public JobStatusResponse(JobStatus jobStatus, String pseudoState) {
+        state = pseudoState;
+        running = false;
+        done = false;
+        exception = null;
+        if (jobStatus == null) {
+            exitCode = null;
+            schedulerSpecficInformation = null;
+        } else {
+            exitCode = jobStatus.getExitCode();
+            schedulerSpecficInformation = jobStatus.getSchedulerSpecficInformation();
+        }
+    }
+
     public JobStatusResponse(String state, boolean running, boolean done, Integer exitCode, Exception exception,
             Map<String, String> schedulerSpecficInformation) {
         super();
@@ -142,8 +188,88 @@ public class JobStatusResponse {
                 .toString();
     }
 
-    public String toJson() throws JsonProcessingException {
-        ObjectMapper mapper = new ObjectMapper();
-        return mapper.writeValueAsString(this);
+    /**
+     * Writes status as JSON object.
+     *
+     * Fields are written directly, so no introspection is needed, in the same order as Jackson serializes this class.
+     *
+     * @param generator Generator to write to
+     * @throws IOException when writing fails
+     */
+    public void writeJson(JsonGenerator generator) throws IOException {
+        writeJson(generator, FIELDS);
+    }
+
+    /**
+     * Writes selected fields of status as JSON object.
+     *
+     * @param generator Generator to write to
+     * @param fields Names of fields to write, see {@link #FIELDS}
+     * @throws IOException when writing fails
+     */
+    public void writeJson(JsonGenerator generator, Set<String> fields) throws IOException {
+        generator.writeStartObject();
+        if (fields.contains("state")) {
+            generator.writeStringField("state", state);
+        }
+        if (fields.contains("exitCode")) {
+            if (exitCode == null) {
+                generator.writeNullField("exitCode");
+            } else {
+                generator.writeNumberField("exitCode", exitCode);
+            }
+        }
+        if (fields.contains("running")) {
+            generator.writeBooleanField("running", running);
+        }
+        if (fields.contains("done")) {
+            generator.writeBooleanField("done", done);
+        }
+        if (fields.contains("schedulerSpecficInformation")) {
+            if (schedulerSpecficInformation == null) {
+                generator.writeNullField("schedulerSpecficInformation");
+            } else {
+                generator.writeObjectFieldStart("schedulerSpecficInformation");
+                for (Map.Entry<String, String> entry : schedulerSpecficInformation.entrySet()) {
+                    generator.writeStringField(entry.getKey(), entry.getValue());
+                }
+                generator.writeEndObject();
+            }
+        }
+        if (fields.contains("exception")) {
+            generator.writeStringField("exception", getExceptionMessage());
+        }
+        generator.writeEndObject();
+    }
+
+    /**
+     * The status is encoded once, all callers share the returned array so it must not be modified.
+     *
+     * @return Status as UTF-8 encoded JSON
+     * @throws IOException when serialization fails
+     */
+    public byte[] toJsonBytes() throws IOException {
+        byte[] encoded = json;
+        if (encoded == null) {
+            encoded = encodeJson();
+            json = encoded;
+        }
+        return encoded;
+    }
+
+    private byte[] encodeJson() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream(INITIAL_JSON_SIZE);
+        JsonGenerator generator = JSON_FACTORY.createGenerator(output, JsonEncoding.UTF8);
+        writeJson(generator);
+        generator.close();
+        return output.toByteArray();
+    }
+
+    public String toJson() throws IOException {
+        StringWriter writer = new StringWriter(INITIAL_JSON_SIZE);
+        JsonGenerator generator = JSON_FACTORY.createGenerator(writer);
+        writeJson(generator);
+        generator.close();
+        return writer.toString();
     }
 }
@@ -35,6 +35,8 @@ import nl.esciencecenter.xenon.util.Sandbox;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
 import com.google.common.base.Objects;
 import java.util.Map;
 
@@ -89,6 +91,13 @@ public class JobSubmitRequest {
      * Url where changes of state are PUT to.
      */
     public URI status_callback_url;
+
+    /**
+     * Optional name of scheduler to submit job to.
+     * When null the job is routed by the configured rules, when no rule matches the default scheduler is used.
+     */
+    @JsonInclude(Include.NON_NULL)
+    public String scheduler;
 	
 	/**
      * Constructor
@@ -209,7 +218,7 @@ public class JobSubmitRequest {
 
     @Override
     public int hashCode() {
-        return Objects.hashCode(jobdir, executable, stderr, stdout, arguments, prestaged, poststaged, environment, status_callback_url);
+        return Objects.hashCode(jobdir, executable, stderr, stdout, arguments, prestaged, poststaged, environment, status_callback_url, scheduler);
     }
 
     @Override
@@ -228,13 +237,15 @@ public class JobSubmitRequest {
                 && Objects.equal(this.arguments, other.arguments) && Objects.equal(this.stderr, other.stderr)
                 && Objects.equal(this.stdout, other.stdout) && Objects.equal(this.prestaged, other.prestaged)
                 && Objects.equal(this.poststaged, other.poststaged) && Objects.equal(this.environment, other.environment)
-                && Objects.equal(this.status_callback_url, other.status_callback_url);
+                && Objects.equal(this.status_callback_url, other.status_callback_url)
+                && Objects.equal(this.scheduler, other.scheduler);
     }
 
     @Override
     public String toString() {
         return Objects.toStringHelper(this).add("jobdir", jobdir).add("executable", executable).add("stderr", stderr)
                 .add("stdout", stdout).add("arguments", arguments).add("prestaged", prestaged).add("poststaged", poststaged)
-				.add("environment", environment).add("status_callback_url", status_callback_url).toString();
+				.add("environment", environment).add("status_callback_url", status_callback_url)
+                .add("scheduler", scheduler).toString();
     }
 }
@@ -21,8 +21,12 @@ package nl.esciencecenter.osmium.api;
 
 
 import java.io.IOException;
+import java.io.OutputStream;
 
+import nl.esciencecenter.osmium.callback.Callback;
+import nl.esciencecenter.osmium.callback.CallbackDispatcher;
 import nl.esciencecenter.xenon.XenonException;
+import nl.esciencecenter.xenon.engine.jobs.JobStatusImplementation;
 import nl.esciencecenter.xenon.files.CopyOption;
 import nl.esciencecenter.xenon.jobs.Job;
 import nl.esciencecenter.xenon.jobs.JobStatus;
@@ -32,12 +36,18 @@ import org.apache.http.HttpEntity;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpPut;
 import org.apache.http.entity.ContentType;
-import org.apache.http.entity.StringEntity;
+import org.apache.http.entity.ByteArrayEntity;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
 
 /**
  * Job representation.
@@ -48,15 +58,78 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 public class SandboxedJob {
     protected static final Logger LOGGER = LoggerFactory.getLogger(SandboxedJob.class);
 
-    private final JobSubmitRequest request;
-    private final Sandbox sandbox;
-    private final Job job;
-    private final HttpClient httpClient;
-    private JobStatus status = null;
+    /**
+     * Pseudo state of job while its input files are being uploaded and it is being submitted to the scheduler.
+     */
+    public static final String STAGING = "STAGING";
+    /**
+     * Pseudo state of a done job while its output files are being downloaded from the sandbox.
+     */
+    public static final String DOWNLOADING = "DOWNLOADING";
+    /**
+     * Pseudo state of a done job while its sandbox is being deleted.
+     */
+    public static final String CLEANING = "CLEANING";
+    /**
+     * Mapper used to encode the job request, it is thread safe.
+     * Map entries are sorted by key, so a request always has the same encoding.
+     */
+    private static final ObjectMapper MAPPER = new ObjectMapper().configure(
+            SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true);
+    private static final byte[] JSON_REQUEST = "{\"request\":".getBytes(Charsets.UTF_8);
+    private static final byte[] JSON_STATUS = ",\"status\":".getBytes(Charsets.UTF_8);
+    private static final byte[] JSON_DIGEST = ",\"requestDigest\":\"".getBytes(Charsets.UTF_8);
+    private static final byte[] JSON_NULL = "null".getBytes(Charsets.UTF_8);
+
+    private final String identifier;
+    private volatile JobSubmitRequest request;
+    private volatile Sandbox sandbox;
+    private volatile Job job;
+    private volatile HttpClient httpClient;
+    private volatile JobStatus status = null;
+    private volatile String pseudoState = null;
+    /**
+     * Status of job as returned to clients, replaced on every change of status or pseudo state.
+     */
+    private volatile JobStatusResponse statusResponse = new JobStatusResponse(null);
+    private final Object statusResponseLock = new Object();
+    /**
+     * JSON encoding of request, encoded on first use as the request does not change after submission.
+     */
+    private volatile byte[] requestJson = null;
     private int pollIterations = 0;
+    private volatile JobListener listener = null;
+    private volatile CallbackDispatcher callbackDispatcher = null;
+    private volatile long createdAt = System.currentTimeMillis();
+    /**
+     * Sequence number of last change of job, see {@link nl.esciencecenter.osmium.job.ChangeFeed}.
+     */
+    private volatile long sequence = 0;
+    private volatile long finishedAt = 0;
+    private volatile String requestDigest = null;
+    private volatile boolean compacted = false;
 
     public SandboxedJob(Sandbox sandbox, Job job, JobSubmitRequest request, HttpClient httpClient) {
         super();
+        this.identifier = job.getIdentifier();
+        this.sandbox = sandbox;
+        this.job = job;
+        this.request = request;
+        this.httpClient = httpClient;
+    }
+
+    /**
+     * Constructor for job which has been submitted to the scheduler.
+     *
+     * @param identifier Identifier of job, unique over all schedulers
+     * @param sandbox Sandbox of job
+     * @param job Job submitted to scheduler
+     * @param request Request of job
+     * @param httpClient Client used to send status to callback of job
+     */
+    public SandboxedJob(String identifier, Sandbox sandbox, Job job, JobSubmitRequest request, HttpClient httpClient) {
+        super();
+        this.identifier = identifier;
         this.sandbox = sandbox;
         this.job = job;
         this.request = request;
@@ -66,12 +139,69 @@ public class SandboxedJob {
     public SandboxedJob(Sandbox sandbox, Job job, JobSubmitRequest request, HttpClient httpClient, JobStatus status,
             int pollIterations) {
         super();
+        this.identifier = job.getIdentifier();
         this.sandbox = sandbox;
         this.job = job;
         this.request = request;
         this.httpClient = httpClient;
-        this.status = status;
         this.pollIterations = pollIterations;
+        recordStatus(status);
+    }
+
+    /**
+     * Constructor for job restored from a job store.
+     *
+     * @param identifier Unique identifier of job
+     * @param sandbox Sandbox of job, can be null
+     * @param job Job in scheduler, can be null when job is no longer known by scheduler
+     * @param request The job request
+     * @param httpClient http client used to reporting status to job callback.
+     * @param status Last known status of job, can be null
+     */
+    public SandboxedJob(String identifier, Sandbox sandbox, Job job, JobSubmitRequest request, HttpClient httpClient,
+            JobStatus status) {
+        super();
+        this.identifier = identifier;
+        this.sandbox = sandbox;
+        this.job = job;
+        this.request = request;
+        this.httpClient = httpClient;
+        recordStatus(status);
+    }
+
+    /**
+     * Constructor for job which still has to be staged and submitted to the scheduler.
+     *
+     * The job is in the {@link #STAGING} pseudo state until {@link #setSubmitted(Sandbox, Job)} is called.
+     *
+     * @param identifier Unique identifier of job
+     * @param request The job request
+     * @param httpClient http client used to reporting status to job callback.
+     */
+    public SandboxedJob(String identifier, JobSubmitRequest request, HttpClient httpClient) {
+        super();
+        this.identifier = identifier;
+        this.sandbox = null;
+        this.job = null;
+        this.request = request;
+        this.httpClient = httpClient;
+        this.pseudoState = STAGING;
+        updateStatusResponse();
+    }
+
+    /**
+     * Compacted job restored from a job store, see {@link #compact()}.
+     *
+     * @param identifier Unique identifier of job
+     * @param requestDigest Digest of the job request, can be null
+     * @param status Done status of job
+     * @return Compacted job
+     */
+    public static SandboxedJob compacted(String identifier, String requestDigest, JobStatus status) {
+        SandboxedJob job = new SandboxedJob(identifier, null, null, null, null, status);
+        job.requestDigest = requestDigest;
+        job.compacted = true;
+        return job;
     }
 
     @JsonIgnore
@@ -98,9 +228,221 @@ public class SandboxedJob {
         return status;
     }
 
+    /**
+     * The returned status is immutable and shared until the status or pseudo state of job changes.
+     *
+     * @return Status of job
+     */
     @JsonProperty("status")
     public JobStatusResponse getStatusResponse() {
-        return new JobStatusResponse(status);
+        return statusResponse;
+    }
+
+    /**
+     * Replaces the status response by one of the current status and pseudo state.
+     *
+     * Uses its own lock so the last writer always builds the response from the latest status and pseudo state,
+     * without waiting for callbacks performed while holding the lock of job.
+     */
+    private void updateStatusResponse() {
+        synchronized (statusResponseLock) {
+            String currentPseudoState = pseudoState;
+            if (currentPseudoState != null) {
+                statusResponse = new JobStatusResponse(status, currentPseudoState);
+            } else {
+                statusResponse = new JobStatusResponse(status);
+            }
+        }
+    }
+
+    /**
+     * Writes job as JSON object with the same fields as Jackson serializes this class.
+     *
+     * The request and status are written from their cached encodings, so nothing needs to be serialized.
+     *
+     * @param output Stream to write to
+     * @throws IOException when writing fails
+     */
+    public void writeJson(OutputStream output) throws IOException {
+        // read fields once, compaction can happen concurrently
+        byte[] currentRequestJson = getRequestJson();
+        byte[] statusJson = statusResponse.toJsonBytes();
+        String digest = requestDigest;
+        output.write(JSON_REQUEST);
+        output.write(currentRequestJson);
+        if (digest != null) {
+            output.write(JSON_DIGEST);
+            output.write(digest.getBytes(Charsets.UTF_8));
+            output.write('"');
+        }
+        output.write(JSON_STATUS);
+        output.write(statusJson);
+        output.write('}');
+    }
+
+    private byte[] getRequestJson() throws JsonProcessingException {
+        JobSubmitRequest currentRequest = request;
+        if (currentRequest == null) {
+            return JSON_NULL;
+        }
+        byte[] encoded = requestJson;
+        if (encoded == null) {
+            encoded = MAPPER.writeValueAsBytes(currentRequest);
+            requestJson = encoded;
+            if (request == null) {
+                // compacted while encoding
+                requestJson = null;
+            }
+        }
+        return encoded;
+    }
+
+    /**
+     * @return Osmium specific state of job or null when job is in a state known by the scheduler
+     */
+    @JsonIgnore
+    public String getPseudoState() {
+        return pseudoState;
+    }
+
+    /**
+     * @param pseudoState Osmium specific state of job, like {@link #DOWNLOADING}
+     */
+    public void setPseudoState(String pseudoState) {
+        this.pseudoState = pseudoState;
+        updateStatusResponse();
+        fireJobChanged();
+    }
+
+    /**
+     * @param listener Listener which is notified of changes of job, can be null
+     */
+    public void setListener(JobListener listener) {
+        this.listener = listener;
+    }
+
+    @JsonIgnore
+    public JobListener getListener() {
+        return listener;
+    }
+
+    /**
+     * @param callbackDispatcher Dispatcher which delivers status callbacks in the background,
+     *          when null status callbacks are performed by the thread which changes the status
+     */
+    public void setCallbackDispatcher(CallbackDispatcher callbackDispatcher) {
+        this.callbackDispatcher = callbackDispatcher;
+    }
+
+    @JsonIgnore
+    public CallbackDispatcher getCallbackDispatcher() {
+        return callbackDispatcher;
+    }
+
+    /**
+     * Notifies listener that job has been removed from list of jobs.
+     */
+    public void markDeleted() {
+        JobListener currentListener = listener;
+        if (currentListener != null) {
+            currentListener.jobDeleted(this);
+        }
+    }
+
+    private void fireJobChanged() {
+        JobListener currentListener = listener;
+        if (currentListener != null) {
+            currentListener.jobChanged(this);
+        }
+    }
+
+    /**
+     * Sets status and starts a pseudo state of job, like {@link #DOWNLOADING} a done job.
+     *
+     * The status is recorded, so it is stored by the listener and survives a restart,
+     * but the callback is only sent by {@link #endPseudoState(JobStatus)}.
+     *
+     * @param pseudoState Osmium specific state of job
+     * @param status new Job status
+     */
+    public synchronized void startPseudoState(String pseudoState, JobStatus status) {
+        recordStatus(status);
+        this.pseudoState = pseudoState;
+        updateStatusResponse();
+        fireJobChanged();
+    }
+
+    /**
+     * Sets status, ends the pseudo state of job and sends the status to the callback.
+     *
+     * The status is stored before the pseudo state is cleared,
+     * so anyone who sees no pseudo state also sees the new status.
+     *
+     * @param status new Job status
+     * @throws IOException when callback fails.
+     */
+    public synchronized void endPseudoState(JobStatus status) throws IOException {
+        recordStatus(status);
+        this.pseudoState = null;
+        updateStatusResponse();
+        fireJobChanged();
+        // clients only saw the pseudo state, so the status is new to them even when it was recorded before
+        putState2Callback();
+    }
+
+    /**
+     * @return true when job is waiting for or busy with staging and submission.
+     */
+    @JsonIgnore
+    public boolean isStaging() {
+        return STAGING.equals(pseudoState);
+    }
+
+    /**
+     * @return true when job is done and its output files have been downloaded.
+     */
+    @JsonIgnore
+    public boolean isFinished() {
+        JobStatus currentStatus = status;
+        return currentStatus != null && currentStatus.isDone() && pseudoState == null;
+    }
+
+    /**
+     * Stores the sandbox and scheduler job of a staged job and ends the {@link #STAGING} pseudo state.
+     *
+     * @param sandbox Sandbox to which input files have been uploaded
+     * @param job Job submitted to scheduler
+     * @return false when job was canceled or failed while staging, the caller should then clean up sandbox and job.
+     */
+    public synchronized boolean setSubmitted(Sandbox sandbox, Job job) {
+        if (!isStaging()) {
+            return false;
+        }
+        this.sandbox = sandbox;
+        this.job = job;
+        this.pseudoState = null;
+        updateStatusResponse();
+        fireJobChanged();
+        return true;
+    }
+
+    /**
+     * Ends the {@link #STAGING} pseudo state of job with a done status.
+     *
+     * Used when staging failed or when job is canceled while staging.
+     *
+     * @param status Done status
+     * @return false when job is not staging
+     * @throws IOException when callback fails.
+     */
+    public synchronized boolean abortStaging(JobStatus status) throws IOException {
+        if (!isStaging()) {
+            return false;
+        }
+        this.pseudoState = null;
+        updateStatusResponse();
+        setStatus(status);
+        return true;
     }
 
     @JsonIgnore
@@ -122,6 +464,7 @@ public class SandboxedJob {
     /**
      * Sets status. If status has changed and callback is set then sends PUT request with {@link JobStatusResponse
      * JobStatusResponse} as JSON to callback URL.
+     * When a callback dispatcher is set the PUT request is queued and performed in the background.
      *
      * @param status
      *            new Job status
@@ -130,19 +473,140 @@ public class SandboxedJob {
      */
     public void setStatus(JobStatus status) throws IOException {
         if (!status.equals(this.status)) {
-            this.status = status;
+            recordStatus(status);
+            fireJobChanged();
             putState2Callback();
         }
     }
 
+    private void recordStatus(JobStatus status) {
+        this.status = status;
+        if (status != null && status.isDone() && finishedAt == 0) {
+            finishedAt = System.currentTimeMillis();
+        }
+        updateStatusResponse();
+    }
+
+    /**
+     * @return Sequence number of last change of job or 0 when its changes are not recorded
+     */
+    @JsonIgnore
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * @param sequence Sequence number of last change of job
+     */
+    public void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
+    /**
+     * @return Time in milliseconds since epoch at which job was created
+     */
+    @JsonIgnore
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    /**
+     * @param createdAt Time in milliseconds since epoch at which job was created, used when job is restored from a store
+     */
+    public void setCreatedAt(long createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    /**
+     * @return Time in milliseconds since epoch at which job got a done status or 0 when job is not done yet
+     */
+    @JsonIgnore
+    public long getFinishedAt() {
+        return finishedAt;
+    }
+
+    /**
+     * The digest is of the compact JSON encoding of the request, with map entries sorted by key,
+     * which is how the request is returned by {@link #writeJson(OutputStream)}, so clients can recompute it.
+     *
+     * @param request The job request
+     * @return Hex encoded SHA-256 digest of the job request
+     */
+    public static String digest(JobSubmitRequest request) {
+        try {
+            return Hashing.sha256().hashBytes(MAPPER.writeValueAsBytes(request)).toString();
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Unable to encode job request: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return Hex encoded SHA-256 digest of the job request, only set when job has been compacted.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public String getRequestDigest() {
+        return requestDigest;
+    }
+
+    /**
+     * @return true when job has been compacted
+     */
+    @JsonIgnore
+    public boolean isCompacted() {
+        return compacted;
+    }
+
+    /**
+     * Releases the request, sandbox, scheduler job and http client of a done job.
+     *
+     * Only the identifier, final state, exit code, exception, timestamps and a digest of the request are kept,
+     * so many finished jobs can be retained with little memory.
+     * The job can no longer be canceled, downloaded or cleaned and callbacks will no longer be sent.
+     * The listener is notified, as the representation of the job changed.
+     *
+     * @return false when job is not done, is in a pseudo state or has already been compacted
+     */
+    public synchronized boolean compact() {
+        JobStatus currentStatus = status;
+        if (isCompacted() || pseudoState != null || currentStatus == null || !currentStatus.isDone()) {
+            return false;
+        }
+        if (request != null) {
+            requestDigest = digest(request);
+        }
+        // drop the reference from status to scheduler job and its description
+        status = new JobStatusImplementation(null, currentStatus.getState(), currentStatus.getExitCode(),
+                currentStatus.getException(), false, true, currentStatus.getSchedulerSpecficInformation());
+        request = null;
+        requestJson = null;
+        sandbox = null;
+        job = null;
+        httpClient = null;
+        compacted = true;
+        fireJobChanged();
+        return true;
+    }
+
     private void putState2Callback() throws IOException {
-        if (request != null && request.status_callback_url != null) {
-            String body = getStatusResponse().toJson();
-            HttpPut put = new HttpPut(request.status_callback_url);
-            HttpEntity entity = new StringEntity(body, ContentType.APPLICATION_JSON);
-            put.setEntity(entity);
-            httpClient.execute(put);
+        // compact() can release the request and http client concurrently, so each is read once
+        JobSubmitRequest currentRequest = request;
+        if (currentRequest == null || currentRequest.status_callback_url == null) {
+            return;
+        }
+        CallbackDispatcher currentDispatcher = callbackDispatcher;
+        if (currentDispatcher != null) {
+            currentDispatcher.dispatch(new Callback(identifier, currentRequest.status_callback_url, getStatusResponse()));
+            return;
         }
+        HttpClient currentHttpClient = httpClient;
+        if (currentHttpClient == null) {
+            return;
+        }
+        byte[] body = getStatusResponse().toJsonBytes();
+        HttpPut put = new HttpPut(currentRequest.status_callback_url);
+        HttpEntity entity = new ByteArrayEntity(body, ContentType.APPLICATION_JSON);
+        put.setEntity(entity);
+        currentHttpClient.execute(put);
     }
 
     /**
@@ -151,7 +615,9 @@ public class SandboxedJob {
      * @throws XenonException if deletion of sandbox fails
      */
     public void cleanSandbox() throws XenonException {
-        sandbox.delete();
+        if (sandbox != null) {
+            sandbox.delete();
+        }
     }
 
     /**
@@ -160,7 +626,9 @@ public class SandboxedJob {
      * @throws XenonException if copying of poststaged files from sandbox to jobdir fails
      */
     public void downloadSandbox() throws XenonException {
-        sandbox.download(CopyOption.REPLACE);
+        if (sandbox != null) {
+            sandbox.download(CopyOption.REPLACE);
+        }
     }
 
     /**
@@ -175,6 +643,8 @@ public class SandboxedJob {
         // is not web safe then the job can not be mapped to resource url.
         // eg. id is "slow/3456" then a GET /job/slow/3456 will
         // try to fetch job with id "slow" which will fail.
-        return job.getIdentifier();
+        // Asynchronously submitted jobs have a generated identifier
+        // as the scheduler job identifier is not known yet.
+        return identifier;
     }
 }
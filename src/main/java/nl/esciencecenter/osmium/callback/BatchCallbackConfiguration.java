@@ -0,0 +1,151 @@
+/*
+ * #%L
+ * Osmium
+ * %%
+ * Copyright (C) 2013 Nederlands eScience Center
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package nl.esciencecenter.osmium.callback;
+
+import java.net.URI;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.Objects;
+
+/**
+ * Batched status callbacks for a callback host.
+ *
+ * Status callbacks with a url in scope are not PUT one by one,
+ * but collected and POSTed as a JSON array to the batch url.
+ * Each element of the array has the jobIdentifier, url and status of a callback.
+ *
+ * @author verhoes
+ *
+ */
+public class BatchCallbackConfiguration {
+    /**
+     * Callbacks with a url which starts with scope are batched
+     */
+    @NotNull
+    @JsonProperty
+    private URI scope = null;
+
+    /**
+     * Url to POST batches of callbacks to
+     */
+    @NotNull
+    @JsonProperty
+    private URI url = null;
+
+    /**
+     * Milliseconds a callback waits for other callbacks before its batch is sent.
+     * Default 1000.
+     */
+    @Min(0)
+    @JsonProperty
+    private long linger = 1000;
+
+    /**
+     * Maximum number of callbacks in a batch, a full batch is sent without waiting.
+     * Default 100.
+     */
+    @Min(1)
+    @JsonProperty
+    private int maxBatchSize = 100;
+
+    public BatchCallbackConfiguration(URI scope, URI url, long linger, int maxBatchSize) {
+        super();
+        this.scope = scope;
+        this.url = url;
+        this.linger = linger;
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    public BatchCallbackConfiguration() {
+    }
+
+    public URI getScope() {
+        return scope;
+    }
+
+    public void setScope(URI scope) {
+        this.scope = scope;
+    }
+
+    public URI getUrl() {
+        return url;
+    }
+
+    public void setUrl(URI url) {
+        this.url = url;
+    }
+
+    public long getLinger() {
+        return linger;
+    }
+
+    public void setLinger(long linger) {
+        this.linger = linger;
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    public void setMaxBatchSize(int maxBatchSize) {
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * @param callbackUrl Url of a status callback
+     * @return true when callback url is in scope
+     */
+    public boolean inScope(URI callbackUrl) {
+        return callbackUrl.toString().startsWith(scope.toString());
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(scope, url, linger, maxBatchSize);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == null) {
+            return false;
+        }
+        if (getClass() != obj.getClass()) {
+            return false;
+        }
+        BatchCallbackConfiguration other = (BatchCallbackConfiguration) obj;
+        return Objects.equal(this.scope, other.scope)
+                && Objects.equal(this.url, other.url)
+                && Objects.equal(this.linger, other.linger)
+                && Objects.equal(this.maxBatchSize, other.maxBatchSize);
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                .addValue(this.scope)
+                .addValue(this.url)
+                .addValue(this.linger)
+                .addValue(this.maxBatchSize)
+                .toString();
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * #%L
+ * Osmium
+ * %%
+ * Copyright (C) 2013 Nederlands eScience Center
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package nl.esciencecenter.osmium.callback;
+
+import java.io.IOException;
+import java.net.URI;
+
+import nl.esciencecenter.osmium.api.JobStatusResponse;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.google.common.base.Objects;
+
+/**
+ * Status of a job which has to be delivered to the status callback url of the job.
+ *
+ * In a batch of callbacks each callback is serialized with its job identifier, url and status.
+ *
+ * @author verhoes
+ *
+ */
+public class Callback {
+    private final String jobIdentifier;
+    private final URI url;
+    private final JobStatusResponse status;
+    private volatile int attempts = 0;
+    private volatile String lastError = null;
+
+    /**
+     * @param jobIdentifier Identifier of job
+     * @param url Status callback url of job
+     * @param status Status of job to deliver
+     */
+    public Callback(String jobIdentifier, URI url, JobStatusResponse status) {
+        super();
+        this.jobIdentifier = jobIdentifier;
+        this.url = url;
+        this.status = status;
+    }
+
+    public String getJobIdentifier() {
+        return jobIdentifier;
+    }
+
+    public URI getUrl() {
+        return url;
+    }
+
+    public JobStatusResponse getStatus() {
+        return status;
+    }
+
+    /**
+     * @return Number of delivery attempts made so far
+     */
+    @JsonIgnore
+    public int getAttempts() {
+        return attempts;
+    }
+
+    /**
+     * Increase number of delivery attempts
+     */
+    public void incrAttempts() {
+        attempts++;
+    }
+
+    /**
+     * @return Reason why last delivery attempt failed or null when no attempt failed
+     */
+    @JsonIgnore
+    public String getLastError() {
+        return lastError;
+    }
+
+    public void setLastError(String lastError) {
+        this.lastError = lastError;
+    }
+
+    /**
+     * Writes callback as JSON object with jobIdentifier, url and status fields.
+     *
+     * @param generator Generator to write to
+     * @throws IOException when writing fails
+     */
+    public void writeJson(JsonGenerator generator) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("jobIdentifier", jobIdentifier);
+        generator.writeStringField("url", url.toString());
+        generator.writeFieldName("status");
+        status.writeJson(generator);
+        generator.writeEndObject();
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(jobIdentifier, url, status);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == null) {
+            return false;
+        }
+        if (getClass() != obj.getClass()) {
+            return false;
+        }
+        Callback other = (Callback) obj;
+        return Objects.equal(this.jobIdentifier, other.jobIdentifier)
+                && Objects.equal(this.url, other.url)
+                && Objects.equal(this.status, other.status);
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                .addValue(this.jobIdentifier)
+                .addValue(this.url)
+                .addValue(this.status)
+                .addValue(this.attempts)
+                .addValue(this.lastError)
+                .toString();
+    }
+}
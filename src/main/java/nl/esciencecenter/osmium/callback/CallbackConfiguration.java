@@ -0,0 +1,274 @@
+/*
+ * #%L
+ * Osmium
+ * %%
+ * Copyright (C) 2013 Nederlands eScience Center
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package nl.esciencecenter.osmium.callback;
+
+import javax.validation.Valid;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Status callback configuration.
+ *
+ * Controls how status changes of jobs are delivered to their status callback url.
+ * See {@link CallbackDispatcher}.
+ *
+ * @author verhoes
+ *
+ */
+public class CallbackConfiguration {
+    /**
+     * When true status callbacks are queued and delivered by a pool of threads, with retries on failure.
+     * When false the status callback is performed by the thread which changed the status of the job.
+     * Default false.
+     */
+    @JsonProperty
+    private boolean async = false;
+
+    /**
+     * Number of threads delivering status callbacks.
+     * Default 4.
+     */
+    @Min(1)
+    @JsonProperty
+    private int threads = 4;
+
+    /**
+     * Maximum number of status callbacks waiting for delivery or a retry.
+     * When queue is full new callbacks are dead lettered.
+     * Default 10000.
+     */
+    @Min(1)
+    @JsonProperty
+    private int queueSize = 10000;
+
+    /**
+     * Maximum number of status callbacks delivered at the same time to a single host.
+     * Default 2.
+     */
+    @Min(1)
+    @JsonProperty
+    private int concurrentPerHost = 2;
+
+    /**
+     * Maximum number of delivery attempts of a status callback, after which it is dead lettered.
+     * Default 5.
+     */
+    @Min(1)
+    @JsonProperty
+    private int maxAttempts = 5;
+
+    /**
+     * Milliseconds to wait before first retry, every next retry waits twice as long.
+     * Default 1000.
+     */
+    @Min(1)
+    @JsonProperty
+    private long initialBackoff = 1000;
+
+    /**
+     * Maximum milliseconds to wait before a retry.
+     * Default 60000.
+     */
+    @Min(1)
+    @JsonProperty
+    private long maxBackoff = 60000;
+
+    /**
+     * Number of most recent dead lettered status callbacks which are remembered.
+     * Default 100.
+     */
+    @Min(0)
+    @JsonProperty
+    private int deadLetterSize = 100;
+
+    /**
+     * When true a job has at most one callback queued, being delivered or waiting for a retry.
+     * A newer status of the job replaces the status of that callback, so obsolete intermediate states are not delivered.
+     * Only used when async is true.
+     * Default false.
+     */
+    @JsonProperty
+    private boolean coalesce = false;
+
+    /**
+     * Milliseconds the first callback of a job waits before it is queued, so more status changes can be coalesced.
+     * Only used when coalesce is true.
+     * Default 0.
+     */
+    @Min(0)
+    @JsonProperty
+    private long coalesceDelay = 0;
+
+    /**
+     * Callback hosts which receive status callbacks in batches.
+     * Only used when async is true.
+     */
+    @Valid
+    @NotNull
+    @JsonProperty
+    private ImmutableList<BatchCallbackConfiguration> batches = ImmutableList.of();
+
+    public CallbackConfiguration(boolean async, int threads, int queueSize) {
+        super();
+        this.async = async;
+        this.threads = threads;
+        this.queueSize = queueSize;
+    }
+
+    public CallbackConfiguration() {
+    }
+
+    public boolean isAsync() {
+        return async;
+    }
+
+    public void setAsync(boolean async) {
+        this.async = async;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    public void setQueueSize(int queueSize) {
+        this.queueSize = queueSize;
+    }
+
+    public int getConcurrentPerHost() {
+        return concurrentPerHost;
+    }
+
+    public void setConcurrentPerHost(int concurrentPerHost) {
+        this.concurrentPerHost = concurrentPerHost;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public void setMaxAttempts(int maxAttempts) {
+        this.maxAttempts = maxAttempts;
+    }
+
+    public long getInitialBackoff() {
+        return initialBackoff;
+    }
+
+    public void setInitialBackoff(long initialBackoff) {
+        this.initialBackoff = initialBackoff;
+    }
+
+    public long getMaxBackoff() {
+        return maxBackoff;
+    }
+
+    public void setMaxBackoff(long maxBackoff) {
+        this.maxBackoff = maxBackoff;
+    }
+
+    public int getDeadLetterSize() {
+        return deadLetterSize;
+    }
+
+    public void setDeadLetterSize(int deadLetterSize) {
+        this.deadLetterSize = deadLetterSize;
+    }
+
+    public boolean isCoalesce() {
+        return coalesce;
+    }
+
+    public void setCoalesce(boolean coalesce) {
+        this.coalesce = coalesce;
+    }
+
+    public long getCoalesceDelay() {
+        return coalesceDelay;
+    }
+
+    public void setCoalesceDelay(long coalesceDelay) {
+        this.coalesceDelay = coalesceDelay;
+    }
+
+    public ImmutableList<BatchCallbackConfiguration> getBatches() {
+        return batches;
+    }
+
+    public void setBatches(ImmutableList<BatchCallbackConfiguration> batches) {
+        this.batches = batches;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(async, threads, queueSize, concurrentPerHost, maxAttempts, initialBackoff, maxBackoff,
+                deadLetterSize, coalesce, coalesceDelay, batches);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == null) {
+            return false;
+        }
+        if (getClass() != obj.getClass()) {
+            return false;
+        }
+        CallbackConfiguration other = (CallbackConfiguration) obj;
+        return Objects.equal(this.async, other.async)
+                && Objects.equal(this.threads, other.threads)
+                && Objects.equal(this.queueSize, other.queueSize)
+                && Objects.equal(this.concurrentPerHost, other.concurrentPerHost)
+                && Objects.equal(this.maxAttempts, other.maxAttempts)
+                && Objects.equal(this.initialBackoff, other.initialBackoff)
+                && Objects.equal(this.maxBackoff, other.maxBackoff)
+                && Objects.equal(this.deadLetterSize, other.deadLetterSize)
+                && Objects.equal(this.coalesce, other.coalesce)
+                && Objects.equal(this.coalesceDelay, other.coalesceDelay)
+                && Objects.equal(this.batches, other.batches);
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                .addValue(this.async)
+                .addValue(this.threads)
+                .addValue(this.queueSize)
+                .addValue(this.concurrentPerHost)
+                .addValue(this.maxAttempts)
+                .addValue(this.initialBackoff)
+                .addValue(this.maxBackoff)
+                .addValue(this.deadLetterSize)
+                .addValue(this.coalesce)
+                .addValue(this.coalesceDelay)
+                .addValue(this.batches)
+                .toString();
+    }
+}
@@ -0,0 +1,569 @@
+/*
+ * #%L
+ * Osmium
+ * %%
+ * Copyright (C) 2013 Nederlands eScience Center
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package nl.esciencecenter.osmium.callback;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.yammer.dropwizard.lifecycle.Managed;
+import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.Meter;
+
+/**
+ * Delivers status callbacks of jobs in the background.
+ *
+ * Callbacks are queued per host and delivered by a pool of threads,
+ * with at most {@link CallbackConfiguration#getConcurrentPerHost()} deliveries to a single host at the same time.
+ * Failed deliveries are retried with exponential backoff, after the maximum number of attempts
+ * the callback is dead lettered.
+ *
+ * In coalesce mode a job has at most one callback in the dispatcher.
+ * A newer status of the job replaces the status to deliver, the callback then delivers the newest status
+ * when it gets its turn or is retried. As the statuses of a job are delivered one at a time in the order
+ * they were dispatched, an older status is never delivered after a newer one.
+ *
+ * Callbacks with a url in the scope of a {@link BatchCallbackConfiguration} are collected for the linger time
+ * and POSTed together as a JSON array to the batch url.
+ * A batch url has at most one batch in flight, so batches are delivered in order.
+ * In coalesce mode a batch contains at most one callback per job.
+ *
+ * @author verhoes
+ *
+ */
+public class CallbackDispatcher implements Managed {
+    protected static final Logger LOGGER = LoggerFactory.getLogger(CallbackDispatcher.class);
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final CallbackConfiguration configuration;
+    private final HttpClient httpClient;
+    private final ExecutorService workers;
+    private final ScheduledExecutorService retryTimer;
+    private final ConcurrentMap<String, HostQueue> hosts = new ConcurrentHashMap<String, HostQueue>();
+    /**
+     * Number of callbacks which are queued, being delivered or waiting for a retry.
+     */
+    private final AtomicInteger pending = new AtomicInteger();
+    /**
+     * Newest callback of each job which is in the dispatcher, only used in coalesce mode.
+     */
+    private final ConcurrentMap<String, Callback> latest = new ConcurrentHashMap<String, Callback>();
+    private final List<BatchEndpoint> batchEndpoints = new ArrayList<BatchEndpoint>();
+    private final LinkedList<Callback> deadLetters = new LinkedList<Callback>();
+    private final Meter delivered = Metrics.newMeter(CallbackDispatcher.class, "delivered", "callbacks", TimeUnit.SECONDS);
+    private final Meter failed = Metrics.newMeter(CallbackDispatcher.class, "failed-attempts", "attempts", TimeUnit.SECONDS);
+    private final Meter coalesced = Metrics.newMeter(CallbackDispatcher.class, "coalesced", "callbacks", TimeUnit.SECONDS);
+    private final Meter deadLettered = Metrics.newMeter(CallbackDispatcher.class, "dead-lettered", "callbacks",
+            TimeUnit.SECONDS);
+
+    /**
+     * @param configuration Callback configuration
+     * @param httpClient Http client used to deliver callbacks
+     */
+    public CallbackDispatcher(CallbackConfiguration configuration, HttpClient httpClient) {
+        this(configuration, httpClient, Executors.newFixedThreadPool(configuration.getThreads()),
+                Executors.newSingleThreadScheduledExecutor());
+    }
+
+    /**
+     * @param configuration Callback configuration
+     * @param httpClient Http client used to deliver callbacks
+     * @param workers Executor which delivers callbacks
+     * @param retryTimer Executor which schedules retries
+     */
+    protected CallbackDispatcher(CallbackConfiguration configuration, HttpClient httpClient, ExecutorService workers,
+            ScheduledExecutorService retryTimer) {
+        super();
+        this.configuration = configuration;
+        this.httpClient = httpClient;
+        this.workers = workers;
+        this.retryTimer = retryTimer;
+        for (BatchCallbackConfiguration batchConfiguration : configuration.getBatches()) {
+            batchEndpoints.add(new BatchEndpoint(batchConfiguration));
+        }
+    }
+
+    public void start() {
+    }
+
+    /**
+     * Stops delivery, callbacks waiting for a retry are dropped.
+     *
+     * @throws InterruptedException if interrupted while waiting for deliveries to complete
+     */
+    public void stop() throws InterruptedException {
+        retryTimer.shutdownNow();
+        workers.shutdown();
+        workers.awaitTermination(1, TimeUnit.MINUTES);
+        if (pending.get() > 0) {
+            LOGGER.warn("Dropped " + pending.get() + " undelivered status callbacks");
+        }
+    }
+
+    /**
+     * Queues callback for delivery.
+     *
+     * Never blocks, when the queue is full the callback is dead lettered.
+     *
+     * @param callback Callback to deliver
+     * @return false when queue is full
+     */
+    public boolean dispatch(Callback callback) {
+        BatchEndpoint batchEndpoint = getBatchEndpoint(callback.getUrl());
+        if (batchEndpoint != null) {
+            if (pending.incrementAndGet() > configuration.getQueueSize()) {
+                pending.decrementAndGet();
+                deadLetter(callback, "Callback queue full");
+                return false;
+            }
+            batchEndpoint.add(callback);
+            return true;
+        }
+        boolean coalesce = configuration.isCoalesce();
+        if (coalesce && latest.put(callback.getJobIdentifier(), callback) != null) {
+            // callback of job already in dispatcher will deliver this newer status
+            coalesced.mark();
+            return true;
+        }
+        if (pending.incrementAndGet() > configuration.getQueueSize()) {
+            pending.decrementAndGet();
+            if (coalesce) {
+                latest.remove(callback.getJobIdentifier(), callback);
+            }
+            deadLetter(callback, "Callback queue full");
+            return false;
+        }
+        if (coalesce && configuration.getCoalesceDelay() > 0) {
+            enqueueLater(callback, configuration.getCoalesceDelay());
+        } else {
+            enqueue(callback);
+        }
+        return true;
+    }
+
+    /**
+     * @return Number of callbacks which are queued, being delivered or waiting for a retry
+     */
+    public int getPending() {
+        return pending.get();
+    }
+
+    /**
+     * @return Most recent callbacks which could not be delivered, oldest first
+     */
+    public List<Callback> getDeadLetters() {
+        synchronized (deadLetters) {
+            return new ArrayList<Callback>(deadLetters);
+        }
+    }
+
+    private BatchEndpoint getBatchEndpoint(URI url) {
+        for (BatchEndpoint batchEndpoint : batchEndpoints) {
+            if (batchEndpoint.configuration.inScope(url)) {
+                return batchEndpoint;
+            }
+        }
+        return null;
+    }
+
+    private void enqueue(Callback callback) {
+        String host = hostOf(callback.getUrl());
+        HostQueue queue = hosts.get(host);
+        if (queue == null) {
+            HostQueue newQueue = new HostQueue();
+            queue = hosts.putIfAbsent(host, newQueue);
+            if (queue == null) {
+                queue = newQueue;
+            }
+        }
+        queue.add(callback);
+    }
+
+    private static String hostOf(URI url) {
+        return url.getScheme() + "://" + url.getAuthority();
+    }
+
+    /**
+     * Performs a single delivery attempt of callback and schedules a retry when it fails.
+     *
+     * @param callback Callback to deliver
+     */
+    protected void deliver(Callback queuedCallback) {
+        Callback callback = queuedCallback;
+        if (configuration.isCoalesce()) {
+            callback = latest.get(queuedCallback.getJobIdentifier());
+        }
+        callback.incrAttempts();
+        int statusCode;
+        try {
+            statusCode = send(callback);
+        } catch (IOException e) {
+            retryOrDeadLetter(callback, e.toString());
+            return;
+        } catch (RuntimeException e) {
+            retryOrDeadLetter(callback, e.toString());
+            return;
+        }
+        if (statusCode < HttpStatus.SC_MULTIPLE_CHOICES) {
+            delivered.mark();
+            finish(callback);
+        } else if (isRetryable(statusCode)) {
+            retryOrDeadLetter(callback, "HTTP status " + statusCode);
+        } else {
+            deadLetter(callback, "HTTP status " + statusCode);
+            finish(callback);
+        }
+    }
+
+    /**
+     * Removes delivered or dead lettered callback from dispatcher.
+     *
+     * In coalesce mode a newer status of the job which was dispatched in the meantime is queued.
+     *
+     * @param callback Callback which is done
+     */
+    private void finish(Callback callback) {
+        if (configuration.isCoalesce() && !latest.remove(callback.getJobIdentifier(), callback)) {
+            enqueue(latest.get(callback.getJobIdentifier()));
+            return;
+        }
+        pending.decrementAndGet();
+    }
+
+    /**
+     * PUTs status of callback as JSON to the callback url.
+     *
+     * @param callback Callback to send
+     * @return HTTP status code of response
+     * @throws IOException when request fails
+     */
+    protected int send(Callback callback) throws IOException {
+        HttpPut put = new HttpPut(callback.getUrl());
+        put.setEntity(new ByteArrayEntity(callback.getStatus().toJsonBytes(), ContentType.APPLICATION_JSON));
+        HttpResponse response = httpClient.execute(put);
+        EntityUtils.consume(response.getEntity());
+        return response.getStatusLine().getStatusCode();
+    }
+
+    /**
+     * POSTs callbacks as JSON array to url.
+     *
+     * @param url Batch url
+     * @param batch Callbacks to send
+     * @return HTTP status code of response
+     * @throws IOException when request fails
+     */
+    protected int sendBatch(URI url, List<Callback> batch) throws IOException {
+        HttpPost post = new HttpPost(url);
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        JsonGenerator generator = JSON_FACTORY.createGenerator(body, JsonEncoding.UTF8);
+        generator.writeStartArray();
+        for (Callback callback : batch) {
+            callback.writeJson(generator);
+        }
+        generator.writeEndArray();
+        generator.close();
+        post.setEntity(new ByteArrayEntity(body.toByteArray(), ContentType.APPLICATION_JSON));
+        HttpResponse response = httpClient.execute(post);
+        EntityUtils.consume(response.getEntity());
+        return response.getStatusLine().getStatusCode();
+    }
+
+    private static boolean isRetryable(int statusCode) {
+        return statusCode >= HttpStatus.SC_INTERNAL_SERVER_ERROR || statusCode == HttpStatus.SC_REQUEST_TIMEOUT
+                || statusCode == 429;
+    }
+
+    private void retryOrDeadLetter(Callback callback, String error) {
+        failed.mark();
+        callback.setLastError(error);
+        if (callback.getAttempts() >= configuration.getMaxAttempts()) {
+            deadLetter(callback, error);
+            finish(callback);
+            return;
+        }
+        long delay = getBackoff(callback.getAttempts());
+        LOGGER.debug("Retrying callback " + callback + " in " + delay + "ms");
+        enqueueLater(callback, delay);
+    }
+
+    private void enqueueLater(final Callback callback, long delay) {
+        try {
+            retryTimer.schedule(new Runnable() {
+                public void run() {
+                    enqueue(callback);
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // dispatcher is stopping
+            pending.decrementAndGet();
+            deadLetter(callback, "Callback dispatcher stopped");
+        }
+    }
+
+    /**
+     * @param attempts Number of failed attempts
+     * @return Milliseconds to wait before next attempt
+     */
+    protected long getBackoff(int attempts) {
+        double backoff = configuration.getInitialBackoff() * Math.pow(2, attempts - 1);
+        return (long) Math.min(backoff, configuration.getMaxBackoff());
+    }
+
+    private void deadLetter(Callback callback, String error) {
+        callback.setLastError(error);
+        deadLettered.mark();
+        LOGGER.warn("Unable to deliver status callback " + callback);
+        synchronized (deadLetters) {
+            deadLetters.add(callback);
+            while (deadLetters.size() > configuration.getDeadLetterSize()) {
+                deadLetters.removeFirst();
+            }
+        }
+    }
+
+    /**
+     * Queue of callbacks to a single host.
+     *
+     * Each delivery is a separate task in the worker pool, so hosts share the workers fairly.
+     * At most concurrentPerHost tasks of a host are submitted to the workers at the same time.
+     */
+    private class HostQueue implements Runnable {
+        private final Queue<Callback> queue = new ConcurrentLinkedQueue<Callback>();
+        private final AtomicInteger active = new AtomicInteger();
+
+        public void add(Callback callback) {
+            queue.add(callback);
+            schedule();
+        }
+
+        private void schedule() {
+            while (!queue.isEmpty()) {
+                int current = active.get();
+                if (current >= configuration.getConcurrentPerHost()) {
+                    // a running delivery will schedule the next one
+                    return;
+                }
+                if (active.compareAndSet(current, current + 1)) {
+                    try {
+                        workers.execute(this);
+                    } catch (RejectedExecutionException e) {
+                        // dispatcher is stopping
+                        active.decrementAndGet();
+                    }
+                    return;
+                }
+            }
+        }
+
+        public void run() {
+            try {
+                Callback callback = queue.poll();
+                if (callback != null) {
+                    deliver(callback);
+                }
+            } finally {
+                active.decrementAndGet();
+            }
+            schedule();
+        }
+    }
+
+    /**
+     * Collects callbacks for a batch url and sends them in batches, one batch at a time.
+     */
+    private class BatchEndpoint {
+        private final BatchCallbackConfiguration configuration;
+        /**
+         * Callbacks waiting for next batch, guarded by this
+         */
+        private final List<Callback> buffer = new ArrayList<Callback>();
+        /**
+         * Batch being sent or waiting for a retry, guarded by this
+         */
+        private List<Callback> inFlight = null;
+        private int attempts = 0;
+        private boolean flushScheduled = false;
+
+        public BatchEndpoint(BatchCallbackConfiguration configuration) {
+            this.configuration = configuration;
+        }
+
+        public synchronized void add(Callback callback) {
+            if (CallbackDispatcher.this.configuration.isCoalesce()) {
+                removeFromBuffer(callback.getJobIdentifier());
+            }
+            buffer.add(callback);
+            if (buffer.size() >= configuration.getMaxBatchSize()) {
+                flush();
+            } else if (!flushScheduled) {
+                flushScheduled = true;
+                try {
+                    retryTimer.schedule(new Runnable() {
+                        public void run() {
+                            lingered();
+                        }
+                    }, configuration.getLinger(), TimeUnit.MILLISECONDS);
+                } catch (RejectedExecutionException e) {
+                    // dispatcher is stopping
+                    flushScheduled = false;
+                }
+            }
+        }
+
+        private void removeFromBuffer(String jobIdentifier) {
+            Iterator<Callback> iterator = buffer.iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().getJobIdentifier().equals(jobIdentifier)) {
+                    iterator.remove();
+                    pending.decrementAndGet();
+                    coalesced.mark();
+                }
+            }
+        }
+
+        private synchronized void lingered() {
+            flushScheduled = false;
+            flush();
+        }
+
+        /**
+         * Sends buffered callbacks as batch when no other batch is in flight, must be called while holding lock.
+         */
+        private void flush() {
+            if (inFlight != null || buffer.isEmpty()) {
+                // batch in flight will flush when it is done
+                return;
+            }
+            int size = Math.min(buffer.size(), configuration.getMaxBatchSize());
+            List<Callback> head = buffer.subList(0, size);
+            inFlight = new ArrayList<Callback>(head);
+            head.clear();
+            attempts = 0;
+            send();
+        }
+
+        private void send() {
+            try {
+                workers.execute(new Runnable() {
+                    public void run() {
+                        deliverBatch();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // dispatcher is stopping
+                done("Callback dispatcher stopped");
+            }
+        }
+
+        private void deliverBatch() {
+            List<Callback> batch;
+            synchronized (this) {
+                batch = inFlight;
+                attempts++;
+            }
+            String error;
+            try {
+                int statusCode = sendBatch(configuration.getUrl(), batch);
+                if (statusCode < HttpStatus.SC_MULTIPLE_CHOICES) {
+                    delivered.mark(batch.size());
+                    done(null);
+                    return;
+                }
+                error = "HTTP status " + statusCode;
+                if (!isRetryable(statusCode)) {
+                    done(error);
+                    return;
+                }
+            } catch (IOException e) {
+                error = e.toString();
+            } catch (RuntimeException e) {
+                error = e.toString();
+            }
+            failed.mark();
+            retryOrDone(error);
+        }
+
+        private synchronized void retryOrDone(String error) {
+            if (attempts >= CallbackDispatcher.this.configuration.getMaxAttempts()) {
+                done(error);
+                return;
+            }
+            long delay = getBackoff(attempts);
+            LOGGER.debug("Retrying batch to " + configuration.getUrl() + " in " + delay + "ms");
+            try {
+                retryTimer.schedule(new Runnable() {
+                    public void run() {
+                        send();
+                    }
+                }, delay, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // dispatcher is stopping
+                done(error);
+            }
+        }
+
+        /**
+         * Ends batch in flight and sends next batch.
+         *
+         * @param error Reason why batch could not be delivered or null when batch was delivered
+         */
+        private synchronized void done(String error) {
+            for (Callback callback : inFlight) {
+                if (error != null) {
+                    deadLetter(callback, error);
+                }
+                pending.decrementAndGet();
+            }
+            inFlight = null;
+            if (!flushScheduled || buffer.size() >= configuration.getMaxBatchSize()) {
+                flush();
+            }
+        }
+    }
+}
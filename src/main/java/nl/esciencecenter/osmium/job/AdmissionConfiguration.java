@@ -0,0 +1,168 @@
+/*
+ * #%L
+ * Osmium
+ * %%
+ * Copyright (C) 2013 Nederlands eScience Center
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package nl.esciencecenter.osmium.job;
+
+import javax.validation.constraints.DecimalMin;
+import javax.validation.constraints.Min;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.Objects;
+
+/**
+ * Admission control of job submissions, see {@link AdmissionController}.
+ *
+ * A limit of 0 means unlimited.
+ *
+ * @author verhoes
+ *
+ */
+public class AdmissionConfiguration {
+    /**
+     * Maximum number of jobs which are staging, queued, running or downloading their output.
+     * Default 0, unlimited.
+     */
+    @Min(0)
+    @JsonProperty
+    private int maxActiveJobs = 0;
+
+    /**
+     * Maximum total size in bytes of input files which are being uploaded to sandboxes.
+     * A single job larger than this limit is admitted when no other job is staging.
+     * Only files listed in the request are counted, the contents of listed directories are not.
+     * Default 0, unlimited.
+     */
+    @Min(0)
+    @JsonProperty
+    private long maxStagingBytes = 0;
+
+    /**
+     * Number of submissions per second each client can sustain.
+     * Default 0, unlimited.
+     */
+    @DecimalMin("0")
+    @JsonProperty
+    private double clientRate = 0;
+
+    /**
+     * Number of submissions a client can make in a burst before it is limited to the client rate.
+     * Default 10.
+     */
+    @Min(1)
+    @JsonProperty
+    private int clientBurst = 10;
+
+    /**
+     * Seconds a client is asked to wait before retrying when the active jobs or staging bytes limit is reached.
+     * Default 60.
+     */
+    @Min(1)
+    @JsonProperty
+    private int retryAfter = 60;
+
+    public AdmissionConfiguration(int maxActiveJobs, long maxStagingBytes, double clientRate, int clientBurst) {
+        super();
+        this.maxActiveJobs = maxActiveJobs;
+        this.maxStagingBytes = maxStagingBytes;
+        this.clientRate = clientRate;
+        this.clientBurst = clientBurst;
+    }
+
+    public AdmissionConfiguration() {
+    }
+
+    /**
+     * @return true when any limit is set
+     */
+    public boolean hasLimits() {
+        return maxActiveJobs > 0 || maxStagingBytes > 0 || clientRate > 0;
+    }
+
+    public int getMaxActiveJobs() {
+        return maxActiveJobs;
+    }
+
+    public void setMaxActiveJobs(int maxActiveJobs) {
+        this.maxActiveJobs = maxActiveJobs;
+    }
+
+    public long getMaxStagingBytes() {
+        return maxStagingBytes;
+    }
+
+    public void setMaxStagingBytes(long maxStagingBytes) {
+        this.maxStagingBytes = maxStagingBytes;
+    }
+
+    public double getClientRate() {
+        return clientRate;
+    }
+
+    public void setClientRate(double clientRate) {
+        this.clientRate = clientRate;
+    }
+
+    public int getClientBurst() {
+        return clientBurst;
+    }
+
+    public void setClientBurst(int clientBurst) {
+        this.clientBurst = clientBurst;
+    }
+
+    public int getRetryAfter() {
+        return retryAfter;
+    }
+
+    public void setRetryAfter(int retryAfter) {
+        this.retryAfter = retryAfter;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(maxActiveJobs, maxStagingBytes, clientRate, clientBurst, retryAfter);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == null) {
+            return false;
+        }
+        if (getClass() != obj.getClass()) {
+            return false;
+        }
+        AdmissionConfiguration other = (AdmissionConfiguration) obj;
+        return Objects.equal(this.maxActiveJobs, other.maxActiveJobs)
+                && Objects.equal(this.maxStagingBytes, other.maxStagingBytes)
+                && Objects.equal(this.clientRate, other.clientRate)
+                && Objects.equal(this.clientBurst, other.clientBurst)
+                && Objects.equal(this.retryAfter, other.retryAfter);
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                .addValue(this.maxActiveJobs)
+                .addValue(this.maxStagingBytes)
+                .addValue(this.clientRate)
+                .addValue(this.clientBurst)
+                .addValue(this.retryAfter)
+                .toString();
+    }
+}
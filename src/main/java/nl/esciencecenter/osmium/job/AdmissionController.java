@@ -0,0 +1,290 @@
+/*
+ * #%L
+ * Osmium
+ * %%
+ * Copyright (C) 2013 Nederlands eScience Center
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package nl.esciencecenter.osmium.job;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import nl.esciencecenter.osmium.api.JobSubmitRequest;
+
+import com.yammer.metrics.core.Clock;
+
+/**
+ * Decides whether a job submission is admitted, see {@link AdmissionConfiguration}.
+ *
+ * An admitted submission reserves an active job slot and the size of its input files as staging bytes.
+ * The staging bytes are released with {@link #stagingFinished(long)} when the job has been submitted to the scheduler
+ * or staging failed. The slot is released when the job finishes, see {@link #jobFinished(String)},
+ * or with {@link #cancel()} when the submission failed before the job was created.
+ *
+ * Reservations are made with compare and set, so concurrent submissions never exceed a limit.
+ *
+ * @author verhoes
+ *
+ */
+public class AdmissionController {
+    /**
+     * Token buckets of idle clients are dropped when there are more clients than this.
+     */
+    private static final int MAX_CLIENTS = 10000;
+
+    private final AdmissionConfiguration configuration;
+    private final Clock clock;
+    /**
+     * Number of admitted submissions and active jobs.
+     */
+    private final AtomicInteger activeJobs = new AtomicInteger();
+    /**
+     * Identifiers of active jobs, so a job which changes multiple times after it finished is released once.
+     */
+    private final ConcurrentMap<String, Boolean> activeIdentifiers = new ConcurrentHashMap<String, Boolean>();
+    private final AtomicLong stagingBytes = new AtomicLong();
+    private final ConcurrentMap<String, TokenBucket> buckets = new ConcurrentHashMap<String, TokenBucket>();
+
+    public AdmissionController(AdmissionConfiguration configuration) {
+        this(configuration, Clock.defaultClock());
+    }
+
+    protected AdmissionController(AdmissionConfiguration configuration, Clock clock) {
+        this.configuration = configuration;
+        this.clock = clock;
+    }
+
+    /**
+     * Admits a submission by reserving an active job slot and its staging bytes.
+     *
+     * The rate limit token of the client is taken last, so a submission refused by another limit does not use it up.
+     *
+     * @param client Identifier of client, null when client is unknown and not rate limited
+     * @param size Size in bytes of input files of job
+     * @throws AdmissionException when a limit has been reached
+     */
+    public void admit(String client, long size) {
+        reserveActiveJob();
+        try {
+            reserveStagingBytes(size);
+        } catch (AdmissionException e) {
+            activeJobs.decrementAndGet();
+            throw e;
+        }
+        if (client != null && configuration.getClientRate() > 0) {
+            long wait = getBucket(client).take(clock.time());
+            if (wait > 0) {
+                stagingBytes.addAndGet(-size);
+                activeJobs.decrementAndGet();
+                throw new AdmissionException("Submission rate limit of client reached", toRetryAfter(wait));
+            }
+        }
+    }
+
+    private void reserveActiveJob() {
+        int max = configuration.getMaxActiveJobs();
+        while (true) {
+            int current = activeJobs.get();
+            if (max > 0 && current >= max) {
+                throw new AdmissionException("Maximum number of active jobs reached", configuration.getRetryAfter());
+            }
+            if (activeJobs.compareAndSet(current, current + 1)) {
+                return;
+            }
+        }
+    }
+
+    private void reserveStagingBytes(long size) {
+        long max = configuration.getMaxStagingBytes();
+        while (true) {
+            long current = stagingBytes.get();
+            // a job larger than the limit must be able to stage on its own
+            if (max > 0 && current > 0 && current + size > max) {
+                throw new AdmissionException("Maximum size of staging input files reached", configuration.getRetryAfter());
+            }
+            if (stagingBytes.compareAndSet(current, current + size)) {
+                return;
+            }
+        }
+    }
+
+    private long toRetryAfter(long waitMillis) {
+        return Math.max(1, TimeUnit.MILLISECONDS.toSeconds(waitMillis + TimeUnit.SECONDS.toMillis(1) - 1));
+    }
+
+    private TokenBucket getBucket(String client) {
+        TokenBucket bucket = buckets.get(client);
+        if (bucket == null) {
+            if (buckets.size() >= MAX_CLIENTS) {
+                evictIdleBuckets();
+            }
+            bucket = new TokenBucket(configuration.getClientRate(), configuration.getClientBurst(), clock.time());
+            TokenBucket existing = buckets.putIfAbsent(client, bucket);
+            if (existing != null) {
+                bucket = existing;
+            }
+        }
+        return bucket;
+    }
+
+    /**
+     * Drops buckets which have refilled completely, they behave the same as a new bucket.
+     */
+    private void evictIdleBuckets() {
+        long now = clock.time();
+        Iterator<TokenBucket> iterator = buckets.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().isFull(now)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Releases staging bytes of an admitted submission.
+     *
+     * @param size Size in bytes passed to {@link #admit(String, long)}
+     */
+    public void stagingFinished(long size) {
+        stagingBytes.addAndGet(-size);
+    }
+
+    /**
+     * Releases active job slot of an admitted submission for which no job was created.
+     */
+    public void cancel() {
+        activeJobs.decrementAndGet();
+    }
+
+    /**
+     * Registers job which occupies an active job slot.
+     *
+     * @param identifier Identifier of job
+     * @param admitted true when slot was reserved by {@link #admit(String, long)}, false for a recovered job
+     */
+    public void jobActive(String identifier, boolean admitted) {
+        if (activeIdentifiers.putIfAbsent(identifier, Boolean.TRUE) != null) {
+            if (admitted) {
+                activeJobs.decrementAndGet();
+            }
+        } else if (!admitted) {
+            activeJobs.incrementAndGet();
+        }
+    }
+
+    /**
+     * Releases active job slot of a job, calling it again for the same job has no effect.
+     *
+     * @param identifier Identifier of job
+     */
+    public void jobFinished(String identifier) {
+        if (activeIdentifiers.remove(identifier) != null) {
+            activeJobs.decrementAndGet();
+        }
+    }
+
+    /**
+     * @return Number of admitted submissions and active jobs
+     */
+    public int getActiveJobs() {
+        return activeJobs.get();
+    }
+
+    /**
+     * @return Size in bytes of input files being staged
+     */
+    public long getStagingBytes() {
+        return stagingBytes.get();
+    }
+
+    /**
+     * Size of input files of a request, which are read from the local file system.
+     *
+     * Called on the request thread, so only the listed files are looked up.
+     * Directories are not walked and count as 0 bytes,
+     * as walking a client supplied path like / or a symlink loop could block the request thread indefinitely.
+     *
+     * @param request The job request
+     * @return Size in bytes
+     */
+    public static long getStagingSize(JobSubmitRequest request) {
+        if (request.prestaged == null) {
+            return 0;
+        }
+        long size = 0;
+        for (String prestage : request.prestaged) {
+            File file;
+            if (prestage.startsWith("/") || request.jobdir == null) {
+                file = new File(prestage);
+            } else {
+                file = new File(request.jobdir, prestage);
+            }
+            if (file.isFile()) {
+                size += file.length();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Token bucket which refills at a constant rate up to its burst size.
+     */
+    static class TokenBucket {
+        private final double tokensPerMilli;
+        private final double burst;
+        private double tokens;
+        private long refilledAt;
+
+        TokenBucket(double rate, int burst, long now) {
+            this.tokensPerMilli = rate / TimeUnit.SECONDS.toMillis(1);
+            this.burst = burst;
+            this.tokens = burst;
+            this.refilledAt = now;
+        }
+
+        private void refill(long now) {
+            if (now > refilledAt) {
+                tokens = Math.min(burst, tokens + (now - refilledAt) * tokensPerMilli);
+                refilledAt = now;
+            }
+        }
+
+        /**
+         * Takes a token.
+         *
+         * @param now Current time in milliseconds
+         * @return 0 when token was taken, otherwise milliseconds until a token is available
+         */
+        synchronized long take(long now) {
+            refill(now);
+            if (tokens >= 1) {
+                tokens -= 1;
+                return 0;
+            }
+            return (long) Math.ceil((1 - tokens) / tokensPerMilli);
+        }
+
+        synchronized boolean isFull(long now) {
+            refill(now);
+            return tokens >= burst;
+        }
+    }
+}
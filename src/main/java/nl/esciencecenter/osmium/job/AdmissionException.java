@@ -0,0 +1,47 @@
+/*
+ * #%L
+ * Osmium
+ * %%
+ * Copyright (C) 2013 Nederlands eScience Center
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package nl.esciencecenter.osmium.job;
+
+/**
+ * Job submission was refused because a limit of {@link AdmissionConfiguration} has been reached.
+ *
+ * @author verhoes
+ *
+ */
+public class AdmissionException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Seconds after which the submission can be retried.
+     */
+    private final long retryAfter;
+
+    public AdmissionException(String message, long retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * @return Seconds after which the submission can be retried
+     */
+    public long getRetryAfter() {
+        return retryAfter;
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * #%L
+ * Osmium
+ * %%
+ * Copyright (C) 2013 Nederlands eScience Center
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package nl.esciencecenter.osmium.job;
+
+import javax.validation.Valid;
+import javax.validation.constraints.NotNull;
+
+import org.hibernate.validator.constraints.NotEmpty;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.Objects;
+
+/**
+ * Configuration of an additional named scheduler with its own sandbox root, see {@link SchedulerBackend}.
+ *
+ * A job is submitted to this scheduler when its request names the scheduler
+ * or when the request matches the executable and arguments patterns.
+ *
+ * @author verhoes
+ *
+ */
+public class BackendConfiguration {
+    /**
+     * Name of scheduler, used in the scheduler field of a job request
+     */
+    @NotEmpty
+    @JsonProperty
+    private String name;
+
+    /**
+     * Scheduler configuration used to submit jobs
+     */
+    @Valid
+    @NotNull
+    @JsonProperty
+    private SchedulerConfiguration scheduler;
+
+    /**
+     * Sandbox configuration used to upload input files and download output files from job.
+     */
+    @Valid
+    @NotNull
+    @JsonProperty
+    private SandboxConfiguration sandbox;
+
+    /**
+     * Regular expression which must match the whole executable of a request to route it to this scheduler.
+     * Null matches any executable.
+     */
+    @JsonProperty
+    private String executable = null;
+
+    /**
+     * Regular expression which must be found in the space separated arguments of a request to route it to this scheduler.
+     * Null matches any arguments.
+     */
+    @JsonProperty
+    private String arguments = null;
+
+    public BackendConfiguration(String name, SchedulerConfiguration scheduler, SandboxConfiguration sandbox) {
+        super();
+        this.name = name;
+        this.scheduler = scheduler;
+        this.sandbox = sandbox;
+    }
+
+    public BackendConfiguration() {
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public SchedulerConfiguration getScheduler() {
+        return scheduler;
+    }
+
+    public void setScheduler(SchedulerConfiguration scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    public SandboxConfiguration getSandbox() {
+        return sandbox;
+    }
+
+    public void setSandbox(SandboxConfiguration sandbox) {
+        this.sandbox = sandbox;
+    }
+
+    public String getExecutable() {
+        return executable;
+    }
+
+    public void setExecutable(String executable) {
+        this.executable = executable;
+    }
+
+    public String getArguments() {
+        return arguments;
+    }
+
+    public void setArguments(String arguments) {
+        this.arguments = arguments;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(name, scheduler, sandbox, executable, arguments);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == null) {
+            return false;
+        }
+        if (getClass() != obj.getClass()) {
+            return false;
+        }
+        BackendConfiguration other = (BackendConfiguration) obj;
+        return Objects.equal(this.name, other.name)
+                && Objects.equal(this.scheduler, other.scheduler)
+                && Objects.equal(this.sandbox, other.sandbox)
+                && Objects.equal(this.executable, other.executable)
+                && Objects.equal(this.arguments, other.arguments);
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                .addValue(this.name)
+                .addValue(this.scheduler)
+                .addValue(this.sandbox)
+                .addValue(this.executable)
+                .addValue(this.arguments)
+                .toString();
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * #%L
+ * Osmium
+ * %%
+ * Copyright (C) 2013 Nederlands eScience Center
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package nl.esciencecenter.osmium.job;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.base.Objects;
+
+/**
+ * Live load of a scheduler backend, used by {@link LoadBalancer}.
+ *
+ * The queue depth is sampled from the scheduler periodically,
+ * jobs submitted since the last sample are added to it, so bursts between samples are accounted for.
+ * Submission latency and failure rate are exponentially weighted moving averages over recent submissions
+ * and samples.
+ *
+ * @author verhoes
+ *
+ */
+public class BackendLoad {
+    /**
+     * Weight of the newest submission in the moving averages
+     */
+    static final double ALPHA = 0.2;
+
+    private volatile int sampledQueueDepth = 0;
+    private final AtomicInteger submittedSinceSample = new AtomicInteger();
+    private double submitLatency = 0;
+    private double failureRate = 0;
+
+    /**
+     * The scheduler answered, so the failure rate and submission latency decay as if a fast submission succeeded.
+     * Without this a backend which stopped receiving jobs after an outage or latency spike would never recover.
+     *
+     * @param queueDepth Number of jobs in queue of scheduler
+     */
+    public synchronized void sample(int queueDepth) {
+        submittedSinceSample.set(0);
+        sampledQueueDepth = queueDepth;
+        submitLatency = (1 - ALPHA) * submitLatency;
+        failureRate = (1 - ALPHA) * failureRate;
+    }
+
+    /**
+     * Sampling the queue failed, the scheduler is counted as failing.
+     */
+    public synchronized void sampleFailed() {
+        failureRate = ALPHA + (1 - ALPHA) * failureRate;
+    }
+
+    /**
+     * @param latency Time in milliseconds the scheduler took to accept or reject the job
+     * @param failed Whether submission failed
+     */
+    public synchronized void recordSubmit(long latency, boolean failed) {
+        submitLatency = ALPHA * latency + (1 - ALPHA) * submitLatency;
+        failureRate = ALPHA * (failed ? 1 : 0) + (1 - ALPHA) * failureRate;
+        if (!failed) {
+            submittedSinceSample.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return Number of jobs in queue at last sample plus jobs submitted since
+     */
+    public int getQueueDepth() {
+        return sampledQueueDepth + submittedSinceSample.get();
+    }
+
+    /**
+     * @return Average submission latency in milliseconds
+     */
+    public synchronized double getSubmitLatency() {
+        return submitLatency;
+    }
+
+    /**
+     * @return Average fraction of failed submissions, between 0 and 1
+     */
+    public synchronized double getFailureRate() {
+        return failureRate;
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                .addValue(getQueueDepth())
+                .addValue(getSubmitLatency())
+                .addValue(getFailureRate())
+                .toString();
+    }
+}
@@ -0,0 +1,283 @@
+/*
+ * #%L
+ * Osmium
+ * %%
+ * Copyright (C) 2013 Nederlands eScience Center
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package nl.esciencecenter.osmium.job;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import nl.esciencecenter.osmium.api.JobStatusResponse;
+import nl.esciencecenter.osmium.api.SandboxedJob;
+
+import com.google.common.base.Objects;
+
+/**
+ * Recent changes of jobs, numbered with a sequence which increases by one for every change.
+ *
+ * The changes are kept in a ring buffer, so a client can ask for the changes after the last one it has seen.
+ * When that change is no longer in the buffer, or was made before the service restarted,
+ * the client has to resynchronize by listing all jobs.
+ *
+ * Sequence numbers restart at 1 when the service restarts, so clients get a cursor which combines the epoch of the
+ * feed with a sequence number, see {@link #getChangesSince(String, int)}.
+ *
+ * @author verhoes
+ *
+ */
+public class ChangeFeed {
+    private final Change[] buffer;
+    /**
+     * Identifies this instance of the feed, so cursors of a previous instance are recognized.
+     */
+    private final String epoch;
+    /**
+     * Sequence number of last change, 0 when there are no changes yet.
+     */
+    private long last = 0;
+
+    /**
+     * @param size Number of most recent changes to keep
+     */
+    public ChangeFeed(int size) {
+        this(size, Long.toString(System.currentTimeMillis(), Character.MAX_RADIX));
+    }
+
+    /**
+     * @param size Number of most recent changes to keep
+     * @param epoch Identifies this instance of the feed, must not contain '-'
+     */
+    protected ChangeFeed(int size, String epoch) {
+        buffer = new Change[size];
+        this.epoch = epoch;
+    }
+
+    /**
+     * @return Identifier of this instance of the feed
+     */
+    public String getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * Records current status of job as a change and stores its sequence number in the job.
+     *
+     * @param job The changed job
+     * @return Sequence number of change
+     */
+    public long jobChanged(SandboxedJob job) {
+        return add(job, false);
+    }
+
+    /**
+     * Records removal of job as a change.
+     *
+     * @param job The deleted job
+     * @return Sequence number of change
+     */
+    public long jobDeleted(SandboxedJob job) {
+        return add(job, true);
+    }
+
+    /**
+     * The status is taken and the sequence number is stored in the job while holding the lock,
+     * so concurrent changes of a job are numbered in the order their statuses were taken.
+     */
+    private synchronized long add(SandboxedJob job, boolean deleted) {
+        JobStatusResponse status = null;
+        if (!deleted) {
+            status = job.getStatusResponse();
+        }
+        long sequence = ++last;
+        buffer[index(sequence)] = new Change(sequence, job.getIdentifier(), status, deleted);
+        job.setSequence(sequence);
+        return sequence;
+    }
+
+    private int index(long sequence) {
+        return (int) (sequence % buffer.length);
+    }
+
+    /**
+     * @return Sequence number of last change, 0 when there are no changes yet
+     */
+    public synchronized long getLast() {
+        return last;
+    }
+
+    /**
+     * Changes after a sequence number, in order.
+     *
+     * @param since Sequence number of last change seen by client, 0 when client has seen no changes
+     * @param limit Maximum number of changes to return
+     * @return Page of changes, which requires a resync when changes after `since` are no longer available
+     */
+    public synchronized Page getChangesSince(long since, int limit) {
+        long oldest = Math.max(1, last - buffer.length + 1);
+        if (since < oldest - 1 || since > last) {
+            return resync();
+        }
+        long to = Math.min(last, since + limit);
+        List<Change> changes = new ArrayList<Change>((int) (to - since));
+        for (long sequence = since + 1; sequence <= to; sequence++) {
+            changes.add(buffer[index(sequence)]);
+        }
+        return new Page(false, to, to < last, changes, getCursor(to));
+    }
+
+    /**
+     * Changes after a cursor, in order.
+     *
+     * A cursor of another instance of the feed, like one from before the service restarted, requires a resync.
+     *
+     * @param cursor Cursor returned by {@link Page#getCursor()}, null or "0" when client has seen no changes
+     * @param limit Maximum number of changes to return
+     * @return Page of changes, which requires a resync when changes after `cursor` are not available
+     * @throws IllegalArgumentException when cursor is malformed
+     */
+    public Page getChangesSince(String cursor, int limit) {
+        if (cursor == null || "0".equals(cursor)) {
+            return getChangesSince(0, limit);
+        }
+        int separator = cursor.lastIndexOf('-');
+        if (separator < 1) {
+            throw new IllegalArgumentException("Malformed cursor: " + cursor);
+        }
+        long since = Long.parseLong(cursor.substring(separator + 1));
+        if (since < 0) {
+            throw new IllegalArgumentException("Malformed cursor: " + cursor);
+        }
+        if (!epoch.equals(cursor.substring(0, separator))) {
+            synchronized (this) {
+                return resync();
+            }
+        }
+        return getChangesSince(since, limit);
+    }
+
+    private Page resync() {
+        return new Page(true, last, false, Collections.<Change>emptyList(), getCursor(last));
+    }
+
+    /**
+     * @param sequence Sequence number of a change
+     * @return Cursor of change
+     */
+    public String getCursor(long sequence) {
+        return epoch + "-" + sequence;
+    }
+
+    /**
+     * Immutable change of a job.
+     */
+    public static class Change {
+        private final long sequence;
+        private final String jobIdentifier;
+        private final JobStatusResponse status;
+        private final boolean deleted;
+
+        public Change(long sequence, String jobIdentifier, JobStatusResponse status, boolean deleted) {
+            this.sequence = sequence;
+            this.jobIdentifier = jobIdentifier;
+            this.status = status;
+            this.deleted = deleted;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        public String getJobIdentifier() {
+            return jobIdentifier;
+        }
+
+        /**
+         * @return Status of job after change, null when job was deleted
+         */
+        public JobStatusResponse getStatus() {
+            return status;
+        }
+
+        public boolean isDeleted() {
+            return deleted;
+        }
+
+        @Override
+        public String toString() {
+            return Objects.toStringHelper(this)
+                    .addValue(this.sequence)
+                    .addValue(this.jobIdentifier)
+                    .addValue(this.status)
+                    .addValue(this.deleted)
+                    .toString();
+        }
+    }
+
+    /**
+     * Changes returned to a client.
+     */
+    public static class Page {
+        private final boolean resync;
+        private final long next;
+        private final boolean more;
+        private final List<Change> changes;
+        private final String cursor;
+
+        public Page(boolean resync, long next, boolean more, List<Change> changes, String cursor) {
+            this.resync = resync;
+            this.next = next;
+            this.more = more;
+            this.changes = changes;
+            this.cursor = cursor;
+        }
+
+        /**
+         * @return true when changes are no longer available and client must list all jobs,
+         *         after which it can continue from {@link #getNext()}
+         */
+        public boolean isResync() {
+            return resync;
+        }
+
+        /**
+         * @return Sequence number to ask changes since in the next request
+         */
+        public long getNext() {
+            return next;
+        }
+
+        /**
+         * @return true when more changes are available than were returned
+         */
+        public boolean isMore() {
+            return more;
+        }
+
+        public List<Change> getChanges() {
+            return changes;
+        }
+
+        /**
+         * @return Cursor of {@link #getNext()} to ask changes since in the next request
+         */
+        public String getCursor() {
+            return cursor;
+        }
+    }
+}
@@ -0,0 +1,300 @@
+/*
+ * #%L
+ * Osmium
+ * %%
+ * Copyright (C) 2013 Nederlands eScience Center
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package nl.esciencecenter.osmium.job;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import nl.esciencecenter.osmium.api.SandboxedJob;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Job store which persists jobs in a directory using a write-ahead log and a snapshot.
+ *
+ * Each change is appended to the log as a line.
+ * A line starting with "P " contains a job record as JSON and a line starting with "R " contains the identifier of a removed job.
+ * After a number of changes the log is moved aside and a new log is started,
+ * then all jobs are written to a new snapshot and the old log is deleted.
+ * The snapshot is written from a copy of the jobs outside the store lock, so other changes are not blocked by it.
+ * On load the snapshot is read and the old log and log are replayed on top of it.
+ *
+ * Each change is synced to disk before it returns and a snapshot is synced before it replaces the previous one,
+ * so a change survives a crash of the machine.
+ * Renames of the snapshot and log are not synced, so after a crash of the machine the store can fall back to
+ * the previous snapshot together with the logs, which still contain all changes.
+ *
+ * @author verhoes
+ *
+ */
+public class FileJobStore implements JobStore {
+    protected static final Logger LOGGER = LoggerFactory.getLogger(FileJobStore.class);
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final String PUT = "P ";
+    private static final String REMOVE = "R ";
+
+    private final File snapshotFile;
+    private final File logFile;
+    private final File oldLogFile;
+    private final int snapshotInterval;
+    private final ObjectMapper mapper;
+    private final Map<String, JobRecord> records = new LinkedHashMap<String, JobRecord>();
+    private FileOutputStream logStream = null;
+    private Writer log = null;
+    private int changes = 0;
+    /**
+     * Whether a snapshot is being written outside the lock, the old log may then only be deleted by that snapshot.
+     */
+    private boolean snapshotting = false;
+
+    /**
+     * Constructor
+     *
+     * @param directory Directory in which snapshot and log files are written, is created when it does not exist
+     * @param snapshotInterval Number of changes after which a snapshot is written
+     * @param mapper Object mapper used to serialize job records
+     */
+    public FileJobStore(File directory, int snapshotInterval, ObjectMapper mapper) {
+        super();
+        this.snapshotFile = new File(directory, "jobs.snapshot");
+        this.logFile = new File(directory, "jobs.log");
+        this.oldLogFile = new File(directory, "jobs.log.old");
+        this.snapshotInterval = snapshotInterval;
+        this.mapper = mapper;
+    }
+
+    public synchronized Collection<JobRecord> load() throws IOException {
+        File directory = snapshotFile.getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create job store directory " + directory);
+        }
+        records.clear();
+        File tmpFile = snapshotTmpFile();
+        if (!snapshotFile.exists() && tmpFile.exists() && !tmpFile.renameTo(snapshotFile)) {
+            // service was killed while replacing snapshot
+            throw new IOException("Unable to restore job store snapshot " + tmpFile);
+        }
+        if (snapshotFile.exists()) {
+            replay(snapshotFile);
+        }
+        if (oldLogFile.exists()) {
+            // service was killed while writing snapshot
+            replay(oldLogFile);
+        }
+        if (logFile.exists()) {
+            replay(logFile);
+        }
+        LOGGER.info("Loaded " + records.size() + " jobs from " + directory);
+        // start with a compact store
+        compact();
+        return new ArrayList<JobRecord>(records.values());
+    }
+
+    private void replay(File file) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF8));
+        try {
+            String line = reader.readLine();
+            while (line != null) {
+                try {
+                    if (line.startsWith(PUT)) {
+                        JobRecord record = mapper.readValue(line.substring(PUT.length()), JobRecord.class);
+                        records.put(record.getIdentifier(), record);
+                    } else if (line.startsWith(REMOVE)) {
+                        records.remove(line.substring(REMOVE.length()));
+                    }
+                } catch (IOException e) {
+                    // last line can be partially written when service was killed
+                    LOGGER.warn("Skipping unreadable line in " + file + ": " + e.getMessage());
+                }
+                line = reader.readLine();
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * The state of job is captured and appended while holding the lock,
+     * so concurrent puts of a job, like a cancel racing a poll, are logged in the order their state was captured.
+     */
+    public void put(SandboxedJob job) throws IOException {
+        List<JobRecord> snapshotRecords;
+        synchronized (this) {
+            JobRecord record = new JobRecord(job);
+            records.put(record.getIdentifier(), record);
+            snapshotRecords = append(PUT + mapper.writeValueAsString(record));
+        }
+        snapshot(snapshotRecords);
+    }
+
+    public void remove(String identifier) throws IOException {
+        List<JobRecord> snapshotRecords = null;
+        synchronized (this) {
+            if (records.remove(identifier) != null) {
+                snapshotRecords = append(REMOVE + identifier);
+            }
+        }
+        snapshot(snapshotRecords);
+    }
+
+    /**
+     * Appends line to log and syncs it to disk.
+     *
+     * @param line Line to append
+     * @return Copy of records to write as snapshot when the snapshot interval is reached, otherwise null
+     * @throws IOException when line could not be written
+     */
+    private List<JobRecord> append(String line) throws IOException {
+        if (log == null) {
+            throw new IOException("Job store is not loaded or already closed");
+        }
+        log.write(line);
+        log.write('\n');
+        log.flush();
+        logStream.getFD().sync();
+        changes++;
+        if (changes < snapshotInterval || snapshotting) {
+            return null;
+        }
+        if (oldLogFile.exists()) {
+            // previous snapshot failed, so its log still holds changes which are in no snapshot
+            compact();
+            return null;
+        }
+        closeLog();
+        if (!logFile.renameTo(oldLogFile)) {
+            LOGGER.warn("Unable to move aside job store log " + logFile + ", writing snapshot while holding lock");
+            compact();
+            return null;
+        }
+        openLog();
+        snapshotting = true;
+        return new ArrayList<JobRecord>(records.values());
+    }
+
+    /**
+     * Writes a snapshot outside the lock and deletes the old log, which is no longer needed after it.
+     *
+     * @param snapshotRecords Records to write, when null nothing is done
+     * @throws IOException when snapshot could not be written
+     */
+    private void snapshot(List<JobRecord> snapshotRecords) throws IOException {
+        if (snapshotRecords == null) {
+            return;
+        }
+        try {
+            writeSnapshot(snapshotRecords);
+            if (!oldLogFile.delete()) {
+                throw new IOException("Unable to delete job store log " + oldLogFile);
+            }
+        } finally {
+            synchronized (this) {
+                snapshotting = false;
+            }
+        }
+    }
+
+    /**
+     * Writes all records to a snapshot while holding the lock, deletes the old log and truncates the log.
+     *
+     * @throws IOException when snapshot could not be written
+     */
+    private void compact() throws IOException {
+        writeSnapshot(records.values());
+        if (oldLogFile.exists() && !oldLogFile.delete()) {
+            throw new IOException("Unable to delete job store log " + oldLogFile);
+        }
+        closeLog();
+        openLog();
+    }
+
+    /**
+     * Writes records to a new snapshot file, syncs it and replaces the old snapshot.
+     *
+     * @param snapshotRecords Records to write
+     * @throws IOException when snapshot could not be written
+     */
+    private void writeSnapshot(Collection<JobRecord> snapshotRecords) throws IOException {
+        File tmpFile = snapshotTmpFile();
+        FileOutputStream stream = new FileOutputStream(tmpFile);
+        Writer writer = new BufferedWriter(new OutputStreamWriter(stream, UTF8));
+        try {
+            for (JobRecord record : snapshotRecords) {
+                writer.write(PUT);
+                writer.write(mapper.writeValueAsString(record));
+                writer.write('\n');
+            }
+            writer.flush();
+            stream.getFD().sync();
+        } finally {
+            writer.close();
+        }
+        if (snapshotFile.exists() && !snapshotFile.delete()) {
+            throw new IOException("Unable to replace job store snapshot " + snapshotFile);
+        }
+        if (!tmpFile.renameTo(snapshotFile)) {
+            throw new IOException("Unable to write job store snapshot " + snapshotFile);
+        }
+    }
+
+    /**
+     * Starts a new empty log.
+     *
+     * @throws IOException when log could not be created
+     */
+    private void openLog() throws IOException {
+        logStream = new FileOutputStream(logFile, false);
+        log = new BufferedWriter(new OutputStreamWriter(logStream, UTF8));
+        changes = 0;
+    }
+
+    private void closeLog() throws IOException {
+        if (log != null) {
+            log.close();
+            log = null;
+            logStream = null;
+        }
+    }
+
+    private File snapshotTmpFile() {
+        return new File(snapshotFile.getPath() + ".tmp");
+    }
+
+    public synchronized void close() throws IOException {
+        closeLog();
+    }
+}
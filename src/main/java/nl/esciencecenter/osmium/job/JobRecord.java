@@ -0,0 +1,279 @@
+/*
+ * #%L
+ * Osmium
+ * %%
+ * Copyright (C) 2013 Nederlands eScience Center
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package nl.esciencecenter.osmium.job;
+
+import nl.esciencecenter.osmium.api.JobSubmitRequest;
+import nl.esciencecenter.osmium.api.SandboxedJob;
+import nl.esciencecenter.xenon.engine.jobs.JobStatusImplementation;
+import nl.esciencecenter.xenon.jobs.Job;
+import nl.esciencecenter.xenon.jobs.JobStatus;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.Objects;
+
+/**
+ * Stored state of a job, see {@link JobStore}.
+ *
+ * A finished job is stored in compacted form, with a digest instead of the request and without sandbox and
+ * scheduler job, like {@link SandboxedJob#compact()}, so stores keep little state for the many finished jobs.
+ *
+ * @author verhoes
+ *
+ */
+public class JobRecord {
+    @JsonProperty
+    private String identifier;
+    @JsonProperty
+    private JobSubmitRequest request;
+    /**
+     * Digest of request of a finished job, null when request is stored.
+     */
+    @JsonProperty
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String requestDigest;
+    /**
+     * Identifier of job in scheduler, null when job has not been submitted to scheduler.
+     */
+    @JsonProperty
+    private String schedulerJobIdentifier;
+    /**
+     * Absolute path of sandbox, null when job has no sandbox.
+     */
+    @JsonProperty
+    private String sandboxPath;
+    /**
+     * Osmium specific state of job, like STAGING
+     */
+    @JsonProperty
+    private String pseudoState;
+    /**
+     * Last known scheduler state of job, null when no status is known.
+     */
+    @JsonProperty
+    private String state;
+    @JsonProperty
+    private Integer exitCode;
+    @JsonProperty
+    private String exception;
+    @JsonProperty
+    private boolean running;
+    @JsonProperty
+    private boolean done;
+    /**
+     * Time in milliseconds since epoch at which job was created, 0 when unknown.
+     */
+    @JsonProperty
+    private long createdAt;
+
+    public JobRecord(String identifier, JobSubmitRequest request, String schedulerJobIdentifier, String sandboxPath,
+            String pseudoState, String state, Integer exitCode, String exception, boolean running, boolean done,
+            long createdAt) {
+        super();
+        this.identifier = identifier;
+        this.request = request;
+        this.schedulerJobIdentifier = schedulerJobIdentifier;
+        this.sandboxPath = sandboxPath;
+        this.pseudoState = pseudoState;
+        this.state = state;
+        this.exitCode = exitCode;
+        this.exception = exception;
+        this.running = running;
+        this.done = done;
+        this.createdAt = createdAt;
+    }
+
+    /**
+     * Constructor which captures the current state of a job.
+     *
+     * @param job The job
+     */
+    public JobRecord(SandboxedJob job) {
+        this.identifier = job.getIdentifier();
+        this.createdAt = job.getCreatedAt();
+        this.pseudoState = job.getPseudoState();
+        if (job.isCompacted()) {
+            this.requestDigest = job.getRequestDigest();
+        } else if (job.isFinished() && job.getRequest() != null) {
+            this.requestDigest = SandboxedJob.digest(job.getRequest());
+        } else {
+            this.request = job.getRequest();
+            if (job.getJob() != null) {
+                this.schedulerJobIdentifier = job.getJob().getIdentifier();
+            }
+            if (job.getSandbox() != null) {
+                this.sandboxPath = job.getSandbox().getPath().getRelativePath().getAbsolutePath();
+            }
+        }
+        JobStatus status = job.getStatus();
+        if (status != null) {
+            this.state = status.getState();
+            this.exitCode = status.getExitCode();
+            if (status.getException() != null) {
+                this.exception = status.getException().getMessage();
+            }
+            this.running = status.isRunning();
+            this.done = status.isDone();
+        }
+    }
+
+    /**
+     * Jackson needs this
+     */
+    public JobRecord() {
+        super();
+    }
+
+    public String getIdentifier() {
+        return identifier;
+    }
+
+    public JobSubmitRequest getRequest() {
+        return request;
+    }
+
+    /**
+     * @return Digest of request of a finished job, null when request is stored
+     */
+    public String getRequestDigest() {
+        return requestDigest;
+    }
+
+    /**
+     * @return true when record is of a finished job stored without its request
+     */
+    @JsonIgnore
+    public boolean isCompacted() {
+        return requestDigest != null;
+    }
+
+    public String getSchedulerJobIdentifier() {
+        return schedulerJobIdentifier;
+    }
+
+    public String getSandboxPath() {
+        return sandboxPath;
+    }
+
+    /**
+     * @return Name of sandbox directory inside sandbox root, null when job has no sandbox.
+     */
+    @JsonIgnore
+    public String getSandboxName() {
+        if (sandboxPath == null) {
+            return null;
+        }
+        return sandboxPath.substring(sandboxPath.lastIndexOf('/') + 1);
+    }
+
+    public String getPseudoState() {
+        return pseudoState;
+    }
+
+    public String getState() {
+        return state;
+    }
+
+    public Integer getExitCode() {
+        return exitCode;
+    }
+
+    public String getException() {
+        return exception;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public boolean isDone() {
+        return done;
+    }
+
+    /**
+     * @return Time in milliseconds since epoch at which job was created, 0 when unknown
+     */
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    /**
+     * @param job Job in scheduler, can be null
+     * @return Last known status of job or null when no status is known
+     */
+    public JobStatus toJobStatus(Job job) {
+        if (state == null) {
+            return null;
+        }
+        Exception statusException = null;
+        if (exception != null) {
+            statusException = new Exception(exception);
+        }
+        return new JobStatusImplementation(job, state, exitCode, statusException, running, done, null);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(identifier, request, requestDigest, schedulerJobIdentifier, sandboxPath, pseudoState, state, exitCode,
+                exception, running, done, createdAt);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == null) {
+            return false;
+        }
+        if (getClass() != obj.getClass()) {
+            return false;
+        }
+        JobRecord other = (JobRecord) obj;
+        return Objects.equal(this.identifier, other.identifier)
+                && Objects.equal(this.request, other.request)
+                && Objects.equal(this.requestDigest, other.requestDigest)
+                && Objects.equal(this.schedulerJobIdentifier, other.schedulerJobIdentifier)
+                && Objects.equal(this.sandboxPath, other.sandboxPath)
+                && Objects.equal(this.pseudoState, other.pseudoState)
+                && Objects.equal(this.state, other.state)
+                && Objects.equal(this.exitCode, other.exitCode)
+                && Objects.equal(this.exception, other.exception)
+                && Objects.equal(this.running, other.running)
+                && Objects.equal(this.done, other.done)
+                && Objects.equal(this.createdAt, other.createdAt);
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                .addValue(this.identifier)
+                .addValue(this.request)
+                .addValue(this.requestDigest)
+                .addValue(this.schedulerJobIdentifier)
+                .addValue(this.sandboxPath)
+                .addValue(this.pseudoState)
+                .addValue(this.state)
+                .addValue(this.exitCode)
+                .addValue(this.exception)
+                .addValue(this.running)
+                .addValue(this.done)
+                .addValue(this.createdAt)
+                .toString();
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * #%L
+ * Osmium
+ * %%
+ * Copyright (C) 2013 Nederlands eScience Center
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package nl.esciencecenter.osmium.job;
+
+import java.io.IOException;
+import java.util.Collection;
+
+import nl.esciencecenter.osmium.api.SandboxedJob;
+
+/**
+ * Persistent storage of jobs, so jobs can be recovered after a restart.
+ *
+ * @author verhoes
+ *
+ */
+public interface JobStore {
+    /**
+     * Reads the stored jobs.
+     *
+     * Must be called before any job is stored.
+     *
+     * @return Records of stored jobs
+     * @throws IOException when store could not be read
+     */
+    Collection<JobRecord> load() throws IOException;
+
+    /**
+     * Stores the current state of a job, replaces any earlier stored state of the job.
+     *
+     * @param job The job
+     * @throws IOException when job could not be stored
+     */
+    void put(SandboxedJob job) throws IOException;
+
+    /**
+     * Removes a job from the store.
+     *
+     * @param identifier Identifier of job
+     * @throws IOException when job could not be removed
+     */
+    void remove(String identifier) throws IOException;
+
+    /**
+     * Flushes and closes the store.
+     *
+     * @throws IOException when store could not be closed
+     */
+    void close() throws IOException;
+}
@@ -0,0 +1,111 @@
+/*
+ * #%L
+ * Osmium
+ * %%
+ * Copyright (C) 2013 Nederlands eScience Center
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package nl.esciencecenter.osmium.job;
+
+import javax.validation.constraints.Min;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.Objects;
+
+/**
+ * Job store configuration.
+ *
+ * When a directory is configured the jobs are persisted in it with a {@link FileJobStore},
+ * so they survive a restart of the service.
+ *
+ * @author verhoes
+ *
+ */
+public class JobStoreConfiguration {
+    /**
+     * Directory in which jobs are persisted.
+     * Default null, which keeps jobs in memory only and cancels running jobs on shutdown.
+     */
+    @JsonProperty
+    private String directory = null;
+
+    /**
+     * Number of changes written to the log before a snapshot of all jobs is written and the log is truncated.
+     * Default 1000.
+     */
+    @Min(1)
+    @JsonProperty
+    private int snapshotInterval = 1000;
+
+    public JobStoreConfiguration(String directory, int snapshotInterval) {
+        super();
+        this.directory = directory;
+        this.snapshotInterval = snapshotInterval;
+    }
+
+    public JobStoreConfiguration() {
+    }
+
+    /**
+     * @return true when jobs should be persisted
+     */
+    @JsonIgnore
+    public boolean isEnabled() {
+        return directory != null;
+    }
+
+    public String getDirectory() {
+        return directory;
+    }
+
+    public void setDirectory(String directory) {
+        this.directory = directory;
+    }
+
+    public int getSnapshotInterval() {
+        return snapshotInterval;
+    }
+
+    public void setSnapshotInterval(int snapshotInterval) {
+        this.snapshotInterval = snapshotInterval;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(directory, snapshotInterval);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == null) {
+            return false;
+        }
+        if (getClass() != obj.getClass()) {
+            return false;
+        }
+        JobStoreConfiguration other = (JobStoreConfiguration) obj;
+        return Objects.equal(this.directory, other.directory)
+                && Objects.equal(this.snapshotInterval, other.snapshotInterval);
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                .addValue(this.directory)
+                .addValue(this.snapshotInterval)
+                .toString();
+    }
+}
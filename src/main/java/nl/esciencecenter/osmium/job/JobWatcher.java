@@ -0,0 +1,283 @@
+/*
+ * #%L
+ * Osmium
+ * %%
+ * Copyright (C) 2013 Nederlands eScience Center
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package nl.esciencecenter.osmium.job;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import nl.esciencecenter.osmium.api.JobListener;
+import nl.esciencecenter.osmium.api.SandboxedJob;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * Lets clients wait for jobs to finish and subscribe to status changes of all jobs.
+ *
+ * Fed by the listener of each job, so it sees the same changes as the job store.
+ *
+ * A waiter blocks on a latch of its job, which is released once when the job finishes,
+ * so a change only wakes the waiters of that job.
+ * A subscription has a bounded queue of events, a change is serialized once and offered to each queue.
+ *
+ * Waiters and streams block a http thread, as Jersey 1 has no asynchronous resource methods
+ * and suspending the request with a Jetty continuation would bypass Jersey and the metrics and logging filters around it.
+ * Their number is capped well below the size of the http thread pool, see {@link WatchConfiguration}.
+ *
+ * @author verhoes
+ *
+ */
+public class JobWatcher implements JobListener {
+    protected static final Logger LOGGER = LoggerFactory.getLogger(JobWatcher.class);
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final int INITIAL_EVENT_SIZE = 256;
+    /**
+     * A subscription which has not been polled for this number of heartbeats is closed,
+     * as the stream writing it has ended without closing it.
+     */
+    private static final int IDLE_HEARTBEATS = 3;
+
+    private final WatchConfiguration configuration;
+    /**
+     * Latches released when job finishes, by job identifier.
+     */
+    private final ConcurrentMap<String, CountDownLatch> finishLatches = new ConcurrentHashMap<String, CountDownLatch>();
+    private final Semaphore waiters;
+    /**
+     * Number of waiters which registered a latch.
+     */
+    private final AtomicInteger waiterCount = new AtomicInteger();
+    private final Semaphore streams;
+    private final Set<Subscription> subscriptions = new CopyOnWriteArraySet<Subscription>();
+
+    public JobWatcher(WatchConfiguration configuration) {
+        this.configuration = configuration;
+        waiters = new Semaphore(configuration.getMaxWaiters());
+        streams = new Semaphore(configuration.getMaxStreams());
+    }
+
+    public WatchConfiguration getConfiguration() {
+        return configuration;
+    }
+
+    /**
+     * Waits until job has finished, see {@link SandboxedJob#isFinished()}.
+     *
+     * @param job The job
+     * @param timeout Maximum time in milliseconds to wait, capped at {@link WatchConfiguration#getMaxTimeout()}
+     * @return true when job has finished
+     * @throws InterruptedException when waiting thread is interrupted
+     * @throws RejectedExecutionException when the maximum number of waiters has been reached and job has not finished
+     */
+    public boolean awaitFinished(SandboxedJob job, long timeout) throws InterruptedException {
+        if (job.isFinished()) {
+            return true;
+        }
+        if (!waiters.tryAcquire()) {
+            throw new RejectedExecutionException("Maximum number of waiters reached");
+        }
+        try {
+            CountDownLatch latch = new CountDownLatch(1);
+            CountDownLatch existing = finishLatches.putIfAbsent(job.getIdentifier(), latch);
+            if (existing != null) {
+                latch = existing;
+            }
+            waiterCount.incrementAndGet();
+            try {
+                // job could have finished before latch was registered
+                if (job.isFinished()) {
+                    return true;
+                }
+                return latch.await(Math.min(timeout, configuration.getMaxTimeout()), TimeUnit.MILLISECONDS);
+            } finally {
+                waiterCount.decrementAndGet();
+            }
+        } finally {
+            waiters.release();
+        }
+    }
+
+    /**
+     * @return Number of clients waiting for a job to finish, which will be woken by a change of their job
+     */
+    public int getWaiterCount() {
+        return waiterCount.get();
+    }
+
+    /**
+     * Subscribes to changes of all jobs.
+     *
+     * Subscriptions which have not been polled for a while are closed first, so they do not hold a stream forever.
+     *
+     * @return Subscription or null when the maximum number of streams has been reached
+     */
+    public Subscription subscribe() {
+        closeIdle(System.currentTimeMillis());
+        if (!streams.tryAcquire()) {
+            return null;
+        }
+        Subscription subscription = new Subscription(configuration.getStreamQueueSize());
+        subscriptions.add(subscription);
+        return subscription;
+    }
+
+    public void jobChanged(SandboxedJob job) {
+        if (job.isFinished()) {
+            release(job.getIdentifier());
+        }
+        if (subscriptions.isEmpty()) {
+            return;
+        }
+        byte[] event;
+        try {
+            event = toEvent(job);
+        } catch (IOException e) {
+            LOGGER.error("Unable to serialize change of job " + job.getIdentifier() + ": " + e.getMessage(), e);
+            return;
+        }
+        for (Subscription subscription : subscriptions) {
+            subscription.offer(event);
+        }
+    }
+
+    /**
+     * Closes subscriptions which have not been polled for {@link #IDLE_HEARTBEATS} heartbeats.
+     *
+     * @param now Current time in milliseconds
+     */
+    void closeIdle(long now) {
+        long maxIdle = IDLE_HEARTBEATS * configuration.getHeartbeat();
+        for (Subscription subscription : subscriptions) {
+            if (now - subscription.polledAt > maxIdle) {
+                LOGGER.warn("Closing job event stream which is no longer polled");
+                subscription.close();
+            }
+        }
+    }
+
+    public void jobDeleted(SandboxedJob job) {
+        release(job.getIdentifier());
+    }
+
+    private void release(String identifier) {
+        CountDownLatch latch = finishLatches.remove(identifier);
+        if (latch != null) {
+            latch.countDown();
+        }
+    }
+
+    /**
+     * Releases all waiters and closes all subscriptions.
+     */
+    public void close() {
+        for (String identifier : finishLatches.keySet()) {
+            release(identifier);
+        }
+        for (Subscription subscription : subscriptions) {
+            subscription.close();
+        }
+    }
+
+    /**
+     * @param job The job
+     * @return Event as UTF-8 encoded JSON object with jobIdentifier and status fields
+     * @throws IOException when serialization fails
+     */
+    static byte[] toEvent(SandboxedJob job) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream(INITIAL_EVENT_SIZE);
+        JsonGenerator generator = JSON_FACTORY.createGenerator(output, JsonEncoding.UTF8);
+        generator.writeStartObject();
+        generator.writeStringField("jobIdentifier", job.getIdentifier());
+        generator.writeFieldName("status");
+        job.getStatusResponse().writeJson(generator);
+        generator.writeEndObject();
+        generator.close();
+        return output.toByteArray();
+    }
+
+    /**
+     * Queue of job change events of a single client.
+     */
+    public class Subscription {
+        private final BlockingQueue<byte[]> events;
+        private volatile boolean closed = false;
+        /**
+         * Time in milliseconds at which subscription was created or last polled.
+         */
+        private volatile long polledAt = System.currentTimeMillis();
+
+        Subscription(int queueSize) {
+            events = new LinkedBlockingQueue<byte[]>(queueSize);
+        }
+
+        void offer(byte[] event) {
+            if (!events.offer(event)) {
+                LOGGER.warn("Closing job event stream which fell behind");
+                close();
+            }
+        }
+
+        /**
+         * @param timeout Maximum time in milliseconds to wait for an event
+         * @return Next event or null when no event arrived within timeout or subscription is closed
+         * @throws InterruptedException when waiting thread is interrupted
+         */
+        public byte[] poll(long timeout) throws InterruptedException {
+            if (closed) {
+                return null;
+            }
+            polledAt = System.currentTimeMillis();
+            try {
+                return events.poll(timeout, TimeUnit.MILLISECONDS);
+            } finally {
+                polledAt = System.currentTimeMillis();
+            }
+        }
+
+        public boolean isClosed() {
+            return closed;
+        }
+
+        /**
+         * Stops receiving events, calling it again has no effect.
+         */
+        public void close() {
+            if (subscriptions.remove(this)) {
+                closed = true;
+                streams.release();
+            }
+        }
+    }
+}
@@ -23,11 +23,23 @@ package nl.esciencecenter.osmium.job;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import nl.esciencecenter.xenon.Xenon;
 import nl.esciencecenter.xenon.XenonException;
+import nl.esciencecenter.xenon.engine.jobs.JobStatusImplementation;
 import nl.esciencecenter.xenon.jobs.Job;
 import nl.esciencecenter.xenon.jobs.JobStatus;
 import nl.esciencecenter.xenon.jobs.Jobs;
@@ -36,10 +48,28 @@ import nl.esciencecenter.osmium.api.SandboxedJob;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.Clock;
+import com.yammer.metrics.core.Timer;
+import com.yammer.metrics.core.TimerContext;
+
 /**
  * Poll the status of jobs using pollConfiguration and xenon.
  *
  * Only polls status of jobs that are not DONE.
+ * The poller keeps an index of active jobs, so done jobs which are kept until their delete timeout are not visited on each poll.
+ * Jobs added to the jobs map after construction must be registered with {@link #register(SandboxedJob)}.
+ *
+ * The cancel and delete timeouts of a job are scheduled as deadlines on the timer when the job is registered,
+ * so they expire at the configured time regardless of the poll interval.
+ *
+ * The statuses are fetched in batches, multiple batches are fetched concurrently and committed as they arrive.
+ * Fetching is limited to one poll interval, batches which take longer are cancelled and polled again in the next run.
+ *
+ * A run never throws a runtime exception, as that would stop the scheduled poller for good.
+ *
+ * In adaptive mode, see {@link PollConfiguration#isAdaptive()}, the poller should be run every minimum interval
+ * and each job is only polled when its own poll interval has passed.
  *
  * @author verhoes
  *
@@ -50,89 +80,403 @@ public class JobsPoller implements Runnable {
     private final Map<String, SandboxedJob> jobs;
     private final PollConfiguration pollConfiguration;
     private final Xenon xenon;
+    private final StagingEngine stagingEngine;
+    /**
+     * Jobs which are not done, keyed by job identifier.
+     */
+    private final Map<String, PollSchedule> activeJobs = new ConcurrentHashMap<String, PollSchedule>();
+    private final ScheduledExecutorService timer;
+    private final Clock clock;
+    /**
+     * Executor used to fetch statuses of multiple batches concurrently, created on first use by poll thread.
+     */
+    private volatile ExecutorService statusExecutor = null;
+    private final Timer batchTimer = Metrics.newTimer(JobsPoller.class, "status-batches", TimeUnit.MILLISECONDS, TimeUnit.SECONDS);
 
+    /**
+     * Constructor, which downloads output files of done jobs in poll thread and does not enforce timeouts.
+     *
+     * @param jobs Jobs to poll
+     * @param pollConfiguration Poll configuration
+     * @param xenon Xenon instance
+     */
     public JobsPoller(Map<String, SandboxedJob> jobs, PollConfiguration pollConfiguration, Xenon xenon) {
+        this(jobs, pollConfiguration, xenon, null);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param jobs Jobs to poll
+     * @param pollConfiguration Poll configuration
+     * @param xenon Xenon instance
+     * @param stagingEngine Staging engine used to download output files of done jobs in the background
+     */
+    public JobsPoller(Map<String, SandboxedJob> jobs, PollConfiguration pollConfiguration, Xenon xenon,
+            StagingEngine stagingEngine) {
+        this(jobs, pollConfiguration, xenon, stagingEngine, null);
+    }
+
+    /**
+     * Constructor
+     *
+     * Jobs already in the jobs map are registered, their timeouts start now.
+     *
+     * @param jobs Jobs to poll
+     * @param pollConfiguration Poll configuration
+     * @param xenon Xenon instance
+     * @param stagingEngine Staging engine used to download output files of done jobs in the background
+     * @param timer Executor on which cancel and delete deadlines of jobs are scheduled.
+     *      Should be the single thread executor which runs the poller, so deadlines and polls do not overlap.
+     *      When null the timeouts are not enforced.
+     */
+    public JobsPoller(Map<String, SandboxedJob> jobs, PollConfiguration pollConfiguration, Xenon xenon,
+            StagingEngine stagingEngine, ScheduledExecutorService timer) {
+        this(jobs, pollConfiguration, xenon, stagingEngine, timer, Clock.defaultClock());
+    }
+
+    /**
+     * Constructor
+     *
+     * @param jobs Jobs to poll
+     * @param pollConfiguration Poll configuration
+     * @param xenon Xenon instance
+     * @param stagingEngine Staging engine used to download output files of done jobs in the background
+     * @param timer Executor on which cancel and delete deadlines of jobs are scheduled, can be null.
+     * @param clock Clock used to determine when a job must be polled in adaptive mode and how much time is left before its
+     *        cancel and delete deadlines
+     */
+    public JobsPoller(Map<String, SandboxedJob> jobs, PollConfiguration pollConfiguration, Xenon xenon,
+            StagingEngine stagingEngine, ScheduledExecutorService timer, Clock clock) {
         super();
         this.jobs = jobs;
         this.pollConfiguration = pollConfiguration;
         this.xenon = xenon;
+        this.stagingEngine = stagingEngine;
+        this.timer = timer;
+        this.clock = clock;
+        for (SandboxedJob job : jobs.values()) {
+            register(job);
+        }
+    }
+
+    /**
+     * Adds job to the active jobs index and schedules its cancel and delete deadlines.
+     *
+     * The deadlines are counted from the creation time of the job, so a job recovered from a job store keeps its original
+     * deadlines and is canceled or deleted right away when they have already passed.
+     *
+     * @param job Job which has been added to the jobs map
+     */
+    public void register(final SandboxedJob job) {
+        if (job.getStatus() == null || !job.getStatus().isDone() || job.getPseudoState() != null) {
+            activeJobs.put(job.getIdentifier(), new PollSchedule(job, pollConfiguration.getMinInterval(), clock.time()));
+        } else {
+            compact(job);
+        }
+        if (timer != null) {
+            long age = Math.max(0, clock.time() - job.getCreatedAt());
+            timer.schedule(new Runnable() {
+                public void run() {
+                    cancelTimedOutJob(job);
+                }
+            }, Math.max(0, pollConfiguration.getCancelTimeout() - age), TimeUnit.MILLISECONDS);
+            timer.schedule(new Runnable() {
+                public void run() {
+                    deleteTimedOutJob(job);
+                }
+            }, Math.max(0, pollConfiguration.getDeleteTimeout() - age), TimeUnit.MILLISECONDS);
+        }
     }
 
     public void run() {
+        try {
+            poll();
+        } catch (RuntimeException e) {
+            // an exception would stop the scheduled poller
+            LOGGER.error("Polling job statuses failed: " + e.getMessage(), e);
+        }
+    }
+
+    private void poll() {
         LOGGER.debug("Polling for jobs statuses");
-        Job[] jobarray = getJobsNeedingStatusUpdate();
+        List<StatusBatch> batches = getJobsNeedingStatusUpdate();
+
+        if (batches.size() == 1) {
+            StatusBatch batch = batches.get(0);
+            try {
+                batch.call();
+            } catch (RuntimeException e) {
+                // an exception would stop the scheduled poller
+                LOGGER.error("Fetching job statuses failed: " + e.getMessage(), e);
+                return;
+            }
+            commitBatch(batch);
+        } else {
+            fetchConcurrently(batches);
+        }
+    }
+
+    /**
+     * Fetches the statuses of the batches on the status thread pool,
+     * the statuses of each batch are committed on the poll thread as soon as the batch is fetched.
+     *
+     * When fetching a batch fails or does not finish within the poll interval,
+     * the jobs in the batch are polled again in the next run.
+     *
+     * @param batches Batches of jobs to poll
+     */
+    private void fetchConcurrently(List<StatusBatch> batches) {
+        if (statusExecutor == null) {
+            statusExecutor = Executors.newFixedThreadPool(pollConfiguration.getStatusThreads());
+        }
+        CompletionService<StatusBatch> completionService = new ExecutorCompletionService<StatusBatch>(statusExecutor);
+        List<Future<StatusBatch>> futures = new ArrayList<Future<StatusBatch>>();
+        for (StatusBatch batch : batches) {
+            futures.add(completionService.submit(batch));
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(getRunInterval());
+        try {
+            for (int i = 0; i < batches.size(); i++) {
+                Future<StatusBatch> future = completionService.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                if (future == null) {
+                    LOGGER.error("Fetching job statuses timed out, " + (batches.size() - i) + " batches are cancelled");
+                    return;
+                }
+                try {
+                    commitBatch(future.get());
+                } catch (ExecutionException e) {
+                    LOGGER.error("Fetching job statuses failed: " + e.getCause().getMessage(), e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            LOGGER.warn("Interrupted while fetching job statuses");
+            Thread.currentThread().interrupt();
+        } finally {
+            for (Future<StatusBatch> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * @return Interval in milliseconds at which the poller runs, the minimum interval in adaptive mode
+     */
+    private long getRunInterval() {
+        if (pollConfiguration.isAdaptive()) {
+            return pollConfiguration.getMinInterval();
+        }
+        return pollConfiguration.getInterval();
+    }
 
-        // fetch statuses of all jobs
-        Jobs jobsEngine = xenon.jobs();
-        JobStatus[] statuses = jobsEngine.getJobStatuses(jobarray);
+    private void commitBatch(StatusBatch batch) {
+        processStatusUpdate(batch.statuses, batch.polledJobs);
 
-        processStatusUpdate(statuses);
+        if (pollConfiguration.isAdaptive()) {
+            reschedule(batch.polledJobs, batch.selectedAt);
+        }
     }
 
     /**
      * @param statuses
+     * @param polledJobs Jobs which have been polled, keyed by scheduler job identifier
      */
-    private void processStatusUpdate(JobStatus[] statuses) {
+    private void processStatusUpdate(JobStatus[] statuses, Map<String, PollSchedule> polledJobs) {
         if (statuses != null) {
             for (JobStatus status : statuses) {
-                SandboxedJob job = jobs.get(status.getJob().getIdentifier());
-
-                // when state changed then commit
-                if (job.getStatus() == null || !status.getState().equals(job.getStatus().getState())) {
-                    if (status.isDone()) {
-                        LOGGER.debug("Job is done: " + job.getIdentifier());
-                        downloadSandbox(job);
-                        cleanSandbox(job);
-                    }
-                    LOGGER.debug("Status changed of " + job.getIdentifier() + " to " + status.getState());
-                    commitStatus(status, job);
+                PollSchedule schedule = polledJobs.get(status.getJob().getIdentifier());
+                try {
+                    processStatusUpdate(status, schedule);
+                } catch (RuntimeException e) {
+                    // other jobs of batch must still be committed
+                    LOGGER.error("Committing status of scheduler job " + status.getJob().getIdentifier() + " failed: "
+                            + e.getMessage(), e);
                 }
             }
         }
     }
 
+    private void processStatusUpdate(JobStatus status, PollSchedule schedule) {
+        SandboxedJob job = schedule.job;
+
+        // when state changed then commit
+        if (job.getStatus() == null || !status.getState().equals(job.getStatus().getState())) {
+            schedule.changed = true;
+            if (status.isDone()) {
+                finishJob(status, job);
+                return;
+            }
+            LOGGER.debug("Status changed of " + job.getIdentifier() + " to " + status.getState());
+            commitStatus(status, job);
+        }
+    }
+
     /**
-     * @return
+     * Downloads output files and cleans sandbox of a done job and commits its done status.
+     *
+     * When a staging engine is available this is done in the background.
+     *
+     * @param status Done status of job
+     * @param job The job
      */
-    private Job[] getJobsNeedingStatusUpdate() {
-        long interval = pollConfiguration.getInterval();
-        long timeout = pollConfiguration.getCancelTimeout();
-        // maximum number of poll iterations
-        long maxIterations = timeout / interval;
-        // convert SandboxedJob list to Job list
-        List<Job> jjobs = new ArrayList<Job>();
-        for (SandboxedJob job : jobs.values()) {
-            Boolean jobIsDone = false;
-            if (job.getStatus() != null) {
-                jobIsDone = job.getStatus().isDone();
+    public void finishJob(JobStatus status, SandboxedJob job) {
+        if (stagingEngine != null) {
+            LOGGER.debug("Job is done, poststaging in background: " + job.getIdentifier());
+            poststage(status, job);
+            return;
+        }
+        LOGGER.debug("Job is done: " + job.getIdentifier());
+        downloadSandbox(job);
+        cleanSandbox(job);
+        LOGGER.debug("Status changed of " + job.getIdentifier() + " to " + status.getState());
+        if (job.getPseudoState() != null) {
+            // recovered job which was poststaging when service stopped
+            endPseudoState(status, job);
+        } else {
+            commitStatus(status, job);
+        }
+    }
+
+    private void endPseudoState(JobStatus status, SandboxedJob job) {
+        try {
+            job.endPseudoState(status);
+        } catch (IOException e) {
+            LOGGER.error(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Sets the next poll time of the polled jobs.
+     *
+     * The poll interval of a job is reset to the minimum when its state changed,
+     * otherwise it is multiplied by the backoff factor, rounded up, up to the maximum.
+     *
+     * The interval is counted from the time at which the jobs were selected for polling, not from when their
+     * statuses arrived, so a job is due again in the run one interval later instead of one run after that.
+     *
+     * @param polledJobs Jobs which have been polled
+     * @param selectedAt Time in milliseconds at which jobs were selected for polling
+     */
+    private void reschedule(Map<String, PollSchedule> polledJobs, long selectedAt) {
+        for (PollSchedule schedule : polledJobs.values()) {
+            if (schedule.changed) {
+                schedule.interval = pollConfiguration.getMinInterval();
+            } else {
+                long interval = (long) Math.ceil(schedule.interval * pollConfiguration.getBackoffFactor());
+                schedule.interval = Math.min(interval, pollConfiguration.getMaxInterval());
             }
+            schedule.changed = false;
+            schedule.nextPoll = selectedAt + schedule.interval;
+        }
+    }
 
-            job.incrPollIterations();
-            Boolean polledTooLong = job.getPollIterations() > maxIterations;
-            if (job.getPollIterations() > pollConfiguration.getDeleteTimeout()) {
-                LOGGER.debug("Deleting job");
-                // delete timeout reached -> get rid of job completely
-                cancelJob(job);
-                cleanSandbox(job);
-                deleteJob(job);
-            } else if (!jobIsDone && polledTooLong) {
-                LOGGER.debug("Canceling job");
-                // cancel timeout reached -> remove job from scheduler
-                cancelJob(job);
-                cleanSandbox(job);
-            } else if (!jobIsDone) {
-                jjobs.add(job.getJob());
+    /**
+     * Cancel timeout reached, removes job from scheduler when it is not done yet.
+     *
+     * @param job The job
+     */
+    protected void cancelTimedOutJob(SandboxedJob job) {
+        if (jobs.get(job.getIdentifier()) != job) {
+            // already deleted
+            return;
+        }
+        LOGGER.debug("Cancel timeout reached of job " + job.getIdentifier());
+        abortTimedOutJob(job);
+    }
+
+    /**
+     * Delete timeout reached, gets rid of job completely.
+     *
+     * @param job The job
+     */
+    protected void deleteTimedOutJob(SandboxedJob job) {
+        if (jobs.get(job.getIdentifier()) != job) {
+            // already deleted
+            return;
+        }
+        LOGGER.debug("Deleting job " + job.getIdentifier());
+        abortTimedOutJob(job);
+        deleteJob(job);
+    }
+
+    private void abortTimedOutJob(SandboxedJob job) {
+        if (job.isStaging()) {
+            // staging thread cleans up sandbox and scheduler job
+            try {
+                job.abortStaging(new JobStatusImplementation(null, "KILLED", null,
+                        new Exception("Process timed out"), false, true, null));
+            } catch (IOException e) {
+                LOGGER.error(e.getMessage(), e);
             }
-            // else dont need to fetch status of jobs that are done
+        } else if (job.getPseudoState() == null && (job.getStatus() == null || !job.getStatus().isDone())) {
+            cancelJob(job);
+            cleanSandbox(job);
+        }
+        // jobs which are being downloaded are already done in the scheduler
+        activeJobs.remove(job.getIdentifier());
+        compact(job);
+    }
+
+    /**
+     * Compacts done job when configured, so it takes little memory while it is retained until the delete timeout.
+     *
+     * @param job Job to compact
+     */
+    private void compact(SandboxedJob job) {
+        if (pollConfiguration.isCompactDoneJobs() && job.compact()) {
+            LOGGER.debug("Compacted job " + job.getIdentifier());
         }
+    }
+
+    /**
+     * @return Batches of jobs which need a status update, contains at least one batch
+     */
+    private List<StatusBatch> getJobsNeedingStatusUpdate() {
+        boolean adaptive = pollConfiguration.isAdaptive();
+        int batchSize = pollConfiguration.getStatusBatchSize();
+        long now = clock.time();
+        List<StatusBatch> batches = new ArrayList<StatusBatch>();
+        StatusBatch batch = new StatusBatch(now);
+        batches.add(batch);
+        for (PollSchedule schedule : activeJobs.values()) {
+            SandboxedJob job = schedule.job;
+            if (jobs.get(job.getIdentifier()) != job) {
+                // removed
+                activeJobs.remove(job.getIdentifier());
+                compact(job);
+                continue;
+            }
+            if (job.getPseudoState() != null) {
+                // staging or download thread is responsible for job
+                continue;
+            }
+            if (job.getStatus() != null && job.getStatus().isDone()) {
+                // done by cancel, staging failure or poststaging
+                activeJobs.remove(job.getIdentifier());
+                compact(job);
+                continue;
+            }
 
-        LOGGER.trace("Fetching job statuses of " + jjobs.toString());
+            if (adaptive && schedule.nextPoll > now) {
+                continue;
+            }
 
-        return jjobs.toArray(new Job[0]);
+            if (batch.polledJobs.size() == batchSize) {
+                batch = new StatusBatch(now);
+                batches.add(batch);
+            }
+            batch.polledJobs.put(job.getJob().getIdentifier(), schedule);
+        }
+
+        LOGGER.trace("Fetching job statuses in " + batches.size() + " batches");
+
+        return batches;
     }
 
     private void deleteJob(SandboxedJob job) {
+        activeJobs.remove(job.getIdentifier());
         jobs.remove(job.getIdentifier());
+        job.markDeleted();
     }
 
     protected void commitStatus(JobStatus status, SandboxedJob job) {
@@ -143,6 +487,30 @@ public class JobsPoller implements Runnable {
         }
     }
 
+    /**
+     * Downloads and cleans sandbox of done job using the staging engine.
+     *
+     * While downloading and cleaning the job is in the {@link SandboxedJob#DOWNLOADING}
+     * and {@link SandboxedJob#CLEANING} pseudo states.
+     * The done status is recorded before downloading starts, so it is stored when the service stops while downloading,
+     * afterwards it is committed and sent to the callback.
+     *
+     * @param status Done status of job
+     * @param job The job
+     */
+    protected void poststage(final JobStatus status, final SandboxedJob job) {
+        job.startPseudoState(SandboxedJob.DOWNLOADING, status);
+        stagingEngine.poststage(new Runnable() {
+            public void run() {
+                downloadSandbox(job);
+                job.setPseudoState(SandboxedJob.CLEANING);
+                cleanSandbox(job);
+                LOGGER.debug("Status changed of " + job.getIdentifier() + " to " + status.getState());
+                endPseudoState(status, job);
+            }
+        });
+    }
+
     protected void downloadSandbox(SandboxedJob job) {
         try {
             job.downloadSandbox();
@@ -164,6 +532,10 @@ public class JobsPoller implements Runnable {
     }
 
     protected void cancelJob(SandboxedJob job) {
+        if (job.getJob() == null) {
+            // job never reached the scheduler
+            return;
+        }
         LOGGER.debug("Cancelling job:" + job.getIdentifier());
         try {
             JobStatus status = xenon.jobs().cancelJob(job.getJob());
@@ -180,12 +552,89 @@ public class JobsPoller implements Runnable {
      *
      */
     public void stop() throws XenonException {
+        stop(true);
+    }
+
+    /**
+     * Stops the poller.
+     *
+     * @param cancelJobs When true cancels all not done jobs and cleans sandboxes of those jobs.
+     *      When false the jobs are left running, so they can be recovered after a restart.
+     * @throws XenonException if job was not cancelled successfully
+     */
+    public void stop(boolean cancelJobs) throws XenonException {
+        if (statusExecutor != null) {
+            statusExecutor.shutdownNow();
+        }
+        if (!cancelJobs) {
+            return;
+        }
         LOGGER.debug("Cancelling jobs and cleaning their sandboxes");
-        for (SandboxedJob job : jobs.values()) {
-            if (!job.getStatus().isDone()) {
-                xenon.jobs().cancelJob(job.getJob());
+        // only visit jobs of this poller, the jobs map can be shared with pollers of other schedulers
+        for (PollSchedule schedule : activeJobs.values()) {
+            SandboxedJob job = schedule.job;
+            boolean poststaging = job.getPseudoState() != null;
+            if (job.getJob() != null && (poststaging || job.getStatus() == null || !job.getStatus().isDone())) {
+                if (!poststaging) {
+                    xenon.jobs().cancelJob(job.getJob());
+                }
+                // jobs which are being downloaded are already done in the scheduler
                 job.cleanSandbox();
             }
         }
     }
+
+    /**
+     * Poll schedule of an active job.
+     *
+     * Only modified by the poll thread after registration.
+     */
+    private static final class PollSchedule {
+        private final SandboxedJob job;
+        private long interval;
+        private long nextPoll;
+        private boolean changed = false;
+
+        public PollSchedule(SandboxedJob job, long interval, long registered) {
+            this.job = job;
+            this.interval = interval;
+            this.nextPoll = registered + interval;
+        }
+    }
+
+    /**
+     * Jobs of which the status is fetched with a single scheduler call.
+     */
+    private final class StatusBatch implements Callable<StatusBatch> {
+        /**
+         * Jobs to poll keyed by scheduler job identifier
+         */
+        private final Map<String, PollSchedule> polledJobs = new HashMap<String, PollSchedule>();
+        /**
+         * Time in milliseconds at which jobs were selected for polling
+         */
+        private final long selectedAt;
+        private JobStatus[] statuses;
+
+        public StatusBatch(long selectedAt) {
+            this.selectedAt = selectedAt;
+        }
+
+        public StatusBatch call() {
+            Job[] jobarray = new Job[polledJobs.size()];
+            int i = 0;
+            for (PollSchedule schedule : polledJobs.values()) {
+                jobarray[i++] = schedule.job.getJob();
+            }
+
+            TimerContext context = batchTimer.time();
+            try {
+                Jobs jobsEngine = xenon.jobs();
+                statuses = jobsEngine.getJobStatuses(jobarray);
+            } finally {
+                context.stop();
+            }
+            return this;
+        }
+    }
 }
@@ -0,0 +1,172 @@
+/*
+ * #%L
+ * Osmium
+ * %%
+ * Copyright (C) 2013 Nederlands eScience Center
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package nl.esciencecenter.osmium.job;
+
+import javax.validation.constraints.DecimalMax;
+import javax.validation.constraints.DecimalMin;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Load aware selection of scheduler backend, see {@link LoadBalancer}.
+ *
+ * @author verhoes
+ *
+ */
+public class LoadBalanceConfiguration {
+    /**
+     * When true, jobs which do not name a scheduler are submitted to the first scheduler that is not saturated.
+     * Default false.
+     */
+    @JsonProperty
+    private boolean enabled = false;
+
+    /**
+     * Interval in milliseconds between samples of the queue depth of each scheduler.
+     * Default 30000.
+     */
+    @Min(1)
+    @JsonProperty
+    private long interval = 30000;
+
+    /**
+     * Number of queued and running jobs at which a scheduler is saturated, by scheduler name.
+     * A scheduler which is not listed is never saturated by its queue depth.
+     * The scheduler of the xenon section is named default.
+     */
+    @NotNull
+    @JsonProperty
+    private ImmutableMap<String, Integer> capacities = ImmutableMap.of();
+
+    /**
+     * Fraction of recent submissions which failed at which a scheduler is saturated.
+     * Default 0.5.
+     */
+    @DecimalMin("0")
+    @DecimalMax("1")
+    @JsonProperty
+    private double maxFailureRate = 0.5;
+
+    /**
+     * Average recent submission latency in milliseconds at which a scheduler is saturated.
+     * Default 10000.
+     */
+    @Min(1)
+    @JsonProperty
+    private long maxSubmitLatency = 10000;
+
+    public LoadBalanceConfiguration(boolean enabled, long interval, ImmutableMap<String, Integer> capacities) {
+        super();
+        this.enabled = enabled;
+        this.interval = interval;
+        this.capacities = capacities;
+    }
+
+    public LoadBalanceConfiguration() {
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public long getInterval() {
+        return interval;
+    }
+
+    public void setInterval(long interval) {
+        this.interval = interval;
+    }
+
+    public ImmutableMap<String, Integer> getCapacities() {
+        return capacities;
+    }
+
+    public void setCapacities(ImmutableMap<String, Integer> capacities) {
+        this.capacities = capacities;
+    }
+
+    /**
+     * @param name Name of scheduler
+     * @return Capacity of scheduler, {@link Integer#MAX_VALUE} when not configured
+     */
+    public int getCapacity(String name) {
+        Integer capacity = capacities.get(name);
+        if (capacity == null) {
+            return Integer.MAX_VALUE;
+        }
+        return capacity;
+    }
+
+    public double getMaxFailureRate() {
+        return maxFailureRate;
+    }
+
+    public void setMaxFailureRate(double maxFailureRate) {
+        this.maxFailureRate = maxFailureRate;
+    }
+
+    public long getMaxSubmitLatency() {
+        return maxSubmitLatency;
+    }
+
+    public void setMaxSubmitLatency(long maxSubmitLatency) {
+        this.maxSubmitLatency = maxSubmitLatency;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(enabled, interval, capacities, maxFailureRate, maxSubmitLatency);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == null) {
+            return false;
+        }
+        if (getClass() != obj.getClass()) {
+            return false;
+        }
+        LoadBalanceConfiguration other = (LoadBalanceConfiguration) obj;
+        return Objects.equal(this.enabled, other.enabled)
+                && Objects.equal(this.interval, other.interval)
+                && Objects.equal(this.capacities, other.capacities)
+                && Objects.equal(this.maxFailureRate, other.maxFailureRate)
+                && Objects.equal(this.maxSubmitLatency, other.maxSubmitLatency);
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                .addValue(this.enabled)
+                .addValue(this.interval)
+                .addValue(this.capacities)
+                .addValue(this.maxFailureRate)
+                .addValue(this.maxSubmitLatency)
+                .toString();
+    }
+}
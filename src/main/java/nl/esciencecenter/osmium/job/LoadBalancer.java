@@ -0,0 +1,83 @@
+/*
+ * #%L
+ * Osmium
+ * %%
+ * Copyright (C) 2013 Nederlands eScience Center
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package nl.esciencecenter.osmium.job;
+
+import java.util.Collection;
+
+/**
+ * Selects scheduler backend based on its live load, see {@link BackendLoad}.
+ *
+ * Backends are tried in routing order, so jobs spill over to the next backend when a backend is saturated.
+ * A backend is saturated when its queue depth reached its capacity,
+ * or when too many recent submissions failed or took too long.
+ * When all backends are saturated the backend with the lowest queue depth relative to its capacity is selected.
+ *
+ * @author verhoes
+ *
+ */
+public class LoadBalancer {
+    private final LoadBalanceConfiguration configuration;
+
+    public LoadBalancer(LoadBalanceConfiguration configuration) {
+        this.configuration = configuration;
+    }
+
+    /**
+     * @param candidates Backends in routing order, must not be empty
+     * @return Selected backend
+     */
+    public SchedulerBackend select(Collection<SchedulerBackend> candidates) {
+        SchedulerBackend leastLoaded = null;
+        double lowestUtilization = Double.MAX_VALUE;
+        for (SchedulerBackend backend : candidates) {
+            if (!isSaturated(backend)) {
+                return backend;
+            }
+            double utilization = getUtilization(backend);
+            if (utilization < lowestUtilization) {
+                lowestUtilization = utilization;
+                leastLoaded = backend;
+            }
+        }
+        return leastLoaded;
+    }
+
+    /**
+     * @param backend Scheduler backend
+     * @return true when backend should not receive more jobs while other backends can
+     */
+    public boolean isSaturated(SchedulerBackend backend) {
+        BackendLoad load = backend.getLoad();
+        return load.getQueueDepth() >= configuration.getCapacity(backend.getName())
+                || load.getFailureRate() >= configuration.getMaxFailureRate()
+                || load.getSubmitLatency() >= configuration.getMaxSubmitLatency();
+    }
+
+    /**
+     * @param backend Scheduler backend
+     * @return Queue depth relative to capacity, increased by failure rate
+     */
+    private double getUtilization(SchedulerBackend backend) {
+        BackendLoad load = backend.getLoad();
+        double utilization = (double) load.getQueueDepth() / configuration.getCapacity(backend.getName());
+        // a failing backend is worse than a full one
+        return utilization + load.getFailureRate() * 2;
+    }
+}
@@ -21,6 +21,11 @@ package nl.esciencecenter.osmium.job;
 
 import java.util.concurrent.TimeUnit;
 
+import javax.validation.constraints.AssertTrue;
+import javax.validation.constraints.DecimalMin;
+import javax.validation.constraints.Min;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.google.common.base.Objects;
 
@@ -33,19 +38,69 @@ public class PollConfiguration {
     @JsonProperty
     private long interval = TimeUnit.MILLISECONDS.convert(30, TimeUnit.SECONDS);
     /**
-     * The job state has to be polled.
-     * This is the time in milliseconds it polls before canceling the job.
+     * Time in milliseconds after submission at which the job is canceled when it is not done yet.
      * Default 1 hour.
      */
     @JsonProperty
     private long cancelTimeout = TimeUnit.MILLISECONDS.convert(1, TimeUnit.HOURS);
     /**
-     * The job state has to be polled.
-     * This is the time in milliseconds it polls before deleting the job.
+     * Time in milliseconds after submission at which the job is deleted.
      * Default 12 hour.
      */
     @JsonProperty
     private long deleteTimeout = TimeUnit.MILLISECONDS.convert(12, TimeUnit.HOURS);
+    /**
+     * When true each job is polled with its own interval instead of every `interval` milliseconds.
+     * The interval of a job starts at `minInterval` and is multiplied by `backoffFactor` after each poll
+     * in which the job state did not change, up to `maxInterval`.
+     * When the job state changes the interval is reset to `minInterval`.
+     * Default false.
+     */
+    @JsonProperty
+    private boolean adaptive = false;
+    /**
+     * Time in milliseconds between polls of a job which has just been submitted or changed state.
+     * Default 5 seconds.
+     */
+    @Min(1)
+    @JsonProperty
+    private long minInterval = TimeUnit.MILLISECONDS.convert(5, TimeUnit.SECONDS);
+    /**
+     * Maximum time in milliseconds between polls of a job.
+     * Default 10 minutes.
+     */
+    @Min(1)
+    @JsonProperty
+    private long maxInterval = TimeUnit.MILLISECONDS.convert(10, TimeUnit.MINUTES);
+    /**
+     * Factor with which the poll interval of a job is increased when its state did not change.
+     * The increased interval is rounded up, so any factor above 1 lengthens the interval.
+     * Default 2.
+     */
+    @DecimalMin("1")
+    @JsonProperty
+    private double backoffFactor = 2;
+    /**
+     * Maximum number of jobs of which the status is fetched with a single scheduler call.
+     * Default 500.
+     */
+    @Min(1)
+    @JsonProperty
+    private int statusBatchSize = 500;
+    /**
+     * Number of batches of which the status is fetched concurrently.
+     * Default 2.
+     */
+    @Min(1)
+    @JsonProperty
+    private int statusThreads = 2;
+    /**
+     * Whether done jobs are compacted, which releases their request, sandbox and scheduler job.
+     * A compacted job is returned without its request, but with a digest of it.
+     * Default false.
+     */
+    @JsonProperty
+    private boolean compactDoneJobs = false;
 
     public PollConfiguration(long interval, long cancelTimeout, long deleteTimeout) {
         super();
@@ -54,6 +109,15 @@ public class PollConfiguration {
         this.deleteTimeout = deleteTimeout;
     }
 
+    public PollConfiguration(long interval, long cancelTimeout, long deleteTimeout, boolean adaptive,
+            long minInterval, long maxInterval, double backoffFactor) {
+        this(interval, cancelTimeout, deleteTimeout);
+        this.adaptive = adaptive;
+        this.minInterval = minInterval;
+        this.maxInterval = maxInterval;
+        this.backoffFactor = backoffFactor;
+    }
+
     public PollConfiguration() {
     }
 
@@ -81,9 +145,75 @@ public class PollConfiguration {
         this.deleteTimeout = deleteTimeout;
     }
 
+    public boolean isAdaptive() {
+        return adaptive;
+    }
+
+    public void setAdaptive(boolean adaptive) {
+        this.adaptive = adaptive;
+    }
+
+    public long getMinInterval() {
+        return minInterval;
+    }
+
+    public void setMinInterval(long minInterval) {
+        this.minInterval = minInterval;
+    }
+
+    public long getMaxInterval() {
+        return maxInterval;
+    }
+
+    public void setMaxInterval(long maxInterval) {
+        this.maxInterval = maxInterval;
+    }
+
+    public double getBackoffFactor() {
+        return backoffFactor;
+    }
+
+    public void setBackoffFactor(double backoffFactor) {
+        this.backoffFactor = backoffFactor;
+    }
+
+    /**
+     * @return true when the maximum interval is not shorter than the minimum interval
+     */
+    @JsonIgnore
+    @AssertTrue(message = "maxInterval must be greater than or equal to minInterval")
+    public boolean isIntervalRangeValid() {
+        return maxInterval >= minInterval;
+    }
+
+    public int getStatusBatchSize() {
+        return statusBatchSize;
+    }
+
+    public void setStatusBatchSize(int statusBatchSize) {
+        this.statusBatchSize = statusBatchSize;
+    }
+
+    public int getStatusThreads() {
+        return statusThreads;
+    }
+
+    public void setStatusThreads(int statusThreads) {
+        this.statusThreads = statusThreads;
+    }
+
+    public boolean isCompactDoneJobs() {
+        return compactDoneJobs;
+    }
+
+    public void setCompactDoneJobs(boolean compactDoneJobs) {
+        this.compactDoneJobs = compactDoneJobs;
+    }
+
     @Override
     public int hashCode() {
-        return Objects.hashCode(interval, cancelTimeout, deleteTimeout);
+        return Objects.hashCode(interval, cancelTimeout, deleteTimeout, adaptive, minInterval, maxInterval, backoffFactor,
+                statusBatchSize, statusThreads, compactDoneJobs);
     }
 
     @Override
@@ -96,7 +226,13 @@ public class PollConfiguration {
         }
         PollConfiguration other = (PollConfiguration) obj;
         return Objects.equal(this.interval, other.interval) && Objects.equal(this.cancelTimeout, other.cancelTimeout)
-                && Objects.equal(this.deleteTimeout, other.deleteTimeout);
+                && Objects.equal(this.deleteTimeout, other.deleteTimeout) && Objects.equal(this.adaptive, other.adaptive)
+                && Objects.equal(this.minInterval, other.minInterval)
+                && Objects.equal(this.maxInterval, other.maxInterval)
+                && Objects.equal(this.backoffFactor, other.backoffFactor)
+                && Objects.equal(this.statusBatchSize, other.statusBatchSize)
+                && Objects.equal(this.statusThreads, other.statusThreads)
+                && Objects.equal(this.compactDoneJobs, other.compactDoneJobs);
     }
 
     @Override
@@ -106,6 +242,13 @@ public class PollConfiguration {
                  .addValue(this.interval)
                  .addValue(this.cancelTimeout)
                  .addValue(this.deleteTimeout)
+                 .addValue(this.adaptive)
+                 .addValue(this.minInterval)
+                 .addValue(this.maxInterval)
+                 .addValue(this.backoffFactor)
+                 .addValue(this.statusBatchSize)
+                 .addValue(this.statusThreads)
+                 .addValue(this.compactDoneJobs)
                  .toString();
     }
 }
@@ -0,0 +1,176 @@
+/*
+ * #%L
+ * Osmium
+ * %%
+ * Copyright (C) 2013 Nederlands eScience Center
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package nl.esciencecenter.osmium.job;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.regex.Pattern;
+
+import nl.esciencecenter.osmium.api.JobSubmitRequest;
+import nl.esciencecenter.xenon.XenonException;
+import nl.esciencecenter.xenon.files.Path;
+import nl.esciencecenter.xenon.jobs.Jobs;
+import nl.esciencecenter.xenon.jobs.Scheduler;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Objects;
+
+/**
+ * A scheduler with its own sandbox root and poller, to which jobs can be routed.
+ *
+ * @author verhoes
+ *
+ */
+public class SchedulerBackend {
+    protected static final Logger LOGGER = LoggerFactory.getLogger(SchedulerBackend.class);
+
+    private final String name;
+    private final String queue;
+    private final Scheduler scheduler;
+    private final Path sandboxRootPath;
+    private final JobsPoller poller;
+    /**
+     * Single thread executor which runs the poller and the deadlines of its jobs
+     */
+    private final ScheduledExecutorService executor;
+    private final Pattern executable;
+    private final Pattern arguments;
+    private final BackendLoad load = new BackendLoad();
+
+    /**
+     * Backend to which jobs are only routed by name.
+     *
+     * @param name Name of backend
+     * @param queue Queue of scheduler to submit jobs to
+     * @param scheduler Scheduler
+     * @param sandboxRootPath Path in which sandboxes of jobs are created
+     * @param poller Poller of jobs submitted to scheduler
+     * @param executor Executor which runs the poller
+     */
+    public SchedulerBackend(String name, String queue, Scheduler scheduler, Path sandboxRootPath, JobsPoller poller,
+            ScheduledExecutorService executor) {
+        this(name, queue, scheduler, sandboxRootPath, poller, executor, null, null);
+    }
+
+    /**
+     * @param name Name of backend
+     * @param queue Queue of scheduler to submit jobs to
+     * @param scheduler Scheduler
+     * @param sandboxRootPath Path in which sandboxes of jobs are created
+     * @param poller Poller of jobs submitted to scheduler
+     * @param executor Executor which runs the poller
+     * @param executable Regular expression which must match executable of routed requests, null matches any
+     * @param arguments Regular expression which must be found in arguments of routed requests, null matches any
+     */
+    public SchedulerBackend(String name, String queue, Scheduler scheduler, Path sandboxRootPath, JobsPoller poller,
+            ScheduledExecutorService executor, String executable, String arguments) {
+        this.name = name;
+        this.queue = queue;
+        this.scheduler = scheduler;
+        this.sandboxRootPath = sandboxRootPath;
+        this.poller = poller;
+        this.executor = executor;
+        this.executable = executable == null ? null : Pattern.compile(executable);
+        this.arguments = arguments == null ? null : Pattern.compile(arguments);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getQueue() {
+        return queue;
+    }
+
+    public Scheduler getScheduler() {
+        return scheduler;
+    }
+
+    public Path getSandboxRootPath() {
+        return sandboxRootPath;
+    }
+
+    public JobsPoller getPoller() {
+        return poller;
+    }
+
+    public ScheduledExecutorService getExecutor() {
+        return executor;
+    }
+
+    public BackendLoad getLoad() {
+        return load;
+    }
+
+    /**
+     * Samples number of jobs in queue of scheduler.
+     *
+     * When the scheduler can not be reached it is counted as failing.
+     *
+     * @param jobsEngine Xenon jobs engine
+     */
+    public void sampleLoad(Jobs jobsEngine) {
+        try {
+            load.sample(jobsEngine.getJobs(scheduler, queue).length);
+        } catch (XenonException e) {
+            LOGGER.warn("Unable to sample queue of scheduler " + name + ": " + e.getMessage());
+            load.sampleFailed();
+        } catch (RuntimeException e) {
+            // an exception would stop the scheduled sampling
+            LOGGER.warn("Unable to sample queue of scheduler " + name + ": " + e.getMessage(), e);
+            load.sampleFailed();
+        }
+    }
+
+    /**
+     * Whether request should be routed to this backend when it does not name a scheduler.
+     *
+     * A backend without executable and arguments patterns only receives requests which name it.
+     *
+     * @param request Job request
+     * @return true when request matches the executable and arguments patterns
+     */
+    public boolean matches(JobSubmitRequest request) {
+        if (executable == null && arguments == null) {
+            return false;
+        }
+        if (executable != null && (request.executable == null || !executable.matcher(request.executable).matches())) {
+            return false;
+        }
+        if (arguments != null) {
+            String joinedArguments = "";
+            if (request.arguments != null) {
+                joinedArguments = Joiner.on(' ').join(request.arguments);
+            }
+            if (!arguments.matcher(joinedArguments).find()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this).addValue(name).addValue(queue).addValue(executable).addValue(arguments)
+                .toString();
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * #%L
+ * Osmium
+ * %%
+ * Copyright (C) 2013 Nederlands eScience Center
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package nl.esciencecenter.osmium.job;
+
+import javax.validation.constraints.Min;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.Objects;
+
+/**
+ * Staging configuration.
+ *
+ * Controls how input files of a job are staged to the sandbox and the job is submitted to the scheduler.
+ * See {@link StagingEngine}.
+ *
+ * @author verhoes
+ *
+ */
+public class StagingConfiguration {
+    /**
+     * When true the POST /job request returns directly with a job in STAGING state
+     * and the uploading of input files and submission to the scheduler is done in the background.
+     * Default false.
+     */
+    @JsonProperty
+    private boolean async = false;
+
+    /**
+     * Number of threads used to stage and submit jobs in the background.
+     * Default 4.
+     */
+    @Min(1)
+    @JsonProperty
+    private int threads = 4;
+
+    /**
+     * Maximum number of jobs waiting for a staging thread.
+     * When queue is full new submissions are refused.
+     * Default 1000.
+     */
+    @Min(1)
+    @JsonProperty
+    private int queueSize = 1000;
+
+    /**
+     * Maximum number of input files of a single job which are uploaded at the same time.
+     * Default 1, which uploads the files one after another.
+     */
+    @Min(1)
+    @JsonProperty
+    private int concurrentFilesPerJob = 1;
+
+    /**
+     * Maximum number of input files of all jobs together which are uploaded at the same time.
+     * Only used when concurrentFilesPerJob is larger than 1.
+     * Default 16.
+     */
+    @Min(1)
+    @JsonProperty
+    private int concurrentFiles = 16;
+
+    /**
+     * Number of threads used to download output files and clean sandboxes of done jobs.
+     * Default 4.
+     */
+    @Min(1)
+    @JsonProperty
+    private int downloadThreads = 4;
+
+    public StagingConfiguration(boolean async, int threads, int queueSize) {
+        super();
+        this.async = async;
+        this.threads = threads;
+        this.queueSize = queueSize;
+    }
+
+    public StagingConfiguration(boolean async, int threads, int queueSize, int concurrentFilesPerJob, int concurrentFiles) {
+        this(async, threads, queueSize);
+        this.concurrentFilesPerJob = concurrentFilesPerJob;
+        this.concurrentFiles = concurrentFiles;
+    }
+
+    public StagingConfiguration() {
+    }
+
+    public boolean isAsync() {
+        return async;
+    }
+
+    public void setAsync(boolean async) {
+        this.async = async;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    public void setQueueSize(int queueSize) {
+        this.queueSize = queueSize;
+    }
+
+    public int getConcurrentFilesPerJob() {
+        return concurrentFilesPerJob;
+    }
+
+    public void setConcurrentFilesPerJob(int concurrentFilesPerJob) {
+        this.concurrentFilesPerJob = concurrentFilesPerJob;
+    }
+
+    public int getConcurrentFiles() {
+        return concurrentFiles;
+    }
+
+    public void setConcurrentFiles(int concurrentFiles) {
+        this.concurrentFiles = concurrentFiles;
+    }
+
+    public int getDownloadThreads() {
+        return downloadThreads;
+    }
+
+    public void setDownloadThreads(int downloadThreads) {
+        this.downloadThreads = downloadThreads;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(async, threads, queueSize, concurrentFilesPerJob, concurrentFiles, downloadThreads);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == null) {
+            return false;
+        }
+        if (getClass() != obj.getClass()) {
+            return false;
+        }
+        StagingConfiguration other = (StagingConfiguration) obj;
+        return Objects.equal(this.async, other.async)
+                && Objects.equal(this.threads, other.threads)
+                && Objects.equal(this.queueSize, other.queueSize)
+                && Objects.equal(this.concurrentFilesPerJob, other.concurrentFilesPerJob)
+                && Objects.equal(this.concurrentFiles, other.concurrentFiles)
+                && Objects.equal(this.downloadThreads, other.downloadThreads);
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                .addValue(this.async)
+                .addValue(this.threads)
+                .addValue(this.queueSize)
+                .addValue(this.concurrentFilesPerJob)
+                .addValue(this.concurrentFiles)
+                .addValue(this.downloadThreads)
+                .toString();
+    }
+}
@@ -0,0 +1,241 @@
+/*
+ * #%L
+ * Osmium
+ * %%
+ * Copyright (C) 2013 Nederlands eScience Center
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package nl.esciencecenter.osmium.job;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import nl.esciencecenter.xenon.XenonException;
+import nl.esciencecenter.xenon.files.FileAttributes;
+import nl.esciencecenter.xenon.files.Files;
+import nl.esciencecenter.xenon.files.Path;
+import nl.esciencecenter.xenon.util.Sandbox;
+import nl.esciencecenter.xenon.util.Utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.Meter;
+
+/**
+ * Stages jobs.
+ *
+ * Runs the staging and submission of jobs in the background,
+ * uploads the input files of a job concurrently
+ * and runs the downloading of output files of done jobs in the background.
+ *
+ * The number of files copied at the same time is limited per job and globally.
+ *
+ * @author verhoes
+ *
+ */
+public class StagingEngine {
+    protected static final Logger LOGGER = LoggerFactory.getLogger(StagingEngine.class);
+
+    private static final long BYTES_PER_MEGABYTE = 1024 * 1024;
+
+    private final Files files;
+    private final int concurrentFilesPerJob;
+    private final ExecutorService jobExecutor;
+    private final ExecutorService copyExecutor;
+    private final ExecutorService downloadExecutor;
+    private final Meter uploadedBytes = Metrics.newMeter(StagingEngine.class, "uploaded-bytes", "bytes", TimeUnit.SECONDS);
+
+    /**
+     * Constructor
+     *
+     * @param files Xenon Files instance used to copy files
+     * @param configuration Staging configuration
+     */
+    public StagingEngine(Files files, StagingConfiguration configuration) {
+        this(files, configuration.getConcurrentFilesPerJob(), newJobExecutor(configuration),
+                Executors.newFixedThreadPool(configuration.getConcurrentFiles()),
+                Executors.newFixedThreadPool(configuration.getDownloadThreads()));
+    }
+
+    /**
+     * Constructor
+     *
+     * @param files Xenon Files instance used to copy files
+     * @param concurrentFilesPerJob Maximum number of files of a single job to copy at the same time
+     * @param jobExecutor Executor for background staging and submission of jobs
+     * @param copyExecutor Executor for copying files, its pool size is the global maximum of files to copy at the same time
+     * @param downloadExecutor Executor for downloading output files and cleaning sandboxes of done jobs
+     */
+    public StagingEngine(Files files, int concurrentFilesPerJob, ExecutorService jobExecutor, ExecutorService copyExecutor,
+            ExecutorService downloadExecutor) {
+        super();
+        this.files = files;
+        this.concurrentFilesPerJob = concurrentFilesPerJob;
+        this.jobExecutor = jobExecutor;
+        this.copyExecutor = copyExecutor;
+        this.downloadExecutor = downloadExecutor;
+    }
+
+    /**
+     * Thread pool with bounded queue used to stage and submit jobs in the background.
+     *
+     * @param configuration Staging configuration
+     * @return ExecutorService
+     */
+    protected static ExecutorService newJobExecutor(StagingConfiguration configuration) {
+        int threads = configuration.getThreads();
+        return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(configuration.getQueueSize()));
+    }
+
+    /**
+     * Run staging of a job in the background.
+     *
+     * @param task Task which stages and submits a job
+     * @throws RejectedExecutionException when staging queue is full
+     */
+    public void submit(Runnable task) {
+        jobExecutor.execute(task);
+    }
+
+    /**
+     * Run downloading of output files and cleaning of sandbox of a done job in the background.
+     *
+     * @param task Task which downloads and cleans a sandbox
+     */
+    public void poststage(Runnable task) {
+        downloadExecutor.execute(task);
+    }
+
+    /**
+     * Upload input files of sandbox.
+     *
+     * When only one file per job may be copied at a time the sandbox uploads the files itself.
+     *
+     * @param sandbox Sandbox with upload files
+     * @throws XenonException when a file could not be copied
+     */
+    public void upload(Sandbox sandbox) throws XenonException {
+        if (concurrentFilesPerJob <= 1) {
+            sandbox.upload();
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        if (!files.exists(sandbox.getPath())) {
+            files.createDirectory(sandbox.getPath());
+        }
+
+        List<Sandbox.Pair> pairs = sandbox.getUploadFiles();
+        Semaphore slots = new Semaphore(concurrentFilesPerJob);
+        List<Future<Long>> copies = new ArrayList<Future<Long>>(pairs.size());
+        long bytes = 0;
+        try {
+            for (Sandbox.Pair pair : pairs) {
+                slots.acquire();
+                copies.add(copyExecutor.submit(new CopyTask(pair.getSource(), pair.getDestination(), slots)));
+            }
+            for (Future<Long> copy : copies) {
+                bytes += copy.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new XenonException("", "Interrupted while uploading sandbox " + sandbox.getPath(), e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof XenonException) {
+                throw (XenonException) e.getCause();
+            }
+            throw new XenonException("", "Failed to upload sandbox " + sandbox.getPath(), e.getCause());
+        } finally {
+            for (Future<Long> copy : copies) {
+                copy.cancel(true);
+            }
+        }
+
+        uploadedBytes.mark(bytes);
+        logThroughput(pairs.size(), bytes, System.currentTimeMillis() - start);
+    }
+
+    private void logThroughput(int nrFiles, long bytes, long duration) {
+        if (LOGGER.isDebugEnabled()) {
+            double megabytesPerSecond = 0;
+            if (duration > 0) {
+                megabytesPerSecond = (bytes / (double) BYTES_PER_MEGABYTE) / (duration / 1000.0);
+            }
+            LOGGER.debug(String.format("Uploaded %d files (%d bytes) in %d ms (%.2f MB/s)", nrFiles, bytes, duration,
+                    megabytesPerSecond));
+        }
+    }
+
+    /**
+     * Stops accepting jobs and interrupts running staging and copies.
+     *
+     * Downloads which have been started are given 1 minute to finish.
+     *
+     * @throws InterruptedException If waiting for termination was interrupted
+     */
+    public void stop() throws InterruptedException {
+        // Jobs still waiting for staging will not be submitted
+        jobExecutor.shutdownNow();
+        copyExecutor.shutdownNow();
+        downloadExecutor.shutdown();
+        jobExecutor.awaitTermination(1, TimeUnit.MINUTES);
+        copyExecutor.awaitTermination(1, TimeUnit.MINUTES);
+        downloadExecutor.awaitTermination(1, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Copies a file or directory and releases a per job copy slot when done.
+     */
+    private class CopyTask implements Callable<Long> {
+        private final Path source;
+        private final Path destination;
+        private final Semaphore slots;
+
+        public CopyTask(Path source, Path destination, Semaphore slots) {
+            this.source = source;
+            this.destination = destination;
+            this.slots = slots;
+        }
+
+        /**
+         * @return Number of bytes copied, directories are counted as zero bytes
+         */
+        public Long call() throws XenonException {
+            try {
+                FileAttributes attributes = files.getAttributes(source);
+                Utils.recursiveCopy(files, source, destination);
+                if (attributes.isRegularFile()) {
+                    return attributes.size();
+                }
+                return 0L;
+            } finally {
+                slots.release();
+            }
+        }
+    }
+}
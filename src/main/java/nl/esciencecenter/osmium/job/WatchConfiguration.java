@@ -0,0 +1,177 @@
+/*
+ * #%L
+ * Osmium
+ * %%
+ * Copyright (C) 2013 Nederlands eScience Center
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package nl.esciencecenter.osmium.job;
+
+import javax.validation.constraints.Min;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.Objects;
+
+/**
+ * Long polling and streaming of job status changes, see {@link JobWatcher}.
+ *
+ * @author verhoes
+ *
+ */
+public class WatchConfiguration {
+    /**
+     * Maximum number of requests waiting for a job to finish at the same time.
+     * Each waiting request occupies a http thread, when more requests wait the service is unavailable.
+     * Together with maxStreams it may use at most half of the http threads.
+     * Default 20.
+     */
+    @Min(0)
+    @JsonProperty
+    private int maxWaiters = 20;
+
+    /**
+     * Maximum time in milliseconds a request waits for a job to finish.
+     * Default 60000.
+     */
+    @Min(0)
+    @JsonProperty
+    private long maxTimeout = 60000;
+
+    /**
+     * Maximum number of open event streams.
+     * Each stream occupies a http thread, when more streams are requested the service is unavailable.
+     * Default 10.
+     */
+    @Min(0)
+    @JsonProperty
+    private int maxStreams = 10;
+
+    /**
+     * Maximum number of events waiting to be written to a stream.
+     * A stream whose client can not keep up is closed.
+     * Default 10000.
+     */
+    @Min(1)
+    @JsonProperty
+    private int streamQueueSize = 10000;
+
+    /**
+     * Interval in milliseconds at which a comment is written to an idle stream, to keep its connection open.
+     * Default 15000.
+     */
+    @Min(1)
+    @JsonProperty
+    private long heartbeat = 15000;
+
+    /**
+     * Number of most recent job changes kept for incremental synchronization by clients.
+     * Default 10000.
+     */
+    @Min(1)
+    @JsonProperty
+    private int changeBufferSize = 10000;
+
+    public WatchConfiguration(int maxWaiters, long maxTimeout, int maxStreams) {
+        super();
+        this.maxWaiters = maxWaiters;
+        this.maxTimeout = maxTimeout;
+        this.maxStreams = maxStreams;
+    }
+
+    public WatchConfiguration() {
+    }
+
+    public int getMaxWaiters() {
+        return maxWaiters;
+    }
+
+    public void setMaxWaiters(int maxWaiters) {
+        this.maxWaiters = maxWaiters;
+    }
+
+    public long getMaxTimeout() {
+        return maxTimeout;
+    }
+
+    public void setMaxTimeout(long maxTimeout) {
+        this.maxTimeout = maxTimeout;
+    }
+
+    public int getMaxStreams() {
+        return maxStreams;
+    }
+
+    public void setMaxStreams(int maxStreams) {
+        this.maxStreams = maxStreams;
+    }
+
+    public int getStreamQueueSize() {
+        return streamQueueSize;
+    }
+
+    public void setStreamQueueSize(int streamQueueSize) {
+        this.streamQueueSize = streamQueueSize;
+    }
+
+    public long getHeartbeat() {
+        return heartbeat;
+    }
+
+    public void setHeartbeat(long heartbeat) {
+        this.heartbeat = heartbeat;
+    }
+
+    public int getChangeBufferSize() {
+        return changeBufferSize;
+    }
+
+    public void setChangeBufferSize(int changeBufferSize) {
+        this.changeBufferSize = changeBufferSize;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(maxWaiters, maxTimeout, maxStreams, streamQueueSize, heartbeat, changeBufferSize);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == null) {
+            return false;
+        }
+        if (getClass() != obj.getClass()) {
+            return false;
+        }
+        WatchConfiguration other = (WatchConfiguration) obj;
+        return Objects.equal(this.maxWaiters, other.maxWaiters)
+                && Objects.equal(this.maxTimeout, other.maxTimeout)
+                && Objects.equal(this.maxStreams, other.maxStreams)
+                && Objects.equal(this.streamQueueSize, other.streamQueueSize)
+                && Objects.equal(this.heartbeat, other.heartbeat)
+                && Objects.equal(this.changeBufferSize, other.changeBufferSize);
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                .addValue(this.maxWaiters)
+                .addValue(this.maxTimeout)
+                .addValue(this.maxStreams)
+                .addValue(this.streamQueueSize)
+                .addValue(this.heartbeat)
+                .addValue(this.changeBufferSize)
+                .toString();
+    }
+}
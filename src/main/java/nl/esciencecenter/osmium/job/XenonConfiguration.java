@@ -20,9 +20,11 @@
 package nl.esciencecenter.osmium.job;
 
 import javax.validation.Valid;
+import javax.validation.constraints.NotNull;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 
 /**
@@ -60,6 +62,53 @@ public class XenonConfiguration {
     @JsonProperty
     private PollConfiguration poll = new PollConfiguration();
 
+    /**
+     * Fields required for staging input files and submitting a job.
+     */
+    @Valid
+    @JsonProperty
+    private StagingConfiguration staging = new StagingConfiguration();
+
+    /**
+     * Fields required for persisting jobs.
+     */
+    @Valid
+    @JsonProperty
+    private JobStoreConfiguration store = new JobStoreConfiguration();
+
+    /**
+     * Additional named schedulers, each with its own sandbox root and poller.
+     * Jobs which do not name or match one of them are submitted to the scheduler above.
+     */
+    @Valid
+    @NotNull
+    @JsonProperty
+    private ImmutableList<BackendConfiguration> backends = ImmutableList.of();
+
+    /**
+     * Load aware selection of scheduler for jobs which do not name a scheduler.
+     */
+    @Valid
+    @NotNull
+    @JsonProperty
+    private LoadBalanceConfiguration loadBalance = new LoadBalanceConfiguration();
+
+    /**
+     * Limits on job submissions, to protect disk and schedulers against overload.
+     */
+    @Valid
+    @NotNull
+    @JsonProperty
+    private AdmissionConfiguration admission = new AdmissionConfiguration();
+
+    /**
+     * Waiting for jobs to finish and streaming of job status changes.
+     */
+    @Valid
+    @NotNull
+    @JsonProperty
+    private WatchConfiguration watch = new WatchConfiguration();
+
     public XenonConfiguration(SchedulerConfiguration scheduler, SandboxConfiguration sandbox,
             ImmutableMap<String, String> preferences, PollConfiguration poll) {
         this.scheduler = scheduler;
@@ -105,9 +154,58 @@ public class XenonConfiguration {
         this.poll = poll;
     }
 
+    public StagingConfiguration getStaging() {
+        return staging;
+    }
+
+    public void setStaging(StagingConfiguration staging) {
+        this.staging = staging;
+    }
+
+    public JobStoreConfiguration getStore() {
+        return store;
+    }
+
+    public void setStore(JobStoreConfiguration store) {
+        this.store = store;
+    }
+
+    public ImmutableList<BackendConfiguration> getBackends() {
+        return backends;
+    }
+
+    public void setBackends(ImmutableList<BackendConfiguration> backends) {
+        this.backends = backends;
+    }
+
+    public LoadBalanceConfiguration getLoadBalance() {
+        return loadBalance;
+    }
+
+    public void setLoadBalance(LoadBalanceConfiguration loadBalance) {
+        this.loadBalance = loadBalance;
+    }
+
+    public AdmissionConfiguration getAdmission() {
+        return admission;
+    }
+
+    public void setAdmission(AdmissionConfiguration admission) {
+        this.admission = admission;
+    }
+
+    public WatchConfiguration getWatch() {
+        return watch;
+    }
+
+    public void setWatch(WatchConfiguration watch) {
+        this.watch = watch;
+    }
+
     @Override
     public int hashCode() {
-        return Objects.hashCode(scheduler, preferences, sandbox, poll);
+        return Objects.hashCode(scheduler, preferences, sandbox, poll, staging, store, backends, loadBalance,
+                admission, watch);
     }
 
     @Override
@@ -122,12 +220,20 @@ public class XenonConfiguration {
         return Objects.equal(this.scheduler, other.scheduler)
                 && Objects.equal(this.preferences, other.preferences)
                 && Objects.equal(this.poll, other.poll)
-                && Objects.equal(this.sandbox, other.sandbox);
+                && Objects.equal(this.sandbox, other.sandbox)
+                && Objects.equal(this.staging, other.staging)
+                && Objects.equal(this.store, other.store)
+                && Objects.equal(this.backends, other.backends)
+                && Objects.equal(this.loadBalance, other.loadBalance)
+                && Objects.equal(this.admission, other.admission)
+                && Objects.equal(this.watch, other.watch);
     }
 
     @Override
     public String toString() {
         return Objects.toStringHelper(this).addValue(this.scheduler).addValue(this.sandbox)
-                .addValue(this.preferences).addValue(this.poll).toString();
+                .addValue(this.preferences).addValue(this.poll).addValue(this.staging)
+                .addValue(this.store).addValue(this.backends)
+                .addValue(this.loadBalance).addValue(this.admission).addValue(this.watch).toString();
     }
 }
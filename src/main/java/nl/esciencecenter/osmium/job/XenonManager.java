@@ -19,20 +19,32 @@
  */
 package nl.esciencecenter.osmium.job;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Executors;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
+import nl.esciencecenter.osmium.api.JobListener;
 import nl.esciencecenter.osmium.api.JobSubmitRequest;
 import nl.esciencecenter.osmium.api.SandboxedJob;
+import nl.esciencecenter.osmium.callback.CallbackDispatcher;
 import nl.esciencecenter.xenon.Xenon;
 import nl.esciencecenter.xenon.XenonException;
 import nl.esciencecenter.xenon.XenonFactory;
 import nl.esciencecenter.xenon.credentials.Credential;
+import nl.esciencecenter.xenon.engine.jobs.JobStatusImplementation;
 import nl.esciencecenter.xenon.files.FileSystem;
 import nl.esciencecenter.xenon.files.Files;
 import nl.esciencecenter.xenon.files.Path;
@@ -47,6 +59,7 @@ import org.apache.http.client.HttpClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.yammer.dropwizard.lifecycle.Managed;
 
 /**
@@ -54,20 +67,94 @@ import com.yammer.dropwizard.lifecycle.Managed;
  *
  * Responsible for submitting jobs, polling their status and cleaning jobs up.
  *
+ * When a job store is configured the jobs are persisted and recovered on start,
+ * running jobs are then not canceled on stop.
+ *
+ * Besides the default scheduler additional named schedulers can be configured, see {@link SchedulerBackend}.
+ * Each has its own sandbox root and poller. A job is submitted to the scheduler named in its request,
+ * otherwise to the first scheduler whose routing rules match the request, otherwise to the default scheduler.
+ * With load balancing enabled the least loaded of the matching schedulers is used instead, see {@link LoadBalancer}.
+ *
  * @author verhoes
  *
  */
 public class XenonManager implements Managed {
     protected static final Logger LOGGER = LoggerFactory.getLogger(XenonManager.class);
 
+    /**
+     * Name of the scheduler configured with {@link XenonConfiguration#getScheduler()}
+     */
+    public static final String DEFAULT_BACKEND = "default";
+
     private final XenonConfiguration configuration;
     private final Xenon xenon;
-    private final Scheduler scheduler;
-    private final Path sandboxRootPath;
     private final Map<String, SandboxedJob> jobs;
-    private final JobsPoller poller;
-    private ScheduledExecutorService executor;
+    /**
+     * Schedulers by name in routing order, includes the default backend.
+     */
+    private final Map<String, SchedulerBackend> backends = new LinkedHashMap<String, SchedulerBackend>();
+    private final SchedulerBackend defaultBackend;
+    /**
+     * Selects scheduler based on load, null when load balancing is disabled.
+     */
+    private final LoadBalancer loadBalancer;
+    /**
+     * Limits job submissions, null when no limits are configured.
+     */
+    private final AdmissionController admission;
+    /**
+     * Wakes clients waiting for jobs and streams job changes to them.
+     */
+    private final JobWatcher watcher;
+    /**
+     * Recent changes of jobs, for incremental synchronization by clients.
+     */
+    private final ChangeFeed changeFeed;
+    private final StagingEngine stagingEngine;
+    private final JobStore jobStore;
+    /**
+     * Http client used by recovered jobs to report status to job callback.
+     */
+    private final HttpClient httpClient;
+    /**
+     * Dispatcher which delivers status callbacks of jobs in the background, null when callbacks are synchronous.
+     */
+    private final CallbackDispatcher callbackDispatcher;
+    /**
+     * Persists changed jobs when a job store is configured, releases admission of finished jobs,
+     * records the change in the change feed and notifies watchers.
+     */
+    private final JobListener jobListener = new JobListener() {
+        public void jobChanged(SandboxedJob job) {
+            if (jobStore != null) {
+                try {
+                    jobStore.put(job);
+                } catch (IOException e) {
+                    LOGGER.error("Unable to store job " + job.getIdentifier() + ": " + e.getMessage(), e);
+                }
+            }
+            if (admission != null && job.isFinished()) {
+                admission.jobFinished(job.getIdentifier());
+            }
+            changeFeed.jobChanged(job);
+            watcher.jobChanged(job);
+        }
 
+        public void jobDeleted(SandboxedJob job) {
+            if (jobStore != null) {
+                try {
+                    jobStore.remove(job.getIdentifier());
+                } catch (IOException e) {
+                    LOGGER.error("Unable to remove job " + job.getIdentifier() + " from store: " + e.getMessage(), e);
+                }
+            }
+            if (admission != null) {
+                admission.jobFinished(job.getIdentifier());
+            }
+            changeFeed.jobDeleted(job);
+            watcher.jobDeleted(job);
+        }
+    };
 
     /**
      * Sets preferences in GAT context and initializes a broker.
@@ -76,20 +163,92 @@ public class XenonManager implements Managed {
      * @throws XenonException if Xenon could not be configured
      */
     public XenonManager(XenonConfiguration configuration) throws XenonException {
+        this(configuration, null);
+    }
+
+    /**
+     * Sets preferences in GAT context and initializes a broker.
+     *
+     * @param configuration Configuration for Xenon
+     * @param httpClient http client used by recovered jobs to report status to job callback.
+     * @throws XenonException if Xenon could not be configured
+     */
+    public XenonManager(XenonConfiguration configuration, HttpClient httpClient) throws XenonException {
+        this(configuration, httpClient, null);
+    }
+
+    /**
+     * Sets preferences in GAT context and initializes a broker.
+     *
+     * @param configuration Configuration for Xenon
+     * @param httpClient http client used by recovered jobs to report status to job callback.
+     * @param callbackDispatcher Dispatcher which delivers status callbacks of jobs, null to perform callbacks directly
+     * @throws XenonException if Xenon could not be configured
+     */
+    public XenonManager(XenonConfiguration configuration, HttpClient httpClient, CallbackDispatcher callbackDispatcher)
+            throws XenonException {
         this.configuration = configuration;
+        this.httpClient = httpClient;
+        this.callbackDispatcher = callbackDispatcher;
 
         xenon = XenonFactory.newXenon(configuration.getPreferences());
 
-        scheduler = newScheduler();
+        Scheduler scheduler = newScheduler();
 
-        sandboxRootPath = newSandboxRootPath();
+        Path sandboxRootPath = newSandboxRootPath();
 
-        jobs = new ConcurrentHashMap<String, SandboxedJob>();
+        jobs = new ConcurrentSkipListMap<String, SandboxedJob>();
 
-        executor = Executors.newSingleThreadScheduledExecutor();
-        PollConfiguration pollConf = configuration.getPoll();
+        stagingEngine = new StagingEngine(xenon.files(), configuration.getStaging());
+
+        ScheduledExecutorService executor = newPollExecutor();
+        defaultBackend = new SchedulerBackend(DEFAULT_BACKEND, configuration.getScheduler().getQueue(), scheduler,
+                sandboxRootPath, newPoller(executor), executor);
+        addBackend(defaultBackend);
+        for (BackendConfiguration backendConf : configuration.getBackends()) {
+            Scheduler backendScheduler = newScheduler(backendConf.getScheduler());
+            Path backendSandboxRootPath = newSandboxRootPath(backendConf.getSandbox());
+            ScheduledExecutorService backendExecutor = newPollExecutor();
+            addBackend(new SchedulerBackend(backendConf.getName(), backendConf.getScheduler().getQueue(), backendScheduler,
+                    backendSandboxRootPath, newPoller(backendExecutor), backendExecutor, backendConf.getExecutable(),
+                    backendConf.getArguments()));
+        }
 
-        poller = new JobsPoller(jobs, pollConf, xenon);
+        JobStoreConfiguration storeConf = configuration.getStore();
+        if (storeConf.isEnabled()) {
+            jobStore = new FileJobStore(new File(storeConf.getDirectory()), storeConf.getSnapshotInterval(), new ObjectMapper());
+        } else {
+            jobStore = null;
+        }
+
+        loadBalancer = newLoadBalancer(configuration);
+        admission = newAdmissionController(configuration);
+        watcher = new JobWatcher(configuration.getWatch());
+        changeFeed = new ChangeFeed(configuration.getWatch().getChangeBufferSize());
+    }
+
+    private ScheduledExecutorService newPollExecutor() {
+        ScheduledThreadPoolExecutor pollExecutor = new ScheduledThreadPoolExecutor(1);
+        // pending cancel and delete deadlines of jobs should not block shutdown
+        pollExecutor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        return pollExecutor;
+    }
+
+    private JobsPoller newPoller(ScheduledExecutorService executor) {
+        return new JobsPoller(jobs, configuration.getPoll(), xenon, stagingEngine, executor);
+    }
+
+    /**
+     * Adds scheduler to which jobs can be routed.
+     *
+     * @param backend The scheduler
+     * @throws IllegalArgumentException when a scheduler with the same name has already been added
+     */
+    protected void addBackend(SchedulerBackend backend) {
+        if (backends.containsKey(backend.getName())) {
+            throw new IllegalArgumentException("Duplicate scheduler name: " + backend.getName());
+        }
+        backends.put(backend.getName(), backend);
     }
 
     /**
@@ -97,8 +256,16 @@ public class XenonManager implements Managed {
      * @throws XenonException If the creation of the FileSystem failed or an I/O error occured.
      */
     protected Path newSandboxRootPath() throws XenonException {
+        return newSandboxRootPath(configuration.getSandbox());
+    }
+
+    /**
+     * @param sandboxConf Sandbox configuration
+     * @return Path
+     * @throws XenonException If the creation of the FileSystem failed or an I/O error occured.
+     */
+    protected Path newSandboxRootPath(SandboxConfiguration sandboxConf) throws XenonException {
         Credential credential = null;
-        SandboxConfiguration sandboxConf = this.configuration.getSandbox();
         Files filesEngine = xenon.files();
         FileSystem sandboxFS = filesEngine.newFileSystem(sandboxConf.getScheme(), sandboxConf.getLocation(), credential, sandboxConf.getProperties());
         return filesEngine.newPath(sandboxFS, sandboxConf.getPath());
@@ -109,30 +276,124 @@ public class XenonManager implements Managed {
      * @throws XenonException If the creation of the Scheduler failed 
      */
     protected Scheduler newScheduler() throws XenonException {
+        return newScheduler(configuration.getScheduler());
+    }
+
+    /**
+     * @param schedulerConf Scheduler configuration
+     * @return Scheduler
+     * @throws XenonException If the creation of the Scheduler failed
+     */
+    protected Scheduler newScheduler(SchedulerConfiguration schedulerConf) throws XenonException {
         Credential credential = null;
-        SchedulerConfiguration schedulerConf = configuration.getScheduler();
         // TODO prompt user for password/passphrases
         return xenon.jobs().newScheduler(schedulerConf.getScheme(), schedulerConf.getLocation(), credential, schedulerConf.getProperties());
     }
 
     protected XenonManager(XenonConfiguration configuration, Xenon xenon, Scheduler scheduler, Path sandboxRootPath,
             Map<String, SandboxedJob> jobs, JobsPoller poller, ScheduledExecutorService executor) {
+        this(configuration, xenon, scheduler, sandboxRootPath, jobs, poller, executor, null);
+    }
+
+    protected XenonManager(XenonConfiguration configuration, Xenon xenon, Scheduler scheduler, Path sandboxRootPath,
+            Map<String, SandboxedJob> jobs, JobsPoller poller, ScheduledExecutorService executor,
+            StagingEngine stagingEngine) {
+        this(configuration, xenon, scheduler, sandboxRootPath, jobs, poller, executor, stagingEngine, null, null);
+    }
+
+    protected XenonManager(XenonConfiguration configuration, Xenon xenon, Scheduler scheduler, Path sandboxRootPath,
+            Map<String, SandboxedJob> jobs, JobsPoller poller, ScheduledExecutorService executor,
+            StagingEngine stagingEngine, JobStore jobStore, HttpClient httpClient) {
+        this(configuration, xenon, scheduler, sandboxRootPath, jobs, poller, executor, stagingEngine, jobStore,
+                httpClient, null);
+    }
+
+    protected XenonManager(XenonConfiguration configuration, Xenon xenon, Scheduler scheduler, Path sandboxRootPath,
+            Map<String, SandboxedJob> jobs, JobsPoller poller, ScheduledExecutorService executor,
+            StagingEngine stagingEngine, JobStore jobStore, HttpClient httpClient,
+            CallbackDispatcher callbackDispatcher) {
+        this(configuration, xenon, new SchedulerBackend(DEFAULT_BACKEND, defaultQueue(configuration), scheduler,
+                sandboxRootPath, poller, executor), jobs, stagingEngine, jobStore, httpClient, callbackDispatcher);
+    }
+
+    protected XenonManager(XenonConfiguration configuration, Xenon xenon, SchedulerBackend defaultBackend,
+            Map<String, SandboxedJob> jobs, StagingEngine stagingEngine, JobStore jobStore, HttpClient httpClient,
+            CallbackDispatcher callbackDispatcher) {
         super();
         this.configuration = configuration;
         this.xenon = xenon;
-        this.scheduler = scheduler;
-        this.sandboxRootPath = sandboxRootPath;
+        this.defaultBackend = defaultBackend;
+        addBackend(defaultBackend);
         this.jobs = jobs;
-        this.poller = poller;
-        this.executor = executor;
+        this.stagingEngine = stagingEngine;
+        this.jobStore = jobStore;
+        this.httpClient = httpClient;
+        this.callbackDispatcher = callbackDispatcher;
+        this.loadBalancer = newLoadBalancer(configuration);
+        this.admission = newAdmissionController(configuration);
+        WatchConfiguration watchConf = getWatchConfiguration(configuration);
+        this.watcher = new JobWatcher(watchConf);
+        this.changeFeed = new ChangeFeed(watchConf.getChangeBufferSize());
+    }
+
+    private static LoadBalancer newLoadBalancer(XenonConfiguration configuration) {
+        if (configuration == null || !configuration.getLoadBalance().isEnabled()) {
+            return null;
+        }
+        return new LoadBalancer(configuration.getLoadBalance());
+    }
+
+    private static AdmissionController newAdmissionController(XenonConfiguration configuration) {
+        if (configuration == null || !configuration.getAdmission().hasLimits()) {
+            return null;
+        }
+        return new AdmissionController(configuration.getAdmission());
+    }
+
+    private static WatchConfiguration getWatchConfiguration(XenonConfiguration configuration) {
+        if (configuration == null) {
+            return new WatchConfiguration();
+        }
+        return configuration.getWatch();
+    }
+
+    private static String defaultQueue(XenonConfiguration configuration) {
+        if (configuration == null || configuration.getScheduler() == null) {
+            return null;
+        }
+        return configuration.getScheduler().getQueue();
     }
 
     /**
-     * Starts the job poller.
+     * Starts the job poller of each scheduler.
+     *
+     * In adaptive poll mode the poller runs every minimum interval and decides itself which jobs to poll.
+     *
+     * With load balancing enabled the queue depth of each scheduler is sampled periodically.
+     *
+     * When a job store is configured the stored jobs are recovered first.
+     *
+     * @throws IOException if job store could not be read
+     * @throws XenonException if jobs of scheduler could not be listed
      */
-    public void start() {
-        long interval = configuration.getPoll().getInterval();
-        executor.scheduleAtFixedRate(poller, 0, interval, TimeUnit.MILLISECONDS);
+    public void start() throws IOException, XenonException {
+        if (jobStore != null) {
+            recoverJobs();
+        }
+        long interval = getPollInterval();
+        for (SchedulerBackend backend : backends.values()) {
+            backend.getExecutor().scheduleAtFixedRate(backend.getPoller(), 0, interval, TimeUnit.MILLISECONDS);
+        }
+        if (loadBalancer != null) {
+            long loadInterval = configuration.getLoadBalance().getInterval();
+            for (final SchedulerBackend backend : backends.values()) {
+                backend.getExecutor().scheduleWithFixedDelay(new Runnable() {
+                    public void run() {
+                        backend.sampleLoad(xenon.jobs());
+                    }
+                }, 0, loadInterval, TimeUnit.MILLISECONDS);
+            }
+        }
     }
 
     /**
@@ -142,10 +403,32 @@ public class XenonManager implements Managed {
      * @throws XenonException If Xenon is unable to stop
      */
     public void stop() throws InterruptedException, XenonException {
-        executor.shutdown();
-        // JobsPoller can be in middle of fetching job statuses so give it 1 minute to finish before interrupting it
-        executor.awaitTermination(1, TimeUnit.MINUTES);
-        poller.stop();
+        watcher.close();
+        if (stagingEngine != null) {
+            stagingEngine.stop();
+        }
+        for (SchedulerBackend backend : backends.values()) {
+            backend.getExecutor().shutdown();
+        }
+        for (SchedulerBackend backend : backends.values()) {
+            // JobsPoller can be in middle of fetching job statuses so give it 1 minute to finish before interrupting it
+            backend.getExecutor().awaitTermination(1, TimeUnit.MINUTES);
+        }
+        for (SchedulerBackend backend : backends.values()) {
+            if (jobStore != null) {
+                // leave jobs running, they are recovered on next start
+                backend.getPoller().stop(false);
+            } else {
+                backend.getPoller().stop();
+            }
+        }
+        if (jobStore != null) {
+            try {
+                jobStore.close();
+            } catch (IOException e) {
+                LOGGER.error("Unable to close job store: " + e.getMessage(), e);
+            }
+        }
         XenonFactory.endXenon(xenon);
     }
 
@@ -159,13 +442,455 @@ public class XenonManager implements Managed {
      * @return SandboxedJob job
      *
      * @throws XenonException If staging file or submit job failed
+     * @throws IllegalArgumentException When request names an unknown scheduler
+     * @throws AdmissionException When a submission limit has been reached
      */
     public SandboxedJob submitJob(JobSubmitRequest request, HttpClient httpClient) throws XenonException {
-        Sandbox sandbox = request.toSandbox(xenon.files(), sandboxRootPath, null);
+        return submitJob(request, httpClient, null);
+    }
+
+    /**
+     * Submit a job request of a client.
+     *
+     * @param request
+     *            The job request
+     * @param httpClient
+     *            http client used to reporting status to job callback.
+     * @param client
+     *            Identifier of client used to limit its submission rate, null to not limit it
+     * @return SandboxedJob job
+     *
+     * @throws XenonException If staging file or submit job failed
+     * @throws IllegalArgumentException When request names an unknown scheduler
+     * @throws AdmissionException When a submission limit has been reached
+     */
+    public SandboxedJob submitJob(JobSubmitRequest request, HttpClient httpClient, String client)
+            throws XenonException {
+        SchedulerBackend backend = route(request);
+        long stagingSize = admit(request, client);
+        SandboxedJob sjob = null;
+        try {
+            Sandbox sandbox = request.toSandbox(xenon.files(), backend.getSandboxRootPath(), null);
+
+            Job job = stageAndSubmit(request, sandbox, backend);
+
+            // scheduler job identifiers are only unique within a scheduler
+            sjob = new SandboxedJob(UUID.randomUUID().toString(), sandbox, job, request, httpClient);
+        } finally {
+            if (admission != null) {
+                admission.stagingFinished(stagingSize);
+                if (sjob == null) {
+                    admission.cancel();
+                }
+            }
+        }
+
+        // store job in jobs map
+        jobs.put(sjob.getIdentifier(), sjob);
+        track(sjob, backend, true);
+
+        // JobsPoller will poll job status and download sandbox when job is done.
+
+        return sjob;
+    }
+
+    /**
+     * @return true when jobs should be submitted with {@link #submitJobAsync(JobSubmitRequest, HttpClient)}.
+     */
+    public boolean isAsyncSubmit() {
+        return configuration.getStaging().isAsync();
+    }
 
+    /**
+     * Submit a job request in the background.
+     *
+     * Returns directly with a job in {@link SandboxedJob#STAGING} state.
+     * Staging of input files and submission to the scheduler is done by the staging thread pool.
+     *
+     * @param request
+     *            The job request
+     * @param httpClient
+     *            http client used to reporting status to job callback.
+     * @return SandboxedJob job
+     * @throws RejectedExecutionException when staging queue is full
+     * @throws IllegalArgumentException When request names an unknown scheduler
+     * @throws AdmissionException When a submission limit has been reached
+     */
+    public SandboxedJob submitJobAsync(JobSubmitRequest request, HttpClient httpClient) {
+        return submitJobAsync(request, httpClient, null);
+    }
+
+    /**
+     * Submit a job request of a client in the background.
+     *
+     * @param request
+     *            The job request
+     * @param httpClient
+     *            http client used to reporting status to job callback.
+     * @param client
+     *            Identifier of client used to limit its submission rate, null to not limit it
+     * @return SandboxedJob job
+     * @throws RejectedExecutionException when staging queue is full
+     * @throws IllegalArgumentException When request names an unknown scheduler
+     * @throws AdmissionException When a submission limit has been reached
+     */
+    public SandboxedJob submitJobAsync(JobSubmitRequest request, HttpClient httpClient, String client) {
+        SchedulerBackend backend = route(request);
+        final long stagingSize = admit(request, client);
+        final SandboxedJob sjob = new SandboxedJob(UUID.randomUUID().toString(), request, httpClient);
+        jobs.put(sjob.getIdentifier(), sjob);
+        // staging could change job before it is registered
+        attach(sjob);
+        try {
+            stagingEngine.submit(new Runnable() {
+                public void run() {
+                    try {
+                        stageJob(sjob);
+                    } finally {
+                        if (admission != null) {
+                            admission.stagingFinished(stagingSize);
+                        }
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            jobs.remove(sjob.getIdentifier());
+            if (admission != null) {
+                admission.stagingFinished(stagingSize);
+                admission.cancel();
+            }
+            throw e;
+        }
+        register(sjob, backend, true);
+        return sjob;
+    }
+
+    /**
+     * Reserves an active job slot and staging bytes for a request.
+     *
+     * @param request The job request
+     * @param client Identifier of client, can be null
+     * @return Reserved staging bytes, to be released when staging has finished
+     * @throws AdmissionException When a submission limit has been reached
+     */
+    private long admit(JobSubmitRequest request, String client) {
+        if (admission == null) {
+            return 0;
+        }
+        long stagingSize = 0;
+        if (configuration.getAdmission().getMaxStagingBytes() > 0) {
+            stagingSize = AdmissionController.getStagingSize(request);
+        }
+        admission.admit(client, stagingSize);
+        return stagingSize;
+    }
+
+    /**
+     * Selects scheduler for a request.
+     *
+     * When the request does not name a scheduler, the first scheduler whose rules match the request is used
+     * and its name is stored in the request, so the job stays on that scheduler after a restart.
+     * When no rule matches, the default scheduler is used.
+     *
+     * With load balancing enabled the load balancer selects from the schedulers whose rules match the request,
+     * or from all schedulers when no rule matches.
+     *
+     * @param request The job request
+     * @return Scheduler to submit job to
+     * @throws IllegalArgumentException When request names an unknown scheduler
+     */
+    protected SchedulerBackend route(JobSubmitRequest request) {
+        if (request.scheduler != null) {
+            SchedulerBackend backend = backends.get(request.scheduler);
+            if (backend == null) {
+                throw new IllegalArgumentException("Unknown scheduler: " + request.scheduler);
+            }
+            return backend;
+        }
+        if (loadBalancer != null) {
+            return routeByLoad(request);
+        }
+        for (SchedulerBackend backend : backends.values()) {
+            if (backend.matches(request)) {
+                request.scheduler = backend.getName();
+                return backend;
+            }
+        }
+        return defaultBackend;
+    }
+
+    private SchedulerBackend routeByLoad(JobSubmitRequest request) {
+        List<SchedulerBackend> candidates = new ArrayList<SchedulerBackend>();
+        for (SchedulerBackend backend : backends.values()) {
+            if (backend.matches(request)) {
+                candidates.add(backend);
+            }
+        }
+        if (candidates.isEmpty()) {
+            candidates.addAll(backends.values());
+        }
+        SchedulerBackend backend = loadBalancer.select(candidates);
+        if (backend != defaultBackend) {
+            request.scheduler = backend.getName();
+        }
+        return backend;
+    }
+
+    /**
+     * @param request Routed job request
+     * @return Scheduler the request was routed to or null when the scheduler is no longer configured
+     */
+    private SchedulerBackend getBackend(JobSubmitRequest request) {
+        if (request == null || request.scheduler == null) {
+            return defaultBackend;
+        }
+        return backends.get(request.scheduler);
+    }
+
+    /**
+     * Persists job when a job store is configured, counts it as active job when submissions are limited,
+     * lets watchers see its changes and registers job with poller of its scheduler.
+     *
+     * @param sjob Job which has been added to jobs map
+     * @param backend Scheduler of job
+     * @param admitted true when job was admitted by admission control, false for a recovered job
+     */
+    private void track(SandboxedJob sjob, SchedulerBackend backend, boolean admitted) {
+        attach(sjob);
+        register(sjob, backend, admitted);
+    }
+
+    /**
+     * Lets job report its changes to its callback and to the job listener.
+     *
+     * @param sjob Job
+     */
+    private void attach(SandboxedJob sjob) {
+        sjob.setCallbackDispatcher(callbackDispatcher);
+        sjob.setListener(jobListener);
+    }
+
+    /**
+     * Counts job as active job and registers it with poller of its scheduler.
+     *
+     * @param sjob Job which has been attached, see {@link #attach(SandboxedJob)}
+     * @param backend Scheduler of job
+     * @param admitted true when job was admitted by admission control, false for a recovered job
+     */
+    private void register(SandboxedJob sjob, SchedulerBackend backend, boolean admitted) {
+        if (admission != null) {
+            admission.jobActive(sjob.getIdentifier(), admitted);
+        }
+        // job could have changed before it had a listener
+        jobListener.jobChanged(sjob);
+        backend.getPoller().register(sjob);
+    }
+
+    /**
+     * Recovers jobs from job store.
+     *
+     * Jobs which are still known by the scheduler are polled again.
+     * Jobs which finished while the service was not running have their output files downloaded and get an UNKNOWN state,
+     * as their exit code is no longer available.
+     * Jobs which were staging are marked as failed.
+     * Jobs of a scheduler which is no longer configured are marked as failed.
+     * Active jobs of a scheduler whose jobs could not be listed get an UNKNOWN state, other schedulers are not affected.
+     * Finished jobs are restored in compacted form.
+     *
+     * @throws IOException if job store could not be read
+     * @throws XenonException if sandbox of job could not be restored
+     */
+    protected void recoverJobs() throws IOException, XenonException {
+        Collection<JobRecord> records = jobStore.load();
+        if (records.isEmpty()) {
+            return;
+        }
+        Map<String, Map<String, Job>> schedulerJobs = new HashMap<String, Map<String, Job>>();
+        for (SchedulerBackend backend : backends.values()) {
+            Map<String, Job> backendJobs = new HashMap<String, Job>();
+            try {
+                for (Job job : xenon.jobs().getJobs(backend.getScheduler(), backend.getQueue())) {
+                    backendJobs.put(job.getIdentifier(), job);
+                }
+            } catch (XenonException e) {
+                LOGGER.error("Unable to list jobs of scheduler " + backend.getName() + ": " + e.getMessage(), e);
+                continue;
+            }
+            schedulerJobs.put(backend.getName(), backendJobs);
+        }
+        for (JobRecord record : records) {
+            SchedulerBackend backend = getBackend(record.getRequest());
+            if (record.isCompacted()) {
+                recoverCompactedJob(record);
+            } else if (backend == null) {
+                recoverOrphanedJob(record);
+            } else if (!schedulerJobs.containsKey(backend.getName()) && !record.isDone()) {
+                recoverUnreachableJob(record, backend);
+            } else if (!schedulerJobs.containsKey(backend.getName())) {
+                // poststaging of done job does not need the scheduler
+                recoverJob(record, backend, new HashMap<String, Job>());
+            } else {
+                recoverJob(record, backend, schedulerJobs.get(backend.getName()));
+            }
+        }
+        LOGGER.info("Recovered " + records.size() + " jobs from job store");
+    }
+
+    /**
+     * Records written before the creation time was stored keep the time of recovery.
+     */
+    private void restoreCreatedAt(SandboxedJob sjob, JobRecord record) {
+        if (record.getCreatedAt() > 0) {
+            sjob.setCreatedAt(record.getCreatedAt());
+        }
+    }
+
+    private void recoverCompactedJob(JobRecord record) {
+        SandboxedJob sjob = SandboxedJob.compacted(record.getIdentifier(), record.getRequestDigest(),
+                record.toJobStatus(null));
+        restoreCreatedAt(sjob, record);
+        jobs.put(sjob.getIdentifier(), sjob);
+        track(sjob, defaultBackend, false);
+    }
+
+    /**
+     * The state of a job of a scheduler whose jobs could not be listed is unknown.
+     * Its sandbox is left alone, as the job could still be running.
+     */
+    private void recoverUnreachableJob(JobRecord record, SchedulerBackend backend) {
+        JobStatus status = new JobStatusImplementation(null, "UNKNOWN", null,
+                new Exception("Unable to list jobs of scheduler " + backend.getName() + " when service started"), false,
+                true, null);
+        SandboxedJob sjob = new SandboxedJob(record.getIdentifier(), null, null, record.getRequest(), httpClient, status);
+        restoreCreatedAt(sjob, record);
+        jobs.put(sjob.getIdentifier(), sjob);
+        track(sjob, backend, false);
+    }
+
+    private void recoverOrphanedJob(JobRecord record) {
+        LOGGER.error("Scheduler " + record.getRequest().scheduler + " of job " + record.getIdentifier()
+                + " is no longer configured");
+        JobStatus status = record.toJobStatus(null);
+        if (!record.isDone()) {
+            status = new JobStatusImplementation(null, "ERROR", null,
+                    new Exception("Scheduler " + record.getRequest().scheduler + " is no longer configured"), false, true,
+                    null);
+        }
+        SandboxedJob sjob = new SandboxedJob(record.getIdentifier(), null, null, record.getRequest(), httpClient, status);
+        restoreCreatedAt(sjob, record);
+        jobs.put(sjob.getIdentifier(), sjob);
+        track(sjob, defaultBackend, false);
+    }
+
+    private void recoverJob(JobRecord record, SchedulerBackend backend, Map<String, Job> schedulerJobs)
+            throws XenonException {
+        Sandbox sandbox = null;
+        if (record.getSandboxName() != null) {
+            sandbox = record.getRequest().toSandbox(xenon.files(), backend.getSandboxRootPath(), record.getSandboxName());
+        }
+        Job job = null;
+        if (record.getSchedulerJobIdentifier() != null) {
+            job = schedulerJobs.get(record.getSchedulerJobIdentifier());
+        }
+        SandboxedJob sjob = new SandboxedJob(record.getIdentifier(), sandbox, job, record.getRequest(), httpClient,
+                record.toJobStatus(job));
+        restoreCreatedAt(sjob, record);
+        boolean poststaging = record.isDone() && record.getPseudoState() != null;
+        if (poststaging) {
+            // keep job active, so it is not compacted before its sandbox is downloaded
+            sjob.startPseudoState(record.getPseudoState(), sjob.getStatus());
+        }
+        jobs.put(sjob.getIdentifier(), sjob);
+        track(sjob, backend, false);
+
+        if (!poststaging && (record.isDone() || job != null)) {
+            return;
+        }
+        try {
+            if (poststaging) {
+                LOGGER.info("Job " + sjob.getIdentifier() + " was " + record.getPseudoState() + " when service stopped");
+                if (SandboxedJob.DOWNLOADING.equals(record.getPseudoState())) {
+                    backend.getPoller().finishJob(sjob.getStatus(), sjob);
+                } else {
+                    sjob.cleanSandbox();
+                    sjob.endPseudoState(sjob.getStatus());
+                }
+            } else if (record.getSchedulerJobIdentifier() == null) {
+                LOGGER.info("Job " + sjob.getIdentifier() + " was staging when service stopped");
+                sjob.cleanSandbox();
+                sjob.setStatus(new JobStatusImplementation(null, "ERROR", null,
+                        new Exception("Service stopped while staging job"), false, true, null));
+            } else {
+                LOGGER.info("Job " + sjob.getIdentifier() + " finished while service was not running");
+                backend.getPoller().finishJob(new JobStatusImplementation(null, "UNKNOWN", null,
+                        new Exception("Job finished while service was not running, exit code is unknown"), false, true,
+                        null), sjob);
+            }
+        } catch (IOException e) {
+            LOGGER.error(e.getMessage(), e);
+        } catch (XenonException e) {
+            LOGGER.error(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Stages and submits a job which is in {@link SandboxedJob#STAGING} state.
+     *
+     * When staging or submission fails the job gets a done status with the exception.
+     *
+     * @param sjob The job
+     */
+    protected void stageJob(SandboxedJob sjob) {
+        if (!sjob.isStaging()) {
+            // canceled while waiting in queue
+            return;
+        }
+        Sandbox sandbox = null;
+        try {
+            SchedulerBackend backend = getBackend(sjob.getRequest());
+            sandbox = sjob.getRequest().toSandbox(xenon.files(), backend.getSandboxRootPath(), null);
+            Job job = stageAndSubmit(sjob.getRequest(), sandbox, backend);
+            if (!sjob.setSubmitted(sandbox, job)) {
+                // canceled while staging
+                LOGGER.debug("Job canceled while staging: " + sjob.getIdentifier());
+                xenon.jobs().cancelJob(job);
+                sandbox.delete();
+            }
+        } catch (Exception e) {
+            LOGGER.error("Staging of job " + sjob.getIdentifier() + " failed: " + e.getMessage(), e);
+            cleanFailedStaging(sandbox);
+            try {
+                sjob.abortStaging(new JobStatusImplementation(null, "ERROR", null, e, false, true, null));
+            } catch (IOException e1) {
+                LOGGER.error(e1.getMessage(), e1);
+            }
+        }
+    }
+
+    private void cleanFailedStaging(Sandbox sandbox) {
+        if (sandbox != null) {
+            try {
+                sandbox.delete();
+            } catch (XenonException e) {
+                LOGGER.error(e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Uploads input files to sandbox and submits job to scheduler.
+     *
+     * @param request The job request
+     * @param sandbox The sandbox of the job
+     * @param backend The scheduler to submit job to
+     * @return Job submitted to scheduler
+     * @throws XenonException If staging file or submit job failed
+     */
+    protected Job stageAndSubmit(JobSubmitRequest request, Sandbox sandbox, SchedulerBackend backend)
+            throws XenonException {
         // create job description
         JobDescription description = request.toJobDescription();
-        description.setQueueName(configuration.getScheduler().getQueue());
+        description.setQueueName(backend.getQueue());
         description.setWorkingDirectory(sandbox.getPath().getRelativePath().getAbsolutePath());
         long cancelTimeout = configuration.getPoll().getCancelTimeout();
         // CancelTimeout is in milliseconds and MaxTime must be in minutes, so convert it
@@ -173,18 +898,22 @@ public class XenonManager implements Managed {
         description.setMaxTime(maxTime);
 
         // stage input files
-        sandbox.upload();
+        if (stagingEngine != null) {
+            stagingEngine.upload(sandbox);
+        } else {
+            sandbox.upload();
+        }
 
         // submit job
-        Job job = xenon.jobs().submitJob(scheduler, description);
-
-        // store job in jobs map
-        SandboxedJob sjob = new SandboxedJob(sandbox, job, request, httpClient);
-        jobs.put(sjob.getIdentifier(), sjob);
-
-        // JobsPoller will poll job status and download sandbox when job is done.
-
-        return sjob;
+        long start = System.nanoTime();
+        try {
+            Job job = xenon.jobs().submitJob(backend.getScheduler(), description);
+            backend.getLoad().recordSubmit(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), false);
+            return job;
+        } catch (XenonException e) {
+            backend.getLoad().recordSubmit(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), true);
+            throw e;
+        }
     }
 
     /**
@@ -204,6 +933,16 @@ public class XenonManager implements Managed {
      */
     public void cancelJob(String jobIdentifier) throws XenonException, IOException {
         SandboxedJob job = getJob(jobIdentifier);
+        // when job is still staging then the staging thread will clean up sandbox and scheduler job
+        JobStatus stagingCanceledStatus =
+                new JobStatusImplementation(null, "KILLED", null, new Exception("Process cancelled by user."), false, true, null);
+        if (job.abortStaging(stagingCanceledStatus)) {
+            return;
+        }
+        if (job.getPseudoState() != null) {
+            // job is done and its output files are being downloaded
+            return;
+        }
         // no need to cancel completed jobs
         JobStatus status = job.getStatus();
         if (status == null || !status.isDone()) {
@@ -226,6 +965,59 @@ public class XenonManager implements Managed {
         return jobs.values();
     }
 
+    /**
+     * Get submitted jobs ordered by identifier, starting after a cursor.
+     *
+     * The returned collection is a live view, so it can be iterated without copying all jobs.
+     *
+     * @param cursor Identifier of last job of previous page or null to start at first job
+     * @return Jobs with an identifier greater than the cursor
+     */
+    public Collection<SandboxedJob> getJobsAfter(String cursor) {
+        NavigableMap<String, SandboxedJob> sortedJobs;
+        if (jobs instanceof NavigableMap) {
+            sortedJobs = (NavigableMap<String, SandboxedJob>) jobs;
+        } else {
+            sortedJobs = new TreeMap<String, SandboxedJob>(jobs);
+        }
+        if (cursor == null) {
+            return sortedJobs.values();
+        }
+        return sortedJobs.tailMap(cursor, false).values();
+    }
+
+    /**
+     * @return Interval in milliseconds at which the job poller runs, the minimum interval in adaptive poll mode
+     */
+    public long getPollInterval() {
+        PollConfiguration pollConf = configuration.getPoll();
+        if (pollConf.isAdaptive()) {
+            return pollConf.getMinInterval();
+        }
+        return pollConf.getInterval();
+    }
+
+    /**
+     * @return Watcher of job changes
+     */
+    public JobWatcher getWatcher() {
+        return watcher;
+    }
+
+    /**
+     * @return Recent changes of jobs
+     */
+    public ChangeFeed getChangeFeed() {
+        return changeFeed;
+    }
+
+    /**
+     * @return Names of configured schedulers
+     */
+    public Collection<String> getSchedulerNames() {
+        return backends.keySet();
+    }
+
     /**
      * Get a job
      *
@@ -19,13 +19,13 @@
  */
 package nl.esciencecenter.osmium.mac;
 
-import java.math.BigInteger;
 import java.net.URI;
 import java.nio.charset.StandardCharsets;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
-import java.security.SecureRandom;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Random;
 import java.util.concurrent.TimeUnit;
@@ -65,14 +65,26 @@ public class MacScheme implements ContextAwareAuthScheme {
 
     private static final int HTTP_PORT = 80;
     private static final int HTTPS_PORT = 443;
+    /**
+     * Initialized Mac instances of the current thread, keyed by algorithm and key.
+     *
+     * Mac instances are not thread safe, but can be reused after doFinal, so each thread keeps one per credential.
+     */
+    private static final ThreadLocal<Map<String, Mac>> MACS = new ThreadLocal<Map<String, Mac>>() {
+        @Override
+        protected Map<String, Mac> initialValue() {
+            return new HashMap<String, Mac>();
+        }
+    };
     /**
      * Used to generate timestamp in Auth header.
      */
     private Date date = new Date();
     /**
      * Used to generate nonce in Auth header.
+     * When null the buffered random source of the current thread is used.
      */
-    private Random random = new SecureRandom();
+    private Random random = null;
 
     public void processChallenge(Header header)
             throws MalformedChallengeException {
@@ -132,11 +144,12 @@ public class MacScheme implements ContextAwareAuthScheme {
 
     private String headerValue(String id, Long timestamp, String nonce,
             String request_mac) {
-        String headerValue = "MAC id=\"" + id + "\",";
-        headerValue += "ts=\"" + timestamp + "\",";
-        headerValue += "nonce=\"" + nonce + "\",";
-        headerValue += "mac=\"" + request_mac + "\"";
-        return headerValue;
+        StringBuilder headerValue = new StringBuilder(128);
+        headerValue.append("MAC id=\"").append(id).append("\",");
+        headerValue.append("ts=\"").append(timestamp).append("\",");
+        headerValue.append("nonce=\"").append(nonce).append("\",");
+        headerValue.append("mac=\"").append(request_mac).append('"');
+        return headerValue.toString();
     }
 
     /**
@@ -152,20 +165,39 @@ public class MacScheme implements ContextAwareAuthScheme {
      * @throws AuthenticationException
      *             when signature generation fails
      */
-    private String calculateRFC2104HMAC(String data, String key,
+    static String calculateRFC2104HMAC(String data, String key,
             String algorithm) throws AuthenticationException {
-        try {
-            Mac mac = Mac.getInstance(algorithm);
-            SecretKeySpec macKey = new SecretKeySpec(key.getBytes(StandardCharsets.US_ASCII), "RAW");
-            mac.init(macKey);
-            byte[] signature = mac.doFinal(data.getBytes(StandardCharsets.US_ASCII));
-            return Base64.encodeBase64String(signature);
-        } catch (InvalidKeyException e) {
-            throw new AuthenticationException("Failed to generate HMAC: "
-                    + e.getMessage(), e);
-        } catch (NoSuchAlgorithmException e) {
-            throw new AuthenticationException("Algorithm is not supported", e);
+        Mac mac = getMac(key, algorithm);
+        byte[] signature = mac.doFinal(data.getBytes(StandardCharsets.US_ASCII));
+        return Base64.encodeBase64String(signature);
+    }
+
+    /**
+     * Returns Mac of current thread initialized with `key`, creating it on first use.
+     *
+     * @param key The signing key
+     * @param algorithm MAC algorithm implemented by javax.crypto.MAC
+     * @return Initialized Mac
+     * @throws AuthenticationException when Mac can not be created
+     */
+    static Mac getMac(String key, String algorithm) throws AuthenticationException {
+        Map<String, Mac> macs = MACS.get();
+        String cacheKey = algorithm + '\n' + key;
+        Mac mac = macs.get(cacheKey);
+        if (mac == null) {
+            try {
+                mac = Mac.getInstance(algorithm);
+                SecretKeySpec macKey = new SecretKeySpec(key.getBytes(StandardCharsets.US_ASCII), "RAW");
+                mac.init(macKey);
+            } catch (InvalidKeyException e) {
+                throw new AuthenticationException("Failed to generate HMAC: "
+                        + e.getMessage(), e);
+            } catch (NoSuchAlgorithmException e) {
+                throw new AuthenticationException("Algorithm is not supported", e);
+            }
+            macs.put(cacheKey, mac);
         }
+        return mac;
     }
 
     private String getNormalizedRequestString(HttpUriRequest request,
@@ -177,19 +209,34 @@ public class MacScheme implements ContextAwareAuthScheme {
             uri = ((HttpUriRequest) ((RequestWrapper) request).getOriginal())
                     .getURI();
         }
-        String normalized_request_string = timestamp + "\n";
-        normalized_request_string += nonce + "\n";
-        normalized_request_string += request.getMethod() + "\n";
-        normalized_request_string += uri.getPath() + "\n";
-        normalized_request_string += uri.getHost().toLowerCase() + "\n";
-        normalized_request_string += getPort(uri) + "\n";
-        normalized_request_string += "" + "\n";
-        return normalized_request_string;
+        return getNormalizedRequestString(request.getMethod(), uri, nonce, timestamp);
+    }
+
+    /**
+     * Normalized request string which is signed, see section 3.2.1 of the MAC Access Authentication draft.
+     *
+     * @param method HTTP method of request
+     * @param uri Absolute uri of request
+     * @param nonce Nonce of request
+     * @param timestamp Timestamp of request in seconds
+     * @return Normalized request string
+     */
+    static String getNormalizedRequestString(String method, URI uri, String nonce, long timestamp) {
+        StringBuilder normalized_request_string = new StringBuilder(128);
+        normalized_request_string.append(timestamp).append('\n');
+        normalized_request_string.append(nonce).append('\n');
+        normalized_request_string.append(method).append('\n');
+        normalized_request_string.append(uri.getPath()).append('\n');
+        normalized_request_string.append(uri.getHost().toLowerCase()).append('\n');
+        normalized_request_string.append(getPort(uri)).append('\n');
+        // empty ext
+        normalized_request_string.append('\n');
+        return normalized_request_string.toString();
     }
 
     /**
      * Random getter
-     * @return Random
+     * @return Random or null when the random source of the current thread is used
      */
     public Random getRandom() {
         return random;
@@ -204,7 +251,10 @@ public class MacScheme implements ContextAwareAuthScheme {
     }
 
     private String getNonce() {
-        return new BigInteger(130, random).toString(32);
+        if (random == null) {
+            return NonceGenerator.current().next();
+        }
+        return NonceGenerator.nonce(random);
     }
 
     /**
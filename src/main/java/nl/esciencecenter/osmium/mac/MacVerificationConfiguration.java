@@ -0,0 +1,141 @@
+/*
+ * #%L
+ * Osmium
+ * %%
+ * Copyright (C) 2013 Nederlands eScience Center
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package nl.esciencecenter.osmium.mac;
+
+import javax.validation.constraints.Min;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.Objects;
+
+/**
+ * Verification of MAC Access Authentication of incoming requests.
+ *
+ * See {@link MacVerificationFilter}.
+ *
+ * @author verhoes
+ *
+ */
+public class MacVerificationConfiguration {
+    /**
+     * When true requests which change jobs, like POST /job and DELETE /job/{id},
+     * must be signed with one of the configured MAC credentials.
+     * Default false.
+     */
+    @JsonProperty
+    private boolean enabled = false;
+
+    /**
+     * Maximum difference in seconds between the timestamp of a request and the clock of the launcher.
+     * Nonces are remembered for this long.
+     * Default 300.
+     */
+    @Min(1)
+    @JsonProperty
+    private long maxClockSkew = 300;
+
+    /**
+     * Maximum number of nonces remembered to detect replayed requests.
+     * Signed requests are rejected while the cache is full of nonces which have not expired.
+     * Default 100000.
+     */
+    @Min(1)
+    @JsonProperty
+    private int replayCacheSize = 100000;
+
+    /**
+     * Number of independently locked parts of the replay cache.
+     * Default 16.
+     */
+    @Min(1)
+    @JsonProperty
+    private int replayCacheStripes = 16;
+
+    public MacVerificationConfiguration(boolean enabled, long maxClockSkew, int replayCacheSize) {
+        super();
+        this.enabled = enabled;
+        this.maxClockSkew = maxClockSkew;
+        this.replayCacheSize = replayCacheSize;
+    }
+
+    public MacVerificationConfiguration() {
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public long getMaxClockSkew() {
+        return maxClockSkew;
+    }
+
+    public void setMaxClockSkew(long maxClockSkew) {
+        this.maxClockSkew = maxClockSkew;
+    }
+
+    public int getReplayCacheSize() {
+        return replayCacheSize;
+    }
+
+    public void setReplayCacheSize(int replayCacheSize) {
+        this.replayCacheSize = replayCacheSize;
+    }
+
+    public int getReplayCacheStripes() {
+        return replayCacheStripes;
+    }
+
+    public void setReplayCacheStripes(int replayCacheStripes) {
+        this.replayCacheStripes = replayCacheStripes;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(enabled, maxClockSkew, replayCacheSize, replayCacheStripes);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == null) {
+            return false;
+        }
+        if (getClass() != obj.getClass()) {
+            return false;
+        }
+        MacVerificationConfiguration other = (MacVerificationConfiguration) obj;
+        return Objects.equal(this.enabled, other.enabled)
+                && Objects.equal(this.maxClockSkew, other.maxClockSkew)
+                && Objects.equal(this.replayCacheSize, other.replayCacheSize)
+                && Objects.equal(this.replayCacheStripes, other.replayCacheStripes);
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                .addValue(this.enabled)
+                .addValue(this.maxClockSkew)
+                .addValue(this.replayCacheSize)
+                .addValue(this.replayCacheStripes)
+                .toString();
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * #%L
+ * Osmium
+ * %%
+ * Copyright (C) 2013 Nederlands eScience Center
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package nl.esciencecenter.osmium.mac;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+
+import org.apache.http.auth.AuthenticationException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableSet;
+import com.sun.jersey.spi.container.ContainerRequest;
+import com.sun.jersey.spi.container.ContainerRequestFilter;
+import com.yammer.metrics.core.Clock;
+
+/**
+ * Verifies MAC Access Authentication of incoming requests, the counterpart of {@link MacScheme}.
+ *
+ * Requests which do not change anything (GET, HEAD and OPTIONS, and POST /job/status which only reads statuses)
+ * are not verified.
+ * Other requests must have an Authorization header signed with the key of one of the credentials,
+ * a timestamp within the maximum clock skew and a nonce which has not been used before.
+ * Requests which fail verification are rejected with 401 Unauthorized.
+ * When the nonce can not be remembered, because the replay cache is full of nonces which have not expired,
+ * the request is rejected with 503 Service Unavailable, as it is authentic and can be retried later.
+ *
+ * @author verhoes
+ */
+public class MacVerificationFilter implements ContainerRequestFilter {
+    protected static final Logger LOGGER = LoggerFactory.getLogger(MacVerificationFilter.class);
+    private static final Pattern ATTRIBUTE = Pattern.compile("(\\w+)=\"([^\"]*)\"");
+    private static final String SCHEME_PREFIX = MacScheme.SCHEME_NAME + " ";
+    private static final ImmutableSet<String> SAFE_METHODS = ImmutableSet.of("GET", "HEAD", "OPTIONS");
+    /**
+     * Path of resource which reads statuses of many jobs with POST, as the identifiers do not fit in a query string.
+     */
+    private static final String STATUSES_PATH = "job/status";
+    static final String REPLAY_CACHE_FULL = "MAC replay cache full";
+    static final int REPLAY_CACHE_RETRY_AFTER = 1;
+
+    private final Map<String, MacCredential> credentials = new HashMap<String, MacCredential>();
+    private final NonceCache nonces;
+    private final long maxClockSkew;
+    private final Clock clock;
+
+    /**
+     * @param configuration Verification configuration
+     * @param macs Credentials which can sign requests, looked up by their id
+     */
+    public MacVerificationFilter(MacVerificationConfiguration configuration, Collection<MacCredential> macs) {
+        this(configuration, macs, Clock.defaultClock());
+    }
+
+    protected MacVerificationFilter(MacVerificationConfiguration configuration, Collection<MacCredential> macs, Clock clock) {
+        for (MacCredential mac : macs) {
+            credentials.put(mac.getId(), mac);
+        }
+        this.nonces = new NonceCache(configuration.getReplayCacheSize(), configuration.getReplayCacheStripes());
+        this.maxClockSkew = TimeUnit.SECONDS.toMillis(configuration.getMaxClockSkew());
+        this.clock = clock;
+    }
+
+    public ContainerRequest filter(ContainerRequest request) {
+        if (SAFE_METHODS.contains(request.getMethod())
+                || ("POST".equals(request.getMethod()) && STATUSES_PATH.equals(request.getPath()))) {
+            return request;
+        }
+        String reason = verify(request.getMethod(), request.getRequestUri(),
+                request.getHeaderValue(HttpHeaders.AUTHORIZATION));
+        if (REPLAY_CACHE_FULL.equals(reason)) {
+            LOGGER.warn("Rejected " + request.getMethod() + " " + request.getRequestUri() + ": " + reason);
+            throw new WebApplicationException(Response.status(Status.SERVICE_UNAVAILABLE)
+                    .header("Retry-After", REPLAY_CACHE_RETRY_AFTER).build());
+        }
+        if (reason != null) {
+            LOGGER.info("Rejected " + request.getMethod() + " " + request.getRequestUri() + ": " + reason);
+            throw new WebApplicationException(Response.status(Status.UNAUTHORIZED)
+                    .header(HttpHeaders.WWW_AUTHENTICATE, MacScheme.SCHEME_NAME).build());
+        }
+        return request;
+    }
+
+    /**
+     * Verifies MAC Authorization header of request.
+     *
+     * @param method HTTP method of request
+     * @param uri Absolute uri of request
+     * @param authorization Authorization header value, can be null
+     * @return null when request is authentic, otherwise reason why it is not
+     */
+    String verify(String method, URI uri, String authorization) {
+        if (authorization == null || !authorization.startsWith(SCHEME_PREFIX)) {
+            return "No MAC authorization";
+        }
+        Map<String, String> attributes = parseAttributes(authorization.substring(SCHEME_PREFIX.length()));
+        String id = attributes.get("id");
+        String ts = attributes.get("ts");
+        String nonce = attributes.get("nonce");
+        String mac = attributes.get("mac");
+        if (id == null || ts == null || nonce == null || mac == null) {
+            return "Incomplete MAC authorization";
+        }
+        MacCredential credential = credentials.get(id);
+        if (credential == null) {
+            return "Unknown MAC id";
+        }
+        long timestamp;
+        try {
+            timestamp = Long.parseLong(ts);
+        } catch (NumberFormatException e) {
+            return "Invalid MAC timestamp";
+        }
+        long now = clock.time();
+        long requestTime = TimeUnit.SECONDS.toMillis(timestamp);
+        if (Math.abs(now - requestTime) > maxClockSkew) {
+            return "MAC timestamp outside allowed clock skew";
+        }
+
+        String expected;
+        try {
+            String data = MacScheme.getNormalizedRequestString(method, uri, nonce, timestamp);
+            expected = MacScheme.calculateRFC2104HMAC(data, credential.getKey(),
+                    MacScheme.algorithmMapper(credential.getAlgorithm()));
+        } catch (AuthenticationException e) {
+            return e.getMessage();
+        }
+        if (!MessageDigest.isEqual(expected.getBytes(StandardCharsets.US_ASCII), mac.getBytes(StandardCharsets.US_ASCII))) {
+            return "Invalid MAC";
+        }
+
+        // only remember nonces of authentic requests, so forged requests can not fill the cache
+        NonceCache.Result result = nonces.add(id + '\n' + ts + '\n' + nonce, requestTime + maxClockSkew, now);
+        if (result == NonceCache.Result.REPLAYED) {
+            return "Replayed MAC nonce";
+        }
+        if (result == NonceCache.Result.FULL) {
+            // a nonce which can not be remembered could be replayed
+            return REPLAY_CACHE_FULL;
+        }
+        return null;
+    }
+
+    private static Map<String, String> parseAttributes(String value) {
+        Map<String, String> attributes = new HashMap<String, String>();
+        Matcher matcher = ATTRIBUTE.matcher(value);
+        while (matcher.find()) {
+            attributes.put(matcher.group(1), matcher.group(2));
+        }
+        return attributes;
+    }
+
+    /**
+     * @return Replay cache
+     */
+    public NonceCache getNonces() {
+        return nonces;
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * #%L
+ * Osmium
+ * %%
+ * Copyright (C) 2013 Nederlands eScience Center
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package nl.esciencecenter.osmium.mac;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounded cache of recently seen nonces, used to detect replayed requests.
+ *
+ * Nonces are spread over stripes which are locked independently.
+ * Each stripe keeps its nonces in the order they were added, so expired nonces are removed from the head of the stripe
+ * in O(1) each when a nonce is added.
+ * When a stripe is still full, the nonce is rejected instead of evicting a nonce which has not expired,
+ * as an evicted nonce could be replayed.
+ * The memory used is bounded by the capacity.
+ *
+ * @author verhoes
+ */
+public class NonceCache {
+    protected static final Logger LOGGER = LoggerFactory.getLogger(NonceCache.class);
+
+    /**
+     * Outcome of adding a nonce.
+     */
+    public enum Result {
+        /** Nonce was not seen before and is remembered */
+        ADDED,
+        /** Nonce was already seen and is not expired */
+        REPLAYED,
+        /** Nonce could not be remembered, as its stripe is full of nonces which have not expired */
+        FULL
+    }
+
+    private final Stripe[] stripes;
+
+    /**
+     * @param capacity Maximum number of nonces remembered
+     * @param nrStripes Number of independently locked stripes
+     */
+    public NonceCache(int capacity, int nrStripes) {
+        int stripeCapacity = Math.max(1, (capacity + nrStripes - 1) / nrStripes);
+        stripes = new Stripe[nrStripes];
+        for (int i = 0; i < nrStripes; i++) {
+            stripes[i] = new Stripe(stripeCapacity);
+        }
+    }
+
+    /**
+     * Remembers nonce until it expires.
+     *
+     * @param nonce Nonce to remember
+     * @param expiresAt Time in milliseconds after which the nonce can be forgotten
+     * @param now Current time in milliseconds
+     * @return Whether nonce was added, replayed or could not be remembered
+     */
+    public Result add(String nonce, long expiresAt, long now) {
+        Stripe stripe = stripes[(nonce.hashCode() & Integer.MAX_VALUE) % stripes.length];
+        synchronized (stripe) {
+            Long previous = stripe.get(nonce);
+            if (previous != null && previous >= now) {
+                return Result.REPLAYED;
+            }
+            if (previous != null) {
+                // re-add so it moves to the tail of the stripe
+                stripe.remove(nonce);
+            }
+            stripe.removeExpired(now);
+            if (stripe.size() >= stripe.capacity) {
+                LOGGER.warn("Replay cache full, rejecting nonce");
+                return Result.FULL;
+            }
+            stripe.put(nonce, expiresAt);
+            return Result.ADDED;
+        }
+    }
+
+    /**
+     * @return Number of nonces remembered, including expired nonces which have not been removed yet
+     */
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Nonces with their expiration time, in the order they were added.
+     */
+    private static class Stripe extends LinkedHashMap<String, Long> {
+        private static final long serialVersionUID = 1L;
+        private final int capacity;
+
+        public Stripe(int capacity) {
+            super(Math.min(capacity, 1024));
+            this.capacity = capacity;
+        }
+
+        /**
+         * Removes expired nonces from the head of the stripe.
+         *
+         * Stops at the first nonce which has not expired, so the amortized cost per added nonce is O(1).
+         * The expiration time of a nonce is its timestamp plus the maximum clock skew,
+         * so nonces are added nearly in expiration order and
+         * an expired nonce stays behind an unexpired one for at most twice the maximum clock skew.
+         *
+         * @param now Current time in milliseconds
+         */
+        void removeExpired(long now) {
+            Iterator<Map.Entry<String, Long>> iter = entrySet().iterator();
+            while (iter.hasNext() && iter.next().getValue() < now) {
+                iter.remove();
+            }
+        }
+    }
+}
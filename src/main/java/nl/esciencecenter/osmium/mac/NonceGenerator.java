@@ -0,0 +1,126 @@
+/*
+ * #%L
+ * Osmium
+ * %%
+ * Copyright (C) 2013 Nederlands eScience Center
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package nl.esciencecenter.osmium.mac;
+
+import java.security.SecureRandom;
+import java.util.Random;
+
+/**
+ * Generates random nonces of 130 bits written as radix 32 number.
+ *
+ * The output is the same as <code>new BigInteger(130, random).toString(32)</code>, but is encoded without BigInteger.
+ *
+ * Each thread has its own generator, which draws random bytes from its own {@link SecureRandom} in bulk,
+ * so signing threads do not contend on a shared random source.
+ *
+ * @author verhoes
+ */
+public class NonceGenerator {
+    /** Number of random bits in a nonce */
+    public static final int NONCE_BITS = 130;
+    /** Number of random bytes needed for a nonce */
+    public static final int NONCE_BYTES = (NONCE_BITS + 7) / 8;
+    private static final int BITS_PER_DIGIT = 5;
+    private static final int DIGITS = NONCE_BITS / BITS_PER_DIGIT;
+    private static final int DIGIT_MASK = (1 << BITS_PER_DIGIT) - 1;
+    private static final char[] ALPHABET = "0123456789abcdefghijklmnopqrstuv".toCharArray();
+    /** Number of nonces drawn from random source at once */
+    private static final int NONCES_PER_FILL = 64;
+
+    private static final ThreadLocal<NonceGenerator> GENERATORS = new ThreadLocal<NonceGenerator>() {
+        @Override
+        protected NonceGenerator initialValue() {
+            return new NonceGenerator(new SecureRandom());
+        }
+    };
+
+    private final Random random;
+    private final byte[] buffer = new byte[NONCE_BYTES * NONCES_PER_FILL];
+    private int position = buffer.length;
+
+    /**
+     * Generator which is not thread safe, use {@link #current()} to get a generator for current thread.
+     *
+     * @param random Source of random bytes
+     */
+    public NonceGenerator(Random random) {
+        this.random = random;
+    }
+
+    /**
+     * @return Generator of current thread
+     */
+    public static NonceGenerator current() {
+        return GENERATORS.get();
+    }
+
+    /**
+     * @return Next nonce from buffered random bytes
+     */
+    public String next() {
+        if (position == buffer.length) {
+            random.nextBytes(buffer);
+            position = 0;
+        }
+        String nonce = encode(buffer, position);
+        position += NONCE_BYTES;
+        return nonce;
+    }
+
+    /**
+     * Nonce from `random`, draws exactly as much bytes as {@link java.math.BigInteger#BigInteger(int, Random)}.
+     *
+     * @param random Source of random bytes
+     * @return Nonce
+     */
+    public static String nonce(Random random) {
+        byte[] bytes = new byte[NONCE_BYTES];
+        random.nextBytes(bytes);
+        return encode(bytes, 0);
+    }
+
+    /**
+     * Encodes the lower 130 bits of big-endian bytes as radix 32 number without leading zeros.
+     *
+     * @param bytes Random bytes
+     * @param offset Offset of the {@link #NONCE_BYTES} bytes to encode
+     * @return Nonce
+     */
+    static String encode(byte[] bytes, int offset) {
+        char[] digits = new char[DIGITS];
+        int bits = 0;
+        int nrBits = 0;
+        int digit = DIGITS;
+        for (int i = offset + NONCE_BYTES - 1; digit > 0; i--) {
+            bits |= (bytes[i] & 0xff) << nrBits;
+            nrBits += 8;
+            while (nrBits >= BITS_PER_DIGIT && digit > 0) {
+                digits[--digit] = ALPHABET[bits & DIGIT_MASK];
+                bits >>>= BITS_PER_DIGIT;
+                nrBits -= BITS_PER_DIGIT;
+            }
+        }
+        int start = 0;
+        while (start < DIGITS - 1 && digits[start] == '0') {
+            start++;
+        }
+        return new String(digits, start, DIGITS - start);
+    }
+}
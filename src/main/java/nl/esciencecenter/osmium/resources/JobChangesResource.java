@@ -0,0 +1,133 @@
+/*
+ * #%L
+ * Osmium
+ * %%
+ * Copyright (C) 2013 Nederlands eScience Center
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package nl.esciencecenter.osmium.resources;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.StreamingOutput;
+
+import nl.esciencecenter.osmium.job.ChangeFeed;
+import nl.esciencecenter.osmium.job.ChangeFeed.Change;
+import nl.esciencecenter.osmium.job.XenonManager;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.yammer.metrics.annotation.Timed;
+
+/**
+ * Changes of jobs since a sequence number, for incremental synchronization.
+ *
+ * Has its own root path, so it is not matched as job identifier by {@link JobResource}.
+ *
+ * @author verhoes
+ *
+ */
+@Path("/job/changes")
+@Produces(MediaType.APPLICATION_JSON)
+public class JobChangesResource {
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final XenonManager xenonmanager;
+
+    public JobChangesResource(XenonManager xenonmanager) {
+        super();
+        this.xenonmanager = xenonmanager;
+    }
+
+    /**
+     * Lists changes of jobs after a sequence number.
+     *
+     * Returns a JSON object with:
+     * <ul>
+     * <li>changes, array of objects with sequence, jobIdentifier, deleted and status of a changed job</li>
+     * <li>next, cursor to pass as since in the next request</li>
+     * <li>more, true when more changes are available</li>
+     * <li>resync, true when the changes after since are no longer available,
+     * the client then has to list all jobs and continue with next</li>
+     * </ul>
+     * A cursor from before the service restarted always requires a resync.
+     *
+     * @param since Cursor of last seen change, 0 or absent to start at the oldest change
+     * @param limit Maximum number of changes to return, default 1000
+     * @return Response with JSON object as entity
+     */
+    @GET
+    @Timed
+    public Response getChanges(@QueryParam("since") String since,
+            @QueryParam("limit") @DefaultValue("1000") int limit) {
+        if (limit < 1) {
+            throw new WebApplicationException(Status.BAD_REQUEST);
+        }
+        ChangeFeed.Page page;
+        try {
+            page = xenonmanager.getChangeFeed().getChangesSince(since, limit);
+        } catch (IllegalArgumentException e) {
+            throw new WebApplicationException(e, Status.BAD_REQUEST);
+        }
+        return Response.ok(new ChangesOutput(page)).build();
+    }
+
+    /**
+     * Writes page of changes as JSON object.
+     */
+    static class ChangesOutput implements StreamingOutput {
+        private final ChangeFeed.Page page;
+
+        public ChangesOutput(ChangeFeed.Page page) {
+            this.page = page;
+        }
+
+        public void write(OutputStream output) throws IOException {
+            JsonGenerator generator = JSON_FACTORY.createGenerator(output, JsonEncoding.UTF8);
+            generator.writeStartObject();
+            generator.writeBooleanField("resync", page.isResync());
+            generator.writeStringField("next", page.getCursor());
+            generator.writeBooleanField("more", page.isMore());
+            generator.writeArrayFieldStart("changes");
+            for (Change change : page.getChanges()) {
+                generator.writeStartObject();
+                generator.writeNumberField("sequence", change.getSequence());
+                generator.writeStringField("jobIdentifier", change.getJobIdentifier());
+                generator.writeBooleanField("deleted", change.isDeleted());
+                generator.writeFieldName("status");
+                if (change.getStatus() == null) {
+                    generator.writeNull();
+                } else {
+                    change.getStatus().writeJson(generator);
+                }
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+            generator.flush();
+        }
+    }
+}
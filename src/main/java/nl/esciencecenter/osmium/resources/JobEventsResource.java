@@ -0,0 +1,129 @@
+/*
+ * #%L
+ * Osmium
+ * %%
+ * Copyright (C) 2013 Nederlands eScience Center
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package nl.esciencecenter.osmium.resources;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.StreamingOutput;
+
+import nl.esciencecenter.osmium.job.JobWatcher;
+import nl.esciencecenter.osmium.job.JobWatcher.Subscription;
+import nl.esciencecenter.osmium.job.XenonManager;
+
+import com.yammer.metrics.annotation.Timed;
+
+/**
+ * Stream of job status changes as Server-Sent Events.
+ *
+ * Has its own root path, so it is not matched as job identifier by {@link JobResource}.
+ *
+ * @author verhoes
+ *
+ */
+@Path("/job/events")
+public class JobEventsResource {
+    /**
+     * Media type of Server-Sent Events
+     */
+    public static final String EVENT_STREAM = "text/event-stream";
+    private static final byte[] EVENT_PREFIX = "event: status\ndata: ".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] EVENT_SUFFIX = "\n\n".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] HEARTBEAT = ":\n\n".getBytes(StandardCharsets.UTF_8);
+    /**
+     * Seconds a client is asked to wait before retrying when the maximum number of streams has been reached.
+     */
+    static final int STREAMS_RETRY_AFTER = 1;
+
+    private final XenonManager xenonmanager;
+
+    public JobEventsResource(XenonManager xenonmanager) {
+        super();
+        this.xenonmanager = xenonmanager;
+    }
+
+    /**
+     * Streams a status event each time a job changes, until the client disconnects.
+     *
+     * The data of each event is a JSON object with the jobIdentifier and status of the job.
+     * When the maximum number of streams is open the service is unavailable (503),
+     * with a Retry-After header containing the seconds after which the client can try again.
+     * A stream which ends without being written, for example because the client disconnected, is closed
+     * when it has not been polled for a few heartbeats.
+     *
+     * @return Response with event stream as entity
+     */
+    @GET
+    @Timed
+    @Produces(EVENT_STREAM)
+    public Response getEvents() {
+        JobWatcher watcher = xenonmanager.getWatcher();
+        Subscription subscription = watcher.subscribe();
+        if (subscription == null) {
+            throw new WebApplicationException(Response.status(Status.SERVICE_UNAVAILABLE)
+                    .header("Retry-After", STREAMS_RETRY_AFTER).build());
+        }
+        long heartbeat = watcher.getConfiguration().getHeartbeat();
+        return Response.ok(new EventsOutput(subscription, heartbeat)).header("Cache-Control", "no-cache").build();
+    }
+
+    /**
+     * Writes events of subscription until it is closed or the client disconnects.
+     */
+    static class EventsOutput implements StreamingOutput {
+        private final Subscription subscription;
+        private final long heartbeat;
+
+        public EventsOutput(Subscription subscription, long heartbeat) {
+            this.subscription = subscription;
+            this.heartbeat = heartbeat;
+        }
+
+        public void write(OutputStream output) throws IOException {
+            try {
+                // send headers directly, so client knows stream is open
+                output.write(HEARTBEAT);
+                output.flush();
+                while (!subscription.isClosed()) {
+                    byte[] event = subscription.poll(heartbeat);
+                    if (event == null) {
+                        output.write(HEARTBEAT);
+                    } else {
+                        output.write(EVENT_PREFIX);
+                        output.write(event);
+                        output.write(EVENT_SUFFIX);
+                    }
+                    output.flush();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                subscription.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * #%L
+ * Osmium
+ * %%
+ * Copyright (C) 2013 Nederlands eScience Center
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package nl.esciencecenter.osmium.resources;
+
+import nl.esciencecenter.osmium.api.JobStatusResponse;
+import nl.esciencecenter.osmium.api.SandboxedJob;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Predicate;
+
+/**
+ * Filter for listing jobs on their state and submission time.
+ *
+ * @author verhoes
+ *
+ */
+public class JobFilter implements Predicate<SandboxedJob> {
+    /**
+     * State of a job as used for filtering.
+     */
+    public enum State {
+        /**
+         * Job is staging, queued, running or its output is being downloaded.
+         */
+        ACTIVE,
+        /**
+         * Job finished without exception and with exit code 0 or no exit code.
+         */
+        DONE,
+        /**
+         * Job finished with an exception, like when it was canceled, or with a non zero exit code.
+         */
+        FAILED;
+
+        /**
+         * @param value State name, case insensitive
+         * @return State or null when value is null
+         * @throws IllegalArgumentException when value is not a known state
+         */
+        public static State parse(String value) {
+            if (value == null) {
+                return null;
+            }
+            return valueOf(value.toUpperCase());
+        }
+
+        /**
+         * @param status Status of job
+         * @return true when status is in this state
+         */
+        public boolean matches(JobStatusResponse status) {
+            if (!status.isDone()) {
+                return this == ACTIVE;
+            }
+            boolean failed = status.getException() != null
+                    || (status.getExitCode() != null && status.getExitCode() != 0);
+            if (failed) {
+                return this == FAILED;
+            }
+            return this == DONE;
+        }
+    }
+
+    private final State state;
+    private final Long submittedAfter;
+    private final Long submittedBefore;
+
+    /**
+     * @param state Jobs must be in this state, null for any state
+     * @param submittedAfter Jobs must be submitted after this time in milliseconds since epoch, null for no lower bound
+     * @param submittedBefore Jobs must be submitted before this time in milliseconds since epoch, null for no upper bound
+     */
+    public JobFilter(State state, Long submittedAfter, Long submittedBefore) {
+        super();
+        this.state = state;
+        this.submittedAfter = submittedAfter;
+        this.submittedBefore = submittedBefore;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public Long getSubmittedAfter() {
+        return submittedAfter;
+    }
+
+    public Long getSubmittedBefore() {
+        return submittedBefore;
+    }
+
+    public boolean apply(SandboxedJob job) {
+        if (submittedAfter != null && job.getCreatedAt() <= submittedAfter) {
+            return false;
+        }
+        if (submittedBefore != null && job.getCreatedAt() >= submittedBefore) {
+            return false;
+        }
+        return state == null || state.matches(job.getStatusResponse());
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(state, submittedAfter, submittedBefore);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == null) {
+            return false;
+        }
+        if (getClass() != obj.getClass()) {
+            return false;
+        }
+        JobFilter other = (JobFilter) obj;
+        return Objects.equal(this.state, other.state)
+                && Objects.equal(this.submittedAfter, other.submittedAfter)
+                && Objects.equal(this.submittedBefore, other.submittedBefore);
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                .addValue(this.state)
+                .addValue(this.submittedAfter)
+                .addValue(this.submittedBefore)
+                .toString();
+    }
+}
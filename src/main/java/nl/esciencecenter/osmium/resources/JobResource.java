@@ -21,6 +21,9 @@ package nl.esciencecenter.osmium.resources;
 
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
@@ -28,9 +31,17 @@ import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
 import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.CacheControl;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
 import javax.ws.rs.core.Response.Status;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.StreamingOutput;
 
 import nl.esciencecenter.xenon.XenonException;
 import nl.esciencecenter.xenon.jobs.NoSuchJobException;
@@ -49,6 +60,20 @@ import com.yammer.metrics.annotation.Timed;
 @Consumes(MediaType.APPLICATION_JSON)
 @Produces(MediaType.APPLICATION_JSON)
 public class JobResource {
+    /**
+     * Value of waitFor query parameter to wait until job has finished.
+     */
+    public static final String WAIT_FOR_DONE = "done";
+    /**
+     * Seconds a client is asked to wait before retrying when the maximum number of waiters has been reached.
+     */
+    static final int WAITERS_RETRY_AFTER = 1;
+    /**
+     * Sequence numbers of job changes restart when the service restarts,
+     * so entity tags include the start time of the service to stay unique.
+     */
+    private static final String EPOCH = Long.toString(System.currentTimeMillis(), Character.MAX_RADIX);
+
     private XenonManager xenonmanager;
 
     public JobResource(XenonManager xenonmanager) {
@@ -56,9 +81,7 @@ public class JobResource {
         this.xenonmanager = xenonmanager;
     }
 
-    @GET
-    @Timed
-    public SandboxedJob getJob(@PathParam("jobidentifier") String jobIdentifier) throws XenonException {
+    public SandboxedJob getJob(String jobIdentifier) throws XenonException {
         try {
             return xenonmanager.getJob(jobIdentifier);
         } catch (NoSuchJobException e) {
@@ -66,6 +89,107 @@ public class JobResource {
         }
     }
 
+    /**
+     * Get job.
+     *
+     * With waitFor=done the request waits until the job is done and its output files have been downloaded,
+     * or until the timeout in milliseconds has passed, and then returns the job.
+     * The timeout is capped by and defaults to the configured maximum timeout.
+     * When the maximum number of waiters has been reached the service is unavailable (503)
+     * and the Retry-After header contains the seconds after which the client can try again.
+     *
+     * The response has an ETag which changes whenever the job changes.
+     * When it matches the If-None-Match header of the request the job is not returned (304).
+     * Without waitFor the response may be cached for the poll interval, as the status is not refreshed sooner.
+     * The job is written from its cached JSON encodings, see {@link SandboxedJob#writeJson(OutputStream)}.
+     *
+     * @param jobIdentifier Identifier of job
+     * @param waitFor Condition to wait for, only done is supported, null to return directly
+     * @param timeout Maximum time in milliseconds to wait
+     * @param request Request to evaluate preconditions of, can be null
+     * @return Response with job as entity
+     * @throws XenonException when job could not be fetched
+     */
+    @GET
+    @Timed
+    public Response getJob(@PathParam("jobidentifier") String jobIdentifier, @QueryParam("waitFor") String waitFor,
+            @QueryParam("timeout") Long timeout, @Context Request request) throws XenonException {
+        if (waitFor != null && !WAIT_FOR_DONE.equals(waitFor)) {
+            throw new WebApplicationException(Status.BAD_REQUEST);
+        }
+        if (timeout != null && timeout < 0) {
+            throw new WebApplicationException(Status.BAD_REQUEST);
+        }
+        SandboxedJob job = getJob(jobIdentifier);
+        if (waitFor != null) {
+            long wait = Long.MAX_VALUE;
+            if (timeout != null) {
+                wait = timeout;
+            }
+            try {
+                xenonmanager.getWatcher().awaitFinished(job, wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RejectedExecutionException e) {
+                throw new WebApplicationException(e, Response.status(Status.SERVICE_UNAVAILABLE)
+                        .header("Retry-After", WAITERS_RETRY_AFTER).build());
+            }
+        }
+        EntityTag tag = getEntityTag(job);
+        ResponseBuilder response = null;
+        if (tag != null && request != null) {
+            response = request.evaluatePreconditions(tag);
+        }
+        if (response == null) {
+            response = Response.ok(new JobOutput(job));
+        }
+        if (tag != null) {
+            response.tag(tag);
+        }
+        if (waitFor == null) {
+            response.cacheControl(getCacheControl());
+        }
+        return response.build();
+    }
+
+    /**
+     * @param job The job
+     * @return Entity tag based on the sequence number of the last change of job, null when job changes are not numbered
+     */
+    static EntityTag getEntityTag(SandboxedJob job) {
+        long sequence = job.getSequence();
+        if (sequence == 0) {
+            return null;
+        }
+        return new EntityTag(EPOCH + "-" + Long.toString(sequence, Character.MAX_RADIX));
+    }
+
+    private CacheControl getCacheControl() {
+        CacheControl cacheControl = new CacheControl();
+        cacheControl.setNoTransform(false);
+        cacheControl.setMaxAge((int) TimeUnit.MILLISECONDS.toSeconds(xenonmanager.getPollInterval()));
+        return cacheControl;
+    }
+
+    /**
+     * Writes job as JSON object.
+     */
+    static class JobOutput implements StreamingOutput {
+        private final SandboxedJob job;
+
+        public JobOutput(SandboxedJob job) {
+            this.job = job;
+        }
+
+        public SandboxedJob getJob() {
+            return job;
+        }
+
+        public void write(OutputStream output) throws IOException {
+            job.writeJson(output);
+        }
+    }
+
     @DELETE
     @Timed
     public void cancelJob(@PathParam("jobidentifier") String jobIdentifier) throws XenonException, IOException {
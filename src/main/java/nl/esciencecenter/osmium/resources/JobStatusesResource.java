@@ -0,0 +1,161 @@
+/*
+ * #%L
+ * Osmium
+ * %%
+ * Copyright (C) 2013 Nederlands eScience Center
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package nl.esciencecenter.osmium.resources;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.ws.rs.Consumes;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.StreamingOutput;
+
+import nl.esciencecenter.osmium.api.JobStatusResponse;
+import nl.esciencecenter.osmium.api.SandboxedJob;
+import nl.esciencecenter.osmium.job.XenonManager;
+import nl.esciencecenter.xenon.jobs.NoSuchJobException;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.google.common.base.Splitter;
+import com.yammer.metrics.annotation.Timed;
+
+/**
+ * Statuses of many jobs in a single request.
+ *
+ * Has its own root path, so it is not matched as job identifier by {@link JobResource}.
+ *
+ * @author verhoes
+ *
+ */
+@Path("/job/status")
+@Consumes(MediaType.APPLICATION_JSON)
+@Produces(MediaType.APPLICATION_JSON)
+public class JobStatusesResource {
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final XenonManager xenonmanager;
+
+    public JobStatusesResource(XenonManager xenonmanager) {
+        super();
+        this.xenonmanager = xenonmanager;
+    }
+
+    /**
+     * Get statuses of jobs.
+     *
+     * Returns a JSON object with:
+     * <ul>
+     * <li>statuses, object with the status of each known job keyed by its identifier</li>
+     * <li>missing, array of identifiers of unknown jobs</li>
+     * </ul>
+     * Duplicate identifiers are reported once.
+     *
+     * @param jobIdentifiers Identifiers of jobs
+     * @param fields Comma separated names of status fields to return, like state,exitCode, null for all fields
+     * @return Response with JSON object as entity
+     */
+    @POST
+    @Timed
+    public Response getStatuses(List<String> jobIdentifiers, @QueryParam("fields") String fields) {
+        if (jobIdentifiers == null || jobIdentifiers.contains(null)) {
+            throw new WebApplicationException(Status.BAD_REQUEST);
+        }
+        Set<String> selectedFields = parseFields(fields);
+        return Response.ok(new StatusesOutput(xenonmanager, new LinkedHashSet<String>(jobIdentifiers), selectedFields))
+                .build();
+    }
+
+    /**
+     * @param fields Comma separated names of status fields, null for all fields
+     * @return Names of status fields
+     * @throws WebApplicationException with bad request status when a field is unknown or no field is given
+     */
+    static Set<String> parseFields(String fields) {
+        if (fields == null) {
+            return JobStatusResponse.FIELDS;
+        }
+        Set<String> selectedFields = new LinkedHashSet<String>();
+        for (String field : Splitter.on(',').trimResults().omitEmptyStrings().split(fields)) {
+            if (!JobStatusResponse.FIELDS.contains(field)) {
+                throw new WebApplicationException(Status.BAD_REQUEST);
+            }
+            selectedFields.add(field);
+        }
+        if (selectedFields.isEmpty()) {
+            throw new WebApplicationException(Status.BAD_REQUEST);
+        }
+        return selectedFields;
+    }
+
+    /**
+     * Writes statuses of jobs as JSON object.
+     *
+     * Jobs are looked up while writing, so statuses are sent as soon as they are known.
+     */
+    static class StatusesOutput implements StreamingOutput {
+        private final XenonManager xenonmanager;
+        private final Set<String> jobIdentifiers;
+        private final Set<String> fields;
+
+        public StatusesOutput(XenonManager xenonmanager, Set<String> jobIdentifiers, Set<String> fields) {
+            this.xenonmanager = xenonmanager;
+            this.jobIdentifiers = jobIdentifiers;
+            this.fields = fields;
+        }
+
+        public void write(OutputStream output) throws IOException {
+            List<String> missing = new ArrayList<String>();
+            JsonGenerator generator = JSON_FACTORY.createGenerator(output, JsonEncoding.UTF8);
+            generator.writeStartObject();
+            generator.writeObjectFieldStart("statuses");
+            for (String jobIdentifier : jobIdentifiers) {
+                SandboxedJob job;
+                try {
+                    job = xenonmanager.getJob(jobIdentifier);
+                } catch (NoSuchJobException e) {
+                    missing.add(jobIdentifier);
+                    continue;
+                }
+                generator.writeFieldName(jobIdentifier);
+                job.getStatusResponse().writeJson(generator, fields);
+            }
+            generator.writeEndObject();
+            generator.writeArrayFieldStart("missing");
+            for (String jobIdentifier : missing) {
+                generator.writeString(jobIdentifier);
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+            generator.flush();
+        }
+    }
+}
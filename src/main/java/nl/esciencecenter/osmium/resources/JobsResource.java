@@ -20,35 +20,61 @@
 package nl.esciencecenter.osmium.resources;
 
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.net.URI;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.validation.Valid;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.GET;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
+import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.StreamingOutput;
 import javax.ws.rs.core.UriBuilder;
 import javax.ws.rs.core.UriInfo;
 
 import nl.esciencecenter.xenon.XenonException;
 import nl.esciencecenter.osmium.api.JobSubmitRequest;
 import nl.esciencecenter.osmium.api.SandboxedJob;
+import nl.esciencecenter.osmium.job.AdmissionException;
 import nl.esciencecenter.osmium.job.XenonManager;
 
 import org.apache.http.client.HttpClient;
 
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Iterators;
 import com.yammer.metrics.annotation.Timed;
 
 @Path("/job")
 @Consumes(MediaType.APPLICATION_JSON)
 @Produces(MediaType.APPLICATION_JSON)
 public class JobsResource {
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    /**
+     * Page of jobs is allocated for at most this many jobs, it grows when a larger limit is requested
+     */
+    private static final int MAX_INITIAL_PAGE_CAPACITY = 1000;
+    /**
+     * Too Many Requests status code, RFC 6585, which is missing from {@link Status}
+     */
+    private static final int TOO_MANY_REQUESTS = 429;
     /**
      * Broker to submit jobs with
      */
@@ -64,6 +90,12 @@ public class JobsResource {
     @Context
     public UriInfo uriInfo = null;
 
+    /**
+     * Use to identify client for admission control. Will get injected by JSR311
+     */
+    @Context
+    public HttpServletRequest servletRequest = null;
+
     /**
      * Constructor
      *
@@ -93,6 +125,13 @@ public class JobsResource {
     /**
      * Launch a job based on a request.
      *
+     * When asynchronous staging is enabled the job is accepted (202) in STAGING state
+     * and staged and submitted in the background.
+     * When the staging queue is full the service is unavailable (503).
+     * When the request names an unknown scheduler it is a bad request (400).
+     * When a submission limit has been reached there are too many requests (429)
+     * and the Retry-After header contains the seconds after which the client can try again.
+     *
      * @param request
      *            A job submission request
      * @return Response with element URI in Location header
@@ -101,23 +140,131 @@ public class JobsResource {
     @POST
     @Timed
     public Response submitJob(@Valid JobSubmitRequest request) throws XenonException {
-        SandboxedJob job = xenonmanager.submitJob(request, httpClient);
         UriBuilder builder = uriInfo.getAbsolutePathBuilder();
+        String client = getClient();
+        if (xenonmanager.isAsyncSubmit()) {
+            SandboxedJob job;
+            try {
+                job = xenonmanager.submitJobAsync(request, httpClient, client);
+            } catch (RejectedExecutionException e) {
+                throw new WebApplicationException(e, Status.SERVICE_UNAVAILABLE);
+            } catch (IllegalArgumentException e) {
+                throw new WebApplicationException(e, Status.BAD_REQUEST);
+            } catch (AdmissionException e) {
+                throw tooManyRequests(e);
+            }
+            URI location = builder.path(job.getIdentifier()).build();
+            return Response.status(Status.ACCEPTED).location(location).build();
+        }
+        SandboxedJob job;
+        try {
+            job = xenonmanager.submitJob(request, httpClient, client);
+        } catch (IllegalArgumentException e) {
+            throw new WebApplicationException(e, Status.BAD_REQUEST);
+        } catch (AdmissionException e) {
+            throw tooManyRequests(e);
+        }
         URI location = builder.path(job.getIdentifier()).build();
         return Response.created(location).build();
     }
 
     /**
-     * @return List of URI's of all submitted jobs.
+     * @return Remote address of client or null when unknown
+     */
+    private String getClient() {
+        if (servletRequest == null) {
+            return null;
+        }
+        return servletRequest.getRemoteAddr();
+    }
+
+    private WebApplicationException tooManyRequests(AdmissionException e) {
+        return new WebApplicationException(e, Response.status(TOO_MANY_REQUESTS)
+                .header("Retry-After", e.getRetryAfter()).build());
+    }
+
+    /**
+     * Lists submitted jobs ordered by identifier.
+     *
+     * The list is streamed as a JSON array, so it is not materialised in memory.
+     * By default the array contains the URI of each job.
+     * When a limit is given and more jobs match, a Link header with rel="next" points to the next page.
+     *
+     * @param state Only list jobs in this state, one of active, done or failed, see {@link JobFilter.State}
+     * @param submittedAfter Only list jobs submitted after this time in milliseconds since epoch
+     * @param submittedBefore Only list jobs submitted before this time in milliseconds since epoch
+     * @param cursor Only list jobs after the job with this identifier, the last job of the previous page
+     * @param limit Maximum number of jobs to list
+     * @param inlineStatus When true, the array contains objects with the uri and status of each job
+     * @return Response with JSON array as entity
      */
     @GET
     @Timed
-    public URI[] getJobs() {
-        List<URI> uris = new LinkedList<URI>();
+    public Response getJobs(@QueryParam("state") String state, @QueryParam("submittedAfter") Long submittedAfter,
+            @QueryParam("submittedBefore") Long submittedBefore, @QueryParam("cursor") String cursor,
+            @QueryParam("limit") Integer limit, @QueryParam("status") boolean inlineStatus) {
+        JobFilter filter;
+        try {
+            filter = new JobFilter(JobFilter.State.parse(state), submittedAfter, submittedBefore);
+        } catch (IllegalArgumentException e) {
+            throw new WebApplicationException(e, Status.BAD_REQUEST);
+        }
+        if (limit != null && limit < 1) {
+            throw new WebApplicationException(Status.BAD_REQUEST);
+        }
         UriBuilder builder = uriInfo.getAbsolutePathBuilder().path("{jobidentifier}");
-        for (SandboxedJob job : xenonmanager.getJobs()) {
-            uris.add(builder.build(job.getIdentifier()));
+        Collection<SandboxedJob> candidates = xenonmanager.getJobsAfter(cursor);
+        ResponseBuilder response = Response.ok();
+        Iterable<SandboxedJob> page;
+        if (limit == null) {
+            page = Iterables.filter(candidates, filter);
+        } else {
+            List<SandboxedJob> pageJobs = new ArrayList<SandboxedJob>(Math.min(limit, MAX_INITIAL_PAGE_CAPACITY));
+            Iterator<SandboxedJob> matches = Iterators.filter(candidates.iterator(), filter);
+            while (pageJobs.size() < limit && matches.hasNext()) {
+                pageJobs.add(matches.next());
+            }
+            if (matches.hasNext()) {
+                String nextCursor = pageJobs.get(pageJobs.size() - 1).getIdentifier();
+                URI next = uriInfo.getRequestUriBuilder().replaceQueryParam("cursor", nextCursor).build();
+                response.header("Link", "<" + next + ">; rel=\"next\"");
+            }
+            page = pageJobs;
+        }
+        return response.entity(new JobsOutput(page, builder, inlineStatus)).build();
+    }
+
+    /**
+     * Writes jobs as JSON array while iterating over them.
+     */
+    private static class JobsOutput implements StreamingOutput {
+        private final Iterable<SandboxedJob> jobs;
+        private final UriBuilder builder;
+        private final boolean inlineStatus;
+
+        public JobsOutput(Iterable<SandboxedJob> jobs, UriBuilder builder, boolean inlineStatus) {
+            this.jobs = jobs;
+            this.builder = builder;
+            this.inlineStatus = inlineStatus;
+        }
+
+        public void write(OutputStream output) throws IOException {
+            JsonGenerator generator = JSON_FACTORY.createGenerator(output, JsonEncoding.UTF8);
+            generator.writeStartArray();
+            for (SandboxedJob job : jobs) {
+                String uri = builder.build(job.getIdentifier()).toString();
+                if (inlineStatus) {
+                    generator.writeStartObject();
+                    generator.writeStringField("uri", uri);
+                    generator.writeFieldName("status");
+                    job.getStatusResponse().writeJson(generator);
+                    generator.writeEndObject();
+                } else {
+                    generator.writeString(uri);
+                }
+            }
+            generator.writeEndArray();
+            generator.flush();
         }
-        return uris.toArray(new URI[0]);
     }
 }
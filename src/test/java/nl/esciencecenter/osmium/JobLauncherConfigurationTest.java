@@ -31,11 +31,13 @@ import java.net.URI;
 import java.net.URISyntaxException;
 
 import nl.esciencecenter.osmium.JobLauncherConfiguration;
+import nl.esciencecenter.osmium.callback.CallbackConfiguration;
 import nl.esciencecenter.osmium.job.XenonConfiguration;
 import nl.esciencecenter.osmium.job.PollConfiguration;
 import nl.esciencecenter.osmium.job.SandboxConfiguration;
 import nl.esciencecenter.osmium.job.SchedulerConfiguration;
 import nl.esciencecenter.osmium.mac.MacCredential;
+import nl.esciencecenter.osmium.mac.MacVerificationConfiguration;
 
 import org.junit.Test;
 
@@ -72,6 +74,22 @@ public class JobLauncherConfigurationTest {
         assertThat(conf.isUseInsecureSSL()).isFalse();
     }
 
+    @Test
+    public void testIsWatchWithinHttpThreads_Default_True() {
+        JobLauncherConfiguration conf = new JobLauncherConfiguration();
+
+        assertThat(conf.isWatchWithinHttpThreads()).isTrue();
+    }
+
+    @Test
+    public void testIsWatchWithinHttpThreads_MoreWaitersThanHalfOfThreads_False() {
+        JobLauncherConfiguration conf = new JobLauncherConfiguration();
+        conf.getHttpConfiguration().setMaxThreads(64);
+        conf.getXenonConfiguration().getWatch().setMaxWaiters(30);
+
+        assertThat(conf.isWatchWithinHttpThreads()).isFalse();
+    }
+
     @Test
     public void testJobLauncherConfiguration_NoArgs() {
         JobLauncherConfiguration conf = new JobLauncherConfiguration();
@@ -81,6 +99,28 @@ public class JobLauncherConfigurationTest {
         ImmutableList<MacCredential> macs = ImmutableList.of();
         assertEquals(macs, conf.getMacs());
         assertThat(conf.isUseInsecureSSL()).isFalse();
+        assertEquals(new CallbackConfiguration(), conf.getCallback());
+        assertEquals(new MacVerificationConfiguration(), conf.getMacVerification());
+    }
+
+    @Test
+    public void testSetMacVerification() {
+        JobLauncherConfiguration conf = new JobLauncherConfiguration();
+        MacVerificationConfiguration macVerification = new MacVerificationConfiguration(true, 60, 10);
+
+        conf.setMacVerification(macVerification);
+
+        assertThat(conf.getMacVerification()).isEqualTo(macVerification);
+    }
+
+    @Test
+    public void testSetCallback() {
+        JobLauncherConfiguration conf = new JobLauncherConfiguration();
+        CallbackConfiguration callback = new CallbackConfiguration(true, 2, 10);
+
+        conf.setCallback(callback);
+
+        assertThat(conf.getCallback()).isEqualTo(callback);
     }
 
     @Test
@@ -116,7 +156,7 @@ public class JobLauncherConfigurationTest {
 
         int hashcode = xenonConf.hashCode();
 
-        assertThat(hashcode).isEqualTo(-501985210);
+        assertThat(hashcode).isEqualTo(995020285);
     }
 
     @Test
@@ -125,7 +165,7 @@ public class JobLauncherConfigurationTest {
 
         String self = xenonConf.toString();
 
-        String expected = "XenonConfiguration{SchedulerConfiguration{local, multi, null, null}, SandboxConfiguration{file, /tmp/sandboxes, null, null}, {xenon.adaptors.local.queue.multi.maxConcurrentJobs=4}, PollConfiguration{10, 50, 100}}";
+        String expected = "XenonConfiguration{SchedulerConfiguration{local, multi, null, null}, SandboxConfiguration{file, /tmp/sandboxes, null, null}, {xenon.adaptors.local.queue.multi.maxConcurrentJobs=4}, PollConfiguration{10, 50, 100, false, 5000, 600000, 2.0, 500, 2, false}, StagingConfiguration{false, 4, 1000, 1, 16, 4}, JobStoreConfiguration{null, 1000}, [], LoadBalanceConfiguration{false, 30000, {}, 0.5, 10000}, AdmissionConfiguration{0, 0, 0.0, 10, 60}, WatchConfiguration{20, 60000, 10, 10000, 15000, 10000}}";
         assertThat(self).isEqualTo(expected);
 
     }
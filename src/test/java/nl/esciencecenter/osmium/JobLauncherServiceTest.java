@@ -27,6 +27,7 @@ import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 import java.net.URI;
 import java.net.URISyntaxException;
@@ -48,6 +49,7 @@ import nl.esciencecenter.osmium.job.SandboxConfiguration;
 import nl.esciencecenter.osmium.job.SchedulerConfiguration;
 import nl.esciencecenter.osmium.mac.MacCredential;
 import nl.esciencecenter.osmium.mac.MacScheme;
+import nl.esciencecenter.osmium.mac.MacVerificationFilter;
 
 import org.apache.http.auth.AuthScope;
 import org.apache.http.auth.Credentials;
@@ -61,6 +63,8 @@ import org.junit.Test;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.sun.jersey.api.core.DefaultResourceConfig;
+import com.sun.jersey.api.core.ResourceConfig;
 import com.yammer.dropwizard.client.HttpClientConfiguration;
 import com.yammer.dropwizard.config.Bootstrap;
 import com.yammer.dropwizard.config.Environment;
@@ -86,7 +90,7 @@ public class JobLauncherServiceTest {
 
         service.run(config, environment);
 
-        verify(environment, times(2)).addResource(any(Object.class));
+        verify(environment, times(5)).addResource(any(Object.class));
         verify(environment).addHealthCheck(any(JobLauncherHealthCheck.class));
         verify(environment).manage(any(XenonManager.class));
 
@@ -111,6 +115,18 @@ public class JobLauncherServiceTest {
         return config;
     }
 
+    @Test
+    public void testAddMacVerification() throws URISyntaxException {
+        JobLauncherConfiguration config = sampleConfiguration();
+        ResourceConfig resourceConfig = new DefaultResourceConfig();
+        when(environment.getJerseyResourceConfig()).thenReturn(resourceConfig);
+
+        JobLauncherService.addMacVerification(environment, config);
+
+        assertEquals(1, resourceConfig.getContainerRequestFilters().size());
+        assertTrue(resourceConfig.getContainerRequestFilters().get(0) instanceof MacVerificationFilter);
+    }
+
     @Test
     public void testMacifyHttpClient() throws URISyntaxException {
         // FIXME Waiting for https://github.com/NLeSC/xenon/issues/38 to be resolved
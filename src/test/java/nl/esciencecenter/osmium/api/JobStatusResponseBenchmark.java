@@ -0,0 +1,85 @@
+/*
+ * #%L
+ * Osmium
+ * %%
+ * Copyright (C) 2013 Nederlands eScience Center
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package nl.esciencecenter.osmium.api;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Serialization of the status payload of a callback.
+ *
+ * Compares {@link JobStatusResponse#toJsonBytes()} with an ObjectMapper created per status, as was done before,
+ * and with a shared ObjectMapper. Each status change has a new response, so every operation encodes a new response.
+ * Run with <code>-prof gc</code> to see the allocation per callback.
+ *
+ * @author verhoes
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JobStatusResponseBenchmark {
+    private final ObjectMapper sharedMapper = new ObjectMapper();
+    private final Exception exception = new Exception("Killed");
+    private Map<String, String> info;
+
+    @Setup
+    public void setUp() {
+        info = new HashMap<String, String>();
+        info.put("status", "STOPPED");
+        info.put("queue", "multi");
+    }
+
+    private JobStatusResponse newStatus() {
+        return new JobStatusResponse("KILLED", false, true, 137, exception, info);
+    }
+
+    @Benchmark
+    public byte[] objectMapperPerStatus() throws IOException {
+        return new ObjectMapper().writeValueAsBytes(newStatus());
+    }
+
+    @Benchmark
+    public byte[] sharedObjectMapper() throws IOException {
+        return sharedMapper.writeValueAsBytes(newStatus());
+    }
+
+    @Benchmark
+    public byte[] toJsonBytes() throws IOException {
+        return newStatus().toJsonBytes();
+    }
+}
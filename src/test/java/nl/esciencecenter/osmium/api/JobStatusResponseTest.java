@@ -25,6 +25,7 @@ import static org.fest.assertions.api.Assertions.assertThat;
 import static org.mockito.Mockito.mock;
 
 import java.io.IOException;
+import java.io.StringWriter;
 import java.net.URISyntaxException;
 import java.util.HashMap;
 import java.util.Map;
@@ -36,6 +37,11 @@ import nl.esciencecenter.osmium.api.JobStatusResponse;
 
 import org.junit.Test;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableSet;
+
 public class JobStatusResponseTest {
     private JobStatusResponse getRunningJobStatus() {
         Map<String, String> info = new HashMap<String, String>();
@@ -197,4 +203,66 @@ public class JobStatusResponseTest {
         JobStatusResponse status = new JobStatusResponse("KILLED", false, true, null, exception , null);
         assertThat(status.toJson()).isEqualTo(jsonFixture("fixtures/status.exception.json"));
     }
+
+    @Test
+    public void toJson_SameAsObjectMapper() throws IOException {
+        Map<String, String> info = new HashMap<String, String>();
+        info.put("status", "STOPPED");
+        info.put("queue", "multi");
+        JobStatusResponse status = new JobStatusResponse("KILLED", false, true, 137, new Exception("Killed"), info);
+
+        String expected = new ObjectMapper().writeValueAsString(status);
+        assertThat(status.toJson()).isEqualTo(expected);
+    }
+
+    @Test
+    public void toJsonBytes_Done() throws IOException {
+        Map<String, String> info = new HashMap<String, String>();
+        info.put("status", "STOPPED");
+        JobStatusResponse status = new JobStatusResponse("DONE", false, true, 0, null, info);
+
+        String json = new String(status.toJsonBytes(), "UTF-8");
+
+        assertThat(json).isEqualTo(jsonFixture("fixtures/status.done.json"));
+    }
+
+    @Test
+    public void writeJson_SelectedFields() throws IOException {
+        JobStatusResponse status = new JobStatusResponse("DONE", false, true, 0, null, null);
+        StringWriter writer = new StringWriter();
+        JsonGenerator generator = new JsonFactory().createGenerator(writer);
+
+        status.writeJson(generator, ImmutableSet.of("exitCode", "state"));
+        generator.close();
+
+        assertThat(writer.toString()).isEqualTo("{\"state\":\"DONE\",\"exitCode\":0}");
+    }
+
+    @Test
+    public void toJsonBytes_Twice_EncodedOnce() throws IOException {
+        JobStatusResponse status = new JobStatusResponse("DONE", false, true, 0, null, null);
+
+        byte[] first = status.toJsonBytes();
+
+        assertThat(status.toJsonBytes()).isSameAs(first);
+    }
+
+    @Test
+    public void construct_PseudoState() {
+        Job job = mock(Job.class);
+        JobStatus jobstatus = new JobStatusImplementation(job, "DONE", 0, null, false, true, null);
+
+        JobStatusResponse status = new JobStatusResponse(jobstatus, "STAGING");
+
+        JobStatusResponse expected = new JobStatusResponse("STAGING", false, false, 0, null, null);
+        assertThat(status).isEqualTo(expected);
+    }
+
+    @Test
+    public void construct_PseudoStateWithoutJobStatus() {
+        JobStatusResponse status = new JobStatusResponse(null, "STAGING");
+
+        JobStatusResponse expected = new JobStatusResponse("STAGING", false, false, null, null, null);
+        assertThat(status).isEqualTo(expected);
+    }
 }
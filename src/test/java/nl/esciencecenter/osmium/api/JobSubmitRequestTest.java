@@ -196,13 +196,13 @@ public class JobSubmitRequestTest {
 
     @Test
     public void testHashCode() {
-        assertThat(request.hashCode()).isEqualTo(-474674438);
+        assertThat(request.hashCode()).isEqualTo(-1830005690);
     }
 
     @Test
     public void testToString() {
         String s =
-                "JobSubmitRequest{jobdir=/tmp/jobdir, executable=/bin/sh, stderr=stderr.txt, stdout=stdout.txt, arguments=[runme.sh], prestaged=[runme.sh, input.dat], poststaged=[output.dat], environment={OSMIUM_JOBID=mynewjob}, status_callback_url=http://localhost/status}";
+                "JobSubmitRequest{jobdir=/tmp/jobdir, executable=/bin/sh, stderr=stderr.txt, stdout=stdout.txt, arguments=[runme.sh], prestaged=[runme.sh, input.dat], poststaged=[output.dat], environment={OSMIUM_JOBID=mynewjob}, status_callback_url=http://localhost/status, scheduler=null}";
         assertEquals(s, request.toString());
     }
 
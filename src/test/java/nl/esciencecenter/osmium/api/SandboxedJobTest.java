@@ -30,11 +30,13 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 import nl.esciencecenter.xenon.XenonException;
@@ -49,6 +51,8 @@ import nl.esciencecenter.xenon.jobs.Scheduler;
 import nl.esciencecenter.xenon.util.Sandbox;
 import nl.esciencecenter.osmium.api.JobSubmitRequest;
 import nl.esciencecenter.osmium.api.SandboxedJob;
+import nl.esciencecenter.osmium.callback.Callback;
+import nl.esciencecenter.osmium.callback.CallbackDispatcher;
 
 import org.apache.http.Consts;
 import org.apache.http.client.ClientProtocolException;
@@ -59,6 +63,9 @@ import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
 
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
+
 public class SandboxedJobTest {
     JobSubmitRequest request;
     Sandbox sandbox;
@@ -206,4 +213,317 @@ public class SandboxedJobTest {
 
         assertThat(asJson(job), is(equalTo(jsonFixture("fixtures/job.json"))));
     }
+
+    @Test
+    public void testSandboxedJob_Staging() {
+        SandboxedJob sjob = new SandboxedJob("abcd", request, httpClient);
+
+        assertThat(sjob.getIdentifier()).isEqualTo("abcd");
+        assertThat(sjob.isStaging()).isTrue();
+        assertThat(sjob.getJob()).isNull();
+        assertThat(sjob.getStatusResponse().getState()).isEqualTo("STAGING");
+    }
+
+    @Test
+    public void testSetSubmitted_Staging_JobAndSandboxSet() {
+        SandboxedJob sjob = new SandboxedJob("abcd", request, httpClient);
+
+        boolean result = sjob.setSubmitted(sandbox, ojob);
+
+        assertThat(result).isTrue();
+        assertThat(sjob.isStaging()).isFalse();
+        assertThat(sjob.getJob()).isEqualTo(ojob);
+        assertThat(sjob.getSandbox()).isEqualTo(sandbox);
+        assertThat(sjob.getIdentifier()).isEqualTo("abcd");
+        assertThat(sjob.getStatusResponse().getState()).isEqualTo("INITIAL");
+    }
+
+    @Test
+    public void testSetSubmitted_Aborted_NotSubmitted() throws IOException {
+        request.status_callback_url = null;
+        SandboxedJob sjob = new SandboxedJob("abcd", request, httpClient);
+        sjob.abortStaging(status);
+
+        boolean result = sjob.setSubmitted(sandbox, ojob);
+
+        assertThat(result).isFalse();
+        assertThat(sjob.getJob()).isNull();
+        assertThat(sjob.getStatus()).isEqualTo(status);
+    }
+
+    @Test
+    public void testAbortStaging_NotStaging_StatusUnchanged() throws IOException {
+        JobStatus rstatus = new JobStatusImplementation(ojob, "RUNNING", null, null, true, false, null);
+        job = new SandboxedJob(sandbox, ojob, request, httpClient, rstatus, pollIterations);
+
+        boolean result = job.abortStaging(status);
+
+        assertThat(result).isFalse();
+        assertThat(job.getStatus()).isEqualTo(rstatus);
+        verifyNoMoreInteractions(httpClient);
+    }
+
+    @Test
+    public void testIsFinished_Done_True() {
+        assertThat(job.isFinished()).isTrue();
+    }
+
+    @Test
+    public void testIsFinished_Downloading_False() {
+        job.setPseudoState(SandboxedJob.DOWNLOADING);
+
+        assertThat(job.isFinished()).isFalse();
+    }
+
+    @Test
+    public void testIsFinished_NoStatus_False() {
+        SandboxedJob sjob = new SandboxedJob(sandbox, ojob, request, httpClient);
+
+        assertThat(sjob.isFinished()).isFalse();
+    }
+
+    @Test
+    public void testGetStatusResponse_Downloading() {
+        job.setPseudoState(SandboxedJob.DOWNLOADING);
+
+        JobStatusResponse response = job.getStatusResponse();
+
+        assertThat(response.getState()).isEqualTo("DOWNLOADING");
+        assertThat(response.isDone()).isFalse();
+        assertThat(response.getExitCode()).isEqualTo(0);
+    }
+
+    @Test
+    public void testEndPseudoState_Changed_PseudoStateClearedAndCallback() throws IOException {
+        JobStatus rstatus = new JobStatusImplementation(ojob, "RUNNING", null, null, true, false, null);
+        job = new SandboxedJob(sandbox, ojob, request, httpClient, rstatus, pollIterations);
+        job.setPseudoState(SandboxedJob.CLEANING);
+
+        job.endPseudoState(status);
+
+        assertThat(job.getPseudoState()).isNull();
+        assertThat(job.getStatus()).isEqualTo(status);
+        ArgumentCaptor<HttpPut> argument = ArgumentCaptor.forClass(HttpPut.class);
+        verify(httpClient).execute(argument.capture());
+        String body = EntityUtils.toString(argument.getValue().getEntity(), Consts.UTF_8);
+        assertThat(body).isEqualTo(jsonFixture("fixtures/status.done.json"));
+    }
+
+    @Test
+    public void setStatus_Changed_ListenerNotified() throws IOException {
+        JobListener listener = mock(JobListener.class);
+        job.setListener(listener);
+        JobStatus newStatus = new JobStatusImplementation(ojob, "KILLED", null, null, false, true, null);
+
+        job.setStatus(newStatus);
+
+        verify(listener).jobChanged(job);
+    }
+
+    @Test
+    public void setStatus_Unchanged_ListenerNotNotified() throws IOException {
+        JobListener listener = mock(JobListener.class);
+        job.setListener(listener);
+
+        job.setStatus(status);
+
+        verifyNoMoreInteractions(listener);
+    }
+
+    @Test
+    public void setStatus_CallbackDispatcher_CallbackDispatchedInsteadOfPut() throws IOException {
+        CallbackDispatcher dispatcher = mock(CallbackDispatcher.class);
+        job.setCallbackDispatcher(dispatcher);
+        JobStatus newStatus = new JobStatusImplementation(ojob, "KILLED", null, null, false, true, null);
+
+        job.setStatus(newStatus);
+
+        Callback expected = new Callback("1234", request.status_callback_url, new JobStatusResponse(newStatus));
+        verify(dispatcher).dispatch(expected);
+        verifyNoMoreInteractions(httpClient);
+    }
+
+    @Test
+    public void setStatus_CallbackWithoutHttpClient_NoPut() throws IOException {
+        SandboxedJob sjob = new SandboxedJob(sandbox, ojob, request, null, status, pollIterations);
+        JobStatus newStatus = new JobStatusImplementation(ojob, "KILLED", null, null, false, true, null);
+
+        sjob.setStatus(newStatus);
+
+        assertThat(sjob.getStatus()).isEqualTo(newStatus);
+    }
+
+    @Test
+    public void testMarkDeleted() {
+        JobListener listener = mock(JobListener.class);
+        job.setListener(listener);
+
+        job.markDeleted();
+
+        verify(listener).jobDeleted(job);
+    }
+
+    @Test
+    public void testSandboxedJob_Restored() {
+        SandboxedJob sjob = new SandboxedJob("abcd", sandbox, null, request, httpClient, status);
+
+        assertThat(sjob.getIdentifier(), is("abcd"));
+        assertThat(sjob.getJob(), equalTo(null));
+        assertThat(sjob.getStatus(), is(status));
+    }
+
+    @Test
+    public void compact_DoneJob_HeavyObjectsReleased() {
+        boolean result = job.compact();
+
+        assertThat(result).isTrue();
+        assertThat(job.isCompacted()).isTrue();
+        assertThat(job.getRequest()).isNull();
+        assertThat(job.getSandbox()).isNull();
+        assertThat(job.getJob()).isNull();
+        assertThat(job.getHttpClient()).isNull();
+        assertThat(job.getStatus().getJob()).isNull();
+        assertThat(job.getIdentifier()).isEqualTo("1234");
+    }
+
+    @Test
+    public void compact_DoneJob_FinalStatusKept() {
+        job.compact();
+
+        JobStatusResponse expected = new JobStatusResponse("DONE", false, true, 0, null, status.getSchedulerSpecficInformation());
+        assertThat(job.getStatusResponse()).isEqualTo(expected);
+    }
+
+    @Test
+    public void compact_DoneJob_RequestDigestSet() throws IOException {
+        job = new SandboxedJob(sandbox, ojob, JobSubmitRequestTest.sampleRequest(), httpClient, status, pollIterations);
+        String expected = Hashing.sha256().hashString(jsonFixture("fixtures/request.json"), Charsets.UTF_8).toString();
+
+        job.compact();
+
+        assertThat(job.getRequestDigest()).isEqualTo(expected);
+    }
+
+    @Test
+    public void digest_EnvironmentInOtherOrder_SameDigest() {
+        JobSubmitRequest request1 = JobSubmitRequestTest.sampleRequest();
+        request1.environment = new LinkedHashMap<String, String>();
+        request1.environment.put("A", "1");
+        request1.environment.put("B", "2");
+        JobSubmitRequest request2 = JobSubmitRequestTest.sampleRequest();
+        request2.environment = new LinkedHashMap<String, String>();
+        request2.environment.put("B", "2");
+        request2.environment.put("A", "1");
+
+        assertThat(SandboxedJob.digest(request1)).isEqualTo(SandboxedJob.digest(request2));
+    }
+
+    @Test
+    public void compact_DoneJob_SerializesDigestInsteadOfRequest() throws IOException {
+        job.compact();
+
+        String json = asJson(job);
+
+        assertThat(json).contains("\"request\":null");
+        assertThat(json).contains("\"requestDigest\":\"" + job.getRequestDigest() + "\"");
+    }
+
+    @Test
+    public void compact_DoneJob_ListenerNotified() {
+        JobListener listener = mock(JobListener.class);
+        job.setListener(listener);
+
+        job.compact();
+
+        verify(listener).jobChanged(job);
+    }
+
+    @Test
+    public void compact_RunningJob_NotCompacted() {
+        JobStatus runningStatus = new JobStatusImplementation(ojob, "RUNNING", null, null, true, false, null);
+        SandboxedJob sjob = new SandboxedJob(sandbox, ojob, request, httpClient, runningStatus, 0);
+
+        boolean result = sjob.compact();
+
+        assertThat(result).isFalse();
+        assertThat(sjob.isCompacted()).isFalse();
+        assertThat(sjob.getRequest()).isEqualTo(request);
+    }
+
+    @Test
+    public void compact_DoneJobInPseudoState_NotCompacted() {
+        job.setPseudoState(SandboxedJob.DOWNLOADING);
+
+        boolean result = job.compact();
+
+        assertThat(result).isFalse();
+        assertThat(job.getSandbox()).isEqualTo(sandbox);
+    }
+
+    @Test
+    public void compact_Twice_SecondIgnored() {
+        job.compact();
+
+        assertThat(job.compact()).isFalse();
+    }
+
+    @Test
+    public void getFinishedAt_DoneStatus_Set() {
+        assertThat(job.getFinishedAt()).isGreaterThan(0);
+        assertThat(job.getFinishedAt()).isGreaterThanOrEqualTo(job.getCreatedAt());
+    }
+
+    @Test
+    public void getFinishedAt_NoStatus_Zero() {
+        SandboxedJob sjob = new SandboxedJob(sandbox, ojob, request, httpClient);
+
+        assertThat(sjob.getFinishedAt()).isEqualTo(0);
+    }
+
+    @Test
+    public void getStatusResponse_Unchanged_SameResponse() {
+        assertThat(job.getStatusResponse()).isSameAs(job.getStatusResponse());
+    }
+
+    @Test
+    public void getStatusResponse_PseudoStateChanged_NewResponse() {
+        JobStatusResponse before = job.getStatusResponse();
+
+        job.setPseudoState(SandboxedJob.DOWNLOADING);
+
+        assertThat(job.getStatusResponse()).isNotSameAs(before);
+        assertThat(job.getStatusResponse().getState()).isEqualTo(SandboxedJob.DOWNLOADING);
+    }
+
+    @Test
+    public void getStatusResponse_StatusChanged_NewResponse() throws IOException {
+        SandboxedJob sjob = new SandboxedJob(sandbox, ojob, request, httpClient);
+        JobStatusResponse before = sjob.getStatusResponse();
+
+        sjob.setStatus(status);
+
+        assertThat(sjob.getStatusResponse()).isNotSameAs(before);
+        assertThat(sjob.getStatusResponse().getState()).isEqualTo("DONE");
+    }
+
+    @Test
+    public void writeJson_SameAsSerialized() throws IOException {
+        JobSubmitRequest request2 = JobSubmitRequestTest.sampleRequest();
+        job = new SandboxedJob(sandbox, ojob, request2, httpClient, status, pollIterations);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        job.writeJson(output);
+
+        assertThat(output.toString("UTF-8"), is(equalTo(jsonFixture("fixtures/job.json"))));
+    }
+
+    @Test
+    public void writeJson_Compacted_SameAsSerialized() throws IOException {
+        job.compact();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        job.writeJson(output);
+
+        assertThat(output.toString("UTF-8")).isEqualTo(asJson(job));
+    }
 }
@@ -0,0 +1,76 @@
+/*
+ * #%L
+ * Osmium
+ * %%
+ * Copyright (C) 2013 Nederlands eScience Center
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package nl.esciencecenter.osmium.callback;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class BatchCallbackConfigurationTest {
+    private BatchCallbackConfiguration conf;
+
+    @Before
+    public void setUp() throws URISyntaxException {
+        conf = new BatchCallbackConfiguration(new URI("http://localhost/jobs/"), new URI("http://localhost/batch"), 200, 50);
+    }
+
+    @Test
+    public void testBatchCallbackConfiguration_Default() {
+        BatchCallbackConfiguration defaultConf = new BatchCallbackConfiguration();
+
+        assertThat(defaultConf.getScope()).isNull();
+        assertThat(defaultConf.getUrl()).isNull();
+        assertThat(defaultConf.getLinger()).isEqualTo(1000);
+        assertThat(defaultConf.getMaxBatchSize()).isEqualTo(100);
+    }
+
+    @Test
+    public void testSetters() throws URISyntaxException {
+        BatchCallbackConfiguration other = new BatchCallbackConfiguration();
+
+        other.setScope(new URI("http://localhost/jobs/"));
+        other.setUrl(new URI("http://localhost/batch"));
+        other.setLinger(200);
+        other.setMaxBatchSize(50);
+
+        assertThat(other).isEqualTo(conf);
+        assertThat(other.hashCode()).isEqualTo(conf.hashCode());
+    }
+
+    @Test
+    public void inScope_UrlInScope_True() throws URISyntaxException {
+        assertThat(conf.inScope(new URI("http://localhost/jobs/1234/status"))).isTrue();
+    }
+
+    @Test
+    public void inScope_OtherHost_False() throws URISyntaxException {
+        assertThat(conf.inScope(new URI("http://example.com/jobs/1234/status"))).isFalse();
+    }
+
+    @Test
+    public void testToString() {
+        String expected = "BatchCallbackConfiguration{http://localhost/jobs/, http://localhost/batch, 200, 50}";
+        assertThat(conf.toString()).isEqualTo(expected);
+    }
+}
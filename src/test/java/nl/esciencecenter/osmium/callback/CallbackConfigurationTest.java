@@ -0,0 +1,96 @@
+/*
+ * #%L
+ * Osmium
+ * %%
+ * Copyright (C) 2013 Nederlands eScience Center
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package nl.esciencecenter.osmium.callback;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+public class CallbackConfigurationTest {
+
+    @Test
+    public void testCallbackConfiguration_Default() {
+        CallbackConfiguration conf = new CallbackConfiguration();
+
+        assertThat(conf.isAsync()).isFalse();
+        assertThat(conf.getThreads()).isEqualTo(4);
+        assertThat(conf.getQueueSize()).isEqualTo(10000);
+        assertThat(conf.getConcurrentPerHost()).isEqualTo(2);
+        assertThat(conf.getMaxAttempts()).isEqualTo(5);
+        assertThat(conf.getInitialBackoff()).isEqualTo(1000);
+        assertThat(conf.getMaxBackoff()).isEqualTo(60000);
+        assertThat(conf.getDeadLetterSize()).isEqualTo(100);
+        assertThat(conf.isCoalesce()).isFalse();
+        assertThat(conf.getCoalesceDelay()).isEqualTo(0);
+    }
+
+    @Test
+    public void testCallbackConfiguration() {
+        CallbackConfiguration conf = new CallbackConfiguration(true, 8, 50);
+
+        assertThat(conf.isAsync()).isTrue();
+        assertThat(conf.getThreads()).isEqualTo(8);
+        assertThat(conf.getQueueSize()).isEqualTo(50);
+    }
+
+    @Test
+    public void testSetters() {
+        CallbackConfiguration conf = new CallbackConfiguration();
+
+        conf.setAsync(true);
+        conf.setThreads(2);
+        conf.setQueueSize(20);
+        conf.setConcurrentPerHost(3);
+        conf.setMaxAttempts(7);
+        conf.setInitialBackoff(10);
+        conf.setMaxBackoff(100);
+        conf.setDeadLetterSize(5);
+        conf.setCoalesce(true);
+        conf.setCoalesceDelay(50);
+
+        CallbackConfiguration expected = new CallbackConfiguration(true, 2, 20);
+        expected.setConcurrentPerHost(3);
+        expected.setMaxAttempts(7);
+        expected.setInitialBackoff(10);
+        expected.setMaxBackoff(100);
+        expected.setDeadLetterSize(5);
+        expected.setCoalesce(true);
+        expected.setCoalesceDelay(50);
+        assertThat(conf).isEqualTo(expected);
+    }
+
+    @Test
+    public void testEquals_Different() {
+        CallbackConfiguration conf = new CallbackConfiguration();
+        CallbackConfiguration other = new CallbackConfiguration();
+        other.setMaxAttempts(1);
+
+        assertThat(conf).isNotEqualTo(other);
+        assertThat(conf.hashCode()).isNotEqualTo(other.hashCode());
+    }
+
+    @Test
+    public void testToString() {
+        CallbackConfiguration conf = new CallbackConfiguration();
+
+        String expected = "CallbackConfiguration{false, 4, 10000, 2, 5, 1000, 60000, 100, false, 0, []}";
+        assertThat(conf.toString()).isEqualTo(expected);
+    }
+}
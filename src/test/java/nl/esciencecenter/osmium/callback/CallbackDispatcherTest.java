@@ -0,0 +1,461 @@
+/*
+ * #%L
+ * Osmium
+ * %%
+ * Copyright (C) 2013 Nederlands eScience Center
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package nl.esciencecenter.osmium.callback;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import nl.esciencecenter.osmium.api.JobStatusResponse;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.message.BasicStatusLine;
+import org.apache.http.util.EntityUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.MoreExecutors;
+
+public class CallbackDispatcherTest {
+    private CallbackConfiguration configuration;
+    private HttpClient httpClient;
+    private ScheduledExecutorService retryTimer;
+    private CallbackDispatcher dispatcher;
+    private Callback callback;
+
+    @Before
+    public void setUp() throws URISyntaxException {
+        configuration = new CallbackConfiguration(true, 1, 10);
+        httpClient = mock(HttpClient.class);
+        retryTimer = mock(ScheduledExecutorService.class);
+        dispatcher = new CallbackDispatcher(configuration, httpClient, MoreExecutors.sameThreadExecutor(), retryTimer);
+        callback = sampleCallback("1234", "http://localhost/job/1234/status");
+    }
+
+    private static Callback sampleCallback(String identifier, String url) throws URISyntaxException {
+        JobStatusResponse status = new JobStatusResponse("RUNNING", true, false, null, null, null);
+        return new Callback(identifier, new URI(url), status);
+    }
+
+    private void respondWith(int statusCode) throws IOException {
+        HttpResponse response = mock(HttpResponse.class);
+        when(response.getStatusLine()).thenReturn(new BasicStatusLine(HttpVersion.HTTP_1_1, statusCode, null));
+        when(httpClient.execute(any(HttpUriRequest.class))).thenReturn(response);
+    }
+
+    @Test
+    public void dispatch_Success_StatusPut() throws IOException {
+        respondWith(200);
+
+        boolean result = dispatcher.dispatch(callback);
+
+        assertThat(result).isTrue();
+        ArgumentCaptor<HttpPut> request = ArgumentCaptor.forClass(HttpPut.class);
+        verify(httpClient).execute(request.capture());
+        assertThat(request.getValue().getURI()).isEqualTo(callback.getUrl());
+        String expected = "{\"state\":\"RUNNING\",\"exitCode\":null,\"running\":true,\"done\":false,"
+                + "\"schedulerSpecficInformation\":null,\"exception\":null}";
+        assertThat(EntityUtils.toString(request.getValue().getEntity())).isEqualTo(expected);
+        assertThat(dispatcher.getPending()).isEqualTo(0);
+        assertThat(dispatcher.getDeadLetters()).isEmpty();
+    }
+
+    @Test
+    public void dispatch_ServerError_RetryScheduled() throws IOException {
+        respondWith(503);
+
+        dispatcher.dispatch(callback);
+
+        ArgumentCaptor<Runnable> retry = ArgumentCaptor.forClass(Runnable.class);
+        verify(retryTimer).schedule(retry.capture(), eq(1000L), eq(TimeUnit.MILLISECONDS));
+        assertThat(dispatcher.getPending()).isEqualTo(1);
+        assertThat(callback.getLastError()).isEqualTo("HTTP status 503");
+
+        respondWith(200);
+        retry.getValue().run();
+
+        assertThat(callback.getAttempts()).isEqualTo(2);
+        assertThat(dispatcher.getPending()).isEqualTo(0);
+    }
+
+    @Test
+    public void dispatch_ConnectionFailed_RetryScheduled() throws IOException {
+        when(httpClient.execute(any(HttpUriRequest.class))).thenThrow(new IOException("Connection refused"));
+
+        dispatcher.dispatch(callback);
+
+        verify(retryTimer).schedule(any(Runnable.class), eq(1000L), eq(TimeUnit.MILLISECONDS));
+        assertThat(callback.getLastError()).isEqualTo("java.io.IOException: Connection refused");
+    }
+
+    @Test
+    public void dispatch_ServerErrorOnLastAttempt_DeadLettered() throws IOException {
+        configuration.setMaxAttempts(1);
+        respondWith(500);
+
+        dispatcher.dispatch(callback);
+
+        verify(retryTimer, never()).schedule(any(Runnable.class), any(Long.class), any(TimeUnit.class));
+        assertThat(dispatcher.getDeadLetters()).containsExactly(callback);
+        assertThat(dispatcher.getPending()).isEqualTo(0);
+    }
+
+    @Test
+    public void dispatch_ClientError_DeadLetteredWithoutRetry() throws IOException {
+        respondWith(404);
+
+        dispatcher.dispatch(callback);
+
+        verify(retryTimer, never()).schedule(any(Runnable.class), any(Long.class), any(TimeUnit.class));
+        assertThat(dispatcher.getDeadLetters()).containsExactly(callback);
+        assertThat(callback.getLastError()).isEqualTo("HTTP status 404");
+    }
+
+    @Test
+    public void dispatch_QueueFull_DeadLettered() throws URISyntaxException {
+        configuration.setQueueSize(1);
+        ExecutorService workers = mock(ExecutorService.class);
+        dispatcher = new CallbackDispatcher(configuration, httpClient, workers, retryTimer);
+        dispatcher.dispatch(callback);
+        Callback callback2 = sampleCallback("4567", "http://localhost/job/4567/status");
+
+        boolean result = dispatcher.dispatch(callback2);
+
+        assertThat(result).isFalse();
+        assertThat(dispatcher.getDeadLetters()).containsExactly(callback2);
+        assertThat(callback2.getLastError()).isEqualTo("Callback queue full");
+        assertThat(dispatcher.getPending()).isEqualTo(1);
+    }
+
+    @Test
+    public void dispatch_HostBusy_DeliveredAfterRunningDelivery() throws IOException, URISyntaxException {
+        respondWith(200);
+        configuration.setConcurrentPerHost(1);
+        ExecutorService workers = mock(ExecutorService.class);
+        dispatcher = new CallbackDispatcher(configuration, httpClient, workers, retryTimer);
+        dispatcher.dispatch(callback);
+        dispatcher.dispatch(sampleCallback("4567", "http://localhost/job/4567/status"));
+
+        ArgumentCaptor<Runnable> delivery = ArgumentCaptor.forClass(Runnable.class);
+        verify(workers).execute(delivery.capture());
+        delivery.getValue().run();
+
+        verify(workers, times(2)).execute(any(Runnable.class));
+    }
+
+    @Test
+    public void dispatch_OtherHost_DeliveredConcurrently() throws URISyntaxException {
+        configuration.setConcurrentPerHost(1);
+        ExecutorService workers = mock(ExecutorService.class);
+        dispatcher = new CallbackDispatcher(configuration, httpClient, workers, retryTimer);
+
+        dispatcher.dispatch(callback);
+        dispatcher.dispatch(sampleCallback("4567", "http://example.com/job/4567/status"));
+
+        verify(workers, times(2)).execute(any(Runnable.class));
+    }
+
+    @Test
+    public void getDeadLetters_MoreThanSize_OldestDropped() throws IOException, URISyntaxException {
+        configuration.setMaxAttempts(1);
+        configuration.setDeadLetterSize(1);
+        respondWith(500);
+        Callback callback2 = sampleCallback("4567", "http://localhost/job/4567/status");
+
+        dispatcher.dispatch(callback);
+        dispatcher.dispatch(callback2);
+
+        assertThat(dispatcher.getDeadLetters()).containsExactly(callback2);
+    }
+
+    @Test
+    public void getBackoff() {
+        assertThat(dispatcher.getBackoff(1)).isEqualTo(1000);
+        assertThat(dispatcher.getBackoff(2)).isEqualTo(2000);
+        assertThat(dispatcher.getBackoff(3)).isEqualTo(4000);
+        assertThat(dispatcher.getBackoff(20)).isEqualTo(60000);
+    }
+
+    @Test
+    public void stop() throws InterruptedException {
+        ExecutorService workers = mock(ExecutorService.class);
+        dispatcher = new CallbackDispatcher(configuration, httpClient, workers, retryTimer);
+
+        dispatcher.stop();
+
+        verify(retryTimer).shutdownNow();
+        verify(workers).shutdown();
+        verify(workers).awaitTermination(1, TimeUnit.MINUTES);
+    }
+
+    private static Callback stateCallback(String identifier, String state) throws URISyntaxException {
+        JobStatusResponse status = new JobStatusResponse(state, false, false, null, null, null);
+        return new Callback(identifier, new URI("http://localhost/job/" + identifier + "/status"), status);
+    }
+
+    private static String stateOf(HttpPut put) throws IOException {
+        return new ObjectMapper().readTree(EntityUtils.toString(put.getEntity())).get("state").asText();
+    }
+
+    @Test
+    public void dispatch_CoalesceAndCallbackOfJobQueued_OnlyNewestDelivered() throws IOException, URISyntaxException {
+        configuration.setCoalesce(true);
+        respondWith(200);
+        ExecutorService workers = mock(ExecutorService.class);
+        dispatcher = new CallbackDispatcher(configuration, httpClient, workers, retryTimer);
+        dispatcher.dispatch(stateCallback("1234", "PENDING"));
+        dispatcher.dispatch(stateCallback("1234", "RUNNING"));
+        dispatcher.dispatch(stateCallback("1234", "DONE"));
+
+        ArgumentCaptor<Runnable> delivery = ArgumentCaptor.forClass(Runnable.class);
+        verify(workers).execute(delivery.capture());
+        delivery.getValue().run();
+
+        ArgumentCaptor<HttpPut> request = ArgumentCaptor.forClass(HttpPut.class);
+        verify(httpClient).execute(request.capture());
+        assertThat(stateOf(request.getValue())).isEqualTo("DONE");
+        assertThat(dispatcher.getPending()).isEqualTo(0);
+    }
+
+    @Test
+    public void dispatch_CoalesceAndNewerStatusDuringDelivery_NewerDeliveredAfterwards() throws IOException,
+            URISyntaxException {
+        configuration.setCoalesce(true);
+        final HttpResponse response = mock(HttpResponse.class);
+        when(response.getStatusLine()).thenReturn(new BasicStatusLine(HttpVersion.HTTP_1_1, 200, null));
+        final Callback newer = stateCallback("1234", "DONE");
+        when(httpClient.execute(any(HttpUriRequest.class))).thenAnswer(new Answer<HttpResponse>() {
+            private boolean first = true;
+
+            public HttpResponse answer(InvocationOnMock invocation) {
+                if (first) {
+                    first = false;
+                    dispatcher.dispatch(newer);
+                }
+                return response;
+            }
+        });
+
+        dispatcher.dispatch(stateCallback("1234", "RUNNING"));
+
+        ArgumentCaptor<HttpPut> request = ArgumentCaptor.forClass(HttpPut.class);
+        verify(httpClient, times(2)).execute(request.capture());
+        assertThat(stateOf(request.getAllValues().get(0))).isEqualTo("RUNNING");
+        assertThat(stateOf(request.getAllValues().get(1))).isEqualTo("DONE");
+        assertThat(dispatcher.getPending()).isEqualTo(0);
+    }
+
+    @Test
+    public void dispatch_CoalesceAndNewerStatusWhileWaitingForRetry_NewerRetried() throws IOException,
+            URISyntaxException {
+        configuration.setCoalesce(true);
+        respondWith(503);
+        dispatcher.dispatch(stateCallback("1234", "RUNNING"));
+        ArgumentCaptor<Runnable> retry = ArgumentCaptor.forClass(Runnable.class);
+        verify(retryTimer).schedule(retry.capture(), eq(1000L), eq(TimeUnit.MILLISECONDS));
+        dispatcher.dispatch(stateCallback("1234", "DONE"));
+        respondWith(200);
+
+        retry.getValue().run();
+
+        ArgumentCaptor<HttpPut> request = ArgumentCaptor.forClass(HttpPut.class);
+        verify(httpClient, times(2)).execute(request.capture());
+        assertThat(stateOf(request.getAllValues().get(1))).isEqualTo("DONE");
+        assertThat(dispatcher.getPending()).isEqualTo(0);
+    }
+
+    @Test
+    public void dispatch_CoalesceAndOtherJobs_BothDelivered() throws IOException, URISyntaxException {
+        configuration.setCoalesce(true);
+        respondWith(200);
+
+        dispatcher.dispatch(stateCallback("1234", "RUNNING"));
+        dispatcher.dispatch(stateCallback("4567", "RUNNING"));
+
+        verify(httpClient, times(2)).execute(any(HttpUriRequest.class));
+    }
+
+    @Test
+    public void dispatch_CoalesceDelay_QueuedAfterDelay() throws IOException {
+        configuration.setCoalesce(true);
+        configuration.setCoalesceDelay(200);
+        respondWith(200);
+
+        dispatcher.dispatch(callback);
+
+        ArgumentCaptor<Runnable> queueing = ArgumentCaptor.forClass(Runnable.class);
+        verify(retryTimer).schedule(queueing.capture(), eq(200L), eq(TimeUnit.MILLISECONDS));
+        verify(httpClient, never()).execute(any(HttpUriRequest.class));
+        queueing.getValue().run();
+        verify(httpClient).execute(any(HttpUriRequest.class));
+    }
+
+    private void enableBatches(int maxBatchSize) throws URISyntaxException {
+        BatchCallbackConfiguration batchConfiguration = new BatchCallbackConfiguration(new URI("http://localhost/job/"),
+                new URI("http://localhost/batch"), 500, maxBatchSize);
+        configuration.setBatches(ImmutableList.of(batchConfiguration));
+    }
+
+    private static JsonNode bodyOf(HttpPost post) throws IOException {
+        return new ObjectMapper().readTree(EntityUtils.toString(post.getEntity()));
+    }
+
+    @Test
+    public void dispatch_BatchScope_PostedAfterLinger() throws IOException, URISyntaxException {
+        enableBatches(10);
+        respondWith(200);
+        dispatcher = new CallbackDispatcher(configuration, httpClient, MoreExecutors.sameThreadExecutor(), retryTimer);
+        dispatcher.dispatch(stateCallback("1234", "RUNNING"));
+        dispatcher.dispatch(stateCallback("4567", "DONE"));
+        verify(httpClient, never()).execute(any(HttpUriRequest.class));
+
+        ArgumentCaptor<Runnable> linger = ArgumentCaptor.forClass(Runnable.class);
+        verify(retryTimer).schedule(linger.capture(), eq(500L), eq(TimeUnit.MILLISECONDS));
+        linger.getValue().run();
+
+        ArgumentCaptor<HttpPost> request = ArgumentCaptor.forClass(HttpPost.class);
+        verify(httpClient).execute(request.capture());
+        assertThat(request.getValue().getURI()).isEqualTo(new URI("http://localhost/batch"));
+        JsonNode body = bodyOf(request.getValue());
+        assertThat(body.size()).isEqualTo(2);
+        assertThat(body.get(0).get("jobIdentifier").asText()).isEqualTo("1234");
+        assertThat(body.get(0).get("url").asText()).isEqualTo("http://localhost/job/1234/status");
+        assertThat(body.get(0).get("status").get("state").asText()).isEqualTo("RUNNING");
+        assertThat(body.get(1).get("jobIdentifier").asText()).isEqualTo("4567");
+        assertThat(dispatcher.getPending()).isEqualTo(0);
+    }
+
+    @Test
+    public void dispatch_BatchFull_PostedWithoutLinger() throws IOException, URISyntaxException {
+        enableBatches(2);
+        respondWith(200);
+        dispatcher = new CallbackDispatcher(configuration, httpClient, MoreExecutors.sameThreadExecutor(), retryTimer);
+
+        dispatcher.dispatch(stateCallback("1234", "RUNNING"));
+        dispatcher.dispatch(stateCallback("4567", "DONE"));
+
+        ArgumentCaptor<HttpPost> request = ArgumentCaptor.forClass(HttpPost.class);
+        verify(httpClient).execute(request.capture());
+        assertThat(bodyOf(request.getValue()).size()).isEqualTo(2);
+    }
+
+    @Test
+    public void dispatch_BatchInFlight_NextBatchSentAfterwards() throws IOException, URISyntaxException {
+        enableBatches(1);
+        respondWith(200);
+        ExecutorService workers = mock(ExecutorService.class);
+        dispatcher = new CallbackDispatcher(configuration, httpClient, workers, retryTimer);
+        dispatcher.dispatch(stateCallback("1234", "RUNNING"));
+        dispatcher.dispatch(stateCallback("4567", "DONE"));
+
+        ArgumentCaptor<Runnable> delivery = ArgumentCaptor.forClass(Runnable.class);
+        verify(workers).execute(delivery.capture());
+        delivery.getValue().run();
+
+        verify(workers, times(2)).execute(any(Runnable.class));
+    }
+
+    @Test
+    public void dispatch_BatchAndCoalesce_OnlyNewestStatusOfJobInBatch() throws IOException, URISyntaxException {
+        enableBatches(10);
+        configuration.setCoalesce(true);
+        respondWith(200);
+        dispatcher = new CallbackDispatcher(configuration, httpClient, MoreExecutors.sameThreadExecutor(), retryTimer);
+        dispatcher.dispatch(stateCallback("1234", "RUNNING"));
+        dispatcher.dispatch(stateCallback("1234", "DONE"));
+
+        ArgumentCaptor<Runnable> linger = ArgumentCaptor.forClass(Runnable.class);
+        verify(retryTimer).schedule(linger.capture(), eq(500L), eq(TimeUnit.MILLISECONDS));
+        linger.getValue().run();
+
+        ArgumentCaptor<HttpPost> request = ArgumentCaptor.forClass(HttpPost.class);
+        verify(httpClient).execute(request.capture());
+        JsonNode body = bodyOf(request.getValue());
+        assertThat(body.size()).isEqualTo(1);
+        assertThat(body.get(0).get("status").get("state").asText()).isEqualTo("DONE");
+        assertThat(dispatcher.getPending()).isEqualTo(0);
+    }
+
+    @Test
+    public void dispatch_BatchServerError_RetryScheduled() throws IOException, URISyntaxException {
+        enableBatches(1);
+        respondWith(500);
+        dispatcher = new CallbackDispatcher(configuration, httpClient, MoreExecutors.sameThreadExecutor(), retryTimer);
+
+        dispatcher.dispatch(stateCallback("1234", "RUNNING"));
+
+        ArgumentCaptor<Runnable> retry = ArgumentCaptor.forClass(Runnable.class);
+        verify(retryTimer).schedule(retry.capture(), eq(1000L), eq(TimeUnit.MILLISECONDS));
+        respondWith(200);
+        retry.getValue().run();
+        verify(httpClient, times(2)).execute(any(HttpUriRequest.class));
+        assertThat(dispatcher.getPending()).isEqualTo(0);
+    }
+
+    @Test
+    public void dispatch_BatchFailedOnLastAttempt_AllCallbacksDeadLettered() throws IOException, URISyntaxException {
+        enableBatches(2);
+        configuration.setMaxAttempts(1);
+        respondWith(500);
+        dispatcher = new CallbackDispatcher(configuration, httpClient, MoreExecutors.sameThreadExecutor(), retryTimer);
+        Callback callback1 = stateCallback("1234", "RUNNING");
+        Callback callback2 = stateCallback("4567", "RUNNING");
+
+        dispatcher.dispatch(callback1);
+        dispatcher.dispatch(callback2);
+
+        assertThat(dispatcher.getDeadLetters()).containsExactly(callback1, callback2);
+        assertThat(dispatcher.getPending()).isEqualTo(0);
+    }
+
+    @Test
+    public void dispatch_OutOfBatchScope_Put() throws IOException, URISyntaxException {
+        enableBatches(10);
+        respondWith(200);
+        dispatcher = new CallbackDispatcher(configuration, httpClient, MoreExecutors.sameThreadExecutor(), retryTimer);
+
+        dispatcher.dispatch(sampleCallback("1234", "http://example.com/status"));
+
+        verify(httpClient).execute(any(HttpPut.class));
+    }
+}
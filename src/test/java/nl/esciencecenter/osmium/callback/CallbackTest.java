@@ -0,0 +1,89 @@
+/*
+ * #%L
+ * Osmium
+ * %%
+ * Copyright (C) 2013 Nederlands eScience Center
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package nl.esciencecenter.osmium.callback;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+
+import nl.esciencecenter.osmium.api.JobStatusResponse;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class CallbackTest {
+    private Callback callback;
+    private JobStatusResponse status;
+    private URI url;
+
+    @Before
+    public void setUp() throws URISyntaxException {
+        status = new JobStatusResponse("RUNNING", true, false, null, null, null);
+        url = new URI("http://localhost/status");
+        callback = new Callback("1234", url, status);
+    }
+
+    @Test
+    public void testCallback() {
+        assertThat(callback.getJobIdentifier()).isEqualTo("1234");
+        assertThat(callback.getUrl()).isEqualTo(url);
+        assertThat(callback.getStatus()).isEqualTo(status);
+        assertThat(callback.getAttempts()).isEqualTo(0);
+        assertThat(callback.getLastError()).isNull();
+    }
+
+    @Test
+    public void incrAttempts() {
+        callback.incrAttempts();
+
+        assertThat(callback.getAttempts()).isEqualTo(1);
+    }
+
+    @Test
+    public void testEquals_OtherAttempts_Equal() {
+        Callback other = new Callback("1234", url, status);
+        other.incrAttempts();
+
+        assertThat(callback).isEqualTo(other);
+        assertThat(callback.hashCode()).isEqualTo(other.hashCode());
+    }
+
+    @Test
+    public void testToString() {
+        callback.setLastError("HTTP status 500");
+
+        String expected = "Callback{1234, http://localhost/status, JobStatusResponse{RUNNING, true, false, null, null, null}, 0, HTTP status 500}";
+        assertThat(callback.toString()).isEqualTo(expected);
+    }
+
+    @Test
+    public void serializesToJSON() throws IOException {
+        callback.incrAttempts();
+        callback.setLastError("HTTP status 500");
+
+        String expected = "{\"jobIdentifier\":\"1234\",\"url\":\"http://localhost/status\",\"status\":{\"state\":\"RUNNING\","
+                + "\"exitCode\":null,\"running\":true,\"done\":false,\"schedulerSpecficInformation\":null,\"exception\":null}}";
+        assertThat(new ObjectMapper().writeValueAsString(callback)).isEqualTo(expected);
+    }
+}
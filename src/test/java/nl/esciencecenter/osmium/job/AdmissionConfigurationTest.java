@@ -0,0 +1,70 @@
+/*
+ * #%L
+ * Osmium
+ * %%
+ * Copyright (C) 2013 Nederlands eScience Center
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package nl.esciencecenter.osmium.job;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+public class AdmissionConfigurationTest {
+
+    @Test
+    public void testAdmissionConfiguration_Default_Unlimited() {
+        AdmissionConfiguration conf = new AdmissionConfiguration();
+
+        assertThat(conf.getMaxActiveJobs()).isEqualTo(0);
+        assertThat(conf.getMaxStagingBytes()).isEqualTo(0);
+        assertThat(conf.getClientRate()).isEqualTo(0.0);
+        assertThat(conf.getClientBurst()).isEqualTo(10);
+        assertThat(conf.getRetryAfter()).isEqualTo(60);
+        assertThat(conf.hasLimits()).isFalse();
+    }
+
+    @Test
+    public void testHasLimits() {
+        assertThat(new AdmissionConfiguration(10, 0, 0, 10).hasLimits()).isTrue();
+        assertThat(new AdmissionConfiguration(0, 1024, 0, 10).hasLimits()).isTrue();
+        assertThat(new AdmissionConfiguration(0, 0, 0.5, 10).hasLimits()).isTrue();
+    }
+
+    @Test
+    public void testSetters() {
+        AdmissionConfiguration conf = new AdmissionConfiguration();
+
+        conf.setMaxActiveJobs(100);
+        conf.setMaxStagingBytes(1024);
+        conf.setClientRate(2.5);
+        conf.setClientBurst(5);
+        conf.setRetryAfter(30);
+
+        AdmissionConfiguration expected = new AdmissionConfiguration(100, 1024, 2.5, 5);
+        expected.setRetryAfter(30);
+        assertThat(conf).isEqualTo(expected);
+        assertThat(conf.hashCode()).isEqualTo(expected.hashCode());
+    }
+
+    @Test
+    public void testToString() {
+        AdmissionConfiguration conf = new AdmissionConfiguration(100, 1024, 2.5, 5);
+
+        String expected = "AdmissionConfiguration{100, 1024, 2.5, 5, 60}";
+        assertThat(conf.toString()).isEqualTo(expected);
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * #%L
+ * Osmium
+ * %%
+ * Copyright (C) 2013 Nederlands eScience Center
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package nl.esciencecenter.osmium.job;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import nl.esciencecenter.osmium.api.JobSubmitRequest;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import com.yammer.metrics.core.Clock;
+
+public class AdmissionControllerTest {
+    @Rule
+    public TemporaryFolder testFolder = new TemporaryFolder();
+
+    @Test
+    public void testAdmit_BelowMaxActiveJobs_Admitted() {
+        AdmissionController admission = new AdmissionController(new AdmissionConfiguration(2, 0, 0, 10));
+
+        admission.admit(null, 0);
+        admission.jobActive("1", true);
+        admission.admit(null, 0);
+
+        assertThat(admission.getActiveJobs()).isEqualTo(2);
+    }
+
+    @Test
+    public void testAdmit_MaxActiveJobs_Rejected() {
+        AdmissionController admission = new AdmissionController(new AdmissionConfiguration(1, 0, 0, 10));
+        admission.admit(null, 0);
+
+        try {
+            admission.admit(null, 0);
+            fail("AdmissionException not thrown");
+        } catch (AdmissionException e) {
+            assertThat(e.getMessage()).isEqualTo("Maximum number of active jobs reached");
+            assertThat(e.getRetryAfter()).isEqualTo(60);
+        }
+    }
+
+    @Test
+    public void testJobFinished_SlotReleased() {
+        AdmissionController admission = new AdmissionController(new AdmissionConfiguration(1, 0, 0, 10));
+        admission.admit(null, 0);
+        admission.jobActive("1", true);
+
+        admission.jobFinished("1");
+        admission.jobFinished("1");
+
+        assertThat(admission.getActiveJobs()).isEqualTo(0);
+        admission.admit(null, 0);
+    }
+
+    @Test
+    public void testCancel_SlotReleased() {
+        AdmissionController admission = new AdmissionController(new AdmissionConfiguration(1, 0, 0, 10));
+        admission.admit(null, 0);
+
+        admission.cancel();
+
+        assertThat(admission.getActiveJobs()).isEqualTo(0);
+    }
+
+    @Test
+    public void testJobActive_Recovered_Counted() {
+        AdmissionController admission = new AdmissionController(new AdmissionConfiguration(1, 0, 0, 10));
+
+        admission.jobActive("1", false);
+        admission.jobActive("1", false);
+
+        assertThat(admission.getActiveJobs()).isEqualTo(1);
+    }
+
+    @Test
+    public void testAdmit_MaxStagingBytes_Rejected() {
+        AdmissionController admission = new AdmissionController(new AdmissionConfiguration(0, 1000, 0, 10));
+        admission.admit(null, 600);
+
+        try {
+            admission.admit(null, 600);
+            fail("AdmissionException not thrown");
+        } catch (AdmissionException e) {
+            assertThat(e.getMessage()).isEqualTo("Maximum size of staging input files reached");
+        }
+        assertThat(admission.getStagingBytes()).isEqualTo(600);
+        assertThat(admission.getActiveJobs()).isEqualTo(1);
+    }
+
+    @Test
+    public void testAdmit_LargerThanMaxStagingBytesWhileIdle_Admitted() {
+        AdmissionController admission = new AdmissionController(new AdmissionConfiguration(0, 1000, 0, 10));
+
+        admission.admit(null, 5000);
+
+        assertThat(admission.getStagingBytes()).isEqualTo(5000);
+    }
+
+    @Test
+    public void testStagingFinished_BytesReleased() {
+        AdmissionController admission = new AdmissionController(new AdmissionConfiguration(0, 1000, 0, 10));
+        admission.admit(null, 600);
+
+        admission.stagingFinished(600);
+        admission.admit(null, 600);
+
+        assertThat(admission.getStagingBytes()).isEqualTo(600);
+    }
+
+    @Test
+    public void testAdmit_ClientBurstExhausted_RejectedUntilRefilled() {
+        Clock clock = mock(Clock.class);
+        when(clock.time()).thenReturn(1000L);
+        AdmissionController admission = new AdmissionController(new AdmissionConfiguration(0, 0, 0.5, 2), clock);
+        admission.admit("10.0.0.1", 0);
+        admission.admit("10.0.0.1", 0);
+
+        try {
+            admission.admit("10.0.0.1", 0);
+            fail("AdmissionException not thrown");
+        } catch (AdmissionException e) {
+            assertThat(e.getMessage()).isEqualTo("Submission rate limit of client reached");
+            assertThat(e.getRetryAfter()).isEqualTo(2);
+        }
+        // other clients have their own bucket
+        admission.admit("10.0.0.2", 0);
+        when(clock.time()).thenReturn(3000L);
+        admission.admit("10.0.0.1", 0);
+    }
+
+    @Test
+    public void testAdmit_RejectedByMaxActiveJobs_RateLimitTokenKept() {
+        Clock clock = mock(Clock.class);
+        when(clock.time()).thenReturn(1000L);
+        AdmissionController admission = new AdmissionController(new AdmissionConfiguration(1, 0, 0.5, 1), clock);
+        admission.admit(null, 0);
+
+        try {
+            admission.admit("10.0.0.1", 0);
+            fail("AdmissionException not thrown");
+        } catch (AdmissionException e) {
+            assertThat(e.getMessage()).isEqualTo("Maximum number of active jobs reached");
+        }
+        admission.cancel();
+
+        admission.admit("10.0.0.1", 0);
+        assertThat(admission.getActiveJobs()).isEqualTo(1);
+    }
+
+    @Test
+    public void testAdmit_RateLimited_ReservationsReleased() {
+        Clock clock = mock(Clock.class);
+        when(clock.time()).thenReturn(1000L);
+        AdmissionController admission = new AdmissionController(new AdmissionConfiguration(10, 1000, 0.5, 1), clock);
+        admission.admit("10.0.0.1", 100);
+
+        try {
+            admission.admit("10.0.0.1", 200);
+            fail("AdmissionException not thrown");
+        } catch (AdmissionException e) {
+            assertThat(e.getMessage()).isEqualTo("Submission rate limit of client reached");
+        }
+
+        assertThat(admission.getActiveJobs()).isEqualTo(1);
+        assertThat(admission.getStagingBytes()).isEqualTo(100);
+    }
+
+    @Test
+    public void testAdmit_NoClient_NotRateLimited() {
+        AdmissionController admission = new AdmissionController(new AdmissionConfiguration(0, 0, 0.5, 1));
+
+        admission.admit(null, 0);
+        admission.admit(null, 0);
+
+        assertThat(admission.getActiveJobs()).isEqualTo(2);
+    }
+
+    @Test
+    public void testTokenBucket_Take() {
+        AdmissionController.TokenBucket bucket = new AdmissionController.TokenBucket(1, 1, 0);
+
+        assertThat(bucket.take(0)).isEqualTo(0);
+        assertThat(bucket.take(250)).isEqualTo(750);
+        assertThat(bucket.isFull(1000)).isTrue();
+    }
+
+    @Test
+    public void testGetStagingSize_DirectoryNotWalked() throws IOException {
+        File jobdir = testFolder.newFolder("job");
+        Files.write("abc", new File(jobdir, "input.txt"), Charsets.UTF_8);
+        File data = new File(jobdir, "data");
+        data.mkdir();
+        Files.write("12345", new File(data, "a.txt"), Charsets.UTF_8);
+        File absolute = testFolder.newFile("absolute.txt");
+        Files.write("xy", absolute, Charsets.UTF_8);
+        JobSubmitRequest request = new JobSubmitRequest();
+        request.jobdir = jobdir.getAbsolutePath();
+        request.prestaged = Arrays.asList("input.txt", "data", absolute.getAbsolutePath(), "missing.txt");
+
+        assertThat(AdmissionController.getStagingSize(request)).isEqualTo(5);
+    }
+}
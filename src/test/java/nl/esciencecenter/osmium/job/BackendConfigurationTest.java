@@ -0,0 +1,74 @@
+/*
+ * #%L
+ * Osmium
+ * %%
+ * Copyright (C) 2013 Nederlands eScience Center
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package nl.esciencecenter.osmium.job;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+public class BackendConfigurationTest {
+    private final SchedulerConfiguration scheduler = new SchedulerConfiguration("slurm", "cluster", "batch", null);
+    private final SandboxConfiguration sandbox = new SandboxConfiguration("sftp", "cluster", "/scratch", null);
+
+    @Test
+    public void testBackendConfiguration() {
+        BackendConfiguration conf = new BackendConfiguration("heavy", scheduler, sandbox);
+
+        assertThat(conf.getName()).isEqualTo("heavy");
+        assertThat(conf.getScheduler()).isEqualTo(scheduler);
+        assertThat(conf.getSandbox()).isEqualTo(sandbox);
+        assertThat(conf.getExecutable()).isNull();
+        assertThat(conf.getArguments()).isNull();
+    }
+
+    @Test
+    public void testSetters() {
+        BackendConfiguration conf = new BackendConfiguration();
+
+        conf.setName("heavy");
+        conf.setScheduler(scheduler);
+        conf.setSandbox(sandbox);
+        conf.setExecutable(".*/mpirun");
+        conf.setArguments("-np");
+
+        BackendConfiguration expected = new BackendConfiguration("heavy", scheduler, sandbox);
+        expected.setExecutable(".*/mpirun");
+        expected.setArguments("-np");
+        assertThat(conf).isEqualTo(expected);
+        assertThat(conf.hashCode()).isEqualTo(expected.hashCode());
+    }
+
+    @Test
+    public void testEquals_Different() {
+        BackendConfiguration conf = new BackendConfiguration("heavy", scheduler, sandbox);
+        BackendConfiguration other = new BackendConfiguration("light", scheduler, sandbox);
+
+        assertThat(conf).isNotEqualTo(other);
+    }
+
+    @Test
+    public void testToString() {
+        BackendConfiguration conf = new BackendConfiguration("heavy", scheduler, sandbox);
+
+        String expected = "BackendConfiguration{heavy, SchedulerConfiguration{slurm, batch, cluster, null}, "
+                + "SandboxConfiguration{sftp, /scratch, cluster, null}, null, null}";
+        assertThat(conf.toString()).isEqualTo(expected);
+    }
+}
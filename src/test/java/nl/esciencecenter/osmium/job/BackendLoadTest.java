@@ -0,0 +1,91 @@
+/*
+ * #%L
+ * Osmium
+ * %%
+ * Copyright (C) 2013 Nederlands eScience Center
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package nl.esciencecenter.osmium.job;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.fest.assertions.api.Assertions.offset;
+
+import org.junit.Test;
+
+public class BackendLoadTest {
+
+    @Test
+    public void testBackendLoad_Initial_Idle() {
+        BackendLoad load = new BackendLoad();
+
+        assertThat(load.getQueueDepth()).isEqualTo(0);
+        assertThat(load.getSubmitLatency()).isEqualTo(0.0);
+        assertThat(load.getFailureRate()).isEqualTo(0.0);
+    }
+
+    @Test
+    public void testRecordSubmit_Succeeded_QueueDepthIncreased() {
+        BackendLoad load = new BackendLoad();
+        load.sample(3);
+
+        load.recordSubmit(100, false);
+
+        assertThat(load.getQueueDepth()).isEqualTo(4);
+        assertThat(load.getSubmitLatency()).isEqualTo(20.0, offset(0.001));
+        assertThat(load.getFailureRate()).isEqualTo(0.0);
+    }
+
+    @Test
+    public void testRecordSubmit_Failed_FailureRateIncreased() {
+        BackendLoad load = new BackendLoad();
+
+        load.recordSubmit(100, true);
+        load.recordSubmit(100, true);
+
+        assertThat(load.getQueueDepth()).isEqualTo(0);
+        assertThat(load.getFailureRate()).isEqualTo(0.36, offset(0.001));
+    }
+
+    @Test
+    public void testSample_ResetsSubmittedSinceSample() {
+        BackendLoad load = new BackendLoad();
+        load.recordSubmit(1, false);
+        load.recordSubmit(1, false);
+
+        load.sample(1);
+
+        assertThat(load.getQueueDepth()).isEqualTo(1);
+    }
+
+    @Test
+    public void testSampleFailed_FailureRateIncreased() {
+        BackendLoad load = new BackendLoad();
+
+        load.sampleFailed();
+
+        assertThat(load.getFailureRate()).isEqualTo(0.2, offset(0.001));
+    }
+
+    @Test
+    public void testSample_FailureRateAndLatencyDecayed() {
+        BackendLoad load = new BackendLoad();
+        load.recordSubmit(1000, true);
+
+        load.sample(0);
+
+        assertThat(load.getFailureRate()).isEqualTo(0.16, offset(0.001));
+        assertThat(load.getSubmitLatency()).isEqualTo(160, offset(0.001));
+    }
+}
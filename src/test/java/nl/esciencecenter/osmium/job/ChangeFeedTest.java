@@ -0,0 +1,199 @@
+/*
+ * #%L
+ * Osmium
+ * %%
+ * Copyright (C) 2013 Nederlands eScience Center
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package nl.esciencecenter.osmium.job;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import java.io.IOException;
+
+import nl.esciencecenter.osmium.api.JobSubmitRequest;
+import nl.esciencecenter.osmium.api.SandboxedJob;
+import nl.esciencecenter.osmium.job.ChangeFeed.Page;
+import nl.esciencecenter.xenon.engine.jobs.JobStatusImplementation;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ChangeFeedTest {
+    private ChangeFeed feed;
+    private SandboxedJob job;
+
+    @Before
+    public void setUp() {
+        feed = new ChangeFeed(3, "epoch");
+        job = new SandboxedJob("1234", new JobSubmitRequest(), null);
+    }
+
+    @Test
+    public void testGetChangesSince_Empty() {
+        Page page = feed.getChangesSince(0, 10);
+
+        assertThat(page.isResync()).isFalse();
+        assertThat(page.getNext()).isEqualTo(0);
+        assertThat(page.isMore()).isFalse();
+        assertThat(page.getChanges()).isEmpty();
+    }
+
+    @Test
+    public void testJobChanged_SequenceStoredInJob() {
+        long sequence = feed.jobChanged(job);
+
+        assertThat(sequence).isEqualTo(1);
+        assertThat(job.getSequence()).isEqualTo(1);
+        assertThat(feed.getLast()).isEqualTo(1);
+    }
+
+    @Test
+    public void testGetChangesSince_StatusSnapshotOfChange() throws IOException {
+        feed.jobChanged(job);
+        job.abortStaging(new JobStatusImplementation(null, "KILLED", null, null, false, true, null));
+        feed.jobChanged(job);
+
+        Page page = feed.getChangesSince(0, 10);
+
+        assertThat(page.getNext()).isEqualTo(2);
+        assertThat(page.getChanges()).hasSize(2);
+        assertThat(page.getChanges().get(0).getSequence()).isEqualTo(1);
+        assertThat(page.getChanges().get(0).getJobIdentifier()).isEqualTo("1234");
+        assertThat(page.getChanges().get(0).getStatus().getState()).isEqualTo("STAGING");
+        assertThat(page.getChanges().get(1).getStatus().getState()).isEqualTo("KILLED");
+    }
+
+    @Test
+    public void testGetChangesSince_OnlyDeltas() {
+        feed.jobChanged(job);
+        feed.jobChanged(job);
+        feed.jobDeleted(job);
+
+        Page page = feed.getChangesSince(2, 10);
+
+        assertThat(page.getNext()).isEqualTo(3);
+        assertThat(page.getChanges()).hasSize(1);
+        assertThat(page.getChanges().get(0).isDeleted()).isTrue();
+        assertThat(page.getChanges().get(0).getStatus()).isNull();
+    }
+
+    @Test
+    public void testGetChangesSince_Limit_More() {
+        feed.jobChanged(job);
+        feed.jobChanged(job);
+        feed.jobChanged(job);
+
+        Page page = feed.getChangesSince(0, 2);
+
+        assertThat(page.getChanges()).hasSize(2);
+        assertThat(page.getNext()).isEqualTo(2);
+        assertThat(page.isMore()).isTrue();
+    }
+
+    @Test
+    public void testGetChangesSince_Latest_NoChanges() {
+        feed.jobChanged(job);
+
+        Page page = feed.getChangesSince(1, 10);
+
+        assertThat(page.isResync()).isFalse();
+        assertThat(page.getNext()).isEqualTo(1);
+        assertThat(page.getChanges()).isEmpty();
+    }
+
+    @Test
+    public void testGetChangesSince_FellOffBuffer_Resync() {
+        for (int i = 0; i < 5; i++) {
+            feed.jobChanged(job);
+        }
+
+        Page page = feed.getChangesSince(1, 10);
+
+        assertThat(page.isResync()).isTrue();
+        assertThat(page.getNext()).isEqualTo(5);
+        assertThat(page.getChanges()).isEmpty();
+    }
+
+    @Test
+    public void testGetChangesSince_OldestInBuffer_NoResync() {
+        for (int i = 0; i < 5; i++) {
+            feed.jobChanged(job);
+        }
+
+        Page page = feed.getChangesSince(2, 10);
+
+        assertThat(page.isResync()).isFalse();
+        assertThat(page.getChanges()).hasSize(3);
+        assertThat(page.getChanges().get(0).getSequence()).isEqualTo(3);
+    }
+
+    @Test
+    public void testGetChangesSince_AfterLast_Resync() {
+        feed.jobChanged(job);
+
+        Page page = feed.getChangesSince(42, 10);
+
+        assertThat(page.isResync()).isTrue();
+        assertThat(page.getNext()).isEqualTo(1);
+    }
+
+    @Test
+    public void testGetChangesSince_Cursor() {
+        feed.jobChanged(job);
+        feed.jobChanged(job);
+
+        Page page = feed.getChangesSince("epoch-1", 10);
+
+        assertThat(page.isResync()).isFalse();
+        assertThat(page.getChanges()).hasSize(1);
+        assertThat(page.getCursor()).isEqualTo("epoch-2");
+    }
+
+    @Test
+    public void testGetChangesSince_NoCursor_FromOldest() {
+        feed.jobChanged(job);
+
+        Page page = feed.getChangesSince(null, 10);
+
+        assertThat(page.getChanges()).hasSize(1);
+        assertThat(page.getCursor()).isEqualTo("epoch-1");
+    }
+
+    @Test
+    public void testGetChangesSince_CursorOfPreviousInstance_Resync() {
+        ChangeFeed previous = new ChangeFeed(3, "previous");
+        previous.jobChanged(job);
+        for (int i = 0; i < 3; i++) {
+            feed.jobChanged(job);
+        }
+
+        Page page = feed.getChangesSince(previous.getCursor(1), 10);
+
+        assertThat(page.isResync()).isTrue();
+        assertThat(page.getChanges()).isEmpty();
+        assertThat(page.getCursor()).isEqualTo("epoch-3");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGetChangesSince_CursorWithoutEpoch_Malformed() {
+        feed.getChangesSince("42", 10);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGetChangesSince_CursorWithoutSequence_Malformed() {
+        feed.getChangesSince("epoch-", 10);
+    }
+}
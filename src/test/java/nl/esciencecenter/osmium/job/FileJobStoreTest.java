@@ -0,0 +1,173 @@
+/*
+ * #%L
+ * Osmium
+ * %%
+ * Copyright (C) 2013 Nederlands eScience Center
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package nl.esciencecenter.osmium.job;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collection;
+
+import nl.esciencecenter.osmium.api.SandboxedJob;
+import nl.esciencecenter.xenon.engine.jobs.JobImplementation;
+import nl.esciencecenter.xenon.engine.jobs.JobStatusImplementation;
+import nl.esciencecenter.xenon.jobs.Job;
+import nl.esciencecenter.xenon.jobs.JobDescription;
+import nl.esciencecenter.xenon.jobs.Scheduler;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import static org.mockito.Mockito.mock;
+
+public class FileJobStoreTest {
+    @Rule
+    public TemporaryFolder testFolder = new TemporaryFolder();
+
+    private File directory;
+
+    @Before
+    public void setUp() {
+        directory = new File(testFolder.getRoot(), "store");
+    }
+
+    private SandboxedJob sampleJob(String identifier, String state, boolean done) {
+        Job job = new JobImplementation(mock(Scheduler.class), identifier, mock(JobDescription.class), false, false);
+        return new SandboxedJob(null, job, null, null, new JobStatusImplementation(job, state, null, null, !done, done, null), 0);
+    }
+
+    @Test
+    public void load_Empty_DirectoryCreated() throws IOException {
+        FileJobStore store = new FileJobStore(directory, 10, new ObjectMapper());
+
+        Collection<JobRecord> records = store.load();
+
+        assertThat(records).isEmpty();
+        assertThat(directory.isDirectory()).isTrue();
+        store.close();
+    }
+
+    @Test
+    public void load_PutAndRemoved_LastStatesRestored() throws IOException {
+        FileJobStore store = new FileJobStore(directory, 10, new ObjectMapper());
+        store.load();
+        store.put(sampleJob("1", "PENDING", false));
+        store.put(sampleJob("2", "PENDING", false));
+        SandboxedJob running = sampleJob("1", "RUNNING", false);
+        store.put(running);
+        store.remove("2");
+        store.close();
+
+        FileJobStore reopened = new FileJobStore(directory, 10, new ObjectMapper());
+        Collection<JobRecord> records = reopened.load();
+
+        assertThat(records).containsOnly(new JobRecord(running));
+        reopened.close();
+    }
+
+    @Test
+    public void put_SnapshotIntervalReached_LogTruncated() throws IOException {
+        FileJobStore store = new FileJobStore(directory, 2, new ObjectMapper());
+        store.load();
+        store.put(sampleJob("1", "PENDING", false));
+        store.put(sampleJob("2", "PENDING", false));
+        store.close();
+
+        assertThat(new File(directory, "jobs.log").length()).isEqualTo(0);
+        assertThat(new File(directory, "jobs.log.old").exists()).isFalse();
+        FileJobStore reopened = new FileJobStore(directory, 2, new ObjectMapper());
+        assertThat(reopened.load()).hasSize(2);
+        reopened.close();
+    }
+
+    @Test
+    public void load_PartiallyWrittenLastLine_Skipped() throws IOException {
+        FileJobStore store = new FileJobStore(directory, 10, new ObjectMapper());
+        store.load();
+        SandboxedJob done = sampleJob("1", "DONE", true);
+        store.put(done);
+        store.close();
+        OutputStream log = new FileOutputStream(new File(directory, "jobs.log"), true);
+        log.write("P {\"identifier\":\"2\",\"sta".getBytes("UTF-8"));
+        log.close();
+
+        FileJobStore reopened = new FileJobStore(directory, 10, new ObjectMapper());
+        Collection<JobRecord> records = reopened.load();
+
+        assertThat(records).containsOnly(new JobRecord(done));
+        reopened.close();
+    }
+
+    @Test
+    public void load_KilledWhileReplacingSnapshot_TmpSnapshotUsed() throws IOException {
+        FileJobStore store = new FileJobStore(directory, 10, new ObjectMapper());
+        store.load();
+        store.put(sampleJob("1", "DONE", true));
+        store.close();
+        // simulate snapshot written to tmp file and old snapshot deleted, but not yet renamed
+        FileJobStore compacted = new FileJobStore(directory, 10, new ObjectMapper());
+        compacted.load();
+        compacted.close();
+        File snapshot = new File(directory, "jobs.snapshot");
+        assertThat(snapshot.renameTo(new File(directory, "jobs.snapshot.tmp"))).isTrue();
+
+        FileJobStore reopened = new FileJobStore(directory, 10, new ObjectMapper());
+        Collection<JobRecord> records = reopened.load();
+
+        assertThat(records).hasSize(1);
+        reopened.close();
+    }
+
+    @Test
+    public void load_KilledWhileWritingSnapshot_OldLogReplayed() throws IOException {
+        FileJobStore store = new FileJobStore(directory, 10, new ObjectMapper());
+        store.load();
+        SandboxedJob job1 = sampleJob("1", "DONE", true);
+        store.put(job1);
+        store.close();
+        // simulate log moved aside for a snapshot which was never written, after which another change was logged
+        File log = new File(directory, "jobs.log");
+        assertThat(log.renameTo(new File(directory, "jobs.log.old"))).isTrue();
+        OutputStream newLog = new FileOutputStream(log);
+        newLog.write(("P " + new ObjectMapper().writeValueAsString(new JobRecord(sampleJob("2", "PENDING", false))) + "\n")
+                .getBytes("UTF-8"));
+        newLog.close();
+
+        FileJobStore reopened = new FileJobStore(directory, 10, new ObjectMapper());
+        Collection<JobRecord> records = reopened.load();
+
+        assertThat(records).hasSize(2).contains(new JobRecord(job1));
+        assertThat(new File(directory, "jobs.log.old").exists()).isFalse();
+        reopened.close();
+    }
+
+    @Test(expected = IOException.class)
+    public void put_NotLoaded_Exception() throws IOException {
+        FileJobStore store = new FileJobStore(directory, 10, new ObjectMapper());
+
+        store.put(sampleJob("1", "DONE", true));
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * #%L
+ * Osmium
+ * %%
+ * Copyright (C) 2013 Nederlands eScience Center
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package nl.esciencecenter.osmium.job;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Arrays;
+
+import nl.esciencecenter.osmium.api.JobSubmitRequest;
+import nl.esciencecenter.osmium.api.SandboxedJob;
+import nl.esciencecenter.xenon.engine.jobs.JobImplementation;
+import nl.esciencecenter.xenon.engine.jobs.JobStatusImplementation;
+import nl.esciencecenter.xenon.files.Path;
+import nl.esciencecenter.xenon.files.RelativePath;
+import nl.esciencecenter.xenon.jobs.Job;
+import nl.esciencecenter.xenon.jobs.JobDescription;
+import nl.esciencecenter.xenon.jobs.JobStatus;
+import nl.esciencecenter.xenon.jobs.Scheduler;
+import nl.esciencecenter.xenon.util.Sandbox;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class JobRecordTest {
+    private JobSubmitRequest request;
+
+    @Before
+    public void setUp() throws URISyntaxException {
+        request = new JobSubmitRequest("/tmp/jobdir", "/bin/sh", Arrays.asList("runme.sh"), Arrays.asList("runme.sh"),
+                Arrays.asList("output.gz"), "stderr.txt", "stdout.txt", null, new URI("http://localhost/status"));
+    }
+
+    @Test
+    public void testJobRecord_RunningJob() {
+        Sandbox sandbox = mock(Sandbox.class);
+        Path path = mock(Path.class);
+        when(sandbox.getPath()).thenReturn(path);
+        when(path.getRelativePath()).thenReturn(new RelativePath("/tmp/sandboxes/xenon_sandbox_1"));
+        Job job = new JobImplementation(mock(Scheduler.class), "1234", mock(JobDescription.class), false, false);
+        JobStatus status = new JobStatusImplementation(job, "RUNNING", null, null, true, false, null);
+        SandboxedJob sjob = new SandboxedJob(sandbox, job, request, null, status, 0);
+
+        JobRecord record = new JobRecord(sjob);
+
+        JobRecord expected = new JobRecord("1234", request, "1234", "/tmp/sandboxes/xenon_sandbox_1", null, "RUNNING", null,
+                null, true, false, sjob.getCreatedAt());
+        assertThat(record).isEqualTo(expected);
+        assertThat(record.getSandboxName()).isEqualTo("xenon_sandbox_1");
+    }
+
+    @Test
+    public void testJobRecord_StagingJob() {
+        SandboxedJob sjob = new SandboxedJob("abcd", request, null);
+
+        JobRecord record = new JobRecord(sjob);
+
+        JobRecord expected = new JobRecord("abcd", request, null, null, "STAGING", null, null, null, false, false,
+                sjob.getCreatedAt());
+        assertThat(record).isEqualTo(expected);
+        assertThat(record.getSandboxName()).isNull();
+        assertThat(record.toJobStatus(null)).isNull();
+    }
+
+    @Test
+    public void testJobRecord_FinishedJob_Compacted() {
+        Sandbox sandbox = mock(Sandbox.class);
+        Job job = new JobImplementation(mock(Scheduler.class), "1234", mock(JobDescription.class), false, false);
+        JobStatus status = new JobStatusImplementation(job, "DONE", 0, null, false, true, null);
+        SandboxedJob sjob = new SandboxedJob(sandbox, job, request, null, status, 0);
+
+        JobRecord record = new JobRecord(sjob);
+
+        assertThat(record.isCompacted()).isTrue();
+        assertThat(record.getRequest()).isNull();
+        assertThat(record.getRequestDigest()).isEqualTo(SandboxedJob.digest(request));
+        assertThat(record.getSandboxPath()).isNull();
+        assertThat(record.getSchedulerJobIdentifier()).isNull();
+        assertThat(record.getState()).isEqualTo("DONE");
+        assertThat(record.getExitCode()).isEqualTo(0);
+    }
+
+    @Test
+    public void testJobRecord_CompactedJob_DigestOfJob() {
+        Job job = new JobImplementation(mock(Scheduler.class), "1234", mock(JobDescription.class), false, false);
+        JobStatus status = new JobStatusImplementation(job, "DONE", 0, null, false, true, null);
+        SandboxedJob sjob = new SandboxedJob(null, job, request, null, status, 0);
+        sjob.compact();
+
+        JobRecord record = new JobRecord(sjob);
+
+        assertThat(record.getRequestDigest()).isEqualTo(sjob.getRequestDigest());
+    }
+
+    @Test
+    public void testJobRecord_DownloadingJob_RequestKept() {
+        Sandbox sandbox = mock(Sandbox.class);
+        Path path = mock(Path.class);
+        when(sandbox.getPath()).thenReturn(path);
+        when(path.getRelativePath()).thenReturn(new RelativePath("/tmp/sandboxes/xenon_sandbox_1"));
+        Job job = new JobImplementation(mock(Scheduler.class), "1234", mock(JobDescription.class), false, false);
+        JobStatus status = new JobStatusImplementation(job, "DONE", 0, null, false, true, null);
+        SandboxedJob sjob = new SandboxedJob(sandbox, job, request, null, status, 0);
+        sjob.setPseudoState(SandboxedJob.DOWNLOADING);
+
+        JobRecord record = new JobRecord(sjob);
+
+        assertThat(record.isCompacted()).isFalse();
+        assertThat(record.getRequest()).isEqualTo(request);
+        assertThat(record.getSandboxName()).isEqualTo("xenon_sandbox_1");
+    }
+
+    @Test
+    public void testJson_CompactedRoundTrip_Equal() throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        Job job = new JobImplementation(mock(Scheduler.class), "1234", mock(JobDescription.class), false, false);
+        JobStatus status = new JobStatusImplementation(job, "DONE", 0, null, false, true, null);
+        JobRecord record = new JobRecord(new SandboxedJob(null, job, request, null, status, 0));
+
+        JobRecord result = mapper.readValue(mapper.writeValueAsString(record), JobRecord.class);
+
+        assertThat(result).isEqualTo(record);
+    }
+
+    @Test
+    public void testToJobStatus() {
+        JobRecord record = new JobRecord("1234", request, "1234", null, null, "KILLED", 1, "Process cancelled by user.",
+                false, true, 0);
+        Job job = mock(Job.class);
+
+        JobStatus status = record.toJobStatus(job);
+
+        assertThat(status.getJob()).isEqualTo(job);
+        assertThat(status.getState()).isEqualTo("KILLED");
+        assertThat(status.getExitCode()).isEqualTo(1);
+        assertThat(status.getException().getMessage()).isEqualTo("Process cancelled by user.");
+        assertThat(status.isRunning()).isFalse();
+        assertThat(status.isDone()).isTrue();
+    }
+
+    @Test
+    public void testJson_RoundTrip_Equal() throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        JobRecord record = new JobRecord("1234", request, "1234", "/tmp/sandboxes/xenon_sandbox_1", null, "DONE", 0, null,
+                false, true, 1371220000000L);
+
+        JobRecord result = mapper.readValue(mapper.writeValueAsString(record), JobRecord.class);
+
+        assertThat(result).isEqualTo(record);
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * #%L
+ * Osmium
+ * %%
+ * Copyright (C) 2013 Nederlands eScience Center
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package nl.esciencecenter.osmium.job;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+public class JobStoreConfigurationTest {
+
+    @Test
+    public void testJobStoreConfiguration_AllParameters() {
+        JobStoreConfiguration conf = new JobStoreConfiguration("/var/lib/osmium", 10);
+        assertThat(conf.getDirectory()).isEqualTo("/var/lib/osmium");
+        assertThat(conf.getSnapshotInterval()).isEqualTo(10);
+        assertThat(conf.isEnabled()).isTrue();
+    }
+
+    @Test
+    public void testJobStoreConfiguration_NoParameters() {
+        JobStoreConfiguration conf = new JobStoreConfiguration();
+        assertThat(conf.getDirectory()).isNull();
+        assertThat(conf.getSnapshotInterval()).isEqualTo(1000);
+        assertThat(conf.isEnabled()).isFalse();
+    }
+
+    @Test
+    public void testSetDirectory() {
+        JobStoreConfiguration conf = new JobStoreConfiguration();
+
+        conf.setDirectory("/var/lib/osmium");
+
+        assertThat(conf.getDirectory()).isEqualTo("/var/lib/osmium");
+    }
+
+    @Test
+    public void testSetSnapshotInterval() {
+        JobStoreConfiguration conf = new JobStoreConfiguration();
+
+        conf.setSnapshotInterval(10);
+
+        assertThat(conf.getSnapshotInterval()).isEqualTo(10);
+    }
+
+    @Test
+    public void testEquals_SameContent_equal() {
+        JobStoreConfiguration conf1 = new JobStoreConfiguration("/var/lib/osmium", 10);
+        JobStoreConfiguration conf2 = new JobStoreConfiguration("/var/lib/osmium", 10);
+
+        assertThat(conf1.equals(conf2)).isTrue();
+        assertThat(conf1.hashCode()).isEqualTo(conf2.hashCode());
+    }
+
+    @Test
+    public void testToString() {
+        JobStoreConfiguration conf = new JobStoreConfiguration();
+
+        String result = conf.toString();
+
+        String expected = "JobStoreConfiguration{null, 1000}";
+        assertThat(result).isEqualTo(expected);
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * #%L
+ * Osmium
+ * %%
+ * Copyright (C) 2013 Nederlands eScience Center
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package nl.esciencecenter.osmium.job;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import nl.esciencecenter.osmium.api.JobSubmitRequest;
+import nl.esciencecenter.osmium.api.SandboxedJob;
+import nl.esciencecenter.osmium.job.JobWatcher.Subscription;
+import nl.esciencecenter.xenon.engine.jobs.JobStatusImplementation;
+import nl.esciencecenter.xenon.jobs.JobStatus;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class JobWatcherTest {
+    private ExecutorService executor;
+    private JobWatcher watcher;
+    private SandboxedJob job;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newSingleThreadExecutor();
+        watcher = new JobWatcher(new WatchConfiguration(1, 10000, 1));
+        job = new SandboxedJob("1234", new JobSubmitRequest(), null);
+        job.setListener(watcher);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private JobStatus doneStatus() {
+        return new JobStatusImplementation(null, "DONE", 0, null, false, true, null);
+    }
+
+    private Future<Boolean> awaitInBackground(final SandboxedJob sjob, final long timeout) {
+        return executor.submit(new Callable<Boolean>() {
+            public Boolean call() throws Exception {
+                return watcher.awaitFinished(sjob, timeout);
+            }
+        });
+    }
+
+    /**
+     * Polls until the background waiters have registered their latch.
+     */
+    private void awaitWaiters(int count) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (watcher.getWaiterCount() < count) {
+            assertThat(System.nanoTime()).isLessThan(deadline);
+            Thread.yield();
+        }
+    }
+
+    @Test
+    public void testAwaitFinished_Finished_DirectlyTrue() throws InterruptedException, IOException {
+        job.abortStaging(doneStatus());
+
+        assertThat(watcher.awaitFinished(job, 0)).isTrue();
+    }
+
+    @Test
+    public void testAwaitFinished_Timeout_False() throws InterruptedException {
+        assertThat(watcher.awaitFinished(job, 10)).isFalse();
+    }
+
+    @Test
+    public void testAwaitFinished_FinishedWhileWaiting_True() throws Exception {
+        Future<Boolean> result = awaitInBackground(job, 10000);
+        awaitWaiters(1);
+
+        job.abortStaging(doneStatus());
+
+        assertThat(result.get(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    public void testAwaitFinished_DeletedWhileWaiting_Released() throws Exception {
+        Future<Boolean> result = awaitInBackground(job, 10000);
+        awaitWaiters(1);
+
+        job.markDeleted();
+
+        assertThat(result.get(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    public void testAwaitFinished_MaxWaitersReached_DirectlyRejected() throws Exception {
+        Future<Boolean> result = awaitInBackground(job, 10000);
+        awaitWaiters(1);
+
+        long start = System.nanoTime();
+        try {
+            watcher.awaitFinished(job, 10000);
+            fail("RejectedExecutionException not thrown");
+        } catch (RejectedExecutionException e) {
+            assertThat(e.getMessage()).isEqualTo("Maximum number of waiters reached");
+        }
+
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(5000);
+        job.abortStaging(doneStatus());
+        assertThat(result.get(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    public void testGetWaiterCount_WaiterReleased_Zero() throws Exception {
+        Future<Boolean> result = awaitInBackground(job, 10000);
+        awaitWaiters(1);
+
+        job.abortStaging(doneStatus());
+
+        result.get(5, TimeUnit.SECONDS);
+        assertThat(watcher.getWaiterCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void testSubscribe_JobChanged_EventQueued() throws Exception {
+        Subscription subscription = watcher.subscribe();
+
+        job.abortStaging(doneStatus());
+
+        String event = new String(subscription.poll(1000), StandardCharsets.UTF_8);
+        String expected = "{\"jobIdentifier\":\"1234\",\"status\":{\"state\":\"DONE\",\"exitCode\":0,\"running\":false,"
+                + "\"done\":true,\"schedulerSpecficInformation\":null,\"exception\":null}}";
+        assertThat(event).isEqualTo(expected);
+    }
+
+    @Test
+    public void testSubscribe_MaxStreamsReached_Null() {
+        watcher.subscribe();
+
+        assertThat(watcher.subscribe()).isNull();
+    }
+
+    @Test
+    public void testClose_SubscriptionClosedAndStreamReleased() throws InterruptedException {
+        Subscription subscription = watcher.subscribe();
+
+        subscription.close();
+        subscription.close();
+
+        assertThat(subscription.isClosed()).isTrue();
+        assertThat(subscription.poll(0)).isNull();
+        assertThat(watcher.subscribe()).isNotNull();
+    }
+
+    @Test
+    public void testCloseIdle_NotPolled_ClosedAndStreamReleased() {
+        Subscription subscription = watcher.subscribe();
+
+        watcher.closeIdle(System.currentTimeMillis() + 4 * watcher.getConfiguration().getHeartbeat());
+
+        assertThat(subscription.isClosed()).isTrue();
+        assertThat(watcher.subscribe()).isNotNull();
+    }
+
+    @Test
+    public void testCloseIdle_RecentlyPolled_Open() throws InterruptedException {
+        Subscription subscription = watcher.subscribe();
+        subscription.poll(0);
+
+        watcher.closeIdle(System.currentTimeMillis());
+
+        assertThat(subscription.isClosed()).isFalse();
+    }
+
+    @Test
+    public void testSubscription_QueueFull_Closed() {
+        WatchConfiguration conf = new WatchConfiguration(1, 10000, 1);
+        conf.setStreamQueueSize(1);
+        watcher = new JobWatcher(conf);
+        Subscription subscription = watcher.subscribe();
+
+        watcher.jobChanged(job);
+        watcher.jobChanged(job);
+
+        assertThat(subscription.isClosed()).isTrue();
+    }
+
+    @Test
+    public void testWatcherClose_WaitersReleased() throws Exception {
+        Future<Boolean> result = awaitInBackground(job, 10000);
+        awaitWaiters(1);
+        Subscription subscription = watcher.subscribe();
+
+        watcher.close();
+
+        result.get(5, TimeUnit.SECONDS);
+        assertThat(subscription.isClosed()).isTrue();
+    }
+}
@@ -23,7 +23,9 @@ package nl.esciencecenter.osmium.job;
 
 import static org.fest.assertions.api.Assertions.assertThat;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -36,6 +38,10 @@ import java.io.UnsupportedEncodingException;
 import java.net.URISyntaxException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import nl.esciencecenter.xenon.Xenon;
 import nl.esciencecenter.xenon.XenonException;
@@ -49,17 +55,24 @@ import nl.esciencecenter.xenon.jobs.JobStatus;
 import nl.esciencecenter.xenon.jobs.Jobs;
 import nl.esciencecenter.xenon.jobs.Scheduler;
 import nl.esciencecenter.xenon.util.Sandbox;
+import nl.esciencecenter.osmium.api.JobListener;
 import nl.esciencecenter.osmium.api.SandboxedJob;
 import nl.esciencecenter.osmium.job.JobsPoller;
 import nl.esciencecenter.osmium.job.PollConfiguration;
 
 import org.apache.http.client.ClientProtocolException;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Matchers;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.yammer.metrics.core.Clock;
 
 public class JobsPollerTest {
 
     @Test
-    public void run_NoState_StateFilledAndIterationIncreased() throws URISyntaxException {
+    public void run_NoState_StateFilledAndPolled() throws URISyntaxException {
         Map<String, SandboxedJob> jobs = new HashMap<String, SandboxedJob>();
         String identifier = "1234";
         Job job = new JobImplementation(mock(Scheduler.class), identifier, mock(JobDescription.class), false, false);
@@ -78,11 +91,11 @@ public class JobsPollerTest {
         poller.run();
 
         assertThat(sjob.getStatus()).isEqualTo(jobstatus);
-        assertThat(sjob.getPollIterations()).isEqualTo(1);
+        verify(jobsEngine).getJobStatuses(job);
     }
 
     @Test
-    public void run_RunningState_StateUnchangedIterationIncreased() throws URISyntaxException, UnsupportedEncodingException,
+    public void run_RunningState_StateUnchangedAndPolled() throws URISyntaxException, UnsupportedEncodingException,
             ClientProtocolException, IOException {
         Map<String, SandboxedJob> jobs = new HashMap<String, SandboxedJob>();
         String identifier = "1234";
@@ -102,7 +115,7 @@ public class JobsPollerTest {
         poller.run();
 
         assertThat(sjob.getStatus()).isEqualTo(jobstatus);
-        assertThat(sjob.getPollIterations()).isEqualTo(6);
+        verify(jobsEngine).getJobStatuses(job);
     }
 
     @Test
@@ -126,7 +139,7 @@ public class JobsPollerTest {
         poller.run();
 
         assertThat(sjob.getStatus()).isEqualTo(new_jobstatus);
-        assertThat(sjob.getPollIterations()).isEqualTo(6);
+        verify(jobsEngine).getJobStatuses(job);
     }
 
     @Test
@@ -155,7 +168,7 @@ public class JobsPollerTest {
     }
 
     @Test
-    public void run_PendingStateOnCancelTimeout_JobCanceled() throws XenonException {
+    public void register_PendingStateOnCancelTimeout_JobCanceled() throws XenonException {
         Map<String, SandboxedJob> jobs = new HashMap<String, SandboxedJob>();
         String identifier = "1234";
         Job job = new JobImplementation(mock(Scheduler.class), identifier, mock(JobDescription.class), false, false);
@@ -170,18 +183,26 @@ public class JobsPollerTest {
         JobStatus timeout_jobstatus =
                 new JobStatusImplementation(job, "KILLED", null, new Exception("Process timed out"), false, true, null);
         when(jobsEngine.cancelJob(job)).thenReturn(timeout_jobstatus);
-        JobsPoller poller = new JobsPoller(jobs, pollConf, xenon);
+        ScheduledExecutorService timer = mock(ScheduledExecutorService.class);
+        JobsPoller poller = new JobsPoller(jobs, pollConf, xenon, null, timer, clockAt(sjob.getCreatedAt()));
 
-        poller.run();
+        ArgumentCaptor<Runnable> cancelDeadline = ArgumentCaptor.forClass(Runnable.class);
+        verify(timer).schedule(cancelDeadline.capture(), eq(5L), eq(TimeUnit.MILLISECONDS));
+        cancelDeadline.getValue().run();
 
         verify(jobsEngine).cancelJob(job);
         verify(sb, times(0)).download(CopyOption.REPLACE);
         verify(sb).delete();
         assertThat(sjob.getStatus()).isEqualTo(timeout_jobstatus);
+        assertThat(jobs).containsKey(identifier);
+
+        // canceled job is no longer polled
+        poller.run();
+        verify(jobsEngine).getJobStatuses(new Job[0]);
     }
 
     @Test
-    public void run_PendingStateOnDeleteTimeout_JobDeleted() throws XenonException {
+    public void register_PendingStateOnDeleteTimeout_JobDeleted() throws XenonException {
         Map<String, SandboxedJob> jobs = new HashMap<String, SandboxedJob>();
         String identifier = "1234";
         Job job = new JobImplementation(mock(Scheduler.class), identifier, mock(JobDescription.class), false, false);
@@ -196,18 +217,24 @@ public class JobsPollerTest {
         JobStatus timeout_jobstatus =
                 new JobStatusImplementation(job, "KILLED", null, new Exception("Process timed out"), false, true, null);
         when(jobsEngine.cancelJob(job)).thenReturn(timeout_jobstatus);
-        JobsPoller poller = new JobsPoller(jobs, pollConf, xenon);
+        ScheduledExecutorService timer = mock(ScheduledExecutorService.class);
+        new JobsPoller(jobs, pollConf, xenon, null, timer, clockAt(sjob.getCreatedAt()));
+        JobListener listener = mock(JobListener.class);
+        sjob.setListener(listener);
 
-        poller.run();
+        ArgumentCaptor<Runnable> deleteDeadline = ArgumentCaptor.forClass(Runnable.class);
+        verify(timer).schedule(deleteDeadline.capture(), eq(5L), eq(TimeUnit.MILLISECONDS));
+        deleteDeadline.getValue().run();
 
         verify(jobsEngine).cancelJob(job);
         verify(sb, times(0)).download(CopyOption.REPLACE);
         verify(sb).delete();
         assertThat(jobs).doesNotContainKey(identifier);
+        verify(listener).jobDeleted(sjob);
     }
 
     @Test
-    public void run_DoneState_JobStatusNotCalledAndIterationIncreased() {
+    public void run_DoneState_JobStatusNotCalledAndJobNotVisited() {
         Map<String, SandboxedJob> jobs = new HashMap<String, SandboxedJob>();
         String identifier = "1234";
         Job job = new JobImplementation(mock(Scheduler.class), identifier, mock(JobDescription.class), false, false);
@@ -223,7 +250,6 @@ public class JobsPollerTest {
         poller.run();
 
         verify(jobsEngine, never()).getJobStatuses(any(Job.class));
-        assertThat(sjob.getPollIterations()).isEqualTo(6);
     }
 
     @Test
@@ -231,7 +257,7 @@ public class JobsPollerTest {
         Xenon xenon = mock(Xenon.class);
         Jobs jobs = mock(Jobs.class);
         when(xenon.jobs()).thenReturn(jobs);
-        JobsPoller poller = new JobsPoller(null, null, xenon);
+        JobsPoller poller = new JobsPoller(new HashMap<String, SandboxedJob>(), null, xenon);
         SandboxedJob sjob = mock(SandboxedJob.class);
         Job job = mock(Job.class);
         when(sjob.getJob()).thenReturn(job);
@@ -244,7 +270,7 @@ public class JobsPollerTest {
     @Test
     public void testCleanSandbox() throws UnsupportedOperationException, XenonException {
         Xenon xenon = mock(Xenon.class);
-        JobsPoller poller = new JobsPoller(null, null, xenon);
+        JobsPoller poller = new JobsPoller(new HashMap<String, SandboxedJob>(), null, xenon);
         SandboxedJob job = mock(SandboxedJob.class);
 
         poller.cleanSandbox(job);
@@ -255,7 +281,7 @@ public class JobsPollerTest {
     @Test
     public void testCommitStatus() throws UnsupportedEncodingException, ClientProtocolException, IOException {
         Xenon xenon = mock(Xenon.class);
-        JobsPoller poller = new JobsPoller(null, null, xenon);
+        JobsPoller poller = new JobsPoller(new HashMap<String, SandboxedJob>(), null, xenon);
         SandboxedJob job = mock(SandboxedJob.class);
         JobStatus status = mock(JobStatus.class);
 
@@ -284,7 +310,7 @@ public class JobsPollerTest {
         JobStatus jobstatus = new JobStatusImplementation(job, "DONE", 0, null, false, true, null);
         SandboxedJob sjob = new SandboxedJob(null, job, null, null, jobstatus, 5);
         jobs.put(identifier, sjob);
-        JobsPoller poller = new JobsPoller(jobs, null, xenon);
+        JobsPoller poller = new JobsPoller(jobs, new PollConfiguration(), xenon);
 
         poller.stop();
 
@@ -303,11 +329,552 @@ public class JobsPollerTest {
         Sandbox sandbox = mock(Sandbox.class);
         SandboxedJob sjob = new SandboxedJob(sandbox, job, null, null, jobstatus, 5);
         jobs.put(identifier, sjob);
-        JobsPoller poller = new JobsPoller(jobs, null, xenon);
+        JobsPoller poller = new JobsPoller(jobs, new PollConfiguration(), xenon);
 
         poller.stop();
 
         verify(jobsEngine).cancelJob(job);
         verify(sandbox).delete();
     }
+
+    @Test
+    public void run_StagingJob_NotPolled() {
+        Map<String, SandboxedJob> jobs = new HashMap<String, SandboxedJob>();
+        SandboxedJob sjob = new SandboxedJob("abcd", null, null);
+        jobs.put("abcd", sjob);
+        PollConfiguration pollConf = new PollConfiguration();
+        Xenon xenon = mock(Xenon.class);
+        Jobs jobsEngine = mock(Jobs.class);
+        when(xenon.jobs()).thenReturn(jobsEngine);
+        JobsPoller poller = new JobsPoller(jobs, pollConf, xenon);
+
+        poller.run();
+
+        verify(jobsEngine).getJobStatuses(new Job[0]);
+        assertThat(sjob.isStaging()).isTrue();
+    }
+
+    @Test
+    public void run_RunningStateWithStagingEngine_DownloadingInBackground() throws XenonException {
+        Map<String, SandboxedJob> jobs = new HashMap<String, SandboxedJob>();
+        String identifier = "1234";
+        Job job = new JobImplementation(mock(Scheduler.class), identifier, mock(JobDescription.class), false, false);
+        JobStatus jobstatus = new JobStatusImplementation(job, "RUNNING", 0, null, true, false, null);
+        Sandbox sb = mock(Sandbox.class);
+        SandboxedJob sjob = new SandboxedJob(sb, job, null, null, jobstatus, 5);
+        jobs.put(identifier, sjob);
+        PollConfiguration pollConf = new PollConfiguration();
+        Xenon xenon = mock(Xenon.class);
+        Jobs jobsEngine = mock(Jobs.class);
+        when(xenon.jobs()).thenReturn(jobsEngine);
+        JobStatus new_jobstatus = new JobStatusImplementation(job, "Done", 0, null, false, true, null);
+        JobStatus[] statuses = { new_jobstatus };
+        doReturn(statuses).when(jobsEngine).getJobStatuses((Job[]) any());
+        StagingEngine stagingEngine = mock(StagingEngine.class);
+        JobsPoller poller = new JobsPoller(jobs, pollConf, xenon, stagingEngine);
+
+        poller.run();
+
+        ArgumentCaptor<Runnable> task = ArgumentCaptor.forClass(Runnable.class);
+        verify(stagingEngine).poststage(task.capture());
+        assertThat(sjob.getStatusResponse().getState()).isEqualTo("DOWNLOADING");
+        assertThat(sjob.getStatusResponse().isDone()).isFalse();
+        // done status is recorded before downloading, so it is stored when service stops while downloading
+        assertThat(sjob.getStatus()).isEqualTo(new_jobstatus);
+        verify(sb, never()).download(CopyOption.REPLACE);
+
+        // job in transfer is not polled
+        poller.run();
+        verify(jobsEngine).getJobStatuses(new Job[0]);
+
+        task.getValue().run();
+
+        verify(sb).download(CopyOption.REPLACE);
+        verify(sb).delete();
+        assertThat(sjob.getPseudoState()).isNull();
+        assertThat(sjob.getStatus()).isEqualTo(new_jobstatus);
+    }
+
+    @Test
+    public void register_DoneStateOnDeleteTimeout_JobDeletedWithoutCancel() throws XenonException {
+        Map<String, SandboxedJob> jobs = new HashMap<String, SandboxedJob>();
+        String identifier = "1234";
+        Job job = new JobImplementation(mock(Scheduler.class), identifier, mock(JobDescription.class), false, false);
+        JobStatus jobstatus = new JobStatusImplementation(job, "DONE", 0, null, false, true, null);
+        SandboxedJob sjob = new SandboxedJob(null, job, null, null, jobstatus, 5);
+        jobs.put(identifier, sjob);
+        PollConfiguration pollConf = new PollConfiguration(1, 2, 6);
+        Xenon xenon = mock(Xenon.class);
+        Jobs jobsEngine = mock(Jobs.class);
+        when(xenon.jobs()).thenReturn(jobsEngine);
+        ScheduledExecutorService timer = mock(ScheduledExecutorService.class);
+        new JobsPoller(jobs, pollConf, xenon, null, timer, clockAt(sjob.getCreatedAt()));
+
+        ArgumentCaptor<Runnable> deleteDeadline = ArgumentCaptor.forClass(Runnable.class);
+        verify(timer).schedule(deleteDeadline.capture(), eq(6L), eq(TimeUnit.MILLISECONDS));
+        deleteDeadline.getValue().run();
+
+        assertThat(jobs).doesNotContainKey(identifier);
+        verify(jobsEngine, never()).cancelJob(job);
+    }
+
+    @Test
+    public void register_StagingStateOnCancelTimeout_StagingAborted() {
+        Map<String, SandboxedJob> jobs = new HashMap<String, SandboxedJob>();
+        SandboxedJob sjob = new SandboxedJob("abcd", null, null);
+        jobs.put("abcd", sjob);
+        PollConfiguration pollConf = new PollConfiguration(1, 2, 6);
+        Xenon xenon = mock(Xenon.class);
+        ScheduledExecutorService timer = mock(ScheduledExecutorService.class);
+        new JobsPoller(jobs, pollConf, xenon, null, timer, clockAt(sjob.getCreatedAt()));
+
+        ArgumentCaptor<Runnable> cancelDeadline = ArgumentCaptor.forClass(Runnable.class);
+        verify(timer).schedule(cancelDeadline.capture(), eq(2L), eq(TimeUnit.MILLISECONDS));
+        cancelDeadline.getValue().run();
+
+        assertThat(sjob.isStaging()).isFalse();
+        assertThat(sjob.getStatusResponse().getState()).isEqualTo("KILLED");
+        assertThat(sjob.getStatusResponse().isDone()).isTrue();
+        verifyZeroInteractions(xenon);
+    }
+
+    @Test
+    public void register_DeletedBeforeCancelTimeout_Ignored() {
+        Map<String, SandboxedJob> jobs = new HashMap<String, SandboxedJob>();
+        String identifier = "1234";
+        Job job = new JobImplementation(mock(Scheduler.class), identifier, mock(JobDescription.class), false, false);
+        SandboxedJob sjob = new SandboxedJob(null, job, null, null);
+        PollConfiguration pollConf = new PollConfiguration(1, 2, 6);
+        Xenon xenon = mock(Xenon.class);
+        ScheduledExecutorService timer = mock(ScheduledExecutorService.class);
+        JobsPoller poller = new JobsPoller(jobs, pollConf, xenon, null, timer, clockAt(sjob.getCreatedAt()));
+        poller.register(sjob);
+
+        ArgumentCaptor<Runnable> cancelDeadline = ArgumentCaptor.forClass(Runnable.class);
+        verify(timer).schedule(cancelDeadline.capture(), eq(2L), eq(TimeUnit.MILLISECONDS));
+        cancelDeadline.getValue().run();
+
+        verifyZeroInteractions(xenon);
+    }
+
+    @Test
+    public void register_RecoveredJobHalfwayCancelTimeout_RemainingTimeScheduled() {
+        Map<String, SandboxedJob> jobs = new HashMap<String, SandboxedJob>();
+        String identifier = "1234";
+        Job job = new JobImplementation(mock(Scheduler.class), identifier, mock(JobDescription.class), false, false);
+        SandboxedJob sjob = new SandboxedJob(null, job, null, null);
+        sjob.setCreatedAt(1000L);
+        jobs.put(identifier, sjob);
+        PollConfiguration pollConf = new PollConfiguration(1, 20, 60);
+        Xenon xenon = mock(Xenon.class);
+        ScheduledExecutorService timer = mock(ScheduledExecutorService.class);
+
+        new JobsPoller(jobs, pollConf, xenon, null, timer, clockAt(1015L));
+
+        verify(timer).schedule(any(Runnable.class), eq(5L), eq(TimeUnit.MILLISECONDS));
+        verify(timer).schedule(any(Runnable.class), eq(45L), eq(TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void register_RecoveredJobPastCancelTimeout_CanceledRightAway() throws XenonException {
+        Map<String, SandboxedJob> jobs = new HashMap<String, SandboxedJob>();
+        String identifier = "1234";
+        Job job = new JobImplementation(mock(Scheduler.class), identifier, mock(JobDescription.class), false, false);
+        JobStatus jobstatus = new JobStatusImplementation(job, "PENDING", 0, null, false, false, null);
+        SandboxedJob sjob = new SandboxedJob(null, job, null, null, jobstatus, 0);
+        sjob.setCreatedAt(1000L);
+        jobs.put(identifier, sjob);
+        PollConfiguration pollConf = new PollConfiguration(1, 20, 60);
+        Xenon xenon = mock(Xenon.class);
+        Jobs jobsEngine = mock(Jobs.class);
+        when(xenon.jobs()).thenReturn(jobsEngine);
+        ScheduledExecutorService timer = mock(ScheduledExecutorService.class);
+
+        new JobsPoller(jobs, pollConf, xenon, null, timer, clockAt(1030L));
+
+        ArgumentCaptor<Runnable> cancelDeadline = ArgumentCaptor.forClass(Runnable.class);
+        verify(timer).schedule(cancelDeadline.capture(), eq(0L), eq(TimeUnit.MILLISECONDS));
+        verify(timer).schedule(any(Runnable.class), eq(30L), eq(TimeUnit.MILLISECONDS));
+        cancelDeadline.getValue().run();
+        verify(jobsEngine).cancelJob(job);
+    }
+
+    @Test
+    public void register_JobAddedAfterConstruction_Polled() {
+        Map<String, SandboxedJob> jobs = new HashMap<String, SandboxedJob>();
+        PollConfiguration pollConf = new PollConfiguration();
+        Xenon xenon = mock(Xenon.class);
+        Jobs jobsEngine = mock(Jobs.class);
+        when(xenon.jobs()).thenReturn(jobsEngine);
+        JobsPoller poller = new JobsPoller(jobs, pollConf, xenon);
+        String identifier = "1234";
+        Job job = new JobImplementation(mock(Scheduler.class), identifier, mock(JobDescription.class), false, false);
+        SandboxedJob sjob = new SandboxedJob(null, job, null, null);
+        jobs.put(identifier, sjob);
+        JobStatus jobstatus = new JobStatusImplementation(job, "RUNNING", 0, null, true, false, null);
+        JobStatus[] statuses = { jobstatus };
+        doReturn(statuses).when(jobsEngine).getJobStatuses((Job[]) any());
+
+        poller.register(sjob);
+        poller.run();
+
+        verify(jobsEngine).getJobStatuses(new Job[] { job });
+        assertThat(sjob.getStatus()).isEqualTo(jobstatus);
+    }
+
+    @Test
+    public void run_JobDoneOutsidePoller_NotPolledAnymore() throws IOException {
+        Map<String, SandboxedJob> jobs = new HashMap<String, SandboxedJob>();
+        String identifier = "1234";
+        Job job = new JobImplementation(mock(Scheduler.class), identifier, mock(JobDescription.class), false, false);
+        JobStatus jobstatus = new JobStatusImplementation(job, "RUNNING", 0, null, true, false, null);
+        SandboxedJob sjob = new SandboxedJob(null, job, null, null, jobstatus, 5);
+        jobs.put(identifier, sjob);
+        PollConfiguration pollConf = new PollConfiguration();
+        Xenon xenon = mock(Xenon.class);
+        Jobs jobsEngine = mock(Jobs.class);
+        when(xenon.jobs()).thenReturn(jobsEngine);
+        JobsPoller poller = new JobsPoller(jobs, pollConf, xenon);
+        // for example canceled by user
+        sjob.setStatus(new JobStatusImplementation(job, "KILLED", null, null, false, true, null));
+
+        poller.run();
+
+        verify(jobsEngine).getJobStatuses(new Job[0]);
+    }
+
+    @Test
+    public void run_JobDoneOutsidePollerAndCompactionEnabled_JobCompacted() throws IOException {
+        Map<String, SandboxedJob> jobs = new HashMap<String, SandboxedJob>();
+        String identifier = "1234";
+        Job job = new JobImplementation(mock(Scheduler.class), identifier, mock(JobDescription.class), false, false);
+        JobStatus jobstatus = new JobStatusImplementation(job, "RUNNING", 0, null, true, false, null);
+        SandboxedJob sjob = new SandboxedJob(null, job, null, null, jobstatus, 5);
+        jobs.put(identifier, sjob);
+        PollConfiguration pollConf = new PollConfiguration();
+        pollConf.setCompactDoneJobs(true);
+        Xenon xenon = mock(Xenon.class);
+        Jobs jobsEngine = mock(Jobs.class);
+        when(xenon.jobs()).thenReturn(jobsEngine);
+        JobsPoller poller = new JobsPoller(jobs, pollConf, xenon);
+        sjob.setStatus(new JobStatusImplementation(job, "KILLED", null, null, false, true, null));
+
+        poller.run();
+
+        assertThat(sjob.isCompacted()).isTrue();
+        assertThat(sjob.getJob()).isNull();
+        assertThat(sjob.getStatus().getState()).isEqualTo("KILLED");
+    }
+
+    @Test
+    public void run_JobDoneOutsidePollerAndCompactionDisabled_JobNotCompacted() throws IOException {
+        Map<String, SandboxedJob> jobs = new HashMap<String, SandboxedJob>();
+        String identifier = "1234";
+        Job job = new JobImplementation(mock(Scheduler.class), identifier, mock(JobDescription.class), false, false);
+        JobStatus jobstatus = new JobStatusImplementation(job, "RUNNING", 0, null, true, false, null);
+        SandboxedJob sjob = new SandboxedJob(null, job, null, null, jobstatus, 5);
+        jobs.put(identifier, sjob);
+        PollConfiguration pollConf = new PollConfiguration();
+        Xenon xenon = mock(Xenon.class);
+        Jobs jobsEngine = mock(Jobs.class);
+        when(xenon.jobs()).thenReturn(jobsEngine);
+        JobsPoller poller = new JobsPoller(jobs, pollConf, xenon);
+        sjob.setStatus(new JobStatusImplementation(job, "KILLED", null, null, false, true, null));
+
+        poller.run();
+
+        assertThat(sjob.isCompacted()).isFalse();
+        assertThat(sjob.getJob()).isEqualTo(job);
+    }
+
+    @Test
+    public void register_DoneStateAndCompactionEnabled_JobCompacted() {
+        Map<String, SandboxedJob> jobs = new HashMap<String, SandboxedJob>();
+        String identifier = "1234";
+        Job job = new JobImplementation(mock(Scheduler.class), identifier, mock(JobDescription.class), false, false);
+        JobStatus jobstatus = new JobStatusImplementation(job, "DONE", 0, null, false, true, null);
+        SandboxedJob sjob = new SandboxedJob(null, job, null, null, jobstatus, 5);
+        jobs.put(identifier, sjob);
+        PollConfiguration pollConf = new PollConfiguration();
+        pollConf.setCompactDoneJobs(true);
+        Xenon xenon = mock(Xenon.class);
+
+        new JobsPoller(jobs, pollConf, xenon);
+
+        assertThat(sjob.isCompacted()).isTrue();
+    }
+
+    @Test
+    public void run_AdaptiveUnchangedState_IntervalBacksOff() {
+        Map<String, SandboxedJob> jobs = new HashMap<String, SandboxedJob>();
+        String identifier = "1234";
+        Job job = new JobImplementation(mock(Scheduler.class), identifier, mock(JobDescription.class), false, false);
+        JobStatus jobstatus = new JobStatusImplementation(job, "RUNNING", 0, null, true, false, null);
+        SandboxedJob sjob = new SandboxedJob(null, job, null, null, jobstatus, 0);
+        jobs.put(identifier, sjob);
+        PollConfiguration pollConf = new PollConfiguration(30000, 3600000, 43200000, true, 10, 35, 2);
+        Xenon xenon = mock(Xenon.class);
+        Jobs jobsEngine = mock(Jobs.class);
+        when(xenon.jobs()).thenReturn(jobsEngine);
+        JobStatus[] statuses = { jobstatus };
+        doReturn(statuses).when(jobsEngine).getJobStatuses((Job[]) any());
+        Clock clock = mock(Clock.class);
+        when(clock.time()).thenReturn(0L);
+        JobsPoller poller = new JobsPoller(jobs, pollConf, xenon, null, null, clock);
+
+        // not due yet, registered at 0 so first poll at 10
+        when(clock.time()).thenReturn(9L);
+        poller.run();
+        verify(jobsEngine, never()).getJobStatuses(job);
+
+        // polled at 10, unchanged so next poll at 10+20
+        when(clock.time()).thenReturn(10L);
+        poller.run();
+        verify(jobsEngine, times(1)).getJobStatuses(job);
+        when(clock.time()).thenReturn(29L);
+        poller.run();
+        verify(jobsEngine, times(1)).getJobStatuses(job);
+
+        // polled at 30, unchanged so interval 40 capped to 35
+        when(clock.time()).thenReturn(30L);
+        poller.run();
+        verify(jobsEngine, times(2)).getJobStatuses(job);
+        when(clock.time()).thenReturn(64L);
+        poller.run();
+        verify(jobsEngine, times(2)).getJobStatuses(job);
+        when(clock.time()).thenReturn(65L);
+        poller.run();
+        verify(jobsEngine, times(3)).getJobStatuses(job);
+    }
+
+    @Test
+    public void run_AdaptiveSmallIntervalAndFactor_IntervalRoundedUp() {
+        Map<String, SandboxedJob> jobs = new HashMap<String, SandboxedJob>();
+        String identifier = "1234";
+        Job job = new JobImplementation(mock(Scheduler.class), identifier, mock(JobDescription.class), false, false);
+        JobStatus jobstatus = new JobStatusImplementation(job, "RUNNING", 0, null, true, false, null);
+        SandboxedJob sjob = new SandboxedJob(null, job, null, null, jobstatus, 0);
+        jobs.put(identifier, sjob);
+        PollConfiguration pollConf = new PollConfiguration(30000, 3600000, 43200000, true, 1, 100, 1.5);
+        Xenon xenon = mock(Xenon.class);
+        Jobs jobsEngine = mock(Jobs.class);
+        when(xenon.jobs()).thenReturn(jobsEngine);
+        JobStatus[] statuses = { jobstatus };
+        doReturn(statuses).when(jobsEngine).getJobStatuses((Job[]) any());
+        Clock clock = mock(Clock.class);
+        when(clock.time()).thenReturn(0L);
+        JobsPoller poller = new JobsPoller(jobs, pollConf, xenon, null, null, clock);
+
+        // polled at 1, interval 1.5 rounded up so next poll at 1+2
+        when(clock.time()).thenReturn(1L);
+        poller.run();
+        when(clock.time()).thenReturn(2L);
+        poller.run();
+        verify(jobsEngine, times(1)).getJobStatuses(job);
+        when(clock.time()).thenReturn(3L);
+        poller.run();
+        verify(jobsEngine, times(2)).getJobStatuses(job);
+
+        // interval 2*1.5 so next poll at 3+3
+        when(clock.time()).thenReturn(5L);
+        poller.run();
+        verify(jobsEngine, times(2)).getJobStatuses(job);
+        when(clock.time()).thenReturn(6L);
+        poller.run();
+        verify(jobsEngine, times(3)).getJobStatuses(job);
+    }
+
+    @Test
+    public void run_AdaptiveClockAdvancesDuringFetch_PolledEveryInterval() throws XenonException {
+        Map<String, SandboxedJob> jobs = new HashMap<String, SandboxedJob>();
+        String identifier = "1234";
+        Job job = new JobImplementation(mock(Scheduler.class), identifier, mock(JobDescription.class), false, false);
+        final JobStatus jobstatus = new JobStatusImplementation(job, "RUNNING", 0, null, true, false, null);
+        SandboxedJob sjob = new SandboxedJob(null, job, null, null, jobstatus, 0);
+        jobs.put(identifier, sjob);
+        PollConfiguration pollConf = new PollConfiguration(30000, 3600000, 43200000, true, 10, 10, 1);
+        Xenon xenon = mock(Xenon.class);
+        Jobs jobsEngine = mock(Jobs.class);
+        when(xenon.jobs()).thenReturn(jobsEngine);
+        final AtomicLong time = new AtomicLong(0);
+        Clock clock = new Clock() {
+            @Override
+            public long tick() {
+                return TimeUnit.MILLISECONDS.toNanos(time.get());
+            }
+
+            @Override
+            public long time() {
+                return time.get();
+            }
+        };
+        when(jobsEngine.getJobStatuses((Job[]) any())).thenAnswer(new Answer<JobStatus[]>() {
+            public JobStatus[] answer(InvocationOnMock invocation) {
+                // fetching statuses takes time
+                time.addAndGet(2);
+                return new JobStatus[] { jobstatus };
+            }
+        });
+        JobsPoller poller = new JobsPoller(jobs, pollConf, xenon, null, null, clock);
+
+        // poller runs every minimum interval
+        for (long tick = 10; tick <= 40; tick += 10) {
+            time.set(tick);
+            poller.run();
+        }
+
+        verify(jobsEngine, times(4)).getJobStatuses((Job[]) any());
+    }
+
+    @Test
+    public void run_AdaptiveChangedState_IntervalReset() {
+        Map<String, SandboxedJob> jobs = new HashMap<String, SandboxedJob>();
+        String identifier = "1234";
+        Job job = new JobImplementation(mock(Scheduler.class), identifier, mock(JobDescription.class), false, false);
+        JobStatus jobstatus = new JobStatusImplementation(job, "PENDING", 0, null, false, false, null);
+        SandboxedJob sjob = new SandboxedJob(null, job, null, null, jobstatus, 0);
+        jobs.put(identifier, sjob);
+        PollConfiguration pollConf = new PollConfiguration(30000, 3600000, 43200000, true, 10, 1000, 2);
+        Xenon xenon = mock(Xenon.class);
+        Jobs jobsEngine = mock(Jobs.class);
+        when(xenon.jobs()).thenReturn(jobsEngine);
+        JobStatus[] pending = { jobstatus };
+        JobStatus[] running = { new JobStatusImplementation(job, "RUNNING", 0, null, true, false, null) };
+        doReturn(pending).doReturn(running).when(jobsEngine).getJobStatuses((Job[]) any());
+        Clock clock = mock(Clock.class);
+        when(clock.time()).thenReturn(0L);
+        JobsPoller poller = new JobsPoller(jobs, pollConf, xenon, null, null, clock);
+
+        // unchanged so next poll at 10+20
+        when(clock.time()).thenReturn(10L);
+        poller.run();
+        // changed so next poll at 30+10
+        when(clock.time()).thenReturn(30L);
+        poller.run();
+        assertThat(sjob.getStatus().getState()).isEqualTo("RUNNING");
+
+        when(clock.time()).thenReturn(40L);
+        poller.run();
+        verify(jobsEngine, times(3)).getJobStatuses(job);
+    }
+
+    @Test
+    public void run_MultipleBatches_AllCommitted() {
+        Map<String, SandboxedJob> jobs = new HashMap<String, SandboxedJob>();
+        Job job1 = new JobImplementation(mock(Scheduler.class), "1", mock(JobDescription.class), false, false);
+        SandboxedJob sjob1 = new SandboxedJob(null, job1, null, null);
+        jobs.put("1", sjob1);
+        Job job2 = new JobImplementation(mock(Scheduler.class), "2", mock(JobDescription.class), false, false);
+        SandboxedJob sjob2 = new SandboxedJob(null, job2, null, null);
+        jobs.put("2", sjob2);
+        PollConfiguration pollConf = new PollConfiguration();
+        pollConf.setStatusBatchSize(1);
+        Xenon xenon = mock(Xenon.class);
+        Jobs jobsEngine = mock(Jobs.class);
+        when(xenon.jobs()).thenReturn(jobsEngine);
+        JobStatus status1 = new JobStatusImplementation(job1, "RUNNING", 0, null, true, false, null);
+        JobStatus status2 = new JobStatusImplementation(job2, "PENDING", 0, null, false, false, null);
+        when(jobsEngine.getJobStatuses(new Job[] { job1 })).thenReturn(new JobStatus[] { status1 });
+        when(jobsEngine.getJobStatuses(new Job[] { job2 })).thenReturn(new JobStatus[] { status2 });
+        JobsPoller poller = new JobsPoller(jobs, pollConf, xenon);
+
+        poller.run();
+
+        assertThat(sjob1.getStatus()).isEqualTo(status1);
+        assertThat(sjob2.getStatus()).isEqualTo(status2);
+    }
+
+    @Test
+    public void run_BatchFailed_OtherBatchCommitted() {
+        Map<String, SandboxedJob> jobs = new HashMap<String, SandboxedJob>();
+        Job job1 = new JobImplementation(mock(Scheduler.class), "1", mock(JobDescription.class), false, false);
+        SandboxedJob sjob1 = new SandboxedJob(null, job1, null, null);
+        jobs.put("1", sjob1);
+        Job job2 = new JobImplementation(mock(Scheduler.class), "2", mock(JobDescription.class), false, false);
+        SandboxedJob sjob2 = new SandboxedJob(null, job2, null, null);
+        jobs.put("2", sjob2);
+        PollConfiguration pollConf = new PollConfiguration();
+        pollConf.setStatusBatchSize(1);
+        Xenon xenon = mock(Xenon.class);
+        Jobs jobsEngine = mock(Jobs.class);
+        when(xenon.jobs()).thenReturn(jobsEngine);
+        JobStatus status2 = new JobStatusImplementation(job2, "PENDING", 0, null, false, false, null);
+        when(jobsEngine.getJobStatuses(new Job[] { job1 })).thenThrow(new IllegalStateException("Scheduler unreachable"));
+        when(jobsEngine.getJobStatuses(new Job[] { job2 })).thenReturn(new JobStatus[] { status2 });
+        JobsPoller poller = new JobsPoller(jobs, pollConf, xenon);
+
+        poller.run();
+
+        assertThat(sjob1.getStatus()).isNull();
+        assertThat(sjob2.getStatus()).isEqualTo(status2);
+    }
+
+    @Test
+    public void run_CommitFailed_OtherJobsCommittedAndNotThrown() throws XenonException {
+        Map<String, SandboxedJob> jobs = new HashMap<String, SandboxedJob>();
+        Job job1 = new JobImplementation(mock(Scheduler.class), "1", mock(JobDescription.class), false, false);
+        SandboxedJob sjob1 = new SandboxedJob(null, job1, null, null);
+        JobListener listener = mock(JobListener.class);
+        doThrow(new IllegalStateException("Job store full")).when(listener).jobChanged(sjob1);
+        sjob1.setListener(listener);
+        jobs.put("1", sjob1);
+        Job job2 = new JobImplementation(mock(Scheduler.class), "2", mock(JobDescription.class), false, false);
+        SandboxedJob sjob2 = new SandboxedJob(null, job2, null, null);
+        jobs.put("2", sjob2);
+        Xenon xenon = mock(Xenon.class);
+        Jobs jobsEngine = mock(Jobs.class);
+        when(xenon.jobs()).thenReturn(jobsEngine);
+        JobStatus status1 = new JobStatusImplementation(job1, "RUNNING", 0, null, true, false, null);
+        JobStatus status2 = new JobStatusImplementation(job2, "PENDING", 0, null, false, false, null);
+        JobStatus[] statuses = { status1, status2 };
+        doReturn(statuses).when(jobsEngine).getJobStatuses(Matchers.<Job> anyVararg());
+        JobsPoller poller = new JobsPoller(jobs, new PollConfiguration(), xenon);
+
+        poller.run();
+
+        assertThat(sjob2.getStatus()).isEqualTo(status2);
+    }
+
+    @Test
+    public void run_BatchStuck_OtherBatchCommittedAndStuckBatchCancelled() throws Exception {
+        Map<String, SandboxedJob> jobs = new HashMap<String, SandboxedJob>();
+        Job job1 = new JobImplementation(mock(Scheduler.class), "1", mock(JobDescription.class), false, false);
+        SandboxedJob sjob1 = new SandboxedJob(null, job1, null, null);
+        jobs.put("1", sjob1);
+        Job job2 = new JobImplementation(mock(Scheduler.class), "2", mock(JobDescription.class), false, false);
+        SandboxedJob sjob2 = new SandboxedJob(null, job2, null, null);
+        jobs.put("2", sjob2);
+        PollConfiguration pollConf = new PollConfiguration(100, 3600000, 43200000);
+        pollConf.setStatusBatchSize(1);
+        Xenon xenon = mock(Xenon.class);
+        Jobs jobsEngine = mock(Jobs.class);
+        when(xenon.jobs()).thenReturn(jobsEngine);
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        when(jobsEngine.getJobStatuses(new Job[] { job1 })).thenAnswer(new Answer<JobStatus[]>() {
+            public JobStatus[] answer(InvocationOnMock invocation) {
+                try {
+                    new CountDownLatch(1).await();
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                }
+                return null;
+            }
+        });
+        JobStatus status2 = new JobStatusImplementation(job2, "PENDING", 0, null, false, false, null);
+        when(jobsEngine.getJobStatuses(new Job[] { job2 })).thenReturn(new JobStatus[] { status2 });
+        JobsPoller poller = new JobsPoller(jobs, pollConf, xenon);
+
+        poller.run();
+
+        assertThat(sjob1.getStatus()).isNull();
+        assertThat(sjob2.getStatus()).isEqualTo(status2);
+        assertThat(interrupted.await(5, TimeUnit.SECONDS)).isTrue();
+        poller.stop(false);
+    }
+
+    private static Clock clockAt(long time) {
+        Clock clock = mock(Clock.class);
+        when(clock.time()).thenReturn(time);
+        return clock;
+    }
 }
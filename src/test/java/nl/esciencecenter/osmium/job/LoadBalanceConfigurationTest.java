@@ -0,0 +1,73 @@
+/*
+ * #%L
+ * Osmium
+ * %%
+ * Copyright (C) 2013 Nederlands eScience Center
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package nl.esciencecenter.osmium.job;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+
+public class LoadBalanceConfigurationTest {
+
+    @Test
+    public void testLoadBalanceConfiguration_Default() {
+        LoadBalanceConfiguration conf = new LoadBalanceConfiguration();
+
+        assertThat(conf.isEnabled()).isFalse();
+        assertThat(conf.getInterval()).isEqualTo(30000);
+        assertThat(conf.getCapacities()).isEmpty();
+        assertThat(conf.getMaxFailureRate()).isEqualTo(0.5);
+        assertThat(conf.getMaxSubmitLatency()).isEqualTo(10000);
+    }
+
+    @Test
+    public void testGetCapacity() {
+        LoadBalanceConfiguration conf = new LoadBalanceConfiguration(true, 1000, ImmutableMap.of("default", 4));
+
+        assertThat(conf.getCapacity("default")).isEqualTo(4);
+        assertThat(conf.getCapacity("cluster")).isEqualTo(Integer.MAX_VALUE);
+    }
+
+    @Test
+    public void testSetters() {
+        LoadBalanceConfiguration conf = new LoadBalanceConfiguration();
+
+        conf.setEnabled(true);
+        conf.setInterval(1000);
+        conf.setCapacities(ImmutableMap.of("default", 4));
+        conf.setMaxFailureRate(0.1);
+        conf.setMaxSubmitLatency(500);
+
+        LoadBalanceConfiguration expected = new LoadBalanceConfiguration(true, 1000, ImmutableMap.of("default", 4));
+        expected.setMaxFailureRate(0.1);
+        expected.setMaxSubmitLatency(500);
+        assertThat(conf).isEqualTo(expected);
+        assertThat(conf.hashCode()).isEqualTo(expected.hashCode());
+    }
+
+    @Test
+    public void testToString() {
+        LoadBalanceConfiguration conf = new LoadBalanceConfiguration();
+
+        String expected = "LoadBalanceConfiguration{false, 30000, {}, 0.5, 10000}";
+        assertThat(conf.toString()).isEqualTo(expected);
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * #%L
+ * Osmium
+ * %%
+ * Copyright (C) 2013 Nederlands eScience Center
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package nl.esciencecenter.osmium.job;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+
+public class LoadBalancerTest {
+    private SchedulerBackend local;
+    private SchedulerBackend cluster;
+    private LoadBalancer balancer;
+
+    @Before
+    public void setUp() {
+        local = new SchedulerBackend("default", "multi", null, null, null, null);
+        cluster = new SchedulerBackend("cluster", "batch", null, null, null, null);
+        LoadBalanceConfiguration conf = new LoadBalanceConfiguration(true, 1000, ImmutableMap.of("default", 4, "cluster", 100));
+        balancer = new LoadBalancer(conf);
+    }
+
+    @Test
+    public void testSelect_NoneSaturated_First() {
+        local.getLoad().sample(3);
+
+        assertThat(balancer.select(Arrays.asList(local, cluster))).isSameAs(local);
+    }
+
+    @Test
+    public void testSelect_FirstQueueFull_SpillOver() {
+        local.getLoad().sample(4);
+
+        assertThat(balancer.isSaturated(local)).isTrue();
+        assertThat(balancer.select(Arrays.asList(local, cluster))).isSameAs(cluster);
+    }
+
+    @Test
+    public void testSelect_FirstFailing_SpillOver() {
+        for (int i = 0; i < 4; i++) {
+            local.getLoad().recordSubmit(10, true);
+        }
+
+        assertThat(balancer.select(Arrays.asList(local, cluster))).isSameAs(cluster);
+    }
+
+    @Test
+    public void testSelect_FirstRecoveredFromFailures_SelectedAgain() {
+        for (int i = 0; i < 4; i++) {
+            local.getLoad().sampleFailed();
+        }
+        assertThat(balancer.select(Arrays.asList(local, cluster))).isSameAs(cluster);
+
+        for (int i = 0; i < 4; i++) {
+            local.getLoad().sample(0);
+        }
+
+        assertThat(balancer.select(Arrays.asList(local, cluster))).isSameAs(local);
+    }
+
+    @Test
+    public void testSelect_FirstRecoveredFromLatencySpike_SelectedAgain() {
+        local.getLoad().recordSubmit(60000, false);
+        assertThat(balancer.select(Arrays.asList(local, cluster))).isSameAs(cluster);
+
+        for (int i = 0; i < 20; i++) {
+            local.getLoad().sample(0);
+        }
+
+        assertThat(balancer.select(Arrays.asList(local, cluster))).isSameAs(local);
+    }
+
+    @Test
+    public void testSelect_FirstSlow_SpillOver() {
+        for (int i = 0; i < 20; i++) {
+            local.getLoad().recordSubmit(20000, false);
+        }
+        local.getLoad().sample(0);
+
+        assertThat(balancer.select(Arrays.asList(local, cluster))).isSameAs(cluster);
+    }
+
+    @Test
+    public void testSelect_AllSaturated_LowestUtilization() {
+        local.getLoad().sample(8);
+        cluster.getLoad().sample(150);
+
+        assertThat(balancer.select(Arrays.asList(local, cluster))).isSameAs(cluster);
+    }
+
+    @Test
+    public void testIsSaturated_NoCapacity_NeverFullByQueue() {
+        SchedulerBackend other = new SchedulerBackend("other", "batch", null, null, null, null);
+        other.getLoad().sample(1000000);
+
+        assertThat(balancer.isSaturated(other)).isFalse();
+    }
+}
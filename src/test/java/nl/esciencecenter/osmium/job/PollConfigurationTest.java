@@ -20,11 +20,46 @@
 package nl.esciencecenter.osmium.job;
 
 import static org.fest.assertions.api.Assertions.assertThat;
+
+import java.util.Set;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validation;
+import javax.validation.Validator;
+
 import nl.esciencecenter.osmium.job.PollConfiguration;
 
 import org.junit.Test;
 
 public class PollConfigurationTest {
+    private final Validator validator = Validation.buildDefaultValidatorFactory().getValidator();
+
+    @Test
+    public void testValidate_Default_Valid() {
+        Set<ConstraintViolation<PollConfiguration>> violations = validator.validate(new PollConfiguration());
+
+        assertThat(violations).isEmpty();
+    }
+
+    @Test
+    public void testValidate_BackoffFactorBelowOne_Invalid() {
+        PollConfiguration conf = new PollConfiguration(123, 456, 789, true, 10, 100, 0.5);
+
+        Set<ConstraintViolation<PollConfiguration>> violations = validator.validate(conf);
+
+        assertThat(violations).hasSize(1);
+        assertThat(violations.iterator().next().getPropertyPath().toString()).isEqualTo("backoffFactor");
+    }
+
+    @Test
+    public void testValidate_MaxIntervalBelowMinInterval_Invalid() {
+        PollConfiguration conf = new PollConfiguration(123, 456, 789, true, 100, 10, 2);
+
+        Set<ConstraintViolation<PollConfiguration>> violations = validator.validate(conf);
+
+        assertThat(violations).hasSize(1);
+        assertThat(violations.iterator().next().getPropertyPath().toString()).isEqualTo("intervalRangeValid");
+    }
 
     @Test
     public void testPollConfiguration_AllParameters() {
@@ -40,6 +75,23 @@ public class PollConfigurationTest {
         assertThat(conf.getInterval()).isEqualTo(30000);
         assertThat(conf.getCancelTimeout()).isEqualTo(3600000);
         assertThat(conf.getDeleteTimeout()).isEqualTo(12*60*60*1000);
+        assertThat(conf.isAdaptive()).isFalse();
+        assertThat(conf.getMinInterval()).isEqualTo(5000);
+        assertThat(conf.getMaxInterval()).isEqualTo(600000);
+        assertThat(conf.getBackoffFactor()).isEqualTo(2.0);
+        assertThat(conf.getStatusBatchSize()).isEqualTo(500);
+        assertThat(conf.getStatusThreads()).isEqualTo(2);
+        assertThat(conf.isCompactDoneJobs()).isFalse();
+    }
+
+    @Test
+    public void testPollConfiguration_Adaptive() {
+        PollConfiguration conf = new PollConfiguration(123, 456, 789, true, 10, 100, 1.5);
+        assertThat(conf.getInterval()).isEqualTo(123);
+        assertThat(conf.isAdaptive()).isTrue();
+        assertThat(conf.getMinInterval()).isEqualTo(10);
+        assertThat(conf.getMaxInterval()).isEqualTo(100);
+        assertThat(conf.getBackoffFactor()).isEqualTo(1.5);
     }
 
     @Test
@@ -60,13 +112,33 @@ public class PollConfigurationTest {
         assertThat(conf.getCancelTimeout()).isEqualTo(456);
     }
 
+    @Test
+    public void testSetStatusBatchSize() {
+        PollConfiguration conf = new PollConfiguration();
+
+        conf.setStatusBatchSize(10);
+        conf.setStatusThreads(4);
+
+        assertThat(conf.getStatusBatchSize()).isEqualTo(10);
+        assertThat(conf.getStatusThreads()).isEqualTo(4);
+    }
+
+    @Test
+    public void testSetCompactDoneJobs() {
+        PollConfiguration conf = new PollConfiguration();
+
+        conf.setCompactDoneJobs(true);
+
+        assertThat(conf.isCompactDoneJobs()).isTrue();
+    }
+
     @Test
     public void testToString() {
         PollConfiguration conf = new PollConfiguration();
 
         String result = conf.toString();
 
-        String expected = "PollConfiguration{30000, 3600000, 43200000}";
+        String expected = "PollConfiguration{30000, 3600000, 43200000, false, 5000, 600000, 2.0, 500, 2, false}";
         assertThat(result).isEqualTo(expected);
     }
 }
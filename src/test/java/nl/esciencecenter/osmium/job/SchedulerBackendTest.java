@@ -0,0 +1,115 @@
+/*
+ * #%L
+ * Osmium
+ * %%
+ * Copyright (C) 2013 Nederlands eScience Center
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package nl.esciencecenter.osmium.job;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+
+import nl.esciencecenter.osmium.api.JobSubmitRequest;
+import nl.esciencecenter.xenon.XenonException;
+import nl.esciencecenter.xenon.jobs.Job;
+import nl.esciencecenter.xenon.jobs.Jobs;
+import nl.esciencecenter.xenon.jobs.Scheduler;
+
+import org.junit.Test;
+
+public class SchedulerBackendTest {
+
+    private JobSubmitRequest request(String executable, String... arguments) {
+        JobSubmitRequest request = new JobSubmitRequest();
+        request.executable = executable;
+        request.arguments = Arrays.asList(arguments);
+        return request;
+    }
+
+    @Test
+    public void testMatches_NoPatterns_False() {
+        SchedulerBackend backend = new SchedulerBackend("heavy", "batch", null, null, null, null);
+
+        assertThat(backend.matches(request("/bin/sh"))).isFalse();
+    }
+
+    @Test
+    public void testMatches_ExecutableMatches_True() {
+        SchedulerBackend backend = new SchedulerBackend("heavy", "batch", null, null, null, null, ".*/mpirun", null);
+
+        assertThat(backend.matches(request("/usr/bin/mpirun", "-np", "64"))).isTrue();
+    }
+
+    @Test
+    public void testMatches_ExecutablePartiallyMatches_False() {
+        SchedulerBackend backend = new SchedulerBackend("heavy", "batch", null, null, null, null, "mpirun", null);
+
+        assertThat(backend.matches(request("/usr/bin/mpirun"))).isFalse();
+    }
+
+    @Test
+    public void testMatches_ArgumentsFound_True() {
+        SchedulerBackend backend = new SchedulerBackend("heavy", "batch", null, null, null, null, null, "-np \\d{2,}");
+
+        assertThat(backend.matches(request("/usr/bin/mpirun", "-np", "64", "model"))).isTrue();
+        assertThat(backend.matches(request("/usr/bin/mpirun", "-np", "4", "model"))).isFalse();
+    }
+
+    @Test
+    public void testMatches_BothPatterns_BothMustMatch() {
+        SchedulerBackend backend = new SchedulerBackend("heavy", "batch", null, null, null, null, "/bin/sh", "--big");
+
+        assertThat(backend.matches(request("/bin/sh", "runme.sh", "--big"))).isTrue();
+        assertThat(backend.matches(request("/bin/bash", "runme.sh", "--big"))).isFalse();
+        assertThat(backend.matches(request("/bin/sh", "runme.sh"))).isFalse();
+    }
+
+    @Test
+    public void testMatches_NoArguments_MatchedAsEmpty() {
+        SchedulerBackend backend = new SchedulerBackend("heavy", "batch", null, null, null, null, null, "^$");
+        JobSubmitRequest request = new JobSubmitRequest();
+        request.executable = "/bin/hostname";
+
+        assertThat(backend.matches(request)).isTrue();
+    }
+
+    @Test
+    public void testSampleLoad() throws XenonException {
+        Scheduler scheduler = mock(Scheduler.class);
+        Jobs jobs = mock(Jobs.class);
+        when(jobs.getJobs(scheduler, "batch")).thenReturn(new Job[3]);
+        SchedulerBackend backend = new SchedulerBackend("heavy", "batch", scheduler, null, null, null);
+
+        backend.sampleLoad(jobs);
+
+        assertThat(backend.getLoad().getQueueDepth()).isEqualTo(3);
+    }
+
+    @Test
+    public void testSampleLoad_Unreachable_CountedAsFailure() throws XenonException {
+        Scheduler scheduler = mock(Scheduler.class);
+        Jobs jobs = mock(Jobs.class);
+        when(jobs.getJobs(scheduler, "batch")).thenThrow(new XenonException("slurm", "Connection refused"));
+        SchedulerBackend backend = new SchedulerBackend("heavy", "batch", scheduler, null, null, null);
+
+        backend.sampleLoad(jobs);
+
+        assertThat(backend.getLoad().getFailureRate()).isGreaterThan(0.0);
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * #%L
+ * Osmium
+ * %%
+ * Copyright (C) 2013 Nederlands eScience Center
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package nl.esciencecenter.osmium.job;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+public class StagingConfigurationTest {
+
+    @Test
+    public void testStagingConfiguration_AllParameters() {
+        StagingConfiguration conf = new StagingConfiguration(true, 8, 50);
+        assertThat(conf.isAsync()).isTrue();
+        assertThat(conf.getThreads()).isEqualTo(8);
+        assertThat(conf.getQueueSize()).isEqualTo(50);
+    }
+
+    @Test
+    public void testStagingConfiguration_ConcurrentFiles() {
+        StagingConfiguration conf = new StagingConfiguration(true, 8, 50, 4, 32);
+        assertThat(conf.getConcurrentFilesPerJob()).isEqualTo(4);
+        assertThat(conf.getConcurrentFiles()).isEqualTo(32);
+    }
+
+    @Test
+    public void testStagingConfiguration_NoParameters() {
+        StagingConfiguration conf = new StagingConfiguration();
+        assertThat(conf.isAsync()).isFalse();
+        assertThat(conf.getThreads()).isEqualTo(4);
+        assertThat(conf.getQueueSize()).isEqualTo(1000);
+        assertThat(conf.getConcurrentFilesPerJob()).isEqualTo(1);
+        assertThat(conf.getConcurrentFiles()).isEqualTo(16);
+    }
+
+    @Test
+    public void testSetAsync() {
+        StagingConfiguration conf = new StagingConfiguration();
+
+        conf.setAsync(true);
+
+        assertThat(conf.isAsync()).isTrue();
+    }
+
+    @Test
+    public void testSetThreads() {
+        StagingConfiguration conf = new StagingConfiguration();
+
+        conf.setThreads(2);
+
+        assertThat(conf.getThreads()).isEqualTo(2);
+    }
+
+    @Test
+    public void testSetQueueSize() {
+        StagingConfiguration conf = new StagingConfiguration();
+
+        conf.setQueueSize(10);
+
+        assertThat(conf.getQueueSize()).isEqualTo(10);
+    }
+
+    @Test
+    public void testEquals_SameContent_equal() {
+        StagingConfiguration conf1 = new StagingConfiguration(true, 8, 50);
+        StagingConfiguration conf2 = new StagingConfiguration(true, 8, 50);
+
+        assertThat(conf1.equals(conf2)).isTrue();
+    }
+
+    @Test
+    public void testToString() {
+        StagingConfiguration conf = new StagingConfiguration();
+
+        String result = conf.toString();
+
+        String expected = "StagingConfiguration{false, 4, 1000, 1, 16, 4}";
+        assertThat(result).isEqualTo(expected);
+    }
+}
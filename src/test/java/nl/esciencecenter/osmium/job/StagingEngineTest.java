@@ -0,0 +1,145 @@
+/*
+ * #%L
+ * Osmium
+ * %%
+ * Copyright (C) 2013 Nederlands eScience Center
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package nl.esciencecenter.osmium.job;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import nl.esciencecenter.xenon.XenonException;
+import nl.esciencecenter.xenon.files.FileAttributes;
+import nl.esciencecenter.xenon.files.Files;
+import nl.esciencecenter.xenon.files.Path;
+import nl.esciencecenter.xenon.util.Sandbox;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class StagingEngineTest {
+    private Files files;
+    private ExecutorService jobExecutor;
+    private ExecutorService copyExecutor;
+    private ExecutorService downloadExecutor;
+    private Sandbox sandbox;
+    private Path sandboxPath;
+    private Path source;
+    private Path destination;
+
+    @Before
+    public void setUp() {
+        files = mock(Files.class);
+        jobExecutor = mock(ExecutorService.class);
+        copyExecutor = Executors.newFixedThreadPool(2);
+        downloadExecutor = mock(ExecutorService.class);
+        sandbox = mock(Sandbox.class);
+        sandboxPath = mock(Path.class);
+        when(sandbox.getPath()).thenReturn(sandboxPath);
+        source = mock(Path.class);
+        destination = mock(Path.class);
+        List<Sandbox.Pair> pairs = new LinkedList<Sandbox.Pair>();
+        pairs.add(new Sandbox.Pair(source, destination));
+        when(sandbox.getUploadFiles()).thenReturn(pairs);
+    }
+
+    @After
+    public void tearDown() {
+        copyExecutor.shutdownNow();
+    }
+
+    @Test
+    public void testSubmit() {
+        StagingEngine engine = new StagingEngine(files, 1, jobExecutor, copyExecutor, downloadExecutor);
+        Runnable task = mock(Runnable.class);
+
+        engine.submit(task);
+
+        verify(jobExecutor).execute(task);
+    }
+
+    @Test
+    public void testPoststage() {
+        StagingEngine engine = new StagingEngine(files, 1, jobExecutor, copyExecutor, downloadExecutor);
+        Runnable task = mock(Runnable.class);
+
+        engine.poststage(task);
+
+        verify(downloadExecutor).execute(task);
+    }
+
+    @Test
+    public void testUpload_OneFilePerJob_SandboxUploads() throws XenonException {
+        StagingEngine engine = new StagingEngine(files, 1, jobExecutor, copyExecutor, downloadExecutor);
+
+        engine.upload(sandbox);
+
+        verify(sandbox).upload();
+        verifyZeroInteractions(files);
+    }
+
+    @Test
+    public void testUpload_MissingSandboxDirectory_Created() throws XenonException {
+        StagingEngine engine = new StagingEngine(files, 4, jobExecutor, copyExecutor, downloadExecutor);
+        when(files.exists(sandboxPath)).thenReturn(false);
+        FileAttributes attributes = mock(FileAttributes.class);
+        when(attributes.isRegularFile()).thenReturn(true);
+        when(attributes.size()).thenReturn(1024L);
+        when(files.getAttributes(source)).thenReturn(attributes);
+
+        engine.upload(sandbox);
+
+        verify(files).createDirectory(sandboxPath);
+        verify(files).getAttributes(source);
+    }
+
+    @Test
+    public void testUpload_CopyFails_ThrowsXenonException() throws XenonException {
+        StagingEngine engine = new StagingEngine(files, 4, jobExecutor, copyExecutor, downloadExecutor);
+        when(files.exists(sandboxPath)).thenReturn(true);
+        XenonException expected = new XenonException("local", "No such file");
+        when(files.getAttributes(source)).thenThrow(expected);
+
+        try {
+            engine.upload(sandbox);
+            fail("XenonException not thrown");
+        } catch (XenonException e) {
+            assertThat(e).isEqualTo(expected);
+        }
+    }
+
+    @Test
+    public void testStop() throws InterruptedException {
+        StagingEngine engine = new StagingEngine(files, 1, jobExecutor, copyExecutor, downloadExecutor);
+
+        engine.stop();
+
+        verify(jobExecutor).shutdownNow();
+        verify(downloadExecutor).shutdown();
+        assertThat(copyExecutor.isShutdown()).isTrue();
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * #%L
+ * Osmium
+ * %%
+ * Copyright (C) 2013 Nederlands eScience Center
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package nl.esciencecenter.osmium.job;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+public class WatchConfigurationTest {
+
+    @Test
+    public void testWatchConfiguration_Default() {
+        WatchConfiguration conf = new WatchConfiguration();
+
+        assertThat(conf.getMaxWaiters()).isEqualTo(20);
+        assertThat(conf.getMaxTimeout()).isEqualTo(60000);
+        assertThat(conf.getMaxStreams()).isEqualTo(10);
+        assertThat(conf.getStreamQueueSize()).isEqualTo(10000);
+        assertThat(conf.getHeartbeat()).isEqualTo(15000);
+        assertThat(conf.getChangeBufferSize()).isEqualTo(10000);
+    }
+
+    @Test
+    public void testSetters() {
+        WatchConfiguration conf = new WatchConfiguration();
+
+        conf.setMaxWaiters(5);
+        conf.setMaxTimeout(1000);
+        conf.setMaxStreams(2);
+        conf.setStreamQueueSize(10);
+        conf.setHeartbeat(500);
+        conf.setChangeBufferSize(50);
+
+        WatchConfiguration expected = new WatchConfiguration(5, 1000, 2);
+        expected.setStreamQueueSize(10);
+        expected.setHeartbeat(500);
+        expected.setChangeBufferSize(50);
+        assertThat(conf).isEqualTo(expected);
+        assertThat(conf.hashCode()).isEqualTo(expected.hashCode());
+    }
+
+    @Test
+    public void testToString() {
+        WatchConfiguration conf = new WatchConfiguration(5, 1000, 2);
+
+        String expected = "WatchConfiguration{5, 1000, 2, 10000, 15000, 10000}";
+        assertThat(conf.toString()).isEqualTo(expected);
+    }
+}
@@ -96,6 +96,8 @@ public class XenonConfigurationTest {
         assertThat(actual.getPreferences()).isEqualTo(prefs);
         PollConfiguration expected_poll = new PollConfiguration(500, 3600000, 43200000);
         assertThat(actual.getPoll()).isEqualTo(expected_poll);
+        StagingConfiguration expected_staging = new StagingConfiguration(true, 2, 100);
+        assertThat(actual.getStaging()).isEqualTo(expected_staging);
     }
 
     @Test
@@ -114,14 +116,14 @@ public class XenonConfigurationTest {
     @Test
     public void testToString() throws URISyntaxException {
         XenonConfiguration config = sampleConfig();
-        String expected = "XenonConfiguration{SchedulerConfiguration{local, multi, null, null}, SandboxConfiguration{file, /tmp/sandboxes, null, null}, {xenon.adaptors.local.queue.multi.maxConcurrentJobs=1}, PollConfiguration{30000, 3600000, 43200000}}";
+        String expected = "XenonConfiguration{SchedulerConfiguration{local, multi, null, null}, SandboxConfiguration{file, /tmp/sandboxes, null, null}, {xenon.adaptors.local.queue.multi.maxConcurrentJobs=1}, PollConfiguration{30000, 3600000, 43200000, false, 5000, 600000, 2.0, 500, 2, false}, StagingConfiguration{false, 4, 1000, 1, 16, 4}, JobStoreConfiguration{null, 1000}, [], LoadBalanceConfiguration{false, 30000, {}, 0.5, 10000}, AdmissionConfiguration{0, 0, 0.0, 10, 60}, WatchConfiguration{20, 60000, 10, 10000, 15000, 10000}}";
         assertThat(config.toString()).isEqualTo(expected);
     }
 
     @Test
     public void testHashCode() throws URISyntaxException {
         XenonConfiguration config = sampleConfig();
-        int expected = -318369353;
+        int expected = 265091270;
         assertThat(config.hashCode()).isEqualTo(expected);
     }
 
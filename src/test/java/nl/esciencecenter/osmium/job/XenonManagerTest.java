@@ -20,17 +20,29 @@
 package nl.esciencecenter.osmium.job;
 
 import static org.fest.assertions.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 
 import java.io.IOException;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
@@ -49,8 +61,10 @@ import nl.esciencecenter.xenon.jobs.Jobs;
 import nl.esciencecenter.xenon.jobs.NoSuchJobException;
 import nl.esciencecenter.xenon.jobs.Scheduler;
 import nl.esciencecenter.xenon.util.Sandbox;
+import nl.esciencecenter.osmium.api.JobStatusResponse;
 import nl.esciencecenter.osmium.api.JobSubmitRequest;
 import nl.esciencecenter.osmium.api.SandboxedJob;
+import nl.esciencecenter.osmium.callback.CallbackDispatcher;
 import nl.esciencecenter.osmium.job.JobsPoller;
 import nl.esciencecenter.osmium.job.XenonConfiguration;
 import nl.esciencecenter.osmium.job.XenonManager;
@@ -61,10 +75,15 @@ import nl.esciencecenter.osmium.job.SchedulerConfiguration;
 import org.apache.http.client.HttpClient;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PowerMockIgnore;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 
 /**
@@ -74,6 +93,8 @@ import com.google.common.collect.ImmutableMap;
  */
 @RunWith(PowerMockRunner.class)
 @PrepareForTest(XenonFactory.class)
+// metrics registers MBeans which must not be loaded by PowerMock classloader
+@PowerMockIgnore("javax.management.*")
 public class XenonManagerTest {
 
     @Test
@@ -114,6 +135,19 @@ public class XenonManagerTest {
         verify(executor).scheduleAtFixedRate(poller, 0, 30 * 1000, TimeUnit.MILLISECONDS);
     }
 
+    @Test
+    public void testStart_AdaptivePolling_RunEveryMinInterval() throws Exception {
+        JobsPoller poller = mock(JobsPoller.class);
+        ScheduledExecutorService executor = mock(ScheduledExecutorService.class);
+        XenonConfiguration conf = new XenonConfiguration();
+        conf.setPoll(new PollConfiguration(30000, 3600000, 43200000, true, 1000, 60000, 2));
+        XenonManager manager = new XenonManager(conf, null, null, null, null, poller, executor);
+
+        manager.start();
+
+        verify(executor).scheduleAtFixedRate(poller, 0, 1000, TimeUnit.MILLISECONDS);
+    }
+
     @Test
     public void testStop() throws Exception {
         // Use powermock mockito to mock XenonFactory.endXenon()
@@ -172,7 +206,8 @@ public class XenonManagerTest {
 
         SandboxedJob result = manager.submitJob(request, httpClient);
 
-        assertThat(result.getIdentifier()).isEqualTo("1234");
+        assertThat(result.getJob()).isEqualTo(job);
+        assertThat(sjobs.get(result.getIdentifier())).isSameAs(result);
         verify(sandbox).upload();
         verify(jobs).submitJob(scheduler, description);
 
@@ -180,6 +215,7 @@ public class XenonManagerTest {
         assertThat(description.getMaxTime()).isEqualTo(60);
         assertThat(description.getQueueName()).isEqualTo("multi");
         assertThat(description.getWorkingDirectory()).isEqualTo("/tmp/sandboxes");
+        verify(poller).register(result);
     }
 
     @Test
@@ -292,4 +328,751 @@ public class XenonManagerTest {
 
         assertThat(jobs).contains(sjob);
     }
+
+    @Test
+    public void getJobsAfter_NullCursor_AllJobsOrderedByIdentifier() {
+        Map<String, SandboxedJob> sjobs = new HashMap<String, SandboxedJob>();
+        SandboxedJob sjob1 = new SandboxedJob("b", null, null);
+        sjobs.put("b", sjob1);
+        SandboxedJob sjob2 = new SandboxedJob("a", null, null);
+        sjobs.put("a", sjob2);
+        XenonManager manager = new XenonManager(null, null, null, null, sjobs, null, null);
+
+        Collection<SandboxedJob> jobs = manager.getJobsAfter(null);
+
+        assertThat(jobs).containsExactly(sjob2, sjob1);
+    }
+
+    @Test
+    public void getJobsAfter_Cursor_JobsAfterCursor() {
+        Map<String, SandboxedJob> sjobs = new ConcurrentSkipListMap<String, SandboxedJob>();
+        SandboxedJob sjob1 = new SandboxedJob("a", null, null);
+        sjobs.put("a", sjob1);
+        SandboxedJob sjob2 = new SandboxedJob("b", null, null);
+        sjobs.put("b", sjob2);
+        SandboxedJob sjob3 = new SandboxedJob("c", null, null);
+        sjobs.put("c", sjob3);
+        XenonManager manager = new XenonManager(null, null, null, null, sjobs, null, null);
+
+        Collection<SandboxedJob> jobs = manager.getJobsAfter("a");
+
+        assertThat(jobs).containsExactly(sjob2, sjob3);
+    }
+
+    private XenonConfiguration sampleConfig() {
+        ImmutableMap<String, String> prefs = ImmutableMap.of("xenon.adaptors.local.queue.multi.maxConcurrentJobs", "1");
+        PollConfiguration pollConf = new PollConfiguration();
+        SchedulerConfiguration schedulerConf = new SchedulerConfiguration("local", null, "multi", null);
+        SandboxConfiguration sandboxConf = new SandboxConfiguration("file", null, "/tmp/sandboxes", null);
+        XenonConfiguration conf = new XenonConfiguration(schedulerConf, sandboxConf, prefs, pollConf);
+        conf.setStaging(new StagingConfiguration(true, 1, 1));
+        return conf;
+    }
+
+    @Test
+    public void testIsAsyncSubmit() {
+        XenonManager manager = new XenonManager(sampleConfig(), null, null, null, null, null, null);
+
+        assertThat(manager.isAsyncSubmit()).isTrue();
+    }
+
+    @Test
+    public void testSubmitJobAsync_CallbackDispatcher_SetOnJob() {
+        Map<String, SandboxedJob> sjobs = new HashMap<String, SandboxedJob>();
+        StagingEngine stagingEngine = mock(StagingEngine.class);
+        JobsPoller poller = mock(JobsPoller.class);
+        CallbackDispatcher dispatcher = mock(CallbackDispatcher.class);
+        XenonManager manager = new XenonManager(sampleConfig(), null, null, null, sjobs, poller, null, stagingEngine,
+                null, null, dispatcher);
+        JobSubmitRequest request = mock(JobSubmitRequest.class);
+        HttpClient httpClient = mock(HttpClient.class);
+
+        SandboxedJob result = manager.submitJobAsync(request, httpClient);
+
+        assertThat(result.getCallbackDispatcher()).isEqualTo(dispatcher);
+    }
+
+    @Test
+    public void testSubmitJobAsync_CallbackDispatcher_SetBeforeStagingQueued() {
+        final Map<String, SandboxedJob> sjobs = new HashMap<String, SandboxedJob>();
+        StagingEngine stagingEngine = mock(StagingEngine.class);
+        final List<CallbackDispatcher> dispatchers = new ArrayList<CallbackDispatcher>();
+        doAnswer(new Answer<Void>() {
+            public Void answer(InvocationOnMock invocation) {
+                dispatchers.add(sjobs.values().iterator().next().getCallbackDispatcher());
+                return null;
+            }
+        }).when(stagingEngine).submit(any(Runnable.class));
+        JobsPoller poller = mock(JobsPoller.class);
+        CallbackDispatcher dispatcher = mock(CallbackDispatcher.class);
+        XenonManager manager = new XenonManager(sampleConfig(), null, null, null, sjobs, poller, null, stagingEngine,
+                null, null, dispatcher);
+
+        manager.submitJobAsync(mock(JobSubmitRequest.class), null);
+
+        assertThat(dispatchers).containsExactly(dispatcher);
+    }
+
+    @Test
+    public void testSubmitJobAsync_StagingJobStoredAndQueued() {
+        Map<String, SandboxedJob> sjobs = new HashMap<String, SandboxedJob>();
+        StagingEngine stagingEngine = mock(StagingEngine.class);
+        JobsPoller poller = mock(JobsPoller.class);
+        XenonManager manager = new XenonManager(sampleConfig(), null, null, null, sjobs, poller, null, stagingEngine);
+        JobSubmitRequest request = mock(JobSubmitRequest.class);
+        HttpClient httpClient = mock(HttpClient.class);
+
+        SandboxedJob result = manager.submitJobAsync(request, httpClient);
+
+        assertThat(result.isStaging()).isTrue();
+        assertThat(result.getStatusResponse().getState()).isEqualTo("STAGING");
+        assertThat(sjobs).containsKey(result.getIdentifier());
+        verify(stagingEngine).submit(any(Runnable.class));
+        verify(poller).register(result);
+    }
+
+    @Test
+    public void testSubmitJobAsync_QueueFull_JobRemovedAndRejected() {
+        Map<String, SandboxedJob> sjobs = new HashMap<String, SandboxedJob>();
+        StagingEngine stagingEngine = mock(StagingEngine.class);
+        doThrow(new RejectedExecutionException()).when(stagingEngine).submit(any(Runnable.class));
+        XenonManager manager = new XenonManager(sampleConfig(), null, null, null, sjobs, null, null, stagingEngine);
+        JobSubmitRequest request = mock(JobSubmitRequest.class);
+
+        try {
+            manager.submitJobAsync(request, null);
+        } catch (RejectedExecutionException e) {
+            assertThat(sjobs).isEmpty();
+            return;
+        }
+        throw new AssertionError("RejectedExecutionException not thrown");
+    }
+
+    @Test
+    public void testStageJob_Staged_JobSubmitted() throws XenonException {
+        Xenon xenon = mock(Xenon.class);
+        Scheduler scheduler = mock(Scheduler.class);
+        Jobs jobs = mock(Jobs.class);
+        when(xenon.jobs()).thenReturn(jobs);
+        Files files = mock(Files.class);
+        when(xenon.files()).thenReturn(files);
+        Path sandboxPath = mock(Path.class);
+        JobSubmitRequest request = mock(JobSubmitRequest.class);
+        JobDescription description = new JobDescription();
+        when(request.toJobDescription()).thenReturn(description);
+        Sandbox sandbox = mock(Sandbox.class);
+        when(request.toSandbox(files, sandboxPath, null)).thenReturn(sandbox);
+        when(sandbox.getPath()).thenReturn(sandboxPath);
+        RelativePath sandboxRelativePath = mock(RelativePath.class);
+        when(sandboxPath.getRelativePath()).thenReturn(sandboxRelativePath);
+        when(sandboxRelativePath.getAbsolutePath()).thenReturn("/tmp/sandboxes");
+        Job job = mock(Job.class);
+        when(job.getIdentifier()).thenReturn("1234");
+        when(jobs.submitJob(scheduler, description)).thenReturn(job);
+        Map<String, SandboxedJob> sjobs = new HashMap<String, SandboxedJob>();
+        XenonManager manager = new XenonManager(sampleConfig(), xenon, scheduler, sandboxPath, sjobs, null, null);
+        SandboxedJob sjob = new SandboxedJob("abcd", request, null);
+
+        manager.stageJob(sjob);
+
+        verify(sandbox).upload();
+        assertThat(sjob.isStaging()).isFalse();
+        assertThat(sjob.getJob()).isEqualTo(job);
+        assertThat(sjob.getSandbox()).isEqualTo(sandbox);
+        assertThat(sjob.getIdentifier()).isEqualTo("abcd");
+    }
+
+    @Test
+    public void testStageJob_UploadFailed_JobDoneWithException() throws XenonException {
+        Xenon xenon = mock(Xenon.class);
+        Files files = mock(Files.class);
+        when(xenon.files()).thenReturn(files);
+        Path sandboxPath = mock(Path.class);
+        JobSubmitRequest request = mock(JobSubmitRequest.class);
+        when(request.toJobDescription()).thenReturn(new JobDescription());
+        Sandbox sandbox = mock(Sandbox.class);
+        when(request.toSandbox(files, sandboxPath, null)).thenReturn(sandbox);
+        when(sandbox.getPath()).thenReturn(sandboxPath);
+        when(sandboxPath.getRelativePath()).thenReturn(new RelativePath("/tmp/sandboxes"));
+        doThrow(new XenonException("local", "Disk full")).when(sandbox).upload();
+        XenonManager manager = new XenonManager(sampleConfig(), xenon, null, sandboxPath, null, null, null);
+        SandboxedJob sjob = new SandboxedJob("abcd", request, null);
+
+        manager.stageJob(sjob);
+
+        verify(sandbox).delete();
+        JobStatusResponse status = sjob.getStatusResponse();
+        assertThat(status.getState()).isEqualTo("ERROR");
+        assertThat(status.isDone()).isTrue();
+        assertThat(status.getExceptionMessage()).isEqualTo("Disk full");
+    }
+
+    @Test
+    public void testCancelJob_StagingJob_JobKilled() throws XenonException, IOException {
+        Map<String, SandboxedJob> sjobs = new HashMap<String, SandboxedJob>();
+        SandboxedJob sjob = new SandboxedJob("abcd", null, null);
+        sjobs.put("abcd", sjob);
+        XenonManager manager = new XenonManager(sampleConfig(), null, null, null, sjobs, null, null);
+
+        manager.cancelJob("abcd");
+
+        assertThat(sjob.isStaging()).isFalse();
+        assertThat(sjob.getStatus().getState()).isEqualTo("KILLED");
+    }
+
+    @Test
+    public void testStageJob_CanceledWhileStaging_JobCanceledAtScheduler() throws XenonException, IOException {
+        Xenon xenon = mock(Xenon.class);
+        Scheduler scheduler = mock(Scheduler.class);
+        Jobs jobs = mock(Jobs.class);
+        when(xenon.jobs()).thenReturn(jobs);
+        Files files = mock(Files.class);
+        when(xenon.files()).thenReturn(files);
+        Path sandboxPath = mock(Path.class);
+        JobSubmitRequest request = mock(JobSubmitRequest.class);
+        JobDescription description = new JobDescription();
+        when(request.toJobDescription()).thenReturn(description);
+        Sandbox sandbox = mock(Sandbox.class);
+        when(request.toSandbox(files, sandboxPath, null)).thenReturn(sandbox);
+        when(sandbox.getPath()).thenReturn(sandboxPath);
+        when(sandboxPath.getRelativePath()).thenReturn(new RelativePath("/tmp/sandboxes"));
+        Job job = mock(Job.class);
+        when(jobs.submitJob(scheduler, description)).thenReturn(job);
+        final SandboxedJob sjob = new SandboxedJob("abcd", request, null);
+        // cancel job during upload
+        doAnswer(new Answer<Void>() {
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                sjob.abortStaging(mock(JobStatus.class));
+                return null;
+            }
+        }).when(sandbox).upload();
+        XenonManager manager = new XenonManager(sampleConfig(), xenon, scheduler, sandboxPath, null, null, null);
+
+        manager.stageJob(sjob);
+
+        verify(jobs).cancelJob(job);
+        verify(sandbox).delete();
+    }
+
+    @Test
+    public void testStart_JobStoreWithRunningJob_JobReattached() throws Exception {
+        Xenon xenon = mock(Xenon.class);
+        Scheduler scheduler = mock(Scheduler.class);
+        Jobs jobs = mock(Jobs.class);
+        when(xenon.jobs()).thenReturn(jobs);
+        Files files = mock(Files.class);
+        when(xenon.files()).thenReturn(files);
+        Path sandboxPath = mock(Path.class);
+        Job job = mock(Job.class);
+        when(job.getIdentifier()).thenReturn("1234");
+        when(jobs.getJobs(scheduler, "multi")).thenReturn(new Job[] { job });
+        JobSubmitRequest request = mock(JobSubmitRequest.class);
+        Sandbox sandbox = mock(Sandbox.class);
+        when(request.toSandbox(files, sandboxPath, "xenon_sandbox_1")).thenReturn(sandbox);
+        JobStore store = mock(JobStore.class);
+        JobRecord record = new JobRecord("1234", request, "1234", "/tmp/sandboxes/xenon_sandbox_1", null, "RUNNING", null,
+                null, true, false, 1371220000000L);
+        when(store.load()).thenReturn(Arrays.asList(record));
+        Map<String, SandboxedJob> sjobs = new HashMap<String, SandboxedJob>();
+        JobsPoller poller = mock(JobsPoller.class);
+        ScheduledExecutorService executor = mock(ScheduledExecutorService.class);
+        HttpClient httpClient = mock(HttpClient.class);
+        XenonManager manager = new XenonManager(sampleConfig(), xenon, scheduler, sandboxPath, sjobs, poller, executor, null,
+                store, httpClient);
+
+        manager.start();
+
+        SandboxedJob sjob = sjobs.get("1234");
+        assertThat(sjob.getJob()).isEqualTo(job);
+        assertThat(sjob.getSandbox()).isEqualTo(sandbox);
+        assertThat(sjob.getHttpClient()).isEqualTo(httpClient);
+        assertThat(sjob.getStatus().getState()).isEqualTo("RUNNING");
+        assertThat(sjob.getCreatedAt()).isEqualTo(1371220000000L);
+        verify(poller).register(sjob);
+        verify(store).put(sjob);
+        verify(poller, never()).finishJob(any(JobStatus.class), any(SandboxedJob.class));
+        verify(executor).scheduleAtFixedRate(poller, 0, 30 * 1000, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void testStart_JobStoreWithJobUnknownToScheduler_JobFinished() throws Exception {
+        Xenon xenon = mock(Xenon.class);
+        Scheduler scheduler = mock(Scheduler.class);
+        Jobs jobs = mock(Jobs.class);
+        when(xenon.jobs()).thenReturn(jobs);
+        when(jobs.getJobs(scheduler, "multi")).thenReturn(new Job[0]);
+        JobStore store = mock(JobStore.class);
+        JobRecord record = new JobRecord("1234", null, "1234", null, null, "RUNNING", null, null, true, false, 0);
+        when(store.load()).thenReturn(Arrays.asList(record));
+        Map<String, SandboxedJob> sjobs = new HashMap<String, SandboxedJob>();
+        JobsPoller poller = mock(JobsPoller.class);
+        ScheduledExecutorService executor = mock(ScheduledExecutorService.class);
+        XenonManager manager = new XenonManager(sampleConfig(), xenon, scheduler, null, sjobs, poller, executor, null,
+                store, null);
+
+        manager.start();
+
+        SandboxedJob sjob = sjobs.get("1234");
+        ArgumentCaptor<JobStatus> status = ArgumentCaptor.forClass(JobStatus.class);
+        verify(poller).finishJob(status.capture(), eq(sjob));
+        assertThat(status.getValue().getState()).isEqualTo("UNKNOWN");
+        assertThat(status.getValue().isDone()).isTrue();
+    }
+
+    @Test
+    public void testStart_JobStoreWithDownloadingJob_DownloadResumedWithStoredStatus() throws Exception {
+        Xenon xenon = mock(Xenon.class);
+        Scheduler scheduler = mock(Scheduler.class);
+        Jobs jobs = mock(Jobs.class);
+        when(xenon.jobs()).thenReturn(jobs);
+        when(jobs.getJobs(scheduler, "multi")).thenReturn(new Job[0]);
+        Files files = mock(Files.class);
+        when(xenon.files()).thenReturn(files);
+        Path sandboxPath = mock(Path.class);
+        JobSubmitRequest request = mock(JobSubmitRequest.class);
+        Sandbox sandbox = mock(Sandbox.class);
+        when(request.toSandbox(files, sandboxPath, "xenon_sandbox_1")).thenReturn(sandbox);
+        JobStore store = mock(JobStore.class);
+        JobRecord record = new JobRecord("1234", request, "1234", "/tmp/sandboxes/xenon_sandbox_1",
+                SandboxedJob.DOWNLOADING, "DONE", 3, null, false, true, 0);
+        when(store.load()).thenReturn(Arrays.asList(record));
+        Map<String, SandboxedJob> sjobs = new HashMap<String, SandboxedJob>();
+        JobsPoller poller = mock(JobsPoller.class);
+        ScheduledExecutorService executor = mock(ScheduledExecutorService.class);
+        XenonManager manager = new XenonManager(sampleConfig(), xenon, scheduler, sandboxPath, sjobs, poller, executor,
+                null, store, null);
+
+        manager.start();
+
+        SandboxedJob sjob = sjobs.get("1234");
+        assertThat(sjob.getSandbox()).isEqualTo(sandbox);
+        assertThat(sjob.getPseudoState()).isEqualTo(SandboxedJob.DOWNLOADING);
+        ArgumentCaptor<JobStatus> status = ArgumentCaptor.forClass(JobStatus.class);
+        verify(poller).finishJob(status.capture(), eq(sjob));
+        assertThat(status.getValue().getState()).isEqualTo("DONE");
+        assertThat(status.getValue().getExitCode()).isEqualTo(3);
+        assertThat(status.getValue().isDone()).isTrue();
+    }
+
+    @Test
+    public void testStart_JobStoreWithCompactedJob_RestoredCompacted() throws Exception {
+        Xenon xenon = mock(Xenon.class);
+        Scheduler scheduler = mock(Scheduler.class);
+        Jobs jobs = mock(Jobs.class);
+        when(xenon.jobs()).thenReturn(jobs);
+        when(jobs.getJobs(scheduler, "multi")).thenReturn(new Job[0]);
+        JobStore store = mock(JobStore.class);
+        JobStatus doneStatus = new JobStatusImplementation(null, "DONE", 0, null, false, true, null);
+        JobRecord record = new JobRecord(SandboxedJob.compacted("1234", "abcdef", doneStatus));
+        when(store.load()).thenReturn(Arrays.asList(record));
+        Map<String, SandboxedJob> sjobs = new HashMap<String, SandboxedJob>();
+        JobsPoller poller = mock(JobsPoller.class);
+        ScheduledExecutorService executor = mock(ScheduledExecutorService.class);
+        XenonManager manager = new XenonManager(sampleConfig(), xenon, scheduler, null, sjobs, poller, executor, null,
+                store, null);
+
+        manager.start();
+
+        SandboxedJob sjob = sjobs.get("1234");
+        assertThat(sjob.isCompacted()).isTrue();
+        assertThat(sjob.getRequest()).isNull();
+        assertThat(sjob.getRequestDigest()).isEqualTo("abcdef");
+        assertThat(sjob.getStatus().getState()).isEqualTo("DONE");
+        verify(poller, never()).finishJob(any(JobStatus.class), any(SandboxedJob.class));
+        verify(store).put(sjob);
+    }
+
+    @Test
+    public void testStart_JobStoreWithStagingJob_JobFailed() throws Exception {
+        Xenon xenon = mock(Xenon.class);
+        Scheduler scheduler = mock(Scheduler.class);
+        Jobs jobs = mock(Jobs.class);
+        when(xenon.jobs()).thenReturn(jobs);
+        when(jobs.getJobs(scheduler, "multi")).thenReturn(new Job[0]);
+        JobStore store = mock(JobStore.class);
+        JobRecord record = new JobRecord("abcd", null, null, null, SandboxedJob.STAGING, null, null, null, false, false, 0);
+        when(store.load()).thenReturn(Arrays.asList(record));
+        Map<String, SandboxedJob> sjobs = new HashMap<String, SandboxedJob>();
+        JobsPoller poller = mock(JobsPoller.class);
+        ScheduledExecutorService executor = mock(ScheduledExecutorService.class);
+        XenonManager manager = new XenonManager(sampleConfig(), xenon, scheduler, null, sjobs, poller, executor, null,
+                store, null);
+
+        manager.start();
+
+        SandboxedJob sjob = sjobs.get("abcd");
+        assertThat(sjob.getStatus().getState()).isEqualTo("ERROR");
+        assertThat(sjob.getStatus().isDone()).isTrue();
+        // stored on recovery and on status change
+        verify(store, times(2)).put(sjob);
+    }
+
+    @Test
+    public void testStop_JobStore_JobsNotCanceled() throws Exception {
+        PowerMockito.mockStatic(XenonFactory.class);
+        Xenon xenon = mock(Xenon.class);
+        ScheduledExecutorService executor = mock(ScheduledExecutorService.class);
+        JobsPoller poller = mock(JobsPoller.class);
+        JobStore store = mock(JobStore.class);
+        XenonManager manager = new XenonManager(null, xenon, null, null, null, poller, executor, null, store, null);
+
+        manager.stop();
+
+        verify(poller).stop(false);
+        verify(poller, never()).stop();
+        verify(store).close();
+    }
+
+    @Test
+    public void testXenonManager_Backends_SchedulerPerBackend() throws URISyntaxException, XenonException {
+        PowerMockito.mockStatic(XenonFactory.class);
+        Xenon xenon = mock(Xenon.class);
+        Jobs jobs = mock(Jobs.class);
+        when(xenon.jobs()).thenReturn(jobs);
+        Files files = mock(Files.class);
+        when(xenon.files()).thenReturn(files);
+        ImmutableMap<String, String> prefs = ImmutableMap.of();
+        when(XenonFactory.newXenon(prefs)).thenReturn(xenon);
+        SchedulerConfiguration scheduler = new SchedulerConfiguration("local", null, "multi", null);
+        SandboxConfiguration sandbox = new SandboxConfiguration("file", null, "/tmp/sandboxes", null);
+        XenonConfiguration conf = new XenonConfiguration(scheduler, sandbox, prefs, new PollConfiguration());
+        SchedulerConfiguration slurm = new SchedulerConfiguration("slurm", "cluster", "batch", null);
+        SandboxConfiguration slurmSandbox = new SandboxConfiguration("sftp", "cluster", "/scratch", null);
+        conf.setBackends(ImmutableList.of(new BackendConfiguration("heavy", slurm, slurmSandbox)));
+
+        XenonManager manager = new XenonManager(conf);
+
+        verify(jobs).newScheduler("local", null, null, null);
+        verify(jobs).newScheduler("slurm", "cluster", null, null);
+        verify(files).newFileSystem("sftp", "cluster", null, null);
+        assertThat(manager.getSchedulerNames()).containsExactly("default", "heavy");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAddBackend_DuplicateName_IllegalArgument() {
+        XenonManager manager = new XenonManager(sampleConfig(), null, null, null, null, null, null);
+
+        manager.addBackend(new SchedulerBackend("default", "multi", null, null, null, null));
+    }
+
+    @Test
+    public void testSubmitJob_NamedScheduler_SubmittedToBackend() throws XenonException {
+        Xenon xenon = mock(Xenon.class);
+        Jobs jobs = mock(Jobs.class);
+        when(xenon.jobs()).thenReturn(jobs);
+        Files files = mock(Files.class);
+        when(xenon.files()).thenReturn(files);
+        Scheduler heavyScheduler = mock(Scheduler.class);
+        Path heavySandboxPath = mock(Path.class);
+        JobsPoller heavyPoller = mock(JobsPoller.class);
+        JobSubmitRequest request = mock(JobSubmitRequest.class);
+        request.scheduler = "heavy";
+        JobDescription description = new JobDescription();
+        when(request.toJobDescription()).thenReturn(description);
+        Sandbox sandbox = mock(Sandbox.class);
+        when(request.toSandbox(files, heavySandboxPath, null)).thenReturn(sandbox);
+        when(sandbox.getPath()).thenReturn(heavySandboxPath);
+        RelativePath sandboxRelativePath = mock(RelativePath.class);
+        when(heavySandboxPath.getRelativePath()).thenReturn(sandboxRelativePath);
+        when(sandboxRelativePath.getAbsolutePath()).thenReturn("/scratch/xenon_sandbox_1");
+        Job job = mock(Job.class);
+        when(job.getIdentifier()).thenReturn("1234");
+        when(jobs.submitJob(heavyScheduler, description)).thenReturn(job);
+        Map<String, SandboxedJob> sjobs = new HashMap<String, SandboxedJob>();
+        JobsPoller poller = mock(JobsPoller.class);
+        XenonManager manager = new XenonManager(sampleConfig(), xenon, mock(Scheduler.class), mock(Path.class), sjobs,
+                poller, null);
+        manager.addBackend(new SchedulerBackend("heavy", "batch", heavyScheduler, heavySandboxPath, heavyPoller, null));
+
+        SandboxedJob result = manager.submitJob(request, null);
+
+        verify(jobs).submitJob(heavyScheduler, description);
+        assertThat(description.getQueueName()).isEqualTo("batch");
+        verify(heavyPoller).register(result);
+        verify(poller, never()).register(result);
+    }
+
+    @Test
+    public void testSubmitJob_BackendsReturnSameJobIdentifier_BothJobsKept() throws XenonException {
+        Xenon xenon = mock(Xenon.class);
+        Jobs jobs = mock(Jobs.class);
+        when(xenon.jobs()).thenReturn(jobs);
+        Files files = mock(Files.class);
+        when(xenon.files()).thenReturn(files);
+        Scheduler scheduler = mock(Scheduler.class);
+        Path sandboxPath = mock(Path.class);
+        Scheduler heavyScheduler = mock(Scheduler.class);
+        Path heavySandboxPath = mock(Path.class);
+        JobsPoller heavyPoller = mock(JobsPoller.class);
+        RelativePath sandboxRelativePath = mock(RelativePath.class);
+        when(sandboxRelativePath.getAbsolutePath()).thenReturn("/scratch/xenon_sandbox_1");
+        when(sandboxPath.getRelativePath()).thenReturn(sandboxRelativePath);
+        when(heavySandboxPath.getRelativePath()).thenReturn(sandboxRelativePath);
+        JobSubmitRequest request = mock(JobSubmitRequest.class);
+        JobDescription description = new JobDescription();
+        when(request.toJobDescription()).thenReturn(description);
+        Sandbox sandbox = mock(Sandbox.class);
+        when(sandbox.getPath()).thenReturn(sandboxPath);
+        when(request.toSandbox(files, sandboxPath, null)).thenReturn(sandbox);
+        JobSubmitRequest heavyRequest = mock(JobSubmitRequest.class);
+        heavyRequest.scheduler = "heavy";
+        JobDescription heavyDescription = new JobDescription();
+        when(heavyRequest.toJobDescription()).thenReturn(heavyDescription);
+        Sandbox heavySandbox = mock(Sandbox.class);
+        when(heavySandbox.getPath()).thenReturn(heavySandboxPath);
+        when(heavyRequest.toSandbox(files, heavySandboxPath, null)).thenReturn(heavySandbox);
+        Job job = mock(Job.class);
+        when(job.getIdentifier()).thenReturn("local-0");
+        when(jobs.submitJob(scheduler, description)).thenReturn(job);
+        Job heavyJob = mock(Job.class);
+        when(heavyJob.getIdentifier()).thenReturn("local-0");
+        when(jobs.submitJob(heavyScheduler, heavyDescription)).thenReturn(heavyJob);
+        Map<String, SandboxedJob> sjobs = new HashMap<String, SandboxedJob>();
+        JobsPoller poller = mock(JobsPoller.class);
+        XenonManager manager = new XenonManager(sampleConfig(), xenon, scheduler, sandboxPath, sjobs, poller, null);
+        manager.addBackend(new SchedulerBackend("heavy", "batch", heavyScheduler, heavySandboxPath, heavyPoller, null));
+
+        SandboxedJob result = manager.submitJob(request, null);
+        SandboxedJob heavyResult = manager.submitJob(heavyRequest, null);
+
+        assertThat(result.getIdentifier()).isNotEqualTo(heavyResult.getIdentifier());
+        assertThat(sjobs).hasSize(2);
+        assertThat(sjobs.get(result.getIdentifier()).getJob()).isEqualTo(job);
+        assertThat(sjobs.get(heavyResult.getIdentifier()).getJob()).isEqualTo(heavyJob);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSubmitJobAsync_UnknownScheduler_IllegalArgument() {
+        Map<String, SandboxedJob> sjobs = new HashMap<String, SandboxedJob>();
+        XenonManager manager = new XenonManager(sampleConfig(), null, null, null, sjobs, null, null);
+        JobSubmitRequest request = new JobSubmitRequest();
+        request.scheduler = "nosuchscheduler";
+
+        try {
+            manager.submitJobAsync(request, null);
+        } finally {
+            assertThat(sjobs).isEmpty();
+        }
+    }
+
+    @Test
+    public void testRoute_RuleMatches_NameStoredInRequest() {
+        XenonManager manager = new XenonManager(sampleConfig(), null, null, null, null, null, null);
+        SchedulerBackend heavy = new SchedulerBackend("heavy", "batch", null, null, null, null, ".*/heavy", null);
+        manager.addBackend(heavy);
+        JobSubmitRequest request = new JobSubmitRequest();
+        request.executable = "/opt/bin/heavy";
+
+        assertThat(manager.route(request)).isSameAs(heavy);
+        assertThat(request.scheduler).isEqualTo("heavy");
+    }
+
+    @Test
+    public void testRoute_NoRuleMatches_Default() {
+        XenonManager manager = new XenonManager(sampleConfig(), null, null, null, null, null, null);
+        manager.addBackend(new SchedulerBackend("heavy", "batch", null, null, null, null, ".*/heavy", null));
+        JobSubmitRequest request = new JobSubmitRequest();
+        request.executable = "/bin/sh";
+
+        SchedulerBackend backend = manager.route(request);
+
+        assertThat(backend.getName()).isEqualTo(XenonManager.DEFAULT_BACKEND);
+        assertThat(request.scheduler).isNull();
+    }
+
+    @Test
+    public void testStart_Backends_EachPollerScheduled() throws Exception {
+        JobsPoller poller = mock(JobsPoller.class);
+        ScheduledExecutorService executor = mock(ScheduledExecutorService.class);
+        JobsPoller heavyPoller = mock(JobsPoller.class);
+        ScheduledExecutorService heavyExecutor = mock(ScheduledExecutorService.class);
+        XenonManager manager = new XenonManager(new XenonConfiguration(), null, null, null, null, poller, executor);
+        manager.addBackend(new SchedulerBackend("heavy", "batch", null, null, heavyPoller, heavyExecutor));
+
+        manager.start();
+
+        verify(executor).scheduleAtFixedRate(poller, 0, 30 * 1000, TimeUnit.MILLISECONDS);
+        verify(heavyExecutor).scheduleAtFixedRate(heavyPoller, 0, 30 * 1000, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void testStart_JobStoreWithJobOfRemovedScheduler_JobFailed() throws Exception {
+        Xenon xenon = mock(Xenon.class);
+        Scheduler scheduler = mock(Scheduler.class);
+        Jobs jobs = mock(Jobs.class);
+        when(xenon.jobs()).thenReturn(jobs);
+        when(jobs.getJobs(scheduler, "multi")).thenReturn(new Job[0]);
+        JobStore store = mock(JobStore.class);
+        JobSubmitRequest request = new JobSubmitRequest();
+        request.scheduler = "removed";
+        JobRecord record = new JobRecord("1234", request, "1234", "/scratch/xenon_sandbox_1", null, "RUNNING", null,
+                null, true, false, 0);
+        when(store.load()).thenReturn(Arrays.asList(record));
+        Map<String, SandboxedJob> sjobs = new HashMap<String, SandboxedJob>();
+        JobsPoller poller = mock(JobsPoller.class);
+        ScheduledExecutorService executor = mock(ScheduledExecutorService.class);
+        XenonManager manager = new XenonManager(sampleConfig(), xenon, scheduler, null, sjobs, poller, executor, null,
+                store, null);
+
+        manager.start();
+
+        SandboxedJob sjob = sjobs.get("1234");
+        assertThat(sjob.getStatus().getState()).isEqualTo("ERROR");
+        assertThat(sjob.getStatus().isDone()).isTrue();
+        assertThat(sjob.getSandbox()).isNull();
+        verify(poller).register(sjob);
+    }
+
+    @Test
+    public void testStart_JobStoreWithUnreachableBackend_OnlyItsJobsUnknown() throws Exception {
+        Xenon xenon = mock(Xenon.class);
+        Scheduler scheduler = mock(Scheduler.class);
+        Scheduler heavyScheduler = mock(Scheduler.class);
+        Jobs jobs = mock(Jobs.class);
+        when(xenon.jobs()).thenReturn(jobs);
+        Job job = mock(Job.class);
+        when(job.getIdentifier()).thenReturn("1234");
+        when(jobs.getJobs(scheduler, "multi")).thenReturn(new Job[] { job });
+        when(jobs.getJobs(heavyScheduler, "batch")).thenThrow(new XenonException("slurm", "Connection refused"));
+        JobStore store = mock(JobStore.class);
+        JobSubmitRequest heavyRequest = new JobSubmitRequest();
+        heavyRequest.scheduler = "heavy";
+        JobRecord record = new JobRecord("1234", null, "1234", null, null, "RUNNING", null, null, true, false, 0);
+        JobRecord heavyRecord = new JobRecord("5678", heavyRequest, "5678", "/scratch/xenon_sandbox_1", null, "RUNNING",
+                null, null, true, false, 0);
+        when(store.load()).thenReturn(Arrays.asList(record, heavyRecord));
+        Map<String, SandboxedJob> sjobs = new HashMap<String, SandboxedJob>();
+        JobsPoller poller = mock(JobsPoller.class);
+        ScheduledExecutorService executor = mock(ScheduledExecutorService.class);
+        JobsPoller heavyPoller = mock(JobsPoller.class);
+        XenonManager manager = new XenonManager(sampleConfig(), xenon, scheduler, null, sjobs, poller, executor, null,
+                store, null);
+        manager.addBackend(new SchedulerBackend("heavy", "batch", heavyScheduler, null, heavyPoller,
+                mock(ScheduledExecutorService.class)));
+
+        manager.start();
+
+        assertThat(sjobs.get("1234").getJob()).isEqualTo(job);
+        assertThat(sjobs.get("1234").getStatus().getState()).isEqualTo("RUNNING");
+        SandboxedJob heavyJob = sjobs.get("5678");
+        assertThat(heavyJob.getStatus().getState()).isEqualTo("UNKNOWN");
+        assertThat(heavyJob.getStatus().isDone()).isTrue();
+        verify(heavyPoller).register(heavyJob);
+        verify(heavyPoller, never()).finishJob(any(JobStatus.class), any(SandboxedJob.class));
+        verify(executor).scheduleAtFixedRate(poller, 0, 30 * 1000, TimeUnit.MILLISECONDS);
+    }
+
+    private XenonConfiguration loadBalancedConfig() {
+        XenonConfiguration conf = sampleConfig();
+        conf.setLoadBalance(new LoadBalanceConfiguration(true, 1000, ImmutableMap.of("default", 2)));
+        return conf;
+    }
+
+    @Test
+    public void testRoute_LoadBalanced_DefaultIdle_Default() {
+        XenonManager manager = new XenonManager(loadBalancedConfig(), null, null, null, null, null, null);
+        manager.addBackend(new SchedulerBackend("cluster", "batch", null, null, null, null));
+        JobSubmitRequest request = new JobSubmitRequest();
+
+        SchedulerBackend backend = manager.route(request);
+
+        assertThat(backend.getName()).isEqualTo(XenonManager.DEFAULT_BACKEND);
+        assertThat(request.scheduler).isNull();
+    }
+
+    @Test
+    public void testRoute_LoadBalanced_DefaultSaturated_SpilledOver() {
+        XenonManager manager = new XenonManager(loadBalancedConfig(), null, null, null, null, null, null);
+        SchedulerBackend cluster = new SchedulerBackend("cluster", "batch", null, null, null, null);
+        manager.addBackend(cluster);
+        manager.route(new JobSubmitRequest()).getLoad().sample(2);
+        JobSubmitRequest request = new JobSubmitRequest();
+
+        assertThat(manager.route(request)).isSameAs(cluster);
+        assertThat(request.scheduler).isEqualTo("cluster");
+    }
+
+    @Test
+    public void testStart_LoadBalanced_LoadSampled() throws Exception {
+        JobsPoller poller = mock(JobsPoller.class);
+        ScheduledExecutorService executor = mock(ScheduledExecutorService.class);
+        XenonManager manager = new XenonManager(loadBalancedConfig(), null, null, null, null, poller, executor);
+
+        manager.start();
+
+        verify(executor).scheduleWithFixedDelay(any(Runnable.class), eq(0L), eq(1000L), eq(TimeUnit.MILLISECONDS));
+    }
+
+    private XenonConfiguration admissionConfig(int maxActiveJobs) {
+        XenonConfiguration conf = sampleConfig();
+        conf.setAdmission(new AdmissionConfiguration(maxActiveJobs, 0, 0, 10));
+        return conf;
+    }
+
+    @Test
+    public void testSubmitJobAsync_MaxActiveJobs_Rejected() {
+        Map<String, SandboxedJob> sjobs = new HashMap<String, SandboxedJob>();
+        StagingEngine stagingEngine = mock(StagingEngine.class);
+        JobsPoller poller = mock(JobsPoller.class);
+        XenonManager manager = new XenonManager(admissionConfig(1), null, null, null, sjobs, poller, null, stagingEngine);
+        manager.submitJobAsync(new JobSubmitRequest(), null, "10.0.0.1");
+
+        try {
+            manager.submitJobAsync(new JobSubmitRequest(), null, "10.0.0.1");
+            fail("AdmissionException not thrown");
+        } catch (AdmissionException e) {
+            assertThat(e.getRetryAfter()).isEqualTo(60);
+        }
+        assertThat(sjobs).hasSize(1);
+    }
+
+    @Test
+    public void testSubmitJobAsync_ActiveJobFinished_Admitted() throws IOException {
+        Map<String, SandboxedJob> sjobs = new HashMap<String, SandboxedJob>();
+        StagingEngine stagingEngine = mock(StagingEngine.class);
+        JobsPoller poller = mock(JobsPoller.class);
+        XenonManager manager = new XenonManager(admissionConfig(1), null, null, null, sjobs, poller, null, stagingEngine);
+        SandboxedJob first = manager.submitJobAsync(new JobSubmitRequest(), null);
+
+        first.abortStaging(new JobStatusImplementation(null, "KILLED", null, null, false, true, null));
+        manager.submitJobAsync(new JobSubmitRequest(), null);
+
+        assertThat(sjobs).hasSize(2);
+    }
+
+    @Test
+    public void testSubmitJobAsync_QueueFull_AdmissionReleased() {
+        Map<String, SandboxedJob> sjobs = new HashMap<String, SandboxedJob>();
+        StagingEngine stagingEngine = mock(StagingEngine.class);
+        doThrow(new RejectedExecutionException()).doNothing().when(stagingEngine).submit(any(Runnable.class));
+        JobsPoller poller = mock(JobsPoller.class);
+        XenonManager manager = new XenonManager(admissionConfig(1), null, null, null, sjobs, poller, null, stagingEngine);
+        try {
+            manager.submitJobAsync(new JobSubmitRequest(), null);
+            fail("RejectedExecutionException not thrown");
+        } catch (RejectedExecutionException e) {
+            // slot is released
+        }
+
+        manager.submitJobAsync(new JobSubmitRequest(), null);
+
+        assertThat(sjobs).hasSize(1);
+    }
+
+    @Test
+    public void testSubmitJobAsync_ChangeRecorded() throws IOException {
+        Map<String, SandboxedJob> sjobs = new HashMap<String, SandboxedJob>();
+        StagingEngine stagingEngine = mock(StagingEngine.class);
+        JobsPoller poller = mock(JobsPoller.class);
+        XenonManager manager = new XenonManager(sampleConfig(), null, null, null, sjobs, poller, null, stagingEngine);
+
+        SandboxedJob job = manager.submitJobAsync(new JobSubmitRequest(), null);
+        job.abortStaging(new JobStatusImplementation(null, "KILLED", null, null, false, true, null));
+
+        ChangeFeed.Page page = manager.getChangeFeed().getChangesSince(0, 10);
+        assertThat(page.getChanges()).hasSize(2);
+        assertThat(page.getChanges().get(0).getStatus().getState()).isEqualTo("STAGING");
+        assertThat(page.getChanges().get(1).getStatus().getState()).isEqualTo("KILLED");
+        assertThat(job.getSequence()).isEqualTo(2);
+    }
 }
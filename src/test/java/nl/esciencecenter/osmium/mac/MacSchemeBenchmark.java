@@ -0,0 +1,80 @@
+/*
+ * #%L
+ * Osmium
+ * %%
+ * Copyright (C) 2013 Nederlands eScience Center
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package nl.esciencecenter.osmium.mac;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.commons.codec.binary.Base64;
+import org.apache.http.auth.AuthenticationException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Signing of a callback request with hmac-sha-1 and hmac-sha-256.
+ *
+ * Compares the cached Mac instances and StringBuilder normalizer of {@link MacScheme}
+ * with a Mac instance and key created per request and a concatenated request string, as was done before.
+ *
+ * @author verhoes
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MacSchemeBenchmark {
+    @Param({ "hmac-sha-1", "hmac-sha-256" })
+    public String algorithm;
+
+    private final URI uri = URI.create("http://localhost:9998/job/status");
+    private final String key = "id";
+    private final String nonce = "dj83hs9s";
+    private final long timestamp = 1386772108L;
+
+    @Benchmark
+    public String perRequestMac() throws GeneralSecurityException {
+        String data = timestamp + "\n" + nonce + "\n" + "PUT" + "\n" + uri.getPath() + "\n"
+                + uri.getHost().toLowerCase() + "\n" + MacScheme.getPort(uri) + "\n" + "\n";
+        Mac mac = Mac.getInstance(MacScheme.algorithmMapper(algorithm));
+        mac.init(new SecretKeySpec(key.getBytes(StandardCharsets.US_ASCII), "RAW"));
+        return Base64.encodeBase64String(mac.doFinal(data.getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    @Benchmark
+    public String cachedMac() throws AuthenticationException {
+        String data = MacScheme.getNormalizedRequestString("PUT", uri, nonce, timestamp);
+        return MacScheme.calculateRFC2104HMAC(data, key, MacScheme.algorithmMapper(algorithm));
+    }
+}
@@ -32,6 +32,8 @@ import java.net.URISyntaxException;
 import java.util.Date;
 import java.util.Random;
 
+import javax.crypto.Mac;
+
 import nl.esciencecenter.osmium.mac.MacCredential;
 import nl.esciencecenter.osmium.mac.MacScheme;
 
@@ -142,6 +144,75 @@ public class MacSchemeTest {
         assertEquals(headerValue, header.getValue());
     }
 
+    @Test
+    public void testGetRandom_Default_PerThreadSource() {
+        assertNull(scheme.getRandom());
+    }
+
+    @Test
+    public void testAuthenticate_DefaultRandom_Nonce() throws URISyntaxException,
+            AuthenticationException {
+        MacCredential credentials = new MacCredential("someid", "somekey", new URI(
+                "http://localhost"));
+        HttpGet request = new HttpGet("http://localhost");
+
+        String first = scheme.authenticate(credentials, request, null).getValue();
+        String second = scheme.authenticate(credentials, request, null).getValue();
+
+        assertThat(first).matches(".*,nonce=\"[0-9a-v]{1,26}\",.*");
+        assertThat(first).isNotEqualTo(second);
+    }
+
+    @Test
+    public void testAuthenticate_Sha256() throws URISyntaxException,
+            AuthenticationException {
+        scheme.setDate(new Date(0));
+        scheme.setRandom(mock(Random.class));
+        String key = "_B1YfcqEYpZxyTx_-411-QdBOSI=";
+        MacCredential credentials = new MacCredential("someid", key, new URI(
+                "http://localhost"));
+        credentials.setAlgorithm("hmac-sha-256");
+        HttpGet request = new HttpGet("http://localhost");
+
+        Header header = scheme.authenticate(credentials, request, null);
+
+        String headerValue = "MAC id=\"someid\",ts=\"0\",nonce=\"0\",mac=\"+RTs8Wua1CoscrjbZyS3fVmBgtaeymgKBAqYl4laqc4=\"";
+        assertEquals(headerValue, header.getValue());
+    }
+
+    @Test
+    public void testAuthenticate_Twice_SameSignature() throws URISyntaxException,
+            AuthenticationException {
+        scheme.setDate(new Date(0));
+        scheme.setRandom(mock(Random.class));
+        MacCredential credentials = new MacCredential("someid", "somekey", new URI(
+                "http://localhost"));
+        HttpGet request = new HttpGet("http://localhost");
+
+        Header first = scheme.authenticate(credentials, request, null);
+        Header second = new MacScheme() {
+            {
+                setDate(new Date(0));
+                setRandom(mock(Random.class));
+            }
+        }.authenticate(credentials, request, null);
+
+        assertEquals(first.getValue(), second.getValue());
+    }
+
+    @Test
+    public void testGetMac_SameKey_Reused() throws AuthenticationException {
+        assertThat(MacScheme.getMac("key1", "HmacSHA1")).isSameAs(MacScheme.getMac("key1", "HmacSHA1"));
+    }
+
+    @Test
+    public void testGetMac_OtherKeyOrAlgorithm_OtherMac() throws AuthenticationException {
+        Mac mac = MacScheme.getMac("key1", "HmacSHA1");
+
+        assertThat(MacScheme.getMac("key2", "HmacSHA1")).isNotSameAs(mac);
+        assertThat(MacScheme.getMac("key1", "HmacSHA256")).isNotSameAs(mac);
+    }
+
     @Test
     public void testAuthenticateInvalidAlgorithm() throws URISyntaxException {
         String id = "eyJzYWx0IjogIjU3MjY0NCIsICJleHBpcmVzIjogMTM4Njc3MjEwOC4yOTIyNTUsICJ1c2VyaWQiOiAiam9ibWFuYWdlciJ9KBJRMeTW2G9I6jlYwRj6j8koAek=";
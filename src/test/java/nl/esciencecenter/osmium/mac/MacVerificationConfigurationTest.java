@@ -0,0 +1,78 @@
+/*
+ * #%L
+ * Osmium
+ * %%
+ * Copyright (C) 2013 Nederlands eScience Center
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package nl.esciencecenter.osmium.mac;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+public class MacVerificationConfigurationTest {
+
+    @Test
+    public void testMacVerificationConfiguration_Default() {
+        MacVerificationConfiguration conf = new MacVerificationConfiguration();
+
+        assertThat(conf.isEnabled()).isFalse();
+        assertThat(conf.getMaxClockSkew()).isEqualTo(300);
+        assertThat(conf.getReplayCacheSize()).isEqualTo(100000);
+        assertThat(conf.getReplayCacheStripes()).isEqualTo(16);
+    }
+
+    @Test
+    public void testMacVerificationConfiguration() {
+        MacVerificationConfiguration conf = new MacVerificationConfiguration(true, 60, 50);
+
+        assertThat(conf.isEnabled()).isTrue();
+        assertThat(conf.getMaxClockSkew()).isEqualTo(60);
+        assertThat(conf.getReplayCacheSize()).isEqualTo(50);
+    }
+
+    @Test
+    public void testSetters() {
+        MacVerificationConfiguration conf = new MacVerificationConfiguration();
+
+        conf.setEnabled(true);
+        conf.setMaxClockSkew(60);
+        conf.setReplayCacheSize(50);
+        conf.setReplayCacheStripes(4);
+
+        MacVerificationConfiguration expected = new MacVerificationConfiguration(true, 60, 50);
+        expected.setReplayCacheStripes(4);
+        assertThat(conf).isEqualTo(expected);
+    }
+
+    @Test
+    public void testEquals_Different() {
+        MacVerificationConfiguration conf = new MacVerificationConfiguration();
+        MacVerificationConfiguration other = new MacVerificationConfiguration();
+        other.setReplayCacheStripes(1);
+
+        assertThat(conf).isNotEqualTo(other);
+        assertThat(conf.hashCode()).isNotEqualTo(other.hashCode());
+    }
+
+    @Test
+    public void testToString() {
+        MacVerificationConfiguration conf = new MacVerificationConfiguration();
+
+        String expected = "MacVerificationConfiguration{false, 300, 100000, 16}";
+        assertThat(conf.toString()).isEqualTo(expected);
+    }
+}
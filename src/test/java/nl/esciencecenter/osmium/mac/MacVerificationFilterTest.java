@@ -0,0 +1,233 @@
+/*
+ * #%L
+ * Osmium
+ * %%
+ * Copyright (C) 2013 Nederlands eScience Center
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package nl.esciencecenter.osmium.mac;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Date;
+import java.util.Random;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.HttpHeaders;
+
+import org.apache.http.HttpRequest;
+import org.apache.http.auth.AuthenticationException;
+import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.client.methods.HttpPost;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.sun.jersey.spi.container.ContainerRequest;
+import com.yammer.metrics.core.Clock;
+
+public class MacVerificationFilterTest {
+    private static final long NOW = 1386772108000L;
+    private MacCredential credential;
+    private Clock clock;
+    private MacVerificationFilter filter;
+    private MacScheme scheme;
+
+    @Before
+    public void setUp() throws URISyntaxException {
+        credential = new MacCredential("someid", "somekey", new URI("http://localhost"));
+        clock = mock(Clock.class);
+        when(clock.time()).thenReturn(NOW);
+        filter = new MacVerificationFilter(new MacVerificationConfiguration(true, 300, 100), ImmutableList.of(credential), clock);
+        scheme = new MacScheme();
+        scheme.setDate(new Date(NOW));
+        scheme.setRandom(new Random(42));
+    }
+
+    private String sign(MacCredential mac, HttpRequest request) throws AuthenticationException {
+        return scheme.authenticate(mac, request, null).getValue();
+    }
+
+    @Test
+    public void testVerify_Signed_Null() throws AuthenticationException {
+        String authorization = sign(credential, new HttpPost("http://localhost:9998/job"));
+
+        assertThat(filter.verify("POST", URI.create("http://localhost:9998/job"), authorization)).isNull();
+    }
+
+    @Test
+    public void testVerify_Sha256_Null() throws AuthenticationException {
+        credential.setAlgorithm("hmac-sha-256");
+        String authorization = sign(credential, new HttpDelete("http://localhost:9998/job/1234"));
+
+        assertThat(filter.verify("DELETE", URI.create("http://localhost:9998/job/1234"), authorization)).isNull();
+    }
+
+    @Test
+    public void testVerify_NoAuthorization() {
+        assertThat(filter.verify("POST", URI.create("http://localhost:9998/job"), null)).isEqualTo("No MAC authorization");
+        assertThat(filter.verify("POST", URI.create("http://localhost:9998/job"), "Basic Zm9vOmJhcg==")).isEqualTo("No MAC authorization");
+    }
+
+    @Test
+    public void testVerify_Incomplete() {
+        String authorization = "MAC id=\"someid\",ts=\"1386772108\"";
+
+        assertThat(filter.verify("POST", URI.create("http://localhost:9998/job"), authorization)).isEqualTo("Incomplete MAC authorization");
+    }
+
+    @Test
+    public void testVerify_UnknownId() throws AuthenticationException, URISyntaxException {
+        MacCredential other = new MacCredential("otherid", "somekey", new URI("http://localhost"));
+        String authorization = sign(other, new HttpPost("http://localhost:9998/job"));
+
+        assertThat(filter.verify("POST", URI.create("http://localhost:9998/job"), authorization)).isEqualTo("Unknown MAC id");
+    }
+
+    @Test
+    public void testVerify_WrongKey() throws AuthenticationException, URISyntaxException {
+        MacCredential other = new MacCredential("someid", "otherkey", new URI("http://localhost"));
+        String authorization = sign(other, new HttpPost("http://localhost:9998/job"));
+
+        assertThat(filter.verify("POST", URI.create("http://localhost:9998/job"), authorization)).isEqualTo("Invalid MAC");
+    }
+
+    @Test
+    public void testVerify_OtherPath() throws AuthenticationException {
+        String authorization = sign(credential, new HttpDelete("http://localhost:9998/job/1234"));
+
+        assertThat(filter.verify("DELETE", URI.create("http://localhost:9998/job/5678"), authorization)).isEqualTo("Invalid MAC");
+    }
+
+    @Test
+    public void testVerify_OtherMethod() throws AuthenticationException {
+        String authorization = sign(credential, new HttpPost("http://localhost:9998/job/1234"));
+
+        assertThat(filter.verify("DELETE", URI.create("http://localhost:9998/job/1234"), authorization)).isEqualTo("Invalid MAC");
+    }
+
+    @Test
+    public void testVerify_TooOld() throws AuthenticationException {
+        String authorization = sign(credential, new HttpPost("http://localhost:9998/job"));
+        when(clock.time()).thenReturn(NOW + 301000);
+
+        assertThat(filter.verify("POST", URI.create("http://localhost:9998/job"), authorization))
+                .isEqualTo("MAC timestamp outside allowed clock skew");
+    }
+
+    @Test
+    public void testVerify_InvalidTimestamp() {
+        String authorization = "MAC id=\"someid\",ts=\"yesterday\",nonce=\"abc\",mac=\"xyz\"";
+
+        assertThat(filter.verify("POST", URI.create("http://localhost:9998/job"), authorization)).isEqualTo("Invalid MAC timestamp");
+    }
+
+    @Test
+    public void testVerify_Replayed() throws AuthenticationException {
+        String authorization = sign(credential, new HttpPost("http://localhost:9998/job"));
+        filter.verify("POST", URI.create("http://localhost:9998/job"), authorization);
+        when(clock.time()).thenReturn(NOW + 1000);
+
+        assertThat(filter.verify("POST", URI.create("http://localhost:9998/job"), authorization)).isEqualTo("Replayed MAC nonce");
+    }
+
+    @Test
+    public void testVerify_ReplayCacheFull_Rejected() throws AuthenticationException {
+        MacVerificationConfiguration configuration = new MacVerificationConfiguration(true, 300, 1);
+        configuration.setReplayCacheStripes(1);
+        filter = new MacVerificationFilter(configuration, ImmutableList.of(credential), clock);
+        filter.verify("POST", URI.create("http://localhost:9998/job"), sign(credential, new HttpPost("http://localhost:9998/job")));
+        String authorization = sign(credential, new HttpPost("http://localhost:9998/job"));
+
+        assertThat(filter.verify("POST", URI.create("http://localhost:9998/job"), authorization)).isEqualTo("MAC replay cache full");
+    }
+
+    @Test
+    public void testVerify_Forged_NonceNotRemembered() {
+        String authorization = "MAC id=\"someid\",ts=\"1386772108\",nonce=\"abc\",mac=\"xyz\"";
+
+        filter.verify("POST", URI.create("http://localhost:9998/job"), authorization);
+
+        assertThat(filter.getNonces().size()).isEqualTo(0);
+    }
+
+    @Test
+    public void testFilter_Get_NotVerified() {
+        ContainerRequest request = mock(ContainerRequest.class);
+        when(request.getMethod()).thenReturn("GET");
+
+        assertThat(filter.filter(request)).isSameAs(request);
+    }
+
+    @Test
+    public void testFilter_UnsignedPostStatuses_NotVerified() {
+        ContainerRequest request = mock(ContainerRequest.class);
+        when(request.getMethod()).thenReturn("POST");
+        when(request.getPath()).thenReturn("job/status");
+
+        assertThat(filter.filter(request)).isSameAs(request);
+    }
+
+    @Test
+    public void testFilter_ReplayCacheFull_ServiceUnavailable() throws AuthenticationException {
+        MacVerificationConfiguration configuration = new MacVerificationConfiguration(true, 300, 1);
+        configuration.setReplayCacheStripes(1);
+        filter = new MacVerificationFilter(configuration, ImmutableList.of(credential), clock);
+        filter.verify("POST", URI.create("http://localhost:9998/job"), sign(credential, new HttpPost("http://localhost:9998/job")));
+        ContainerRequest request = mock(ContainerRequest.class);
+        when(request.getMethod()).thenReturn("POST");
+        when(request.getPath()).thenReturn("job");
+        when(request.getRequestUri()).thenReturn(URI.create("http://localhost:9998/job"));
+        when(request.getHeaderValue(HttpHeaders.AUTHORIZATION)).thenReturn(sign(credential, new HttpPost("http://localhost:9998/job")));
+
+        try {
+            filter.filter(request);
+            fail();
+        } catch (WebApplicationException e) {
+            assertThat(e.getResponse().getStatus()).isEqualTo(503);
+            assertThat(e.getResponse().getMetadata().getFirst("Retry-After")).isEqualTo((Object) 1);
+        }
+    }
+
+    @Test
+    public void testFilter_SignedPost_Passed() throws AuthenticationException {
+        ContainerRequest request = mock(ContainerRequest.class);
+        when(request.getMethod()).thenReturn("POST");
+        when(request.getRequestUri()).thenReturn(URI.create("http://localhost:9998/job"));
+        when(request.getHeaderValue(HttpHeaders.AUTHORIZATION)).thenReturn(sign(credential, new HttpPost("http://localhost:9998/job")));
+
+        assertThat(filter.filter(request)).isSameAs(request);
+    }
+
+    @Test
+    public void testFilter_UnsignedDelete_Unauthorized() {
+        ContainerRequest request = mock(ContainerRequest.class);
+        when(request.getMethod()).thenReturn("DELETE");
+        when(request.getRequestUri()).thenReturn(URI.create("http://localhost:9998/job/1234"));
+
+        try {
+            filter.filter(request);
+            fail();
+        } catch (WebApplicationException e) {
+            assertThat(e.getResponse().getStatus()).isEqualTo(401);
+            assertThat(e.getResponse().getMetadata().getFirst(HttpHeaders.WWW_AUTHENTICATE)).isEqualTo((Object) "MAC");
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * #%L
+ * Osmium
+ * %%
+ * Copyright (C) 2013 Nederlands eScience Center
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package nl.esciencecenter.osmium.mac;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+public class NonceCacheTest {
+
+    @Test
+    public void testAdd_New_Added() {
+        NonceCache cache = new NonceCache(10, 2);
+
+        assertThat(cache.add("n1", 2000, 1000)).isEqualTo(NonceCache.Result.ADDED);
+        assertThat(cache.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void testAdd_Seen_Replayed() {
+        NonceCache cache = new NonceCache(10, 2);
+        cache.add("n1", 2000, 1000);
+
+        assertThat(cache.add("n1", 2500, 1500)).isEqualTo(NonceCache.Result.REPLAYED);
+    }
+
+    @Test
+    public void testAdd_SeenButExpired_Added() {
+        NonceCache cache = new NonceCache(10, 2);
+        cache.add("n1", 2000, 1000);
+
+        assertThat(cache.add("n1", 4000, 3000)).isEqualTo(NonceCache.Result.ADDED);
+    }
+
+    @Test
+    public void testAdd_FullWithExpired_ExpiredRemoved() {
+        NonceCache cache = new NonceCache(2, 1);
+        cache.add("n1", 2000, 1000);
+        cache.add("n2", 2000, 1000);
+
+        assertThat(cache.add("n3", 4000, 3000)).isEqualTo(NonceCache.Result.ADDED);
+
+        assertThat(cache.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void testAdd_ExpiredAtHead_RemovedWhileRoomLeft() {
+        NonceCache cache = new NonceCache(10, 1);
+        cache.add("n1", 2000, 1000);
+        cache.add("n2", 5000, 1000);
+
+        assertThat(cache.add("n3", 4000, 3000)).isEqualTo(NonceCache.Result.ADDED);
+
+        assertThat(cache.size()).isEqualTo(2);
+    }
+
+    @Test
+    public void testAdd_FullWithExpiredBehindUnexpired_RejectedUntilHeadExpired() {
+        NonceCache cache = new NonceCache(2, 1);
+        cache.add("n1", 5000, 1000);
+        cache.add("n2", 2000, 1000);
+
+        assertThat(cache.add("n3", 6000, 3000)).isEqualTo(NonceCache.Result.FULL);
+        assertThat(cache.add("n1", 5000, 3000)).isEqualTo(NonceCache.Result.REPLAYED);
+
+        assertThat(cache.add("n3", 8000, 5001)).isEqualTo(NonceCache.Result.ADDED);
+        assertThat(cache.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void testAdd_SeenButExpired_MovedBehindUnexpired() {
+        NonceCache cache = new NonceCache(2, 1);
+        cache.add("n1", 2000, 1000);
+        cache.add("n2", 6000, 1000);
+        cache.add("n1", 4000, 3000);
+
+        assertThat(cache.add("n3", 7000, 5000)).isEqualTo(NonceCache.Result.FULL);
+        assertThat(cache.add("n1", 4000, 3500)).isEqualTo(NonceCache.Result.REPLAYED);
+    }
+
+    @Test
+    public void testAdd_FullOfUnexpired_RejectedAndNothingEvicted() {
+        NonceCache cache = new NonceCache(2, 1);
+        cache.add("n1", 2000, 1000);
+        cache.add("n2", 2000, 1000);
+
+        assertThat(cache.add("n3", 2000, 1000)).isEqualTo(NonceCache.Result.FULL);
+
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(cache.add("n1", 2000, 1000)).isEqualTo(NonceCache.Result.REPLAYED);
+        assertThat(cache.add("n2", 2000, 1000)).isEqualTo(NonceCache.Result.REPLAYED);
+    }
+
+    @Test
+    public void testSize_Striped_BoundedByCapacity() {
+        NonceCache cache = new NonceCache(100, 4);
+
+        for (int i = 0; i < 1000; i++) {
+            cache.add("n" + i, 2000, 1000);
+        }
+
+        assertThat(cache.size()).isLessThanOrEqualTo(100);
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * #%L
+ * Osmium
+ * %%
+ * Copyright (C) 2013 Nederlands eScience Center
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package nl.esciencecenter.osmium.mac;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+public class NonceGeneratorTest {
+    @Test
+    public void testNonce_SameAsBigInteger() {
+        Random expectedRandom = new Random(42);
+        Random random = new Random(42);
+
+        for (int i = 0; i < 1000; i++) {
+            String expected = new BigInteger(130, expectedRandom).toString(32);
+            assertEquals(expected, NonceGenerator.nonce(random));
+        }
+    }
+
+    @Test
+    public void testNonce_ZeroBytes_Zero() {
+        assertEquals("0", NonceGenerator.nonce(mock(Random.class)));
+    }
+
+    @Test
+    public void testEncode_AllBitsSet() {
+        byte[] bytes = new byte[NonceGenerator.NONCE_BYTES];
+        Arrays.fill(bytes, (byte) 0xff);
+
+        String expected = BigInteger.ONE.shiftLeft(130).subtract(BigInteger.ONE).toString(32);
+        assertEquals(expected, NonceGenerator.encode(bytes, 0));
+    }
+
+    @Test
+    public void testEncode_Offset() {
+        byte[] bytes = new byte[NonceGenerator.NONCE_BYTES + 2];
+        bytes[NonceGenerator.NONCE_BYTES + 1] = 33;
+
+        assertEquals("11", NonceGenerator.encode(bytes, 2));
+    }
+
+    @Test
+    public void testNext_Buffered_Unique() {
+        NonceGenerator generator = new NonceGenerator(new Random(42));
+        Set<String> nonces = new HashSet<String>();
+
+        for (int i = 0; i < 1000; i++) {
+            nonces.add(generator.next());
+        }
+
+        assertThat(nonces).hasSize(1000);
+    }
+
+    @Test
+    public void testCurrent_PerThread() throws Exception {
+        final NonceGenerator main = NonceGenerator.current();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            NonceGenerator other = executor.submit(new Callable<NonceGenerator>() {
+                public NonceGenerator call() {
+                    return NonceGenerator.current();
+                }
+            }).get();
+
+            assertThat(other).isNotSameAs(main);
+            assertThat(NonceGenerator.current()).isSameAs(main);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testCurrent_ConcurrentThreads_Unique() throws Exception {
+        int threads = 4;
+        final int perThread = 1000;
+        final Set<String> nonces = Collections.synchronizedSet(new HashSet<String>());
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            Future<?>[] futures = new Future<?>[threads];
+            for (int t = 0; t < threads; t++) {
+                futures[t] = executor.submit(new Runnable() {
+                    public void run() {
+                        for (int i = 0; i < perThread; i++) {
+                            nonces.add(NonceGenerator.current().next());
+                        }
+                    }
+                });
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertThat(nonces).hasSize(threads * perThread);
+    }
+}
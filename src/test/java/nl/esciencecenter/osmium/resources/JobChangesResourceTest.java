@@ -0,0 +1,120 @@
+/*
+ * #%L
+ * Osmium
+ * %%
+ * Copyright (C) 2013 Nederlands eScience Center
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package nl.esciencecenter.osmium.resources;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+
+import nl.esciencecenter.osmium.api.JobSubmitRequest;
+import nl.esciencecenter.osmium.api.SandboxedJob;
+import nl.esciencecenter.osmium.job.ChangeFeed;
+import nl.esciencecenter.osmium.job.XenonManager;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class JobChangesResourceTest {
+    private ChangeFeed feed;
+    private JobChangesResource resource;
+
+    @Before
+    public void setUp() {
+        feed = new ChangeFeed(2);
+        XenonManager manager = mock(XenonManager.class);
+        when(manager.getChangeFeed()).thenReturn(feed);
+        resource = new JobChangesResource(manager);
+    }
+
+    private String entity(Response response) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ((StreamingOutput) response.getEntity()).write(output);
+        return output.toString("UTF-8");
+    }
+
+    @Test
+    public void testGetChanges() throws IOException {
+        SandboxedJob job = new SandboxedJob("1234", new JobSubmitRequest(), null);
+        feed.jobChanged(job);
+        feed.jobDeleted(job);
+
+        Response response = resource.getChanges(null, 1000);
+
+        String expected = "{\"resync\":false,\"next\":\"" + feed.getEpoch() + "-2\",\"more\":false,\"changes\":["
+                + "{\"sequence\":1,\"jobIdentifier\":\"1234\",\"deleted\":false,\"status\":{\"state\":\"STAGING\","
+                + "\"exitCode\":null,\"running\":false,\"done\":false,\"schedulerSpecficInformation\":null,"
+                + "\"exception\":null}},"
+                + "{\"sequence\":2,\"jobIdentifier\":\"1234\",\"deleted\":true,\"status\":null}]}";
+        assertThat(entity(response)).isEqualTo(expected);
+    }
+
+    @Test
+    public void testGetChanges_FellOffBuffer_Resync() throws IOException {
+        SandboxedJob job = new SandboxedJob("1234", new JobSubmitRequest(), null);
+        for (int i = 0; i < 4; i++) {
+            feed.jobChanged(job);
+        }
+
+        Response response = resource.getChanges(feed.getEpoch() + "-1", 1000);
+
+        String expected = "{\"resync\":true,\"next\":\"" + feed.getEpoch() + "-4\",\"more\":false,\"changes\":[]}";
+        assertThat(entity(response)).isEqualTo(expected);
+    }
+
+    @Test
+    public void testGetChanges_CursorOfPreviousInstance_Resync() throws IOException {
+        SandboxedJob job = new SandboxedJob("1234", new JobSubmitRequest(), null);
+        feed.jobChanged(job);
+        feed.jobChanged(job);
+
+        Response response = resource.getChanges("previous-1", 1000);
+
+        String expected = "{\"resync\":true,\"next\":\"" + feed.getEpoch() + "-2\",\"more\":false,\"changes\":[]}";
+        assertThat(entity(response)).isEqualTo(expected);
+    }
+
+    @Test
+    public void testGetChanges_MalformedSince_BadRequest() {
+        try {
+            resource.getChanges(feed.getEpoch() + "-x", 1000);
+            fail("WebApplicationException not thrown");
+        } catch (WebApplicationException e) {
+            assertThat(e.getResponse().getStatus()).isEqualTo(400);
+        }
+    }
+
+    @Test
+    public void testGetChanges_ZeroLimit_BadRequest() {
+        try {
+            resource.getChanges(null, 0);
+            fail("WebApplicationException not thrown");
+        } catch (WebApplicationException e) {
+            assertThat(e.getResponse().getStatus()).isEqualTo(400);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * #%L
+ * Osmium
+ * %%
+ * Copyright (C) 2013 Nederlands eScience Center
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package nl.esciencecenter.osmium.resources;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response;
+
+import nl.esciencecenter.osmium.api.JobSubmitRequest;
+import nl.esciencecenter.osmium.api.SandboxedJob;
+import nl.esciencecenter.osmium.job.JobWatcher;
+import nl.esciencecenter.osmium.job.JobWatcher.Subscription;
+import nl.esciencecenter.osmium.job.WatchConfiguration;
+import nl.esciencecenter.osmium.job.XenonManager;
+
+import org.junit.Test;
+
+public class JobEventsResourceTest {
+
+    /**
+     * Behaves like a client which disconnects after receiving its first event.
+     */
+    private static class DisconnectingOutputStream extends ByteArrayOutputStream {
+        @Override
+        public void flush() throws IOException {
+            if (toString("UTF-8").contains("data: ")) {
+                throw new IOException("Client disconnected");
+            }
+        }
+    }
+
+    @Test
+    public void testGetEvents_JobChanged_EventWritten() throws IOException {
+        XenonManager manager = mock(XenonManager.class);
+        JobWatcher watcher = new JobWatcher(new WatchConfiguration(1, 1000, 1));
+        when(manager.getWatcher()).thenReturn(watcher);
+        JobEventsResource resource = new JobEventsResource(manager);
+
+        Response response = resource.getEvents();
+        watcher.jobChanged(new SandboxedJob("1234", new JobSubmitRequest(), null));
+        JobEventsResource.EventsOutput entity = (JobEventsResource.EventsOutput) response.getEntity();
+        DisconnectingOutputStream output = new DisconnectingOutputStream();
+        try {
+            entity.write(output);
+            fail("IOException not thrown");
+        } catch (IOException e) {
+            // client disconnected after first event
+        }
+
+        String expected = ":\n\nevent: status\ndata: {\"jobIdentifier\":\"1234\",\"status\":{\"state\":\"STAGING\","
+                + "\"exitCode\":null,\"running\":false,\"done\":false,\"schedulerSpecficInformation\":null,"
+                + "\"exception\":null}}\n\n";
+        assertThat(output.toString("UTF-8")).isEqualTo(expected);
+        assertThat(response.getMetadata().getFirst("Cache-Control")).isEqualTo("no-cache");
+        // stream released by disconnect
+        assertThat(watcher.subscribe()).isNotNull();
+    }
+
+    @Test
+    public void testGetEvents_Closed_StreamEnds() throws IOException {
+        JobWatcher watcher = new JobWatcher(new WatchConfiguration(1, 1000, 1));
+        Subscription subscription = watcher.subscribe();
+        subscription.close();
+        JobEventsResource.EventsOutput entity = new JobEventsResource.EventsOutput(subscription, 1000);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        entity.write(output);
+
+        assertThat(output.toString("UTF-8")).isEqualTo(":\n\n");
+    }
+
+    @Test
+    public void testGetEvents_MaxStreams_ServiceUnavailable() {
+        XenonManager manager = mock(XenonManager.class);
+        JobWatcher watcher = new JobWatcher(new WatchConfiguration(1, 1000, 0));
+        when(manager.getWatcher()).thenReturn(watcher);
+        JobEventsResource resource = new JobEventsResource(manager);
+
+        try {
+            resource.getEvents();
+            fail("WebApplicationException not thrown");
+        } catch (WebApplicationException e) {
+            assertThat(e.getResponse().getStatus()).isEqualTo(503);
+            assertThat(e.getResponse().getMetadata().getFirst("Retry-After")).isEqualTo(1);
+        }
+    }
+}
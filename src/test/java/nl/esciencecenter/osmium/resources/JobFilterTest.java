@@ -0,0 +1,138 @@
+/*
+ * #%L
+ * Osmium
+ * %%
+ * Copyright (C) 2013 Nederlands eScience Center
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package nl.esciencecenter.osmium.resources;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import nl.esciencecenter.osmium.api.SandboxedJob;
+import nl.esciencecenter.xenon.engine.jobs.JobStatusImplementation;
+import nl.esciencecenter.xenon.jobs.JobStatus;
+
+import org.junit.Test;
+
+public class JobFilterTest {
+
+    private static SandboxedJob sampleJob(String state, Integer exitCode, Exception exception, boolean done) {
+        JobStatus status = new JobStatusImplementation(null, state, exitCode, exception, !done, done, null);
+        return new SandboxedJob("1234", null, null, null, null, status);
+    }
+
+    @Test
+    public void parse_Null_Null() {
+        assertThat(JobFilter.State.parse(null)).isNull();
+    }
+
+    @Test
+    public void parse_LowerCase_State() {
+        assertThat(JobFilter.State.parse("active")).isEqualTo(JobFilter.State.ACTIVE);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parse_Unknown_Exception() {
+        JobFilter.State.parse("sleeping");
+    }
+
+    @Test
+    public void apply_NoConstraints_True() {
+        JobFilter filter = new JobFilter(null, null, null);
+
+        assertThat(filter.apply(sampleJob("RUNNING", null, null, false))).isTrue();
+    }
+
+    @Test
+    public void apply_ActiveAndRunningJob_True() {
+        JobFilter filter = new JobFilter(JobFilter.State.ACTIVE, null, null);
+
+        assertThat(filter.apply(sampleJob("RUNNING", null, null, false))).isTrue();
+    }
+
+    @Test
+    public void apply_ActiveAndStagingJob_True() {
+        JobFilter filter = new JobFilter(JobFilter.State.ACTIVE, null, null);
+
+        assertThat(filter.apply(new SandboxedJob("abcd", null, null))).isTrue();
+    }
+
+    @Test
+    public void apply_ActiveAndDoneJob_False() {
+        JobFilter filter = new JobFilter(JobFilter.State.ACTIVE, null, null);
+
+        assertThat(filter.apply(sampleJob("DONE", 0, null, true))).isFalse();
+    }
+
+    @Test
+    public void apply_DoneAndSucceededJob_True() {
+        JobFilter filter = new JobFilter(JobFilter.State.DONE, null, null);
+
+        assertThat(filter.apply(sampleJob("DONE", 0, null, true))).isTrue();
+    }
+
+    @Test
+    public void apply_DoneAndNonZeroExitCode_False() {
+        JobFilter filter = new JobFilter(JobFilter.State.DONE, null, null);
+
+        assertThat(filter.apply(sampleJob("DONE", 1, null, true))).isFalse();
+    }
+
+    @Test
+    public void apply_FailedAndNonZeroExitCode_True() {
+        JobFilter filter = new JobFilter(JobFilter.State.FAILED, null, null);
+
+        assertThat(filter.apply(sampleJob("DONE", 1, null, true))).isTrue();
+    }
+
+    @Test
+    public void apply_FailedAndKilledJob_True() {
+        JobFilter filter = new JobFilter(JobFilter.State.FAILED, null, null);
+
+        assertThat(filter.apply(sampleJob("KILLED", null, new Exception("Process cancelled by user."), true))).isTrue();
+    }
+
+    @Test
+    public void apply_SubmittedAfterCreation_False() {
+        SandboxedJob job = sampleJob("RUNNING", null, null, false);
+        JobFilter filter = new JobFilter(null, job.getCreatedAt(), null);
+
+        assertThat(filter.apply(job)).isFalse();
+    }
+
+    @Test
+    public void apply_SubmittedBeforeCreation_True() {
+        SandboxedJob job = sampleJob("RUNNING", null, null, false);
+        JobFilter filter = new JobFilter(null, job.getCreatedAt() - 1, job.getCreatedAt() + 1);
+
+        assertThat(filter.apply(job)).isTrue();
+    }
+
+    @Test
+    public void apply_SubmittedBeforeUpperBound_False() {
+        SandboxedJob job = sampleJob("RUNNING", null, null, false);
+        JobFilter filter = new JobFilter(null, null, job.getCreatedAt());
+
+        assertThat(filter.apply(job)).isFalse();
+    }
+
+    @Test
+    public void testToString() {
+        JobFilter filter = new JobFilter(JobFilter.State.DONE, 1L, 2L);
+
+        assertThat(filter.toString()).isEqualTo("JobFilter{DONE, 1, 2}");
+    }
+}
@@ -19,6 +19,7 @@
  */
 package nl.esciencecenter.osmium.resources;
 
+import static com.yammer.dropwizard.testing.JsonHelpers.asJson;
 import static org.fest.assertions.api.Assertions.assertThat;
 import static org.junit.Assert.fail;
 import static org.mockito.Mockito.doThrow;
@@ -26,14 +27,25 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.concurrent.RejectedExecutionException;
 
 import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.CacheControl;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
 
 import nl.esciencecenter.xenon.XenonException;
+import nl.esciencecenter.xenon.engine.jobs.JobStatusImplementation;
 import nl.esciencecenter.xenon.jobs.NoSuchJobException;
+import nl.esciencecenter.osmium.api.JobListener;
+import nl.esciencecenter.osmium.api.JobSubmitRequest;
 import nl.esciencecenter.osmium.api.SandboxedJob;
+import nl.esciencecenter.osmium.job.ChangeFeed;
+import nl.esciencecenter.osmium.job.JobWatcher;
 import nl.esciencecenter.osmium.job.XenonManager;
 import nl.esciencecenter.osmium.resources.JobResource;
 
@@ -71,6 +83,170 @@ public class JobResourceTest {
         }
     }
 
+    @Test
+    public void testGetJob_WaitForDone_WaitedUntilFinished() throws Exception {
+        XenonManager manager = mock(XenonManager.class);
+        SandboxedJob job = mock(SandboxedJob.class);
+        when(manager.getJob("1234")).thenReturn(job);
+        JobWatcher watcher = mock(JobWatcher.class);
+        when(manager.getWatcher()).thenReturn(watcher);
+        JobResource resource = new JobResource(manager);
+
+        Response response = resource.getJob("1234", "done", 5000L, null);
+
+        assertThat(((JobResource.JobOutput) response.getEntity()).getJob()).isEqualTo(job);
+        verify(watcher).awaitFinished(job, 5000L);
+    }
+
+    @Test
+    public void testGetJob_WaitForDoneWithoutTimeout_WaitedForMaximum() throws Exception {
+        XenonManager manager = mock(XenonManager.class);
+        SandboxedJob job = mock(SandboxedJob.class);
+        when(manager.getJob("1234")).thenReturn(job);
+        JobWatcher watcher = mock(JobWatcher.class);
+        when(manager.getWatcher()).thenReturn(watcher);
+        JobResource resource = new JobResource(manager);
+
+        resource.getJob("1234", "done", null, null);
+
+        verify(watcher).awaitFinished(job, Long.MAX_VALUE);
+    }
+
+    @Test
+    public void testGetJob_WaitForDoneMaxWaitersReached_ServiceUnavailable() throws Exception {
+        XenonManager manager = mock(XenonManager.class);
+        SandboxedJob job = mock(SandboxedJob.class);
+        when(manager.getJob("1234")).thenReturn(job);
+        JobWatcher watcher = mock(JobWatcher.class);
+        when(watcher.awaitFinished(job, 5000L)).thenThrow(new RejectedExecutionException());
+        when(manager.getWatcher()).thenReturn(watcher);
+        JobResource resource = new JobResource(manager);
+
+        try {
+            resource.getJob("1234", "done", 5000L, null);
+            fail("WebApplicationException not thrown");
+        } catch (WebApplicationException e) {
+            assertThat(e.getResponse().getStatus()).isEqualTo(Status.SERVICE_UNAVAILABLE.getStatusCode());
+            assertThat(e.getResponse().getMetadata().getFirst("Retry-After")).isEqualTo(1);
+        }
+    }
+
+    @Test
+    public void testGetJob_WaitForUnknown_BadRequest() throws XenonException {
+        XenonManager manager = mock(XenonManager.class);
+        JobResource resource = new JobResource(manager);
+
+        try {
+            resource.getJob("1234", "running", null, null);
+            fail("WebApplicationException not thrown");
+        } catch (WebApplicationException e) {
+            assertThat(e.getResponse().getStatus()).isEqualTo(Status.BAD_REQUEST.getStatusCode());
+        }
+    }
+
+    @Test
+    public void testGetJob_NegativeTimeout_BadRequest() throws XenonException {
+        XenonManager manager = mock(XenonManager.class);
+        JobResource resource = new JobResource(manager);
+
+        try {
+            resource.getJob("1234", "done", -1L, null);
+            fail("WebApplicationException not thrown");
+        } catch (WebApplicationException e) {
+            assertThat(e.getResponse().getStatus()).isEqualTo(Status.BAD_REQUEST.getStatusCode());
+        }
+    }
+
+    @Test
+    public void testGetJob_ChangedJob_ETagAndCacheControl() throws XenonException {
+        XenonManager manager = mock(XenonManager.class);
+        SandboxedJob job = new SandboxedJob("1234", new JobSubmitRequest(), null);
+        job.setSequence(42);
+        when(manager.getJob("1234")).thenReturn(job);
+        when(manager.getPollInterval()).thenReturn(30000L);
+        JobResource resource = new JobResource(manager);
+
+        Response response = resource.getJob("1234", null, null, null);
+
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(((JobResource.JobOutput) response.getEntity()).getJob()).isEqualTo(job);
+        EntityTag tag = (EntityTag) response.getMetadata().getFirst("ETag");
+        assertThat(tag.getValue()).endsWith("-16");
+        CacheControl cacheControl = (CacheControl) response.getMetadata().getFirst("Cache-Control");
+        assertThat(cacheControl.getMaxAge()).isEqualTo(30);
+    }
+
+    @Test
+    public void testGetJob_KnownJob_JobWritten() throws XenonException, IOException {
+        XenonManager manager = mock(XenonManager.class);
+        SandboxedJob job = new SandboxedJob("1234", new JobSubmitRequest(), null);
+        when(manager.getJob("1234")).thenReturn(job);
+        JobResource resource = new JobResource(manager);
+        Response response = resource.getJob("1234", null, null, null);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        ((JobResource.JobOutput) response.getEntity()).write(output);
+
+        assertThat(output.toString("UTF-8")).isEqualTo(asJson(job));
+    }
+
+    @Test
+    public void testGetJob_IfNoneMatchCurrentETag_NotModified() throws XenonException {
+        XenonManager manager = mock(XenonManager.class);
+        SandboxedJob job = new SandboxedJob("1234", new JobSubmitRequest(), null);
+        job.setSequence(42);
+        when(manager.getJob("1234")).thenReturn(job);
+        EntityTag tag = JobResource.getEntityTag(job);
+        Request request = mock(Request.class);
+        when(request.evaluatePreconditions(tag)).thenReturn(Response.notModified());
+        JobResource resource = new JobResource(manager);
+
+        Response response = resource.getJob("1234", null, null, request);
+
+        assertThat(response.getStatus()).isEqualTo(304);
+        assertThat(response.getEntity()).isNull();
+        assertThat(response.getMetadata().getFirst("ETag")).isEqualTo(tag);
+    }
+
+    @Test
+    public void testGetEntityTag_JobChanged_TagChanged() {
+        SandboxedJob job = new SandboxedJob("1234", new JobSubmitRequest(), null);
+        job.setSequence(1);
+        EntityTag before = JobResource.getEntityTag(job);
+
+        job.setSequence(2);
+
+        assertThat(JobResource.getEntityTag(job)).isNotEqualTo(before);
+    }
+
+    @Test
+    public void testGetEntityTag_JobCompacted_TagChanged() throws IOException {
+        SandboxedJob job = new SandboxedJob("1234", new JobSubmitRequest(), null);
+        final ChangeFeed feed = new ChangeFeed(10);
+        job.setListener(new JobListener() {
+            public void jobChanged(SandboxedJob job) {
+                feed.jobChanged(job);
+            }
+
+            public void jobDeleted(SandboxedJob job) {
+                feed.jobDeleted(job);
+            }
+        });
+        job.abortStaging(new JobStatusImplementation(null, "KILLED", null, null, false, true, null));
+        EntityTag before = JobResource.getEntityTag(job);
+
+        job.compact();
+
+        assertThat(JobResource.getEntityTag(job)).isNotEqualTo(before);
+    }
+
+    @Test
+    public void testGetEntityTag_Unnumbered_Null() {
+        SandboxedJob job = new SandboxedJob("1234", new JobSubmitRequest(), null);
+
+        assertThat(JobResource.getEntityTag(job)).isNull();
+    }
+
     @Test
     public void cancelJob_KnownJob_JobCanceled() throws XenonException, IOException {
         String request = "1234";
@@ -0,0 +1,147 @@
+/*
+ * #%L
+ * Osmium
+ * %%
+ * Copyright (C) 2013 Nederlands eScience Center
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package nl.esciencecenter.osmium.resources;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.StreamingOutput;
+
+import nl.esciencecenter.osmium.api.JobStatusResponse;
+import nl.esciencecenter.osmium.api.JobSubmitRequest;
+import nl.esciencecenter.osmium.api.SandboxedJob;
+import nl.esciencecenter.osmium.job.XenonManager;
+import nl.esciencecenter.xenon.jobs.NoSuchJobException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class JobStatusesResourceTest {
+    private JobStatusesResource resource;
+
+    @Before
+    public void setUp() throws NoSuchJobException {
+        XenonManager manager = mock(XenonManager.class);
+        when(manager.getJob("1234")).thenReturn(new SandboxedJob("1234", new JobSubmitRequest(), null));
+        doThrow(new NoSuchJobException("", "Job not found")).when(manager).getJob("5678");
+        resource = new JobStatusesResource(manager);
+    }
+
+    private String entity(Response response) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ((StreamingOutput) response.getEntity()).write(output);
+        return output.toString("UTF-8");
+    }
+
+    @Test
+    public void testGetStatuses_AllFields() throws IOException {
+        Response response = resource.getStatuses(Arrays.asList("1234"), null);
+
+        String expected = "{\"statuses\":{\"1234\":{\"state\":\"STAGING\",\"exitCode\":null,\"running\":false,"
+                + "\"done\":false,\"schedulerSpecficInformation\":null,\"exception\":null}},\"missing\":[]}";
+        assertThat(entity(response)).isEqualTo(expected);
+    }
+
+    @Test
+    public void testGetStatuses_MissingJob_Reported() throws IOException {
+        Response response = resource.getStatuses(Arrays.asList("5678", "1234"), "state");
+
+        String expected = "{\"statuses\":{\"1234\":{\"state\":\"STAGING\"}},\"missing\":[\"5678\"]}";
+        assertThat(entity(response)).isEqualTo(expected);
+    }
+
+    @Test
+    public void testGetStatuses_SelectedFields() throws IOException {
+        Response response = resource.getStatuses(Arrays.asList("1234"), "state, exitCode");
+
+        String expected = "{\"statuses\":{\"1234\":{\"state\":\"STAGING\",\"exitCode\":null}},\"missing\":[]}";
+        assertThat(entity(response)).isEqualTo(expected);
+    }
+
+    @Test
+    public void testGetStatuses_DuplicateIdentifiers_ReportedOnce() throws IOException {
+        Response response = resource.getStatuses(Arrays.asList("1234", "1234", "5678", "5678"), "state");
+
+        String expected = "{\"statuses\":{\"1234\":{\"state\":\"STAGING\"}},\"missing\":[\"5678\"]}";
+        assertThat(entity(response)).isEqualTo(expected);
+    }
+
+    @Test
+    public void testGetStatuses_NoIdentifiers_Empty() throws IOException {
+        Response response = resource.getStatuses(Arrays.<String> asList(), null);
+
+        assertThat(entity(response)).isEqualTo("{\"statuses\":{},\"missing\":[]}");
+    }
+
+    @Test
+    public void testGetStatuses_NoBody_BadRequest() {
+        try {
+            resource.getStatuses(null, null);
+            fail("WebApplicationException not thrown");
+        } catch (WebApplicationException e) {
+            assertThat(e.getResponse().getStatus()).isEqualTo(Status.BAD_REQUEST.getStatusCode());
+        }
+    }
+
+    @Test
+    public void testGetStatuses_NullIdentifier_BadRequest() {
+        try {
+            resource.getStatuses(Arrays.asList("1234", null), null);
+            fail("WebApplicationException not thrown");
+        } catch (WebApplicationException e) {
+            assertThat(e.getResponse().getStatus()).isEqualTo(Status.BAD_REQUEST.getStatusCode());
+        }
+    }
+
+    @Test
+    public void testParseFields_Null_AllFields() {
+        assertThat(JobStatusesResource.parseFields(null)).isEqualTo(JobStatusResponse.FIELDS);
+    }
+
+    @Test
+    public void testParseFields_UnknownField_BadRequest() {
+        try {
+            JobStatusesResource.parseFields("state,foo");
+            fail("WebApplicationException not thrown");
+        } catch (WebApplicationException e) {
+            assertThat(e.getResponse().getStatus()).isEqualTo(Status.BAD_REQUEST.getStatusCode());
+        }
+    }
+
+    @Test
+    public void testParseFields_Empty_BadRequest() {
+        try {
+            JobStatusesResource.parseFields(",");
+            fail("WebApplicationException not thrown");
+        } catch (WebApplicationException e) {
+            assertThat(e.getResponse().getStatus()).isEqualTo(Status.BAD_REQUEST.getStatusCode());
+        }
+    }
+}
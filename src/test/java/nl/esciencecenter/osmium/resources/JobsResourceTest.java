@@ -22,22 +22,31 @@ package nl.esciencecenter.osmium.resources;
 import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.net.URI;
-import java.net.URISyntaxException;
 import java.util.Collection;
 import java.util.LinkedList;
+import java.util.concurrent.RejectedExecutionException;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 import javax.ws.rs.core.UriBuilder;
 import javax.ws.rs.core.UriInfo;
 
 import nl.esciencecenter.osmium.api.JobSubmitRequest;
 import nl.esciencecenter.osmium.api.SandboxedJob;
+import nl.esciencecenter.osmium.job.AdmissionException;
 import nl.esciencecenter.osmium.job.XenonManager;
 import nl.esciencecenter.osmium.resources.JobsResource;
+import nl.esciencecenter.xenon.engine.jobs.JobStatusImplementation;
+import nl.esciencecenter.xenon.jobs.JobStatus;
 
 import org.apache.http.client.HttpClient;
 import org.apache.http.impl.client.DefaultHttpClient;
@@ -52,7 +61,7 @@ public class JobsResourceTest {
         SandboxedJob job = mock(SandboxedJob.class);
         when(job.getIdentifier()).thenReturn("1234");
         HttpClient httpClient = new DefaultHttpClient();
-        when(manager.submitJob(request, httpClient)).thenReturn(job);
+        when(manager.submitJob(request, httpClient, null)).thenReturn(job);
         UriInfo uriInfo = mock(UriInfo.class);
         UriBuilder builder = UriBuilder.fromUri("http://localhost/job/");
         when(uriInfo.getAbsolutePathBuilder()).thenReturn(builder);
@@ -66,28 +75,28 @@ public class JobsResourceTest {
     }
 
     @Test
-    public void getJobs() throws URISyntaxException {
+    public void getJobs() throws IOException {
         // mock manager so it returns a list of jobs
         XenonManager manager = mock(XenonManager.class);
         SandboxedJob job = mock(SandboxedJob.class);
         when(job.getIdentifier()).thenReturn("1234");
         Collection<SandboxedJob> jobs = new LinkedList<SandboxedJob>();
         jobs.add(job);
-        when(manager.getJobs()).thenReturn(jobs);
+        when(manager.getJobsAfter(null)).thenReturn(jobs);
         HttpClient httpClient = new DefaultHttpClient();
         UriInfo uriInfo = mock(UriInfo.class);
         UriBuilder builder = UriBuilder.fromUri("http://localhost/job/");
         when(uriInfo.getAbsolutePathBuilder()).thenReturn(builder);
         JobsResource resource = new JobsResource(manager, httpClient, uriInfo);
 
-        URI[] response = resource.getJobs();
+        Response response = resource.getJobs(null, null, null, null, null, false);
 
-        URI[] expected = { new URI("http://localhost/job/1234") };
-        assertThat(response, is(expected));
+        assertEquals(200, response.getStatus());
+        assertEquals("[\"http://localhost/job/1234\"]", entityAsString(response));
     }
 
     @Test
-    public void getJobs_2Jobs() throws URISyntaxException {
+    public void getJobs_2Jobs() throws IOException {
         // mock manager so it returns a list of jobs
         XenonManager manager = mock(XenonManager.class);
         Collection<SandboxedJob> jobs = new LinkedList<SandboxedJob>();
@@ -97,19 +106,226 @@ public class JobsResourceTest {
         SandboxedJob job2 = mock(SandboxedJob.class);
         when(job2.getIdentifier()).thenReturn("4567");
         jobs.add(job2);
-        when(manager.getJobs()).thenReturn(jobs);
+        when(manager.getJobsAfter(null)).thenReturn(jobs);
         HttpClient httpClient = new DefaultHttpClient();
         UriInfo uriInfo = mock(UriInfo.class);
         UriBuilder builder = UriBuilder.fromUri("http://localhost/job/");
         when(uriInfo.getAbsolutePathBuilder()).thenReturn(builder);
         JobsResource resource = new JobsResource(manager, httpClient, uriInfo);
 
-        URI[] response = resource.getJobs();
+        Response response = resource.getJobs(null, null, null, null, null, false);
 
-        URI[] expected =
-                { new URI("http://localhost/job/1234"),
-                        new URI("http://localhost/job/4567") };
-        assertThat(response, is(expected));
+        String expected = "[\"http://localhost/job/1234\",\"http://localhost/job/4567\"]";
+        assertEquals(expected, entityAsString(response));
     }
 
+    @Test
+    public void testSubmitJob_Async_Accepted() throws Exception {
+        JobSubmitRequest request = mock(JobSubmitRequest.class);
+        XenonManager manager = mock(XenonManager.class);
+        when(manager.isAsyncSubmit()).thenReturn(true);
+        SandboxedJob job = mock(SandboxedJob.class);
+        when(job.getIdentifier()).thenReturn("abcd");
+        HttpClient httpClient = new DefaultHttpClient();
+        when(manager.submitJobAsync(request, httpClient, null)).thenReturn(job);
+        UriInfo uriInfo = mock(UriInfo.class);
+        UriBuilder builder = UriBuilder.fromUri("http://localhost/job/");
+        when(uriInfo.getAbsolutePathBuilder()).thenReturn(builder);
+        JobsResource resource = new JobsResource(manager, httpClient, uriInfo);
+
+        Response response = resource.submitJob(request);
+
+        assertEquals(202, response.getStatus());
+        URI expected = new URI("http://localhost/job/abcd");
+        assertEquals(expected, response.getMetadata().getFirst("Location"));
+    }
+
+    @Test
+    public void testSubmitJob_AsyncQueueFull_ServiceUnavailable() throws Exception {
+        JobSubmitRequest request = mock(JobSubmitRequest.class);
+        XenonManager manager = mock(XenonManager.class);
+        when(manager.isAsyncSubmit()).thenReturn(true);
+        HttpClient httpClient = new DefaultHttpClient();
+        when(manager.submitJobAsync(request, httpClient, null)).thenThrow(new RejectedExecutionException());
+        UriInfo uriInfo = mock(UriInfo.class);
+        when(uriInfo.getAbsolutePathBuilder()).thenReturn(UriBuilder.fromUri("http://localhost/job/"));
+        JobsResource resource = new JobsResource(manager, httpClient, uriInfo);
+
+        try {
+            resource.submitJob(request);
+            fail("WebApplicationException not thrown");
+        } catch (WebApplicationException e) {
+            assertEquals(503, e.getResponse().getStatus());
+        }
+    }
+
+    @Test
+    public void testSubmitJob_UnknownScheduler_BadRequest() throws Exception {
+        JobSubmitRequest request = mock(JobSubmitRequest.class);
+        XenonManager manager = mock(XenonManager.class);
+        HttpClient httpClient = new DefaultHttpClient();
+        when(manager.submitJob(request, httpClient, null)).thenThrow(new IllegalArgumentException("Unknown scheduler: foo"));
+        UriInfo uriInfo = mock(UriInfo.class);
+        when(uriInfo.getAbsolutePathBuilder()).thenReturn(UriBuilder.fromUri("http://localhost/job/"));
+        JobsResource resource = new JobsResource(manager, httpClient, uriInfo);
+
+        try {
+            resource.submitJob(request);
+            fail("WebApplicationException not thrown");
+        } catch (WebApplicationException e) {
+            assertEquals(400, e.getResponse().getStatus());
+        }
+    }
+
+    @Test
+    public void testSubmitJob_ClientRateLimited_TooManyRequests() throws Exception {
+        JobSubmitRequest request = mock(JobSubmitRequest.class);
+        XenonManager manager = mock(XenonManager.class);
+        HttpClient httpClient = new DefaultHttpClient();
+        when(manager.submitJob(request, httpClient, "10.0.0.1")).thenThrow(
+                new AdmissionException("Submission rate limit of client reached", 3));
+        UriInfo uriInfo = mock(UriInfo.class);
+        when(uriInfo.getAbsolutePathBuilder()).thenReturn(UriBuilder.fromUri("http://localhost/job/"));
+        JobsResource resource = new JobsResource(manager, httpClient, uriInfo);
+        resource.servletRequest = mock(HttpServletRequest.class);
+        when(resource.servletRequest.getRemoteAddr()).thenReturn("10.0.0.1");
+
+        try {
+            resource.submitJob(request);
+            fail("WebApplicationException not thrown");
+        } catch (WebApplicationException e) {
+            assertEquals(429, e.getResponse().getStatus());
+            assertEquals(3L, e.getResponse().getMetadata().getFirst("Retry-After"));
+        }
+    }
+
+    @Test
+    public void testSubmitJob_AsyncActiveJobsLimitReached_TooManyRequests() throws Exception {
+        JobSubmitRequest request = mock(JobSubmitRequest.class);
+        XenonManager manager = mock(XenonManager.class);
+        when(manager.isAsyncSubmit()).thenReturn(true);
+        HttpClient httpClient = new DefaultHttpClient();
+        when(manager.submitJobAsync(request, httpClient, null)).thenThrow(
+                new AdmissionException("Maximum number of active jobs reached", 60));
+        UriInfo uriInfo = mock(UriInfo.class);
+        when(uriInfo.getAbsolutePathBuilder()).thenReturn(UriBuilder.fromUri("http://localhost/job/"));
+        JobsResource resource = new JobsResource(manager, httpClient, uriInfo);
+
+        try {
+            resource.submitJob(request);
+            fail("WebApplicationException not thrown");
+        } catch (WebApplicationException e) {
+            assertEquals(429, e.getResponse().getStatus());
+            assertEquals(60L, e.getResponse().getMetadata().getFirst("Retry-After"));
+        }
+    }
+
+    @Test
+    public void getJobs_LimitReached_NextLink() throws IOException {
+        XenonManager manager = mock(XenonManager.class);
+        Collection<SandboxedJob> jobs = new LinkedList<SandboxedJob>();
+        jobs.add(sampleJob("1234", "RUNNING", null, null, false));
+        jobs.add(sampleJob("4567", "RUNNING", null, null, false));
+        when(manager.getJobsAfter(null)).thenReturn(jobs);
+        UriInfo uriInfo = mock(UriInfo.class);
+        when(uriInfo.getAbsolutePathBuilder()).thenReturn(UriBuilder.fromUri("http://localhost/job/"));
+        when(uriInfo.getRequestUriBuilder()).thenReturn(UriBuilder.fromUri("http://localhost/job/?limit=1"));
+        JobsResource resource = new JobsResource(manager, new DefaultHttpClient(), uriInfo);
+
+        Response response = resource.getJobs(null, null, null, null, 1, false);
+
+        assertEquals("[\"http://localhost/job/1234\"]", entityAsString(response));
+        assertEquals("<http://localhost/job/?cursor=1234&limit=1>; rel=\"next\"", response.getMetadata().getFirst("Link"));
+    }
+
+    @Test
+    public void getJobs_LimitNotReached_NoNextLink() throws IOException {
+        XenonManager manager = mock(XenonManager.class);
+        Collection<SandboxedJob> jobs = new LinkedList<SandboxedJob>();
+        jobs.add(sampleJob("4567", "RUNNING", null, null, false));
+        when(manager.getJobsAfter("1234")).thenReturn(jobs);
+        UriInfo uriInfo = mock(UriInfo.class);
+        when(uriInfo.getAbsolutePathBuilder()).thenReturn(UriBuilder.fromUri("http://localhost/job/"));
+        JobsResource resource = new JobsResource(manager, new DefaultHttpClient(), uriInfo);
+
+        Response response = resource.getJobs(null, null, null, "1234", 10, false);
+
+        assertEquals("[\"http://localhost/job/4567\"]", entityAsString(response));
+        assertThat(response.getMetadata().containsKey("Link"), is(false));
+    }
+
+    @Test
+    public void getJobs_FailedState_OnlyFailedJobs() throws IOException {
+        XenonManager manager = mock(XenonManager.class);
+        Collection<SandboxedJob> jobs = new LinkedList<SandboxedJob>();
+        jobs.add(sampleJob("1", "RUNNING", null, null, false));
+        jobs.add(sampleJob("2", "DONE", 0, null, true));
+        jobs.add(sampleJob("3", "DONE", 1, null, true));
+        jobs.add(sampleJob("4", "KILLED", null, new Exception("Process cancelled by user."), true));
+        when(manager.getJobsAfter(null)).thenReturn(jobs);
+        UriInfo uriInfo = mock(UriInfo.class);
+        when(uriInfo.getAbsolutePathBuilder()).thenReturn(UriBuilder.fromUri("http://localhost/job/"));
+        JobsResource resource = new JobsResource(manager, new DefaultHttpClient(), uriInfo);
+
+        Response response = resource.getJobs("failed", null, null, null, null, false);
+
+        assertEquals("[\"http://localhost/job/3\",\"http://localhost/job/4\"]", entityAsString(response));
+    }
+
+    @Test
+    public void getJobs_UnknownState_BadRequest() {
+        XenonManager manager = mock(XenonManager.class);
+        UriInfo uriInfo = mock(UriInfo.class);
+        JobsResource resource = new JobsResource(manager, new DefaultHttpClient(), uriInfo);
+
+        try {
+            resource.getJobs("sleeping", null, null, null, null, false);
+            fail("WebApplicationException not thrown");
+        } catch (WebApplicationException e) {
+            assertEquals(400, e.getResponse().getStatus());
+        }
+    }
+
+    @Test
+    public void getJobs_ZeroLimit_BadRequest() {
+        XenonManager manager = mock(XenonManager.class);
+        UriInfo uriInfo = mock(UriInfo.class);
+        JobsResource resource = new JobsResource(manager, new DefaultHttpClient(), uriInfo);
+
+        try {
+            resource.getJobs(null, null, null, null, 0, false);
+            fail("WebApplicationException not thrown");
+        } catch (WebApplicationException e) {
+            assertEquals(400, e.getResponse().getStatus());
+        }
+    }
+
+    @Test
+    public void getJobs_InlineStatus_UriAndStatus() throws IOException {
+        XenonManager manager = mock(XenonManager.class);
+        Collection<SandboxedJob> jobs = new LinkedList<SandboxedJob>();
+        jobs.add(sampleJob("1234", "DONE", 0, null, true));
+        when(manager.getJobsAfter(null)).thenReturn(jobs);
+        UriInfo uriInfo = mock(UriInfo.class);
+        when(uriInfo.getAbsolutePathBuilder()).thenReturn(UriBuilder.fromUri("http://localhost/job/"));
+        JobsResource resource = new JobsResource(manager, new DefaultHttpClient(), uriInfo);
+
+        Response response = resource.getJobs(null, null, null, null, null, true);
+
+        String expected = "[{\"uri\":\"http://localhost/job/1234\",\"status\":{\"state\":\"DONE\",\"exitCode\":0,"
+                + "\"running\":false,\"done\":true,\"schedulerSpecficInformation\":null,\"exception\":null}}]";
+        assertEquals(expected, entityAsString(response));
+    }
+
+    private static SandboxedJob sampleJob(String identifier, String state, Integer exitCode, Exception exception,
+            boolean done) {
+        JobStatus status = new JobStatusImplementation(null, state, exitCode, exception, !done, done, null);
+        return new SandboxedJob(identifier, null, null, null, null, status);
+    }
+
+    private static String entityAsString(Response response) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ((StreamingOutput) response.getEntity()).write(output);
+        return output.toString("UTF-8");
+    }
 }